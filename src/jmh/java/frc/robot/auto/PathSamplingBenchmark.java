@@ -0,0 +1,74 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.auto;
+
+import static frc.robot.Constants.AUTO_TRAJECTORY_SAMPLE_PERIOD_SECONDS;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.wpi.first.math.trajectory.Trajectory;
+import edu.wpi.first.math.trajectory.TrajectoryGenerator;
+
+/**
+ * Compares sampling a path the way WPILib does it, with {@link Trajectory#sample} (binary search plus an interpolated
+ * {@code State}), against {@link SampledPath#sample} (index arithmetic into arrays). Both walk the whole S-curve at the
+ * robot's 20 ms loop period.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PathSamplingBenchmark {
+  private Trajectory m_trajectory;
+  private SampledPath m_path;
+  private final SampledPath.Sample m_sample = new SampledPath.Sample();
+  private double m_time = 0.0;
+
+  @Setup
+  public void setup() {
+    AutoPaths.Definition definition = null;
+    for (AutoPaths.Definition candidate : AutoPaths.getDefinitions()) {
+      if (candidate.name.equals(AutoPaths.S_CURVE)) {
+        definition = candidate;
+      }
+    }
+    m_trajectory = TrajectoryGenerator.generateTrajectory(definition.start, definition.interiorWaypoints,
+            definition.end, TrajectoryCacheGenerator.createConfig());
+    m_path = SampledPath.from(CachedTrajectory.wrap(definition.name,
+            TrajectoryCacheGenerator.encode(definition, m_trajectory, AUTO_TRAJECTORY_SAMPLE_PERIOD_SECONDS)));
+  }
+
+  private double nextTime() {
+    m_time += 0.02;
+    if (m_time > m_path.getTotalTimeSeconds()) {
+      m_time = 0.0;
+    }
+    return m_time;
+  }
+
+  @Benchmark
+  public Trajectory.State trajectorySample() {
+    return m_trajectory.sample(nextTime());
+  }
+
+  @Benchmark
+  public SampledPath.Sample sampledPath() {
+    m_path.sample(nextTime(), m_sample);
+    return m_sample;
+  }
+}
@@ -0,0 +1,54 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.commands;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+
+/**
+ * Measures the field-relative conversion in {@link DefaultDriveCommand#execute()}, both the
+ * {@link ChassisSpeeds#fromFieldRelativeSpeeds} call it used to make and the
+ * {@link DefaultDriveCommand#toRobotRelative} helper it (and log replay) calls now.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FieldRelativeSpeedsBenchmark {
+  private double m_vx = 2.5;
+  private double m_vy = -1.2;
+  private double m_omega = 3.0;
+  private double m_yawDegrees = 137.0;
+  // Reused like the command's own buffer.
+  private final double[] m_robotRelativeSpeeds = new double[3];
+
+  @Benchmark
+  public ChassisSpeeds fromFieldRelativeSpeeds() {
+    // The command also built a fresh Rotation2d from the gyro every loop, so that is part of the cost.
+    return ChassisSpeeds.fromFieldRelativeSpeeds(m_vx, m_vy, m_omega, Rotation2d.fromDegrees(m_yawDegrees));
+  }
+
+  @Benchmark
+  public void toRobotRelative(Blackhole blackhole) {
+    // The command reads the gyro sample in radians, so convert the same way it does.
+    DefaultDriveCommand.toRobotRelative(m_vx, m_vy, m_omega, Math.toRadians(m_yawDegrees), m_robotRelativeSpeeds);
+    blackhole.consume(m_robotRelativeSpeeds);
+  }
+}
@@ -0,0 +1,66 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.sim;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import frc.robot.subsystems.DrivetrainSubsystem;
+import frc.robot.util.InPlaceSwerveKinematics;
+
+/**
+ * Measures how long one simulated second of driving takes: 50 robot loops of kinematics plus 1000 physics substeps.
+ * Divide 1 s by the score to get how many times faster than real time the simulation runs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DrivetrainSimBenchmark {
+  private static final double LOOP_SECONDS = 0.02;
+
+  private final DrivetrainSim m_sim = new DrivetrainSim();
+  private final SimSwerveModule[] m_modules = m_sim.getModules();
+  private final InPlaceSwerveKinematics m_kinematics =
+          new InPlaceSwerveKinematics(DrivetrainSubsystem.getModuleLocations());
+  private final double[] m_speeds = new double[4];
+  private final double[] m_angles = new double[4];
+
+  @Setup
+  public void setup() {
+    m_sim.reset(0.0, 0.0, 0.0);
+  }
+
+  @Benchmark
+  public double oneSimulatedSecond() {
+    for (int loop = 0; loop < 50; loop++) {
+      // Sweep through translation and rotation so the steering keeps moving too.
+      double t = m_sim.getTimeSeconds();
+      double vx = Math.cos(t * 0.7) * DrivetrainSubsystem.MAX_VELOCITY_METERS_PER_SECOND;
+      double vy = Math.sin(t * 1.3) * DrivetrainSubsystem.MAX_VELOCITY_METERS_PER_SECOND;
+      double omega = Math.sin(t * 0.4) * DrivetrainSubsystem.MAX_ANGULAR_VELOCITY_RADIANS_PER_SECOND;
+      m_kinematics.toModuleStates(vx, vy, omega, m_speeds, m_angles);
+      InPlaceSwerveKinematics.desaturateWheelSpeeds(m_speeds, DrivetrainSubsystem.MAX_VELOCITY_METERS_PER_SECOND);
+      for (int i = 0; i < m_modules.length; i++) {
+        m_modules[i].set(m_speeds[i] / DrivetrainSubsystem.MAX_VELOCITY_METERS_PER_SECOND
+                * DrivetrainSubsystem.MAX_VOLTAGE, m_angles[i]);
+      }
+      m_sim.step(LOOP_SECONDS);
+    }
+    return m_sim.getXMeters();
+  }
+}
@@ -0,0 +1,72 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.subsystems;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import frc.robot.util.InPlaceSwerveKinematics;
+
+/**
+ * Measures the kinematics step of {@link DrivetrainSubsystem#periodic()}: the WPILib object path we used to run
+ * against the in-place path it runs now.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DrivetrainKinematicsBenchmark {
+  private final SwerveDriveKinematics m_kinematics = new SwerveDriveKinematics(DrivetrainSubsystem.MODULE_LOCATIONS);
+  private final InPlaceSwerveKinematics m_inPlaceKinematics =
+          new InPlaceSwerveKinematics(DrivetrainSubsystem.MODULE_LOCATIONS);
+
+  private final double[] m_speeds = new double[4];
+  private final double[] m_angles = new double[4];
+
+  // Full-speed translation plus rotation, so desaturation actually has to scale the wheels.
+  private double m_vx;
+  private double m_vy;
+  private double m_omega;
+  private ChassisSpeeds m_chassisSpeeds;
+
+  @Setup
+  public void setup() {
+    m_vx = DrivetrainSubsystem.MAX_VELOCITY_METERS_PER_SECOND * 0.8;
+    m_vy = DrivetrainSubsystem.MAX_VELOCITY_METERS_PER_SECOND * -0.4;
+    m_omega = DrivetrainSubsystem.MAX_ANGULAR_VELOCITY_RADIANS_PER_SECOND * 0.5;
+    m_chassisSpeeds = new ChassisSpeeds(m_vx, m_vy, m_omega);
+  }
+
+  @Benchmark
+  public void wpilibToModuleStatesAndDesaturate(Blackhole blackhole) {
+    SwerveModuleState[] states = m_kinematics.toSwerveModuleStates(m_chassisSpeeds);
+    SwerveDriveKinematics.desaturateWheelSpeeds(states, DrivetrainSubsystem.MAX_VELOCITY_METERS_PER_SECOND);
+    blackhole.consume(states);
+  }
+
+  @Benchmark
+  public void inPlaceToModuleStatesAndDesaturate(Blackhole blackhole) {
+    m_inPlaceKinematics.toModuleStates(m_vx, m_vy, m_omega, m_speeds, m_angles);
+    InPlaceSwerveKinematics.desaturateWheelSpeeds(m_speeds, DrivetrainSubsystem.MAX_VELOCITY_METERS_PER_SECOND);
+    blackhole.consume(m_speeds);
+    blackhole.consume(m_angles);
+  }
+}
@@ -0,0 +1,75 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import frc.robot.Constants;
+import frc.robot.subsystems.DrivetrainOdometry;
+
+/**
+ * Measures what the pose estimator costs: one odometry sample, and one vision measurement at either end of the
+ * 30 to 100 ms a camera takes. A measurement's cost grows with how many samples it has to replay, which at the
+ * odometry thread's 250 Hz is one per 4 ms of latency.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LatencyCompensatedPoseEstimatorBenchmark {
+  private static final double PERIOD = DrivetrainOdometry.DEFAULT_PERIOD_SECONDS;
+  private static final int CAPACITY = (int) Math.ceil(Constants.POSE_HISTORY_SECONDS / PERIOD) + 1;
+
+  private final LatencyCompensatedPoseEstimator m_estimator = new LatencyCompensatedPoseEstimator(CAPACITY,
+          Constants.POSE_STATE_STD_DEV_METERS, Constants.POSE_STATE_STD_DEV_RADIANS);
+  private double m_timeSeconds = 0.0;
+  private int m_measurement = 0;
+
+  @Setup
+  public void fillHistory() {
+    for (int i = 0; i < CAPACITY; i++) {
+      addOdometry();
+    }
+  }
+
+  /** The robot drives a 1 m circle at 2 m/s, so every replayed sample has to be rotated as well as moved. */
+  @Benchmark
+  public double addOdometry() {
+    m_timeSeconds += PERIOD;
+    double angle = 2.0 * m_timeSeconds;
+    m_estimator.addOdometry(m_timeSeconds, Math.cos(angle), Math.sin(angle), angle + Math.PI / 2.0);
+    return m_estimator.getXMeters();
+  }
+
+  @Benchmark
+  public boolean fuse30msLate() {
+    return fuse(0.03);
+  }
+
+  @Benchmark
+  public boolean fuse100msLate() {
+    return fuse(0.1);
+  }
+
+  private boolean fuse(double latencySeconds) {
+    // Alternate between two slightly different measurements so the pose really moves every time.
+    double offset = (m_measurement++ & 1) == 0 ? 0.02 : -0.02;
+    return m_estimator.addMeasurement(m_timeSeconds - latencySeconds, 1.0 + offset, offset, Math.PI / 2.0,
+            0.05, Math.toRadians(2.0));
+  }
+}
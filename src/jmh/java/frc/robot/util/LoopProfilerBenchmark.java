@@ -0,0 +1,45 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures what {@link LoopProfiler} adds to each timed stage. With four stages per loop this needs to stay far
+ * below 200 us (1% of the 20 ms budget), and it should allocate nothing.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LoopProfilerBenchmark {
+  private final LoopProfiler.Stage m_stage = LoopProfiler.getInstance().register("benchmark", 0.02);
+  private final LatencyHistogram m_histogram = new LatencyHistogram();
+  private long m_sample = 0;
+
+  @Benchmark
+  public long stageStartStop() {
+    return m_stage.stop(m_stage.start());
+  }
+
+  @Benchmark
+  public void histogramRecord() {
+    // Walk through a range of values so we don't hit the same bucket every time.
+    m_sample = (m_sample + 37) & 0x3FFF;
+    m_histogram.record(m_sample);
+  }
+}
@@ -0,0 +1,68 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Hammers a {@link PoseSnapshot} with one writer (the odometry thread) and several readers (commands, logging).
+ * <p>
+ * The writer always publishes a sample where every field holds the same value, so a reader that sees two different
+ * values saw a torn write. The {@code tornReads} counter in the results must be zero. This only measures the cost;
+ * {@code DrivetrainOdometryTest} is what fails the build on a torn read.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class PoseSnapshotBenchmark {
+  private final PoseSnapshot m_snapshot = new PoseSnapshot();
+  private double m_nextValue = 0.0;
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class ReaderCounters {
+    public long tornReads;
+    private final PoseSnapshot.Sample m_sample = new PoseSnapshot.Sample();
+  }
+
+  @Benchmark
+  @Group("snapshot")
+  @GroupThreads(1)
+  public void writer() {
+    double value = m_nextValue++;
+    m_snapshot.write(value, value, value, value, value, value, value);
+  }
+
+  @Benchmark
+  @Group("snapshot")
+  @GroupThreads(3)
+  public long reader(ReaderCounters counters) {
+    PoseSnapshot.Sample sample = counters.m_sample;
+    m_snapshot.read(sample);
+    double value = sample.timestampSeconds;
+    if (sample.xMeters != value || sample.yMeters != value || sample.thetaRadians != value
+            || sample.vxMetersPerSecond != value || sample.vyMetersPerSecond != value
+            || sample.omegaRadiansPerSecond != value) {
+      counters.tornReads++;
+    }
+    return sample.sequence;
+  }
+}
@@ -0,0 +1,100 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import frc.robot.subsystems.DrivetrainLog;
+
+/**
+ * Measures {@link RingBufferLogger} with drivetrain-sized records.
+ * <p>
+ * {@code writeRecord} is what the robot loop pays per record; it should be tens of nanoseconds and 0 B/op.
+ * {@code oneSecondAt250Hz} writes a second's worth of 250 Hz records and waits for the drain thread to put them in
+ * the file, so it has to come in far under a second with {@code droppedRecords} at zero for the logger to keep up.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RingBufferLoggerBenchmark {
+  private Path m_file;
+  private RingBufferLogger m_logger;
+  private long m_loop = 0;
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Counters {
+    public long droppedRecords;
+  }
+
+  @Setup(Level.Iteration)
+  public void setup() throws IOException {
+    m_file = Files.createTempFile("ring-buffer-logger", ".bin");
+    m_logger = new RingBufferLogger(m_file, DrivetrainLog.RECORD_BYTES, DrivetrainLog.FORMAT_VERSION,
+            DrivetrainLog.DEFAULT_CAPACITY_RECORDS, 1L << 30);
+  }
+
+  @TearDown(Level.Iteration)
+  public void tearDown() throws IOException {
+    m_logger.close();
+    Files.deleteIfExists(m_file);
+  }
+
+  private void writeOne() {
+    if (m_logger.beginRecord()) {
+      double t = m_loop++ * 0.004;
+      m_logger.putDouble(DrivetrainLog.TIMESTAMP, t);
+      m_logger.putDouble(DrivetrainLog.LEFT_X, 0.25);
+      m_logger.putDouble(DrivetrainLog.LEFT_Y, -0.5);
+      m_logger.putDouble(DrivetrainLog.RIGHT_X, 0.1);
+      m_logger.putDouble(DrivetrainLog.GYRO_YAW, t * 10.0);
+      for (int i = 0; i < 8; i++) {
+        m_logger.putFloat(DrivetrainLog.MODULE_SETPOINTS + 4 * i, (float) t);
+        m_logger.putFloat(DrivetrainLog.MODULE_MEASURED + 4 * i, (float) t);
+      }
+      m_logger.commitRecord();
+    }
+  }
+
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  public void writeRecord(Counters counters) {
+    writeOne();
+    counters.droppedRecords = m_logger.getDroppedRecords();
+  }
+
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public long oneSecondAt250Hz(Counters counters) {
+    long target = m_logger.getWrittenRecords() + m_logger.getDroppedRecords() + 250;
+    for (int i = 0; i < 250; i++) {
+      writeOne();
+    }
+    while (m_logger.getWrittenRecords() + m_logger.getDroppedRecords() < target) {
+      Thread.onSpinWait();
+    }
+    counters.droppedRecords = m_logger.getDroppedRecords();
+    return m_logger.getWrittenRecords();
+  }
+}
@@ -0,0 +1,53 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import frc.robot.subsystems.DrivetrainSubsystem;
+
+/**
+ * Measures one loop of {@link SwerveSetpointGenerator#generate}. The requests cycle through hard direction changes
+ * at full speed, so the steering limit's bisection runs on most calls. This is the worst case; a steady request
+ * skips it entirely.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SwerveSetpointGeneratorBenchmark {
+  private static final double MAX = DrivetrainSubsystem.MAX_VELOCITY_METERS_PER_SECOND;
+  private static final double[][] REQUESTS = {
+          {MAX, 0.0, 0.0},
+          {0.0, MAX, 0.0},
+          {-MAX, 0.0, 2.0},
+          {0.0, -MAX, -2.0},
+          {0.7 * MAX, 0.7 * MAX, 4.0}
+  };
+  // Each request is held for this many loops, long enough to build up speed before the next turn.
+  private static final int LOOPS_PER_REQUEST = 25;
+
+  private final SwerveSetpointGenerator m_generator = DrivetrainSubsystem.createSetpointGenerator();
+  private int m_loop = 0;
+
+  @Benchmark
+  public double generate() {
+    double[] request = REQUESTS[(m_loop++ / LOOPS_PER_REQUEST) % REQUESTS.length];
+    m_generator.generate(request[0], request[1], request[2], DrivetrainSubsystem.LOOP_PERIOD_SECONDS);
+    return m_generator.getVxMetersPerSecond();
+  }
+}
@@ -47,4 +47,224 @@ public final class Constants {
     public static final int BACK_RIGHT_MODULE_STEER_MOTOR = 14; // DONE Set back right steer motor ID
     public static final int BACK_RIGHT_MODULE_STEER_ENCODER = 24; // DONE Set back right steer encoder ID
     public static final double BACK_RIGHT_MODULE_STEER_OFFSET = -Math.toRadians(136.40); // FIXME Measure and set back right steer offset
+
+    /**
+     * Module outputs within this many volts of the last one sent are not re-sent.
+     */
+    public static final double MODULE_OUTPUT_VOLTAGE_TOLERANCE = 0.05;
+    /**
+     * Module speed setpoints within this many meters per second of the last one sent are not re-sent. About what the
+     * voltage tolerance is worth in speed.
+     */
+    public static final double MODULE_OUTPUT_VELOCITY_TOLERANCE_METERS_PER_SECOND = 0.02;
+    /**
+     * Module steering angles within this many radians of the last one sent are not re-sent.
+     */
+    public static final double MODULE_OUTPUT_ANGLE_TOLERANCE_RADIANS = Math.toRadians(0.5);
+    /**
+     * Module outputs are re-sent at least this often, even if nothing changed, so the motor controllers never time out.
+     */
+    public static final double MODULE_OUTPUT_REFRESH_PERIOD_SECONDS = 0.1;
+
+    /**
+     * Autonomous trajectories are limited to this fraction of the drivetrain's theoretical top speed, leaving headroom
+     * for the feedback controllers to correct errors.
+     */
+    public static final double AUTO_MAX_SPEED_FRACTION = 0.75;
+    /**
+     * The maximum acceleration of the autonomous trajectories.
+     */
+    public static final double AUTO_MAX_ACCELERATION_METERS_PER_SECOND_SQUARED = 2.5;
+    /**
+     * Precomputed autonomous trajectories are sampled at this fixed time step.
+     */
+    public static final double AUTO_TRAJECTORY_SAMPLE_PERIOD_SECONDS = 0.01;
+    /**
+     * Path following feedback: meters per second of correction per meter of position error.
+     */
+    public static final double AUTO_TRANSLATION_KP = 3.0;
+    public static final double AUTO_TRANSLATION_KD = 0.0;
+    /**
+     * Path following feedback: radians per second of correction per radian of heading error.
+     */
+    public static final double AUTO_HEADING_KP = 4.0;
+    public static final double AUTO_HEADING_KD = 0.0;
+    /**
+     * A path is finished once it's over and the robot is this close to its end.
+     */
+    public static final double AUTO_POSITION_TOLERANCE_METERS = 0.05;
+    public static final double AUTO_HEADING_TOLERANCE_RADIANS = Math.toRadians(2.0);
+    /**
+     * How long past the end of a path to keep trying to reach the tolerance before giving up.
+     */
+    public static final double AUTO_SETTLE_TIMEOUT_SECONDS = 0.5;
+    /**
+     * The drive tread's coefficient of friction on carpet. A wheel can push with at most this times the weight on it
+     * before it slips, so the acceleration limits below are derived from it. This is the low end for rubber tread on
+     * carpet; measure ours by pulling the robot along with a spring scale, wheels locked, and dividing by its weight.
+     */
+    public static final double DRIVE_WHEEL_FRICTION_COEFFICIENT = 1.0;
+    public static final double GRAVITY_METERS_PER_SECOND_SQUARED = 9.81;
+    /**
+     * How much of the tread's grip the setpoint generator lets the wheels use. The rest covers rolling friction and the
+     * motors lagging the setpoint between loops, either of which would otherwise tip a wheel into slipping.
+     */
+    public static final double DRIVE_TRACTION_FRACTION = 0.8;
+    /**
+     * The most the drive setpoint may accelerate the chassis, in meters per second squared. All four wheels together
+     * can't push the robot harder than the friction coefficient times its weight, so anything over mu * g slips the
+     * wheels. See frc.robot.sim.AccelerationTest.
+     */
+    public static final double DRIVE_MAX_LINEAR_ACCELERATION_METERS_PER_SECOND_SQUARED =
+            DRIVE_TRACTION_FRACTION * DRIVE_WHEEL_FRICTION_COEFFICIENT * GRAVITY_METERS_PER_SECOND_SQUARED;
+    /**
+     * The most any one module's velocity may change, in meters per second squared. Each wheel carries about a quarter
+     * of the weight and pushes about a quarter of the mass, so this is the same share of mu * g.
+     */
+    public static final double MODULE_MAX_ACCELERATION_METERS_PER_SECOND_SQUARED =
+            DRIVE_TRACTION_FRACTION * DRIVE_WHEEL_FRICTION_COEFFICIENT * GRAVITY_METERS_PER_SECOND_SQUARED;
+    /**
+     * The most the drive setpoint may accelerate the chassis' rotation, in radians per second squared. Spinning up in
+     * place, this is where the modules reach their own limit.
+     */
+    public static final double DRIVE_MAX_ANGULAR_ACCELERATION_RADIANS_PER_SECOND_SQUARED =
+            MODULE_MAX_ACCELERATION_METERS_PER_SECOND_SQUARED
+                    / Math.hypot(DRIVETRAIN_TRACKWIDTH_METERS / 2.0, DRIVETRAIN_WHEELBASE_METERS / 2.0);
+    /**
+     * How fast a moving module's direction may change, in radians per second. This is a little under what the steering
+     * motors can actually do, so the modules keep up with the setpoint.
+     */
+    public static final double MODULE_MAX_STEERING_RATE_RADIANS_PER_SECOND = 3.0 * Math.PI;
+    /**
+     * How slow every wheel has to be turning, in meters per second, before a robot asked to lock its modules turns them
+     * into the X. Until then it slows down through the setpoint generator like any other stop, since turning wheels
+     * that are still rolling across the carpet would skid them.
+     */
+    public static final double DRIVE_X_LOCK_MAX_SPEED_METERS_PER_SECOND = 0.1;
+    /**
+     * Whether the drivetrain writes its outputs in the same loop a command requests them, instead of at the start of the
+     * next loop. See DrivetrainSubsystem.setSameLoopOutput().
+     */
+    public static final boolean DRIVE_OUTPUT_SAME_LOOP = false;
+    /**
+     * Whether kinematics and the module outputs run on their own fixed-rate thread instead of in the 20 ms robot loop.
+     * Then a slow command or an overrun in the scheduler no longer holds up the motors. See
+     * DrivetrainSubsystem.startControlLoop().
+     */
+    public static final boolean DRIVE_CONTROL_LOOP_ENABLED = false;
+    /**
+     * How often the drivetrain's control loop runs, if it's enabled.
+     */
+    public static final double DRIVE_CONTROL_LOOP_PERIOD_SECONDS = 0.005;
+    /**
+     * The control loop thread's real-time priority, from 1 to 99. Above the robot's main thread, which isn't real-time,
+     * and below WPILib's own Notifier and CAN threads.
+     */
+    public static final int DRIVE_CONTROL_LOOP_PRIORITY = 15;
+    /**
+     * Whether the drivetrain corrects its chassis speeds for the robot turning while the modules hold them, over the
+     * measured time between outputs. Translating while spinning curves away from the commanded direction; this takes
+     * out the part of that caused by holding the speeds for a loop, which in simulation is about a sixth of it. See
+     * ChassisSpeedDiscretizer and SpinDriftTest.
+     */
+    public static final boolean DRIVE_DISCRETIZE_SPEEDS = true;
+    /**
+     * Whether the drivetrain also turns its chassis speeds ahead by how far the robot turns between the gyro sample a
+     * request was made from and the outputs going out, measured every output. In simulation this roughly halves what
+     * drift discretizing leaves, but it hasn't been tried on the robot, so it's off until it has.
+     */
+    public static final boolean DRIVE_LATENCY_LOOKAHEAD = false;
+    /**
+     * The longest measured output period or latency the drivetrain compensates for. A longer gap between outputs is a
+     * stall, not a loop period, so the nominal period is used; a longer latency is cut down to this.
+     */
+    public static final double DRIVE_MAX_COMPENSATION_SECONDS = 0.1;
+    /**
+     * How long any one drivetrain device may take to configure at boot before it's marked failed. The drivetrain won't
+     * drive with a device missing, so it still picks the device up if it finishes later.
+     */
+    public static final double DEVICE_INIT_TIMEOUT_SECONDS = 2.0;
+    /**
+     * How many times to try configuring a drivetrain device that reports an error, e.g. one that was still booting
+     * when it was asked.
+     */
+    public static final int DEVICE_INIT_ATTEMPTS = 3;
+    /**
+     * How long to wait before trying a drivetrain device again.
+     */
+    public static final double DEVICE_INIT_RETRY_DELAY_SECONDS = 0.5;
+    /**
+     * How much odometry history the pose estimator keeps. Vision measurements older than this are ignored.
+     */
+    public static final double POSE_HISTORY_SECONDS = 1.0;
+    /**
+     * How much the pose estimator trusts odometry, as standard deviations. Lower means vision moves the pose less.
+     */
+    public static final double POSE_STATE_STD_DEV_METERS = 0.1;
+    public static final double POSE_STATE_STD_DEV_RADIANS = 0.01;
+    /**
+     * The drive motors' supply current limit. This is SDS's default for the Falcon 500.
+     */
+    public static final double DRIVE_CURRENT_LIMIT_AMPS = 80.0;
+    /**
+     * The steer motors' supply current limit. This is SDS's default for the Falcon 500.
+     */
+    public static final double STEER_CURRENT_LIMIT_AMPS = 20.0;
+    /**
+     * The most current the whole robot may draw. The 120 A main breaker carries twice its rating for several seconds,
+     * so this is about the most a match's worth of sprints can take. The power budget only models the drive motors,
+     * so they get this less {@link #STEER_CURRENT_ALLOWANCE_AMPS} and {@link #RESERVED_CURRENT_AMPS}, 135 A.
+     */
+    public static final double TOTAL_CURRENT_BUDGET_AMPS = 240.0;
+    /**
+     * What the current budget allows the four steer motors: all of them at their supply limit, the most they can draw,
+     * e.g. when every module turns around at once. They only draw that for a moment, so the predicted bus voltage
+     * counts them as part of {@link #RESERVED_CURRENT_AMPS} instead.
+     */
+    public static final double STEER_CURRENT_ALLOWANCE_AMPS = 4 * STEER_CURRENT_LIMIT_AMPS;
+    /**
+     * How much of the current budget to keep back for the rest of the robot. The predicted bus voltage also counts this
+     * as drawn, so it covers what the steer motors usually draw too: a few amps between them.
+     */
+    public static final double RESERVED_CURRENT_AMPS = 25.0;
+    /**
+     * The battery's internal resistance plus the main breaker, the PDP and the wiring. A fresh battery is around
+     * 0.015 ohms; a tired one can be double that. The power budget starts from this and measures the real one as the
+     * robot drives, so it's set for a tired battery with poor wiring: too high only holds the robot back until its
+     * first hard acceleration, but too low lets that acceleration brown it out.
+     */
+    public static final double BATTERY_RESISTANCE_OHMS = 0.04;
+    /**
+     * The drive may not pull the bus below this. The roboRIO browns out at 6.8 V.
+     */
+    public static final double MINIMUM_BUS_VOLTAGE = 8.0;
+    /**
+     * How quickly the estimate of the battery's resting voltage follows the measurements.
+     */
+    public static final double BATTERY_VOLTAGE_FILTER_SECONDS = 1.0;
+    /**
+     * The file in the deploy directory that holds the drive motor feedforward gains. Without it, drive voltage is just
+     * proportional to speed. Write it by running the drivetrain characterization.
+     */
+    public static final String DRIVE_FEEDFORWARD_FILE = "drive-feedforward.properties";
+    /**
+     * The file in the deploy directory that says which modules hold their drive speed on the Falcon, and the gains
+     * for it. See {@link frc.robot.util.ModuleControlConfig}. Without it, every module drives open loop.
+     */
+    public static final String MODULE_CONTROL_FILE = "module-control.properties";
+    /**
+     * Drive characterization: how fast the slow ramp climbs and for how long, how big the voltage step is and for how
+     * long, and the rest before each. The robot goes about 3 m forwards and comes back, so give it that much floor.
+     * The step stays under what breaks the wheels loose from rest, about 2 V at our friction coefficient; a slipping
+     * wheel fits kS high and kA low.
+     */
+    public static final double CHARACTERIZATION_RAMP_VOLTS_PER_SECOND = 1.0;
+    public static final double CHARACTERIZATION_QUASISTATIC_SECONDS = 4.0;
+    public static final double CHARACTERIZATION_STEP_VOLTS = 1.8;
+    public static final double CHARACTERIZATION_DYNAMIC_SECONDS = 1.5;
+    public static final double CHARACTERIZATION_REST_SECONDS = 1.0;
+    /**
+     * Characterization samples slower than this aren't fitted. Static friction doesn't follow the model.
+     */
+    public static final double CHARACTERIZATION_MIN_VELOCITY_METERS_PER_SECOND = 0.05;
 }
@@ -0,0 +1,164 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import frc.robot.commands.DefaultDriveCommand;
+import frc.robot.subsystems.DrivetrainLog;
+import frc.robot.subsystems.DrivetrainSubsystem;
+import frc.robot.util.InPlaceSwerveKinematics;
+import frc.robot.util.RingBufferLogger;
+import frc.robot.util.SwerveSetpointGenerator;
+
+/**
+ * Replays a {@link DrivetrainLog} through the drive pipeline with no hardware and writes out what the code computes.
+ * <p>
+ * For every recorded loop it does what the robot did, in the same order. First, the drivetrain's periodic() turns
+ * the previous loop's request into module setpoints. Then the drive command reads the recorded sticks through
+ * {@link RobotContainer}'s mappings and the recorded gyro yaw, and makes a new request. (With
+ * {@link Constants#DRIVE_OUTPUT_SAME_LOOP}, the request comes first and the setpoints use it in the same loop. The
+ * log was recorded in whatever mode the robot was built with, so replay with the same setting.) Both steps call the
+ * same methods the robot code does. The output file has the same format as the input, with the chassis speeds and module
+ * setpoints replaced by the recomputed ones, so the two can be diffed field by field.
+ * <p>
+ * Loops where some other command (like sturdyBaseCommand) had the drivetrain will show up as mismatches, since
+ * replay assumes the drive command is always running.
+ * <p>
+ * Run it with {@code ./gradlew replay -PreplayLog=<log> [-PreplayOut=<output>]}.
+ */
+public final class DriveReplay {
+  private static final int MODULE_COUNT = 4;
+
+  private final InPlaceSwerveKinematics m_kinematics =
+          new InPlaceSwerveKinematics(DrivetrainSubsystem.getModuleLocations());
+  private final SwerveSetpointGenerator m_setpointGenerator = DrivetrainSubsystem.createSetpointGenerator();
+  private final double[] m_request = new double[3];
+  private final double[] m_speeds = new double[MODULE_COUNT];
+  private final double[] m_angles = new double[MODULE_COUNT];
+
+  private long m_loops = 0;
+  private long m_setpointMismatches = 0;
+  private long m_requestMismatches = 0;
+  private double m_maxSetpointError = 0.0;
+
+  private DriveReplay() {}
+
+  public static void main(String... args) throws IOException {
+    if (args.length < 1) {
+      System.err.println("Usage: DriveReplay <drivetrain log> [output file]");
+      System.exit(2);
+    }
+    Path input = Paths.get(args[0]);
+    Path output = args.length > 1 ? Paths.get(args[1]) : Paths.get(args[0] + ".replay");
+
+    DriveReplay replay = new DriveReplay();
+    long start = System.nanoTime();
+    replay.run(input, output);
+    double seconds = (System.nanoTime() - start) / 1e9;
+
+    double loopsPerSecond = replay.m_loops / seconds;
+    System.out.printf("Replayed %d loops in %.3f s: %.0f loops/s, %.0fx real time at 50 Hz%n",
+            replay.m_loops, seconds, loopsPerSecond, loopsPerSecond / 50.0);
+    System.out.printf("Setpoint mismatches: %d (max error %.6g), request mismatches: %d%n",
+            replay.m_setpointMismatches, replay.m_maxSetpointError, replay.m_requestMismatches);
+    System.out.println("Wrote " + output);
+  }
+
+  private void run(Path input, Path output) throws IOException {
+    try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+         FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                 StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      MappedByteBuffer source = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+      source.order(ByteOrder.LITTLE_ENDIAN);
+      if (source.getLong(0) != RingBufferLogger.MAGIC) {
+        throw new IOException(input + " is not a drivetrain log");
+      }
+      // The record layout changes with the code, so only the version this was built with can be replayed. Logs from
+      // before the header had a version read as version 0.
+      int version = source.getInt(RingBufferLogger.FORMAT_VERSION_OFFSET);
+      int recordBytes = source.getInt(RingBufferLogger.RECORD_BYTES_OFFSET);
+      if (version != DrivetrainLog.FORMAT_VERSION || recordBytes != DrivetrainLog.RECORD_BYTES) {
+        throw new IOException(String.format("%s is a version %d drivetrain log with %d-byte records, but this replay "
+                + "reads version %d with %d-byte records. Replay it with the code it was recorded with.", input,
+                version, recordBytes, DrivetrainLog.FORMAT_VERSION, DrivetrainLog.RECORD_BYTES));
+      }
+      long records = source.getLong(RingBufferLogger.RECORD_COUNT_OFFSET);
+      long size = RingBufferLogger.HEADER_BYTES + records * DrivetrainLog.RECORD_BYTES;
+      if (size > in.size() || size > Integer.MAX_VALUE) {
+        throw new IOException(input + " is truncated or too large to replay in one piece");
+      }
+
+      MappedByteBuffer target = out.map(FileChannel.MapMode.READ_WRITE, 0, size);
+      target.order(ByteOrder.LITTLE_ENDIAN);
+      source.limit((int) size);
+      target.put(source);
+
+      for (int record = 0; record < records; record++) {
+        replayLoop(target, RingBufferLogger.HEADER_BYTES + record * DrivetrainLog.RECORD_BYTES);
+      }
+      target.force();
+    }
+  }
+
+  private void replayLoop(MappedByteBuffer buffer, int base) {
+    if (Constants.DRIVE_OUTPUT_SAME_LOOP) {
+      replayRequest(buffer, base);
+      replaySetpoints(buffer, base);
+    } else {
+      replaySetpoints(buffer, base);
+      replayRequest(buffer, base);
+    }
+    m_loops++;
+  }
+
+  private void replaySetpoints(MappedByteBuffer buffer, int base) {
+    // DrivetrainSubsystem.periodic() or applyOutputs(): the latest request becomes this loop's setpoints.
+    // With the output period and latency the robot measured, so the speeds are corrected the same way.
+    double discretizationPeriod = buffer.getDouble(base + DrivetrainLog.DISCRETIZATION_PERIOD);
+    double lookahead = buffer.getDouble(base + DrivetrainLog.LOOKAHEAD);
+    DrivetrainSubsystem.computeModuleSetpoints(m_kinematics, m_setpointGenerator, m_request[0], m_request[1],
+            m_request[2], DrivetrainSubsystem.LOOP_PERIOD_SECONDS, discretizationPeriod, lookahead, m_speeds, m_angles);
+    for (int i = 0; i < MODULE_COUNT; i++) {
+      int offset = base + DrivetrainLog.MODULE_SETPOINTS + 8 * i;
+      float speed = (float) m_speeds[i];
+      float angle = (float) m_angles[i];
+      float recordedSpeed = buffer.getFloat(offset);
+      float recordedAngle = buffer.getFloat(offset + 4);
+      if (speed != recordedSpeed || angle != recordedAngle) {
+        m_setpointMismatches++;
+        m_maxSetpointError = Math.max(m_maxSetpointError,
+                Math.max(Math.abs(speed - recordedSpeed), Math.abs(angle - recordedAngle)));
+      }
+      buffer.putFloat(offset, speed);
+      buffer.putFloat(offset + 4, angle);
+    }
+  }
+
+  private void replayRequest(MappedByteBuffer buffer, int base) {
+    // DefaultDriveCommand.execute(): sticks and gyro become the next request.
+    DefaultDriveCommand.toRobotRelative(
+            RobotContainer.forwardSpeedFromStick(buffer.getDouble(base + DrivetrainLog.LEFT_Y)),
+            RobotContainer.strafeSpeedFromStick(buffer.getDouble(base + DrivetrainLog.LEFT_X)),
+            RobotContainer.rotationSpeedFromStick(buffer.getDouble(base + DrivetrainLog.RIGHT_X)),
+            Math.toRadians(buffer.getDouble(base + DrivetrainLog.GYRO_YAW)),
+            m_request
+    );
+    if ((float) m_request[0] != buffer.getFloat(base + DrivetrainLog.CHASSIS_VX)
+            || (float) m_request[1] != buffer.getFloat(base + DrivetrainLog.CHASSIS_VY)
+            || (float) m_request[2] != buffer.getFloat(base + DrivetrainLog.CHASSIS_OMEGA)) {
+      m_requestMismatches++;
+    }
+    buffer.putFloat(base + DrivetrainLog.CHASSIS_VX, (float) m_request[0]);
+    buffer.putFloat(base + DrivetrainLog.CHASSIS_VY, (float) m_request[1]);
+    buffer.putFloat(base + DrivetrainLog.CHASSIS_OMEGA, (float) m_request[2]);
+  }
+}
@@ -0,0 +1,45 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot;
+
+import edu.wpi.first.wpilibj.XboxController;
+
+/**
+ * The driver's raw stick axes, read once at the start of each loop.
+ * <p>
+ * Everything downstream (the drive command's suppliers, the data log) reads from here instead of the controller, so
+ * they all see the same values. It also gives replay a place to inject recorded axes.
+ */
+public class DriverInputs {
+  private double m_leftX = 0.0;
+  private double m_leftY = 0.0;
+  private double m_rightX = 0.0;
+
+  /** Reads the sticks. */
+  public void update(XboxController controller) {
+    m_leftX = controller.getLeftX();
+    m_leftY = controller.getLeftY();
+    m_rightX = controller.getRightX();
+  }
+
+  /** Sets the axes directly, e.g. from a log. */
+  public void set(double leftX, double leftY, double rightX) {
+    m_leftX = leftX;
+    m_leftY = leftY;
+    m_rightX = rightX;
+  }
+
+  public double getLeftX() {
+    return m_leftX;
+  }
+
+  public double getLeftY() {
+    return m_leftY;
+  }
+
+  public double getRightX() {
+    return m_rightX;
+  }
+}
@@ -7,6 +7,9 @@ package frc.robot;
 import edu.wpi.first.wpilibj.TimedRobot;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import frc.robot.util.LatencyTracer;
+import frc.robot.util.LoopJitter;
+import frc.robot.util.LoopProfiler;
 
 /**
  * The VM is configured to automatically run this class, and to call the functions corresponding to
@@ -19,6 +22,12 @@ public class Robot extends TimedRobot {
 
   private RobotContainer m_robotContainer;
 
+  // Times the whole scheduler run. Anything over the loop period counts as an overrun.
+  private final LoopProfiler.Stage m_schedulerStage =
+      LoopProfiler.getInstance().register("CommandScheduler.run", getPeriod());
+  // How far apart the loops really are. Overruns here are whole loops that were missed.
+  private final LoopJitter m_loopJitter = new LoopJitter("Robot.robotPeriodic jitter", getPeriod());
+
   /**
    * This function is run when the robot is first started up and should be used for any
    * initialization code.
@@ -43,7 +52,24 @@ public class Robot extends TimedRobot {
     // commands, running already-scheduled commands, removing finished or interrupted commands,
     // and running subsystem periodic() methods.  This must be called from the robot's periodic
     // block in order for anything in the Command-based framework to work.
+    m_loopJitter.tick();
+    m_robotContainer.readInputs();
+
+    long start = m_schedulerStage.start();
     CommandScheduler.getInstance().run();
+    m_schedulerStage.stop(start);
+    m_robotContainer.applyOutputs();
+
+    m_robotContainer.logLoop();
+
+    LoopProfiler.getInstance().periodic();
+    LatencyTracer.getInstance().periodic();
+  }
+
+  /** This function is called periodically in simulation, after all the other periodic functions. */
+  @Override
+  public void simulationPeriodic() {
+    m_robotContainer.simulationPeriodic(getPeriod());
   }
 
   /** This function is called once each time the robot enters Disabled mode. */
@@ -4,10 +4,18 @@
 
 package frc.robot;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Filesystem;
 import edu.wpi.first.wpilibj.GenericHID;
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.XboxController;
-
-import com.swervedrivespecialties.swervelib.SwerveModule;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
 import edu.wpi.first.wpilibj2.command.Command;
@@ -15,9 +23,17 @@ import edu.wpi.first.wpilibj2.command.FunctionalCommand;
 import edu.wpi.first.wpilibj2.command.InstantCommand;
 import edu.wpi.first.wpilibj2.command.button.Button;
 import edu.wpi.first.wpilibj2.command.button.JoystickButton;
+import frc.robot.auto.AutoPaths;
+import frc.robot.auto.SampledPath;
+import frc.robot.auto.TrajectoryCache;
+import frc.robot.commands.CharacterizeDrivetrainCommand;
 import frc.robot.commands.DefaultDriveCommand;
+import frc.robot.commands.FollowPathCommand;
 import frc.robot.commands.sturdyBaseCommand;
+import frc.robot.sim.DrivetrainSim;
+import frc.robot.subsystems.DrivetrainLog;
 import frc.robot.subsystems.DrivetrainSubsystem;
+import frc.robot.util.LatencyTracer;
 
 /**
  * This class is where the bulk of the robot should be declared. Since Command-based is a
@@ -27,21 +43,34 @@ import frc.robot.subsystems.DrivetrainSubsystem;
  */
 public class RobotContainer {
 
-  //Declare SwerveModules from SDSSwerveLib's.
-  SwerveModule m_frontLeftModule;
-  SwerveModule m_frontRightModule;
-  SwerveModule m_backLeftModule;
-  SwerveModule m_backRightModule;
   // The robot's subsystems and commands are defined here...
+  //  In simulation there's no hardware, so the drivetrain runs on a physics model instead.
+  private final DrivetrainSim m_drivetrainSim = RobotBase.isSimulation() ? new DrivetrainSim() : null;
   //  Declare the DriveTrainSubsystem
-  private final DrivetrainSubsystem m_drivetrainSubsystem = new DrivetrainSubsystem();
+  private final DrivetrainSubsystem m_drivetrainSubsystem = m_drivetrainSim == null
+          ? new DrivetrainSubsystem()
+          : new DrivetrainSubsystem(m_drivetrainSim.getModules(), m_drivetrainSim.getGyro(), Timer::getFPGATimestamp,
+                  m_drivetrainSim::getBusVoltage, false);
   //  Declare the Xbox Controller 
   private final XboxController m_controller = new XboxController(0);
+  //  The driver's sticks, read once per loop
+  private final DriverInputs m_driverInputs = new DriverInputs();
+  private final LatencyTracer.Trace m_driveLatencyTrace = DrivetrainSubsystem.getDriveLatencyTrace();
+
+  // Generated at build time; a trajectory's file is only mapped when autonomous first asks for it.
+  private final TrajectoryCache m_trajectories = new TrajectoryCache();
+  //  Per-loop drivetrain data log, or null if it couldn't be opened
+  private final DrivetrainLog m_drivetrainLog = RobotBase.isReal() ? openDrivetrainLog() : null;
 
   /**
    * The container for the robot. Contains subsystems, OI devices, and commands.
    */
   public RobotContainer() {
+    if (m_drivetrainSim != null) {
+      // The simulated modules hold their speed with the same gains the Falcons would get.
+      m_drivetrainSim.setModuleControl(m_drivetrainSubsystem.getModuleControl());
+    }
+
     // Set up the default command for the drivetrain.
     // The controls are for field-oriented driving:
     // Left stick Y axis -> forward and backwards movement
@@ -49,13 +78,17 @@ public class RobotContainer {
     // Right stick X axis -> rotation
     m_drivetrainSubsystem.setDefaultCommand(new DefaultDriveCommand(
             m_drivetrainSubsystem,
-            () -> -modifyAxis(m_controller.getLeftY()) * DrivetrainSubsystem.MAX_VELOCITY_METERS_PER_SECOND,
-            () -> -modifyAxis(m_controller.getLeftX()) * DrivetrainSubsystem.MAX_VELOCITY_METERS_PER_SECOND,
-            () -> -modifyAxis(m_controller.getRightX()) * DrivetrainSubsystem.MAX_ANGULAR_VELOCITY_RADIANS_PER_SECOND
+            () -> forwardSpeedFromStick(m_driverInputs.getLeftY()),
+            () -> strafeSpeedFromStick(m_driverInputs.getLeftX()),
+            () -> rotationSpeedFromStick(m_driverInputs.getRightX())
     ));
 
     // Configure the button bindings
     configureButtonBindings();
+
+    if (Constants.DRIVE_CONTROL_LOOP_ENABLED) {
+      m_drivetrainSubsystem.startControlLoop(Constants.DRIVE_CONTROL_LOOP_PERIOD_SECONDS);
+    }
   }
 
   /**
@@ -65,25 +98,97 @@ public class RobotContainer {
    * edu.wpi.first.wpilibj2.command.button.JoystickButton}.
    */
   private void configureButtonBindings() {
-    new JoystickButton(m_controller, 2).whileHeld(new sturdyBaseCommand(m_drivetrainSubsystem, m_frontLeftModule, m_frontRightModule, m_backLeftModule, m_backRightModule));
+    new JoystickButton(m_controller, 2).whileHeld(new sturdyBaseCommand(m_drivetrainSubsystem));
     // Back button zeros the gyroscope
     new Button(m_controller::getBackButton)
             // No requirements because we don't need to interrupt anything
             .whenPressed(m_drivetrainSubsystem::zeroGyroscope);
     new JoystickButton(m_controller, 1).whenPressed(m_drivetrainSubsystem::zeroGyroscope);
+
+    // Only from the dashboard, so it can't be started by accident mid-match.
+    SmartDashboard.putData("Characterize Drivetrain", new CharacterizeDrivetrainCommand(m_drivetrainSubsystem));
+  }
+
+  /**
+   * Reads the driver's sticks. Called at the start of every loop, before the scheduler runs.
+   */
+  public void readInputs() {
+    m_driverInputs.update(m_controller);
+    m_driveLatencyTrace.mark(DrivetrainSubsystem.TRACE_INPUT);
+  }
+
+  /**
+   * Writes outputs that wait until every command has run. Called every loop, right after the scheduler runs.
+   */
+  public void applyOutputs() {
+    m_drivetrainSubsystem.applyOutputs();
+  }
+
+  /**
+   * Records this loop in the data log. Called at the end of every loop, after the scheduler runs.
+   */
+  public void logLoop() {
+    if (m_drivetrainLog != null) {
+      m_drivetrainLog.log(m_drivetrainSubsystem,
+              m_driverInputs.getLeftX(), m_driverInputs.getLeftY(), m_driverInputs.getRightX());
+    }
+  }
+
+  private static DrivetrainLog openDrivetrainLog() {
+    // Name the file by when the robot code started. The roboRIO clock may not be set yet, but it's still unique
+    // enough to keep logs from overwriting each other.
+    Path file = Paths.get(Filesystem.getOperatingDirectory().getPath(), "logs",
+            "drivetrain-" + System.currentTimeMillis() + ".bin");
+    try {
+      return new DrivetrainLog(file, DrivetrainLog.DEFAULT_CAPACITY_RECORDS, 256L << 20);
+    } catch (IOException e) {
+      DriverStation.reportError("Couldn't open the drivetrain log: " + e.getMessage(), false);
+      return null;
+    }
+  }
+
+  /**
+   * Steps the simulated hardware forward by one robot loop. Only called in simulation.
+   */
+  public void simulationPeriodic(double dtSeconds) {
+    if (m_drivetrainSim != null) {
+      m_drivetrainSim.step(dtSeconds);
+    }
   }
 
   /**
    * Use this to pass the autonomous command to the main {@link Robot} class.
    *
-   * @return the command to run in autonomous
+   * @return the command to run in autonomous, or one that does nothing if the path couldn't be loaded
    */
   public Command getAutonomousCommand() {
-    // An ExampleCommand will run in autonomous
-    return new InstantCommand();
+    // Copying the path out of its mapped file takes microseconds, so this is fine to do in autonomousInit().
+    SampledPath path;
+    try {
+      path = SampledPath.from(m_trajectories.get(AutoPaths.DRIVE_OFF_LINE));
+    } catch (UncheckedIOException e) {
+      DriverStation.reportError("Couldn't load the autonomous path, not driving in autonomous: " + e.getMessage(),
+              false);
+      return new InstantCommand();
+    }
+    return new FollowPathCommand(m_drivetrainSubsystem, path, true);
+  }
+
+  // The stick-to-speed mappings for the drive command. They're methods rather than inline lambdas so log replay
+  // can run exactly the same math.
+  static double forwardSpeedFromStick(double leftY) {
+    return -modifyAxis(leftY) * DrivetrainSubsystem.MAX_VELOCITY_METERS_PER_SECOND;
+  }
+
+  static double strafeSpeedFromStick(double leftX) {
+    return -modifyAxis(leftX) * DrivetrainSubsystem.MAX_VELOCITY_METERS_PER_SECOND;
+  }
+
+  static double rotationSpeedFromStick(double rightX) {
+    return -modifyAxis(rightX) * DrivetrainSubsystem.MAX_ANGULAR_VELOCITY_RADIANS_PER_SECOND;
   }
 
-  private static double deadband(double value, double deadband) {
+  static double deadband(double value, double deadband) {
     if (Math.abs(value) > deadband) {
       if (value > 0.0) {
         return (value - deadband) / (1.0 - deadband);
@@ -95,7 +200,7 @@ public class RobotContainer {
     }
   }
 
-  private static double modifyAxis(double value) {
+  static double modifyAxis(double value) {
     // Deadband
     value = deadband(value, 0.05);
 
@@ -0,0 +1,65 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.auto;
+
+import java.util.List;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+
+/**
+ * The autonomous paths. {@link TrajectoryCacheGenerator} turns each of these into a trajectory file at build time,
+ * and the robot loads them by name through {@link TrajectoryCache}. Add new paths here.
+ */
+public final class AutoPaths {
+  public static final String DRIVE_OFF_LINE = "DriveOffLine";
+  public static final String S_CURVE = "SCurve";
+  public static final String STRAFE_AND_SPIN = "StrafeAndSpin";
+
+  private AutoPaths() {}
+
+  /**
+   * A path through the given waypoints. Like WPILib's, the rotation of each pose is the direction the robot travels
+   * in. Separately, the robot's heading turns smoothly from {@code startHeading} to {@code endHeading} over the path.
+   */
+  public static final class Definition {
+    public final String name;
+    public final Pose2d start;
+    public final List<Translation2d> interiorWaypoints;
+    public final Pose2d end;
+    public final Rotation2d startHeading;
+    public final Rotation2d endHeading;
+
+    public Definition(String name, Pose2d start, List<Translation2d> interiorWaypoints, Pose2d end,
+                      Rotation2d startHeading, Rotation2d endHeading) {
+      this.name = name;
+      this.start = start;
+      this.interiorWaypoints = List.copyOf(interiorWaypoints);
+      this.end = end;
+      this.startHeading = startHeading;
+      this.endHeading = endHeading;
+    }
+  }
+
+  public static List<Definition> getDefinitions() {
+    return List.of(
+            new Definition(DRIVE_OFF_LINE,
+                    new Pose2d(0.0, 0.0, new Rotation2d()),
+                    List.of(),
+                    new Pose2d(2.0, 0.0, new Rotation2d()),
+                    new Rotation2d(), new Rotation2d()),
+            new Definition(S_CURVE,
+                    new Pose2d(0.0, 0.0, new Rotation2d()),
+                    List.of(new Translation2d(1.0, 1.0), new Translation2d(2.0, -1.0)),
+                    new Pose2d(3.0, 0.0, new Rotation2d()),
+                    new Rotation2d(), new Rotation2d()),
+            new Definition(STRAFE_AND_SPIN,
+                    new Pose2d(0.0, 0.0, Rotation2d.fromDegrees(90.0)),
+                    List.of(),
+                    new Pose2d(0.0, 2.0, Rotation2d.fromDegrees(90.0)),
+                    new Rotation2d(), Rotation2d.fromDegrees(180.0)));
+  }
+}
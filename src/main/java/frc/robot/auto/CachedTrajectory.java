@@ -0,0 +1,143 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.auto;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A holonomic trajectory precomputed at build time by {@link TrajectoryCacheGenerator}, read straight out of a
+ * memory-mapped file.
+ * <p>
+ * The file is a small header followed by one column of little-endian doubles per field, each holding one value per
+ * sample at a fixed time step. Sample {@code i} is at {@code i * getSamplePeriodSeconds()}, so finding a sample is
+ * index arithmetic, and reading one is a single absolute load from the mapping. Nothing is allocated per sample.
+ * <pre>
+ *   0  long   magic ("FRCTRAJ1")
+ *   8  int    format version
+ *  12  int    sample count
+ *  16  double sample period, seconds
+ *  24  long   reserved
+ *  32  double[count] x, double[count] y, double[count] heading,
+ *      double[count] vx, double[count] vy, double[count] omega
+ * </pre>
+ * Positions are field-relative meters. Velocities are field-relative meters per second. Headings are radians and are
+ * not wrapped, so a path that turns more than half a revolution stays continuous.
+ */
+public final class CachedTrajectory {
+  /** "FRCTRAJ1" in ASCII, as a little-endian long. */
+  public static final long MAGIC = 0x314A4152_54435246L;
+  public static final int VERSION = 1;
+  public static final int HEADER_BYTES = 32;
+  public static final String FILE_EXTENSION = ".traj";
+
+  static final int COLUMN_X = 0;
+  static final int COLUMN_Y = 1;
+  static final int COLUMN_HEADING = 2;
+  static final int COLUMN_VX = 3;
+  static final int COLUMN_VY = 4;
+  static final int COLUMN_OMEGA = 5;
+  static final int COLUMN_COUNT = 6;
+
+  private final String m_name;
+  private final ByteBuffer m_buffer;
+  private final int m_sampleCount;
+  private final double m_samplePeriodSeconds;
+  private final int m_columnBytes;
+
+  private CachedTrajectory(String name, ByteBuffer buffer) {
+    m_name = name;
+    m_buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+    if (m_buffer.capacity() < HEADER_BYTES || m_buffer.getLong(0) != MAGIC) {
+      throw new IllegalArgumentException(name + " is not a cached trajectory");
+    }
+    if (m_buffer.getInt(8) != VERSION) {
+      throw new IllegalArgumentException(name + " has format version " + m_buffer.getInt(8) + ", expected " + VERSION);
+    }
+    m_sampleCount = m_buffer.getInt(12);
+    m_samplePeriodSeconds = m_buffer.getDouble(16);
+    m_columnBytes = m_sampleCount * Double.BYTES;
+    if (m_sampleCount < 1 || !(m_samplePeriodSeconds > 0.0)
+            || m_buffer.capacity() < fileBytes(m_sampleCount)) {
+      throw new IllegalArgumentException(name + " is truncated or corrupt");
+    }
+  }
+
+  /**
+   * Memory-maps a trajectory file. The pages are only read from disk when they are first touched.
+   */
+  public static CachedTrajectory map(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      // The mapping stays valid after the channel is closed.
+      return new CachedTrajectory(nameOf(file), channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  /**
+   * Wraps trajectory data that is already in memory, in the same format as the files.
+   */
+  public static CachedTrajectory wrap(String name, ByteBuffer buffer) {
+    return new CachedTrajectory(name, buffer.duplicate());
+  }
+
+  static long fileBytes(int sampleCount) {
+    return HEADER_BYTES + (long) COLUMN_COUNT * sampleCount * Double.BYTES;
+  }
+
+  static String nameOf(Path file) {
+    String fileName = file.getFileName().toString();
+    return fileName.endsWith(FILE_EXTENSION)
+            ? fileName.substring(0, fileName.length() - FILE_EXTENSION.length())
+            : fileName;
+  }
+
+  public String getName() {
+    return m_name;
+  }
+
+  public int getSampleCount() {
+    return m_sampleCount;
+  }
+
+  public double getSamplePeriodSeconds() {
+    return m_samplePeriodSeconds;
+  }
+
+  public double getTotalTimeSeconds() {
+    return (m_sampleCount - 1) * m_samplePeriodSeconds;
+  }
+
+  public double getX(int index) {
+    return get(COLUMN_X, index);
+  }
+
+  public double getY(int index) {
+    return get(COLUMN_Y, index);
+  }
+
+  public double getHeadingRadians(int index) {
+    return get(COLUMN_HEADING, index);
+  }
+
+  public double getVx(int index) {
+    return get(COLUMN_VX, index);
+  }
+
+  public double getVy(int index) {
+    return get(COLUMN_VY, index);
+  }
+
+  public double getOmega(int index) {
+    return get(COLUMN_OMEGA, index);
+  }
+
+  private double get(int column, int index) {
+    return m_buffer.getDouble(HEADER_BYTES + column * m_columnBytes + index * Double.BYTES);
+  }
+}
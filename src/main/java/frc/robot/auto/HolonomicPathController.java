@@ -0,0 +1,95 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.auto;
+
+import static frc.robot.Constants.AUTO_HEADING_KD;
+import static frc.robot.Constants.AUTO_HEADING_KP;
+import static frc.robot.Constants.AUTO_TRANSLATION_KD;
+import static frc.robot.Constants.AUTO_TRANSLATION_KP;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.controller.PIDController;
+import frc.robot.commands.DefaultDriveCommand;
+
+/**
+ * Tracks a {@link SampledPath} with a swerve drive. x, y and heading are controlled independently: each one gets the
+ * path's velocity as feedforward plus a PID correction on its position error. The sum is field-relative, so it's
+ * rotated into the robot's frame before it goes to the drivetrain.
+ * <p>
+ * This has no dependency on the command scheduler, so the same controller runs in
+ * {@link frc.robot.commands.FollowPathCommand} and in PathFollowingTest.
+ */
+public class HolonomicPathController {
+  private final PIDController m_xController;
+  private final PIDController m_yController;
+  private final PIDController m_headingController;
+
+  // Field-relative errors from the last calculate(): x, y and heading.
+  private double m_xError = 0.0;
+  private double m_yError = 0.0;
+  private double m_headingError = 0.0;
+
+  public HolonomicPathController(PIDController xController, PIDController yController,
+                                 PIDController headingController) {
+    m_xController = xController;
+    m_yController = yController;
+    m_headingController = headingController;
+    m_headingController.enableContinuousInput(-Math.PI, Math.PI);
+  }
+
+  /**
+   * Creates a controller with the gains in {@link frc.robot.Constants}.
+   */
+  public static HolonomicPathController createDefault() {
+    return new HolonomicPathController(
+            new PIDController(AUTO_TRANSLATION_KP, 0.0, AUTO_TRANSLATION_KD),
+            new PIDController(AUTO_TRANSLATION_KP, 0.0, AUTO_TRANSLATION_KD),
+            new PIDController(AUTO_HEADING_KP, 0.0, AUTO_HEADING_KD));
+  }
+
+  /** Clears the PID state. Call this before following a new path. */
+  public void reset() {
+    m_xController.reset();
+    m_yController.reset();
+    m_headingController.reset();
+  }
+
+  /**
+   * Calculates the robot-relative speeds that bring the robot onto the path.
+   *
+   * @param reference      where the robot should be now
+   * @param xMeters        the robot's field x
+   * @param yMeters        the robot's field y
+   * @param headingRadians the robot's field heading
+   * @param out            receives the robot-relative vx, vy and omega to pass to the drivetrain
+   */
+  public void calculate(SampledPath.Sample reference, double xMeters, double yMeters, double headingRadians,
+                        double[] out) {
+    m_xError = reference.xMeters - xMeters;
+    m_yError = reference.yMeters - yMeters;
+    m_headingError = MathUtil.angleModulus(reference.headingRadians - headingRadians);
+
+    double vx = reference.vxMetersPerSecond + m_xController.calculate(xMeters, reference.xMeters);
+    double vy = reference.vyMetersPerSecond + m_yController.calculate(yMeters, reference.yMeters);
+    double omega = reference.omegaRadiansPerSecond
+            + m_headingController.calculate(headingRadians, MathUtil.angleModulus(reference.headingRadians));
+    DefaultDriveCommand.toRobotRelative(vx, vy, omega, headingRadians, out);
+  }
+
+  /** Gets how far the robot was from the reference at the last {@link #calculate}, in meters. */
+  public double getPositionErrorMeters() {
+    return Math.hypot(m_xError, m_yError);
+  }
+
+  /** Gets the heading error at the last {@link #calculate}, in radians. */
+  public double getHeadingErrorRadians() {
+    return m_headingError;
+  }
+
+  public boolean atReference(double positionToleranceMeters, double headingToleranceRadians) {
+    return getPositionErrorMeters() <= positionToleranceMeters
+            && Math.abs(m_headingError) <= headingToleranceRadians;
+  }
+}
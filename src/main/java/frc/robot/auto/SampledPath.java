@@ -0,0 +1,133 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.auto;
+
+/**
+ * A holonomic path held as parallel {@code double[]} arrays, one entry per fixed time step.
+ * <p>
+ * WPILib's {@code Trajectory.sample()} binary searches a list of {@code State} objects and allocates an interpolated
+ * one on every call. Here the samples are evenly spaced in time, so the two samples around any time are found with
+ * one division, and interpolating between them writes into a caller-owned {@link Sample}. Sampling is O(1) and
+ * allocates nothing.
+ */
+public final class SampledPath {
+  private final String m_name;
+  private final double m_samplePeriodSeconds;
+  private final double[] m_x;
+  private final double[] m_y;
+  private final double[] m_heading;
+  private final double[] m_vx;
+  private final double[] m_vy;
+  private final double[] m_omega;
+
+  /**
+   * Creates a path from arrays that all have one entry per sample. The arrays are used as-is, not copied.
+   */
+  public SampledPath(String name, double samplePeriodSeconds, double[] x, double[] y, double[] heading,
+                     double[] vx, double[] vy, double[] omega) {
+    int count = x.length;
+    if (count < 1 || y.length != count || heading.length != count
+            || vx.length != count || vy.length != count || omega.length != count) {
+      throw new IllegalArgumentException("Every column of " + name + " needs the same, non-zero number of samples");
+    }
+    if (!(samplePeriodSeconds > 0.0)) {
+      throw new IllegalArgumentException("The sample period must be positive");
+    }
+    m_name = name;
+    m_samplePeriodSeconds = samplePeriodSeconds;
+    m_x = x;
+    m_y = y;
+    m_heading = heading;
+    m_vx = vx;
+    m_vy = vy;
+    m_omega = omega;
+  }
+
+  /**
+   * Copies a cached trajectory out of its memory-mapped file into arrays. This is done once, when the command is
+   * created, so the loop never touches the file.
+   */
+  public static SampledPath from(CachedTrajectory trajectory) {
+    int count = trajectory.getSampleCount();
+    double[] x = new double[count];
+    double[] y = new double[count];
+    double[] heading = new double[count];
+    double[] vx = new double[count];
+    double[] vy = new double[count];
+    double[] omega = new double[count];
+    for (int i = 0; i < count; i++) {
+      x[i] = trajectory.getX(i);
+      y[i] = trajectory.getY(i);
+      heading[i] = trajectory.getHeadingRadians(i);
+      vx[i] = trajectory.getVx(i);
+      vy[i] = trajectory.getVy(i);
+      omega[i] = trajectory.getOmega(i);
+    }
+    return new SampledPath(trajectory.getName(), trajectory.getSamplePeriodSeconds(), x, y, heading, vx, vy, omega);
+  }
+
+  public String getName() {
+    return m_name;
+  }
+
+  public int getSampleCount() {
+    return m_x.length;
+  }
+
+  public double getSamplePeriodSeconds() {
+    return m_samplePeriodSeconds;
+  }
+
+  public double getTotalTimeSeconds() {
+    return (m_x.length - 1) * m_samplePeriodSeconds;
+  }
+
+  /**
+   * Interpolates the path at a time since it started. Times before the start or after the end are clamped, so
+   * sampling past the end gives the final pose with the final velocity.
+   */
+  public void sample(double timeSeconds, Sample out) {
+    int last = m_x.length - 1;
+    double position = timeSeconds / m_samplePeriodSeconds;
+    int i;
+    double fraction;
+    if (!(position > 0.0)) {
+      i = 0;
+      fraction = 0.0;
+    } else if (position >= last) {
+      i = last;
+      fraction = 0.0;
+    } else {
+      i = (int) position;
+      fraction = position - i;
+    }
+    int j = Math.min(i + 1, last);
+
+    out.timeSeconds = timeSeconds;
+    out.xMeters = lerp(m_x[i], m_x[j], fraction);
+    out.yMeters = lerp(m_y[i], m_y[j], fraction);
+    out.headingRadians = lerp(m_heading[i], m_heading[j], fraction);
+    out.vxMetersPerSecond = lerp(m_vx[i], m_vx[j], fraction);
+    out.vyMetersPerSecond = lerp(m_vy[i], m_vy[j], fraction);
+    out.omegaRadiansPerSecond = lerp(m_omega[i], m_omega[j], fraction);
+  }
+
+  private static double lerp(double a, double b, double fraction) {
+    return a + (b - a) * fraction;
+  }
+
+  /**
+   * A point on the path. Positions, velocities and the heading are all field-relative.
+   */
+  public static final class Sample {
+    public double timeSeconds;
+    public double xMeters;
+    public double yMeters;
+    public double headingRadians;
+    public double vxMetersPerSecond;
+    public double vyMetersPerSecond;
+    public double omegaRadiansPerSecond;
+  }
+}
@@ -0,0 +1,54 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.auto;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import edu.wpi.first.wpilibj.Filesystem;
+
+/**
+ * Loads the trajectories generated at build time. Each file is memory-mapped the first time it's asked for and then
+ * kept, so the first lookup costs a system call, later lookups cost a map lookup, and nothing is generated or parsed
+ * on the robot.
+ */
+public class TrajectoryCache {
+  public static final String DIRECTORY_NAME = "trajectories";
+
+  private final Path m_directory;
+  private final Map<String, CachedTrajectory> m_trajectories = new HashMap<>();
+
+  /**
+   * Loads trajectories from the deploy directory.
+   */
+  public TrajectoryCache() {
+    this(Filesystem.getDeployDirectory().toPath().resolve(DIRECTORY_NAME));
+  }
+
+  public TrajectoryCache(Path directory) {
+    m_directory = directory;
+  }
+
+  /**
+   * Returns the trajectory generated for the path with the given name, mapping its file if this is the first time.
+   *
+   * @throws UncheckedIOException if the file is missing (usually because the trajectories weren't generated)
+   */
+  public synchronized CachedTrajectory get(String name) {
+    CachedTrajectory trajectory = m_trajectories.get(name);
+    if (trajectory == null) {
+      try {
+        trajectory = CachedTrajectory.map(m_directory.resolve(name + CachedTrajectory.FILE_EXTENSION));
+      } catch (IOException e) {
+        throw new UncheckedIOException("Could not load trajectory " + name + " from " + m_directory, e);
+      }
+      m_trajectories.put(name, trajectory);
+    }
+    return trajectory;
+  }
+}
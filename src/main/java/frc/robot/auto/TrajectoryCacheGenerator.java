@@ -0,0 +1,111 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.auto;
+
+import static frc.robot.Constants.AUTO_MAX_ACCELERATION_METERS_PER_SECOND_SQUARED;
+import static frc.robot.Constants.AUTO_MAX_SPEED_FRACTION;
+import static frc.robot.Constants.AUTO_TRAJECTORY_SAMPLE_PERIOD_SECONDS;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.trajectory.Trajectory;
+import edu.wpi.first.math.trajectory.TrajectoryConfig;
+import edu.wpi.first.math.trajectory.TrajectoryGenerator;
+import frc.robot.subsystems.DrivetrainSubsystem;
+
+/**
+ * Generates every path in {@link AutoPaths} with WPILib's trajectory generator and writes it out in the
+ * {@link CachedTrajectory} format. This runs on the desktop as part of the build (the {@code generateTrajectories}
+ * Gradle task), so the roboRIO never has to generate a trajectory.
+ */
+public final class TrajectoryCacheGenerator {
+  private TrajectoryCacheGenerator() {}
+
+  public static void main(String... args) throws IOException {
+    if (args.length != 1) {
+      System.err.println("Usage: TrajectoryCacheGenerator <output directory>");
+      System.exit(2);
+    }
+    Path outputDirectory = Paths.get(args[0]);
+    Files.createDirectories(outputDirectory);
+    // Remove trajectories for paths that no longer exist, so they don't get deployed.
+    try (DirectoryStream<Path> stale = Files.newDirectoryStream(outputDirectory, "*" + CachedTrajectory.FILE_EXTENSION)) {
+      for (Path file : stale) {
+        Files.delete(file);
+      }
+    }
+
+    TrajectoryConfig config = createConfig();
+    for (AutoPaths.Definition definition : AutoPaths.getDefinitions()) {
+      Trajectory trajectory = TrajectoryGenerator.generateTrajectory(
+              definition.start, definition.interiorWaypoints, definition.end, config);
+      ByteBuffer data = encode(definition, trajectory, AUTO_TRAJECTORY_SAMPLE_PERIOD_SECONDS);
+      Path file = outputDirectory.resolve(definition.name + CachedTrajectory.FILE_EXTENSION);
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+              StandardOpenOption.TRUNCATE_EXISTING)) {
+        while (data.hasRemaining()) {
+          channel.write(data);
+        }
+      }
+      System.out.printf("%s: %.2f s, %d bytes%n", definition.name, trajectory.getTotalTimeSeconds(), Files.size(file));
+    }
+  }
+
+  /**
+   * The trajectory constraints: a fraction of the drivetrain's top speed, the autonomous acceleration limit, and the
+   * swerve kinematics constraint so no single module is asked to go faster than the drivetrain allows.
+   */
+  public static TrajectoryConfig createConfig() {
+    return new TrajectoryConfig(
+            AUTO_MAX_SPEED_FRACTION * DrivetrainSubsystem.MAX_VELOCITY_METERS_PER_SECOND,
+            AUTO_MAX_ACCELERATION_METERS_PER_SECOND_SQUARED)
+            .setKinematics(new SwerveDriveKinematics(DrivetrainSubsystem.getModuleLocations()));
+  }
+
+  /**
+   * Resamples a trajectory at a fixed time step into the {@link CachedTrajectory} format. The heading follows a
+   * smoothstep from the start heading to the end heading, so the angular velocity is zero at both ends.
+   */
+  public static ByteBuffer encode(AutoPaths.Definition definition, Trajectory trajectory, double samplePeriodSeconds) {
+    double totalTime = trajectory.getTotalTimeSeconds();
+    int sampleCount = (int) Math.ceil(totalTime / samplePeriodSeconds - 1e-9) + 1;
+    ByteBuffer data = ByteBuffer.allocate((int) CachedTrajectory.fileBytes(sampleCount)).order(ByteOrder.LITTLE_ENDIAN);
+    data.putLong(0, CachedTrajectory.MAGIC);
+    data.putInt(8, CachedTrajectory.VERSION);
+    data.putInt(12, sampleCount);
+    data.putDouble(16, samplePeriodSeconds);
+
+    double startHeading = definition.startHeading.getRadians();
+    // Take the short way around.
+    double headingChange = Math.IEEEremainder(definition.endHeading.getRadians() - startHeading, 2.0 * Math.PI);
+    int columnBytes = sampleCount * Double.BYTES;
+    for (int i = 0; i < sampleCount; i++) {
+      double t = Math.min(i * samplePeriodSeconds, totalTime);
+      Trajectory.State state = trajectory.sample(t);
+      double direction = state.poseMeters.getRotation().getRadians();
+      double s = totalTime > 0.0 ? t / totalTime : 1.0;
+      double heading = startHeading + headingChange * s * s * (3.0 - 2.0 * s);
+      double omega = totalTime > 0.0 ? headingChange * 6.0 * s * (1.0 - s) / totalTime : 0.0;
+
+      int offset = CachedTrajectory.HEADER_BYTES + i * Double.BYTES;
+      data.putDouble(offset + CachedTrajectory.COLUMN_X * columnBytes, state.poseMeters.getX());
+      data.putDouble(offset + CachedTrajectory.COLUMN_Y * columnBytes, state.poseMeters.getY());
+      data.putDouble(offset + CachedTrajectory.COLUMN_HEADING * columnBytes, heading);
+      data.putDouble(offset + CachedTrajectory.COLUMN_VX * columnBytes, state.velocityMetersPerSecond * Math.cos(direction));
+      data.putDouble(offset + CachedTrajectory.COLUMN_VY * columnBytes, state.velocityMetersPerSecond * Math.sin(direction));
+      data.putDouble(offset + CachedTrajectory.COLUMN_OMEGA * columnBytes, omega);
+    }
+    return data;
+  }
+}
@@ -0,0 +1,80 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.commands;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.CommandBase;
+import frc.robot.subsystems.DrivetrainSubsystem;
+import frc.robot.util.DriveCharacterization;
+import frc.robot.util.DriveFeedforward;
+import frc.robot.util.FeedforwardFit;
+
+/**
+ * Characterizes the drive motors, then saves the fitted feedforward to the deploy directory and drives with it from
+ * then on.
+ * <p>
+ * The robot drives straight forwards and back twice, so give it about 3 m of clear floor in front. Cancelling the
+ * command stops the robot and throws the run away. The deploy directory on the roboRIO is replaced by the next
+ * deploy, so copy the file into src/main/deploy and commit it; in simulation it's written there directly.
+ */
+public class CharacterizeDrivetrainCommand extends CommandBase {
+    private final DrivetrainSubsystem m_drivetrainSubsystem;
+
+    private DriveCharacterization m_characterization;
+    private double m_startTimeSeconds = 0.0;
+
+    public CharacterizeDrivetrainCommand(DrivetrainSubsystem drivetrainSubsystem) {
+        this.m_drivetrainSubsystem = drivetrainSubsystem;
+
+        addRequirements(drivetrainSubsystem);
+    }
+
+    @Override
+    public void initialize() {
+        // Created here so every run starts from an empty fit. Nothing else is allocated until the run ends.
+        m_characterization = DrivetrainSubsystem.createCharacterization();
+        m_startTimeSeconds = Timer.getFPGATimestamp();
+        m_drivetrainSubsystem.startCharacterization(m_characterization);
+    }
+
+    @Override
+    public boolean isFinished() {
+        return m_characterization.isFinished(Timer.getFPGATimestamp() - m_startTimeSeconds);
+    }
+
+    @Override
+    public void end(boolean interrupted) {
+        m_drivetrainSubsystem.stopCharacterization();
+        if (interrupted) {
+            System.out.println("Drive characterization cancelled; nothing was saved");
+            return;
+        }
+
+        FeedforwardFit fit = m_characterization.getFit();
+        DriveFeedforward feedforward = fit.solve();
+        if (feedforward == null || !(feedforward.getKv() > 0.0)) {
+            DriverStation.reportError("Drive characterization couldn't fit the " + fit.getSampleCount()
+                    + " samples it got. Did the robot move?", false);
+            return;
+        }
+        String summary = String.format("r^2 %.4f over %d samples.", fit.getRSquared(feedforward),
+                fit.getSampleCount());
+        System.out.println("Drive characterization: " + feedforward + ", " + summary);
+
+        Path file = DrivetrainSubsystem.getDriveFeedforwardFile();
+        try {
+            feedforward.save(file, summary);
+            System.out.println("Saved the drive feedforward to " + file);
+        } catch (IOException e) {
+            DriverStation.reportError("Couldn't save the drive feedforward to " + file + ": " + e.getMessage(),
+                    false);
+        }
+        m_drivetrainSubsystem.setDriveFeedforward(feedforward);
+    }
+}
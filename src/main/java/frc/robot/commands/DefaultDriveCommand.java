@@ -1,8 +1,9 @@
 package frc.robot.commands;
 
-import edu.wpi.first.math.kinematics.ChassisSpeeds;
 import edu.wpi.first.wpilibj2.command.CommandBase;
 import frc.robot.subsystems.DrivetrainSubsystem;
+import frc.robot.util.LatencyTracer;
+import frc.robot.util.LoopProfiler;
 
 import java.util.function.DoubleSupplier;
 
@@ -13,6 +14,12 @@ public class DefaultDriveCommand extends CommandBase {
     private final DoubleSupplier m_translationYSupplier;
     private final DoubleSupplier m_rotationSupplier;
 
+    // x, y and omega to hand to the drivetrain. Reused every loop.
+    private final double[] m_robotRelativeSpeeds = new double[3];
+
+    private final LoopProfiler.Stage m_executeStage = LoopProfiler.getInstance().register("DefaultDriveCommand.execute");
+    private final LatencyTracer.Trace m_latencyTrace = DrivetrainSubsystem.getDriveLatencyTrace();
+
     public DefaultDriveCommand(DrivetrainSubsystem drivetrainSubsystem,
                                DoubleSupplier translationXSupplier,
                                DoubleSupplier translationYSupplier,
@@ -27,19 +34,40 @@ public class DefaultDriveCommand extends CommandBase {
 
     @Override
     public void execute() {
-        // You can use `new ChassisSpeeds(...)` for robot-oriented movement instead of field-oriented movement
-        m_drivetrainSubsystem.drive(
-                ChassisSpeeds.fromFieldRelativeSpeeds(
-                        m_translationXSupplier.getAsDouble(),
-                        m_translationYSupplier.getAsDouble(),
-                        m_rotationSupplier.getAsDouble(),
-                        m_drivetrainSubsystem.getGyroscopeRotation()
-                )
+        long start = m_executeStage.start();
+
+        // Pass the suppliers straight through for robot-oriented movement instead of field-oriented movement
+        toRobotRelative(
+                m_translationXSupplier.getAsDouble(),
+                m_translationYSupplier.getAsDouble(),
+                m_rotationSupplier.getAsDouble(),
+                m_drivetrainSubsystem.getGyroscopeRadians(),
+                m_robotRelativeSpeeds
         );
+        m_drivetrainSubsystem.drive(m_robotRelativeSpeeds[0], m_robotRelativeSpeeds[1], m_robotRelativeSpeeds[2]);
+        m_latencyTrace.mark(DrivetrainSubsystem.TRACE_COMMAND);
+
+        m_executeStage.stop(start);
+    }
+
+    /**
+     * Converts field-relative speeds into robot-relative ones. This is the same rotation as
+     * {@code ChassisSpeeds.fromFieldRelativeSpeeds()}, but it writes into {@code out} so nothing is allocated. Log
+     * replay calls this too, so it recomputes exactly what the command did.
+     *
+     * @param out receives vx, vy and omega
+     */
+    public static void toRobotRelative(double vxMetersPerSecond, double vyMetersPerSecond,
+                                       double omegaRadiansPerSecond, double headingRadians, double[] out) {
+        double cos = Math.cos(headingRadians);
+        double sin = Math.sin(headingRadians);
+        out[0] = vxMetersPerSecond * cos + vyMetersPerSecond * sin;
+        out[1] = -vxMetersPerSecond * sin + vyMetersPerSecond * cos;
+        out[2] = omegaRadiansPerSecond;
     }
 
     @Override
     public void end(boolean interrupted) {
-        m_drivetrainSubsystem.drive(new ChassisSpeeds(0.0, 0.0, 0.0));
+        m_drivetrainSubsystem.drive(0.0, 0.0, 0.0);
     }
 }
@@ -0,0 +1,98 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.commands;
+
+import static frc.robot.Constants.AUTO_HEADING_TOLERANCE_RADIANS;
+import static frc.robot.Constants.AUTO_POSITION_TOLERANCE_METERS;
+import static frc.robot.Constants.AUTO_SETTLE_TIMEOUT_SECONDS;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.CommandBase;
+import frc.robot.auto.HolonomicPathController;
+import frc.robot.auto.SampledPath;
+import frc.robot.subsystems.DrivetrainSubsystem;
+import frc.robot.util.LoopProfiler;
+import frc.robot.util.PoseSnapshot;
+
+/**
+ * Drives the robot along a {@link SampledPath} using the odometry pose. The command ends once the path is over and
+ * the robot is within tolerance of its end, or {@link frc.robot.Constants#AUTO_SETTLE_TIMEOUT_SECONDS} after the
+ * path is over if it never gets there.
+ */
+public class FollowPathCommand extends CommandBase {
+    private final DrivetrainSubsystem m_drivetrainSubsystem;
+    private final SampledPath m_path;
+    private final HolonomicPathController m_controller;
+    private final boolean m_resetPose;
+
+    // Reused every loop so following a path allocates nothing.
+    private final SampledPath.Sample m_reference = new SampledPath.Sample();
+    private final PoseSnapshot.Sample m_pose = new PoseSnapshot.Sample();
+    private final double[] m_robotRelativeSpeeds = new double[3];
+
+    private double m_startTimeSeconds = 0.0;
+    private double m_elapsedSeconds = 0.0;
+
+    private final LoopProfiler.Stage m_executeStage = LoopProfiler.getInstance().register("FollowPathCommand.execute");
+
+    /**
+     * @param resetPose true to reset the odometry to the start of the path first. Use this for the first path of an
+     *                  autonomous routine.
+     */
+    public FollowPathCommand(DrivetrainSubsystem drivetrainSubsystem, SampledPath path, boolean resetPose) {
+        this(drivetrainSubsystem, path, HolonomicPathController.createDefault(), resetPose);
+    }
+
+    public FollowPathCommand(DrivetrainSubsystem drivetrainSubsystem, SampledPath path,
+                             HolonomicPathController controller, boolean resetPose) {
+        this.m_drivetrainSubsystem = drivetrainSubsystem;
+        this.m_path = path;
+        this.m_controller = controller;
+        this.m_resetPose = resetPose;
+
+        addRequirements(drivetrainSubsystem);
+    }
+
+    @Override
+    public void initialize() {
+        if (m_resetPose) {
+            m_path.sample(0.0, m_reference);
+            m_drivetrainSubsystem.resetPose(new Pose2d(m_reference.xMeters, m_reference.yMeters,
+                    new Rotation2d(m_reference.headingRadians)));
+        }
+        m_controller.reset();
+        m_startTimeSeconds = Timer.getFPGATimestamp();
+        m_elapsedSeconds = 0.0;
+    }
+
+    @Override
+    public void execute() {
+        long start = m_executeStage.start();
+
+        m_elapsedSeconds = Timer.getFPGATimestamp() - m_startTimeSeconds;
+        m_path.sample(m_elapsedSeconds, m_reference);
+        m_drivetrainSubsystem.readPose(m_pose);
+        m_controller.calculate(m_reference, m_pose.xMeters, m_pose.yMeters, m_pose.thetaRadians,
+                m_robotRelativeSpeeds);
+        m_drivetrainSubsystem.drive(m_robotRelativeSpeeds[0], m_robotRelativeSpeeds[1], m_robotRelativeSpeeds[2]);
+
+        m_executeStage.stop(start);
+    }
+
+    @Override
+    public boolean isFinished() {
+        double overtime = m_elapsedSeconds - m_path.getTotalTimeSeconds();
+        return overtime >= 0.0
+                && (m_controller.atReference(AUTO_POSITION_TOLERANCE_METERS, AUTO_HEADING_TOLERANCE_RADIANS)
+                || overtime >= AUTO_SETTLE_TIMEOUT_SECONDS);
+    }
+
+    @Override
+    public void end(boolean interrupted) {
+        m_drivetrainSubsystem.drive(0.0, 0.0, 0.0);
+    }
+}
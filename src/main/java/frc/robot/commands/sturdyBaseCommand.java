@@ -4,25 +4,18 @@
 
 package frc.robot.commands;
 
-import com.swervedrivespecialties.swervelib.SwerveModule;
-
 import edu.wpi.first.wpilibj2.command.CommandBase;
 import frc.robot.subsystems.DrivetrainSubsystem;
+import frc.robot.util.LoopProfiler;
 
+/** Holds the modules in an X while scheduled, so the robot is hard to push around. */
 public class sturdyBaseCommand extends CommandBase {
   DrivetrainSubsystem m_drive;
-  SwerveModule m_frontLeftModule;
-  SwerveModule m_frontRightModule;
-  SwerveModule m_backLeftModule;
-  SwerveModule m_backRightModule;
+  private final LoopProfiler.Stage m_executeStage = LoopProfiler.getInstance().register("sturdyBaseCommand.execute");
   /** Creates a new sturdyBaseCommand. */
-  public sturdyBaseCommand(DrivetrainSubsystem drive, SwerveModule frontLeftModule, SwerveModule frontRightModule, SwerveModule backLeftModule, SwerveModule backRightModule) {
-    m_drive = drive; 
-    m_frontLeftModule = frontLeftModule;
-    m_frontRightModule = frontRightModule;
-    m_backLeftModule = backLeftModule;
-    m_backRightModule = backRightModule;
-    
+  public sturdyBaseCommand(DrivetrainSubsystem drive) {
+    m_drive = drive;
+
     // Use addRequirements() here to declare subsystem dependencies.
     addRequirements(drive);
   }
@@ -34,11 +27,10 @@ public class sturdyBaseCommand extends CommandBase {
   // Called every time the scheduler runs while the command is scheduled.
   @Override
   public void execute() {
-    m_drive.m_backLeftModule.set(0, -45);
-    m_drive.m_backRightModule.set(0, 45);
-    m_drive.m_frontRightModule.set(0, -45);
-    m_drive.m_frontLeftModule.set(0, 45);
-    
+    long start = m_executeStage.start();
+    // The drivetrain writes the X with its other outputs, so the modules aren't set twice in one loop.
+    m_drive.lockModules();
+    m_executeStage.stop(start);
   }
 
   // Called once the command ends or is interrupted.
@@ -0,0 +1,195 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.sim;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import frc.robot.Constants;
+import frc.robot.subsystems.DrivetrainSubsystem;
+import frc.robot.util.InPlaceSwerveKinematics;
+import frc.robot.util.ModuleControlConfig;
+
+/**
+ * Simulates the whole drivetrain: four {@link SimSwerveModule}s, a {@link SimGyroIO}, the {@link SimBattery} they run
+ * from, and where the robot actually is on the field.
+ * <p>
+ * Hand {@link #getModules()} and {@link #getGyro()} to {@link DrivetrainSubsystem} in place of the hardware, then
+ * call {@link #step(double)} to move time forward. Stepping is pure Java and never waits on a clock, so a harness can
+ * run thousands of simulated seconds in a few real ones. Internally it steps in {@link #SUBSTEP_SECONDS} increments
+ * to keep the motor models stable.
+ * <p>
+ * The modules each push a quarter of the robot's mass independently, and the chassis velocity is the least-squares
+ * fit of how fast they're moving over the carpet, which isn't what their encoders say while a wheel slips. That
+ * ignores how the modules load each other through the frame, which is fine for checking code paths and timing, but
+ * don't tune gains against it.
+ */
+public class DrivetrainSim {
+  public static final double ROBOT_MASS_KG = 54.0;
+  public static final double STEER_INERTIA_KG_METERS_SQUARED = 0.004;
+  public static final double ROLLING_FRICTION_NEWTONS = 5.0;
+  public static final double SUBSTEP_SECONDS = 0.001;
+
+  private final SimSwerveModule[] m_modules = new SimSwerveModule[4];
+  private final SimGyroIO m_gyro = new SimGyroIO();
+  private final SimBattery m_battery;
+  private final InPlaceSwerveKinematics m_kinematics =
+          new InPlaceSwerveKinematics(DrivetrainSubsystem.getModuleLocations());
+
+  private final double[] m_speeds = new double[4];
+  private final double[] m_angles = new double[4];
+  private final double[] m_chassisSpeeds = new double[3];
+
+  private double m_timeSeconds = 0.0;
+  private double m_xMeters = 0.0;
+  private double m_yMeters = 0.0;
+  private double m_headingRadians = 0.0;
+  // An outside force on the robot, in field coordinates, shared evenly by the modules.
+  private double m_externalForceX = 0.0;
+  private double m_externalForceY = 0.0;
+
+  /** Creates a drivetrain running from a fresh battery. */
+  public DrivetrainSim() {
+    this(SimBattery.createFresh());
+  }
+
+  public DrivetrainSim(SimBattery battery) {
+    m_battery = battery;
+    for (int i = 0; i < m_modules.length; i++) {
+      m_modules[i] = new SimSwerveModule(ROBOT_MASS_KG / m_modules.length, STEER_INERTIA_KG_METERS_SQUARED,
+              ROLLING_FRICTION_NEWTONS, Constants.DRIVE_WHEEL_FRICTION_COEFFICIENT);
+    }
+  }
+
+  /** Gets the modules in the same order as the drivetrain: front left, front right, back left, back right. */
+  public SimSwerveModule[] getModules() {
+    return m_modules.clone();
+  }
+
+  public SimSwerveModule getModule(int index) {
+    return m_modules[index];
+  }
+
+  /** Gives every module's simulated Talon the drive velocity gains the drivetrain would configure on the real ones. */
+  public void setModuleControl(ModuleControlConfig moduleControl) {
+    for (SimSwerveModule module : m_modules) {
+      module.setVelocityGains(moduleControl.getDriveKp(), moduleControl.getDriveKi(), moduleControl.getDriveKd());
+    }
+  }
+
+  public SimGyroIO getGyro() {
+    return m_gyro;
+  }
+
+  public SimBattery getBattery() {
+    return m_battery;
+  }
+
+  /** Gets the battery voltage as of the last step, as the roboRIO would measure it. */
+  public double getBusVoltage() {
+    return m_battery.getBusVoltage();
+  }
+
+  /**
+   * Pushes on the robot, e.g. like a defender would. Each module takes a quarter of the force along its rolling
+   * direction; whatever is across the wheels, they hold.
+   *
+   * @param forceXNewtons the force along the field's x axis
+   * @param forceYNewtons the force along the field's y axis
+   */
+  public void setExternalForce(double forceXNewtons, double forceYNewtons) {
+    m_externalForceX = forceXNewtons;
+    m_externalForceY = forceYNewtons;
+  }
+
+  /** Moves simulated time forward. */
+  public void step(double dtSeconds) {
+    double remaining = dtSeconds;
+    while (remaining > 1e-12) {
+      double h = Math.min(SUBSTEP_SECONDS, remaining);
+      substep(h);
+      remaining -= h;
+    }
+  }
+
+  private void substep(double dtSeconds) {
+    // The motors see the bus voltage from the end of the last substep.
+    double supplyCurrent = 0.0;
+    for (int i = 0; i < m_modules.length; i++) {
+      if (m_externalForceX != 0.0 || m_externalForceY != 0.0) {
+        double wheelDirection = m_headingRadians + m_modules[i].getContinuousSteerAngle();
+        m_modules[i].setLoadForce((m_externalForceX * Math.cos(wheelDirection)
+                + m_externalForceY * Math.sin(wheelDirection)) / m_modules.length);
+      } else {
+        m_modules[i].setLoadForce(0.0);
+      }
+      m_modules[i].setBusVoltage(m_battery.getBusVoltage());
+      m_modules[i].setEnabled(!m_battery.isBrownedOut());
+      m_modules[i].step(dtSeconds);
+      supplyCurrent += m_modules[i].getSupplyCurrentAmps();
+      m_speeds[i] = m_modules[i].getGroundVelocity();
+      m_angles[i] = m_modules[i].getContinuousSteerAngle();
+    }
+    m_battery.update(supplyCurrent, dtSeconds);
+    m_kinematics.toChassisSpeeds(m_speeds, m_angles, m_chassisSpeeds);
+    double vx = m_chassisSpeeds[0];
+    double vy = m_chassisSpeeds[1];
+    double omega = m_chassisSpeeds[2];
+
+    // Integrate at the midpoint heading, which is plenty accurate at a 1 ms step.
+    double heading = m_headingRadians + 0.5 * omega * dtSeconds;
+    double cos = Math.cos(heading);
+    double sin = Math.sin(heading);
+    m_xMeters += (vx * cos - vy * sin) * dtSeconds;
+    m_yMeters += (vx * sin + vy * cos) * dtSeconds;
+    m_headingRadians += omega * dtSeconds;
+    m_gyro.integrate(omega, dtSeconds);
+    m_timeSeconds += dtSeconds;
+  }
+
+  /** Gets the simulated time. Useful as the drivetrain's clock in a faster-than-real-time harness. */
+  public double getTimeSeconds() {
+    return m_timeSeconds;
+  }
+
+  public double getXMeters() {
+    return m_xMeters;
+  }
+
+  public double getYMeters() {
+    return m_yMeters;
+  }
+
+  /** Gets the true heading. Unlike the gyro, zeroing the gyro doesn't change this. */
+  public double getHeadingRadians() {
+    return m_headingRadians;
+  }
+
+  /** Gets the robot-relative chassis velocity as of the last step: vx, vy (m/s) and omega (rad/s). */
+  public double getChassisSpeed(int component) {
+    return m_chassisSpeeds[component];
+  }
+
+  /** Gets where the robot really is. This allocates. */
+  public Pose2d getPose() {
+    return new Pose2d(m_xMeters, m_yMeters, new Rotation2d(m_headingRadians));
+  }
+
+  /** Puts the robot at rest at the given pose, with the gyro reading that heading. */
+  public void reset(double xMeters, double yMeters, double headingRadians) {
+    for (SimSwerveModule module : m_modules) {
+      module.reset();
+    }
+    m_xMeters = xMeters;
+    m_yMeters = yMeters;
+    m_headingRadians = headingRadians;
+    m_externalForceX = 0.0;
+    m_externalForceY = 0.0;
+    m_gyro.setYawDegrees(Math.toDegrees(headingRadians));
+    m_gyro.integrate(0.0, 0.0);
+    m_chassisSpeeds[0] = 0.0;
+    m_chassisSpeeds[1] = 0.0;
+    m_chassisSpeeds[2] = 0.0;
+  }
+}
@@ -0,0 +1,101 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.sim;
+
+/**
+ * The robot battery as an open-circuit voltage behind a resistance, plus the roboRIO's brownout protection.
+ * <p>
+ * The bus voltage sags by the resistance times the current drawn, following the load with a short lag
+ * ({@link #TIME_CONSTANT_SECONDS}) like the battery's chemistry and the capacitance on the bus do. The lag also keeps
+ * the simulation stable: without it, the motors and the sag would chase each other around each step.
+ * <p>
+ * When the bus falls below {@link #BROWNOUT_VOLTAGE} the roboRIO disables every motor output, and they stay off until
+ * the bus recovers above {@link #RECOVERY_VOLTAGE}. That's when a real robot stops moving mid-match, so it's counted.
+ */
+public class SimBattery {
+  /** The roboRIO disables its outputs below this. */
+  public static final double BROWNOUT_VOLTAGE = 6.8;
+  /** ...and turns them back on above this. */
+  public static final double RECOVERY_VOLTAGE = 7.5;
+  /** How quickly the bus voltage follows the load. */
+  public static final double TIME_CONSTANT_SECONDS = 0.005;
+
+  private final double m_openCircuitVoltage;
+  private final double m_resistanceOhms;
+  private final double m_otherLoadAmps;
+
+  private double m_busVoltage;
+  private double m_currentAmps = 0.0;
+  private boolean m_brownedOut = false;
+  private int m_brownouts = 0;
+  private double m_brownedOutSeconds = 0.0;
+  private double m_minimumBusVoltage;
+
+  /**
+   * @param openCircuitVoltage the voltage with nothing drawing current
+   * @param resistanceOhms     the battery's internal resistance plus the breaker and wiring
+   * @param otherLoadAmps      what the rest of the robot (roboRIO, radio, and so on) draws all the time
+   */
+  public SimBattery(double openCircuitVoltage, double resistanceOhms, double otherLoadAmps) {
+    m_openCircuitVoltage = openCircuitVoltage;
+    m_resistanceOhms = resistanceOhms;
+    m_otherLoadAmps = otherLoadAmps;
+    m_busVoltage = openCircuitVoltage - resistanceOhms * otherLoadAmps;
+    m_minimumBusVoltage = m_busVoltage;
+  }
+
+  /** A fresh, fully charged battery. */
+  public static SimBattery createFresh() {
+    return new SimBattery(12.8, 0.02, 3.0);
+  }
+
+  /**
+   * Updates the bus voltage for the current the motors drew over the last step.
+   *
+   * @param motorSupplyCurrentAmps the total supply current of every motor controller. Negative while regenerating.
+   */
+  public void update(double motorSupplyCurrentAmps, double dtSeconds) {
+    m_currentAmps = motorSupplyCurrentAmps + m_otherLoadAmps;
+    double loadedVoltage = m_openCircuitVoltage - m_resistanceOhms * m_currentAmps;
+    m_busVoltage += (loadedVoltage - m_busVoltage) * Math.min(1.0, dtSeconds / TIME_CONSTANT_SECONDS);
+    m_minimumBusVoltage = Math.min(m_minimumBusVoltage, m_busVoltage);
+    if (m_brownedOut) {
+      m_brownedOutSeconds += dtSeconds;
+      if (m_busVoltage > RECOVERY_VOLTAGE) {
+        m_brownedOut = false;
+      }
+    } else if (m_busVoltage < BROWNOUT_VOLTAGE) {
+      m_brownedOut = true;
+      m_brownouts++;
+    }
+  }
+
+  public double getBusVoltage() {
+    return m_busVoltage;
+  }
+
+  /** Gets the total current drawn over the last step, including the other loads. */
+  public double getCurrentAmps() {
+    return m_currentAmps;
+  }
+
+  /** Whether the roboRIO has the motor outputs disabled right now. */
+  public boolean isBrownedOut() {
+    return m_brownedOut;
+  }
+
+  /** Gets how many times the robot has browned out. */
+  public int getBrownouts() {
+    return m_brownouts;
+  }
+
+  public double getBrownedOutSeconds() {
+    return m_brownedOutSeconds;
+  }
+
+  public double getMinimumBusVoltage() {
+    return m_minimumBusVoltage;
+  }
+}
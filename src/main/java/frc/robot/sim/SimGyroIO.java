@@ -0,0 +1,36 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.sim;
+
+import frc.robot.subsystems.GyroIO;
+
+/**
+ * A perfect gyro. {@link DrivetrainSim} feeds it the chassis rotation rate and it integrates the yaw.
+ */
+public class SimGyroIO implements GyroIO {
+  private volatile double m_yawDegrees = 0.0;
+  private volatile double m_yawRateDegreesPerSecond = 0.0;
+
+  /** Integrates the yaw rate over one step. */
+  public void integrate(double yawRateRadiansPerSecond, double dtSeconds) {
+    m_yawRateDegreesPerSecond = Math.toDegrees(yawRateRadiansPerSecond);
+    m_yawDegrees += m_yawRateDegreesPerSecond * dtSeconds;
+  }
+
+  @Override
+  public double getYawDegrees() {
+    return m_yawDegrees;
+  }
+
+  @Override
+  public double getYawRateDegreesPerSecond() {
+    return m_yawRateDegreesPerSecond;
+  }
+
+  @Override
+  public void setYawDegrees(double yawDegrees) {
+    m_yawDegrees = yawDegrees;
+  }
+}
@@ -0,0 +1,390 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.sim;
+
+import com.swervedrivespecialties.swervelib.SdsModuleConfigurations;
+import com.swervedrivespecialties.swervelib.SwerveModule;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.system.plant.DCMotor;
+import frc.robot.Constants;
+import frc.robot.subsystems.VelocitySwerveModule;
+import frc.robot.util.ModuleControlConfig;
+
+/**
+ * A physics model of one Mk4 L1 module with two Falcon 500s, behind the same {@link SwerveModule} interface as the
+ * real thing.
+ * <p>
+ * The drive side is a DC motor pushing a quarter of the robot's mass through the L1 reduction and the wheel, with
+ * rolling friction, the SDS drive current limit, and optionally an outside force, e.g. from another robot. The tread
+ * grips until the motor pushes harder than the friction coefficient times the module's weight; past that the wheel
+ * slides, the carpet only pushes back with {@link #SLIDING_FRICTION_RATIO} of that, and the wheel spins up on its own
+ * inertia until it's back to the speed the module moves over the carpet. {@link #getDriveVelocity()} and
+ * {@link #getDrivePosition()} are the wheel's, like the encoder's, so they run ahead of {@link #getGroundVelocity()}
+ * while it slips. The steer
+ * side is a DC motor turning the module's inertia through the 12.8:1 steering reduction, held by a position loop with
+ * roughly the gains SDS programs into the Talon.
+ * <p>
+ * {@link #setVelocity(double, double, double)} runs the drive like a Talon's velocity loop: every step, a PID on the
+ * speed error on top of the feedforward. Like the Talon, it closes the loop on its own speed measurement, each
+ * millisecond's change in position over the last 10 ms averaged over the last 8 milliseconds, so it sees the speed a
+ * few milliseconds late. Call {@link #step(double)} every millisecond for that to hold.
+ * Nothing here reads a clock; time only moves when {@link #step(double)} is called.
+ */
+public class SimSwerveModule implements VelocitySwerveModule {
+  public static final double DRIVE_REDUCTION = SdsModuleConfigurations.MK4_L1.getDriveReduction();
+  public static final double STEER_REDUCTION = SdsModuleConfigurations.MK4_L1.getSteerReduction();
+  public static final double WHEEL_RADIUS_METERS = SdsModuleConfigurations.MK4_L1.getWheelDiameter() / 2.0;
+
+  /**
+   * SDS's default Falcon drive current limit. It's a supply current limit, so at low duty cycles the motor itself can
+   * draw several times this.
+   */
+  public static final double DRIVE_CURRENT_LIMIT_AMPS = Constants.DRIVE_CURRENT_LIMIT_AMPS;
+  /** SDS's default Falcon steer current limit. */
+  public static final double STEER_CURRENT_LIMIT_AMPS = Constants.STEER_CURRENT_LIMIT_AMPS;
+  /** The Talon's steer position gain, converted from SDS's 0.2 (Talon units) to volts per radian of module error. */
+  public static final double STEER_KP_VOLTS_PER_RADIAN = 9.8;
+  public static final double STEER_KD_VOLTS_PER_RADIAN_PER_SECOND = 0.005;
+  /** How much of its grip the tread keeps once it's sliding. Rubber on carpet grips less sliding than rolling. */
+  public static final double SLIDING_FRICTION_RATIO = 0.8;
+  /** The drive rotor, gears and wheel's moment of inertia, about the motor shaft. Roughly a Falcon's rotor. */
+  public static final double DRIVE_ROTOR_INERTIA_KG_METERS_SQUARED = 1.0e-4;
+  // The rotor's inertia as a mass at the wheel's surface.
+  private static final double WHEEL_EFFECTIVE_MASS_KG = DRIVE_ROTOR_INERTIA_KG_METERS_SQUARED
+          / Math.pow(DRIVE_REDUCTION * WHEEL_RADIUS_METERS, 2.0);
+
+  private static final DCMotor FALCON_500 = DCMotor.getFalcon500(1);
+  // The Talon's speed measurement: position change over this many steps, averaged over the last WINDOW of those.
+  private static final int VELOCITY_MEASUREMENT_STEPS = 10;
+  private static final int VELOCITY_MEASUREMENT_WINDOW = 8;
+
+  private final double m_massKg;
+  private final double m_steerInertiaKgMetersSquared;
+  private final double m_rollingFrictionNewtons;
+  private final double m_tractionNewtons;
+
+  private double m_commandedVoltage = 0.0;
+  // Set by setVelocity(), cleared by set().
+  private boolean m_closedLoop = false;
+  private double m_targetVelocity = 0.0;
+  private double m_feedforwardVoltage = 0.0;
+  private double m_velocityKp = ModuleControlConfig.DEFAULT_DRIVE_KP;
+  private double m_velocityKi = ModuleControlConfig.DEFAULT_DRIVE_KI;
+  private double m_velocityKd = ModuleControlConfig.DEFAULT_DRIVE_KD;
+  private double m_velocityErrorIntegral = 0.0;
+  private double m_lastVelocityError = 0.0;
+  private final double[] m_positionHistory = new double[VELOCITY_MEASUREMENT_STEPS];
+  private final double[] m_velocitySamples = new double[VELOCITY_MEASUREMENT_WINDOW];
+  private long m_measurementSteps = 0;
+  private double m_targetSteerAngle = 0.0;
+  // The Talons compensate to 12 V, but can't put out more than the bus has. Disabled means browned out.
+  private double m_busVoltage = FALCON_500.nominalVoltageVolts;
+  private boolean m_enabled = true;
+  private double m_loadForceNewtons = 0.0;
+
+  // The wheel's surface speed and how far it has turned, which is what the encoder sees.
+  private double m_driveVelocity = 0.0;
+  private double m_drivePosition = 0.0;
+  // How fast the module is actually moving over the carpet. The same as the wheel unless it's slipping.
+  private double m_groundVelocity = 0.0;
+  private boolean m_slipping = false;
+  private double m_driveCurrent = 0.0;
+  private double m_driveVoltage = 0.0;
+  private double m_steerVoltage = 0.0;
+  // Continuous, not wrapped.
+  private double m_steerAngle = 0.0;
+  private double m_steerRate = 0.0;
+  private double m_steerCurrent = 0.0;
+
+  /**
+   * @param massKg                      the share of the robot's mass this module has to push
+   * @param steerInertiaKgMetersSquared the module's moment of inertia about its steering axis
+   * @param rollingFrictionNewtons      the force it takes to keep the wheel rolling
+   * @param frictionCoefficient         the tread's coefficient of friction on the carpet
+   */
+  public SimSwerveModule(double massKg, double steerInertiaKgMetersSquared, double rollingFrictionNewtons,
+          double frictionCoefficient) {
+    m_massKg = massKg;
+    m_steerInertiaKgMetersSquared = steerInertiaKgMetersSquared;
+    m_rollingFrictionNewtons = rollingFrictionNewtons;
+    m_tractionNewtons = frictionCoefficient * massKg * Constants.GRAVITY_METERS_PER_SECOND_SQUARED;
+  }
+
+  @Override
+  public double getDriveVelocity() {
+    return m_driveVelocity;
+  }
+
+  /** Gets how fast the module is moving over the carpet, in meters per second. */
+  public double getGroundVelocity() {
+    return m_groundVelocity;
+  }
+
+  /** Gets whether the tread is sliding on the carpet as of the last step. */
+  public boolean isSlipping() {
+    return m_slipping;
+  }
+
+  /** Gets the steering angle in [0, 2pi), the same range the SDS modules report. */
+  @Override
+  public double getSteerAngle() {
+    double angle = m_steerAngle % (2.0 * Math.PI);
+    if (angle < 0.0) {
+      angle += 2.0 * Math.PI;
+    }
+    return angle;
+  }
+
+  /**
+   * Takes the same voltage and angle as the SDS module, and makes the same choice to flip the drive direction when
+   * that means turning less than 90 degrees.
+   */
+  @Override
+  public void set(double driveVoltage, double steerAngle) {
+    double difference = MathUtil.angleModulus(steerAngle - getSteerAngle());
+    if (difference > Math.PI / 2.0 || difference < -Math.PI / 2.0) {
+      steerAngle += Math.PI;
+      driveVoltage *= -1.0;
+    }
+    m_commandedVoltage = MathUtil.clamp(driveVoltage, -FALCON_500.nominalVoltageVolts,
+            FALCON_500.nominalVoltageVolts);
+    m_targetSteerAngle = steerAngle;
+    m_closedLoop = false;
+  }
+
+  /** Holds a wheel speed with the simulated Talon velocity loop, making the same flip as {@link #set}. */
+  @Override
+  public void setVelocity(double driveVelocityMetersPerSecond, double driveFeedforwardVolts, double steerAngle) {
+    double difference = MathUtil.angleModulus(steerAngle - getSteerAngle());
+    if (difference > Math.PI / 2.0 || difference < -Math.PI / 2.0) {
+      steerAngle += Math.PI;
+      driveVelocityMetersPerSecond *= -1.0;
+      driveFeedforwardVolts *= -1.0;
+    }
+    if (!m_closedLoop) {
+      // Like the Talon, start the integral over when the loop starts.
+      m_velocityErrorIntegral = 0.0;
+      m_lastVelocityError = driveVelocityMetersPerSecond - getMeasuredDriveVelocity();
+      m_closedLoop = true;
+    }
+    m_targetVelocity = driveVelocityMetersPerSecond;
+    m_feedforwardVoltage = driveFeedforwardVolts;
+    m_targetSteerAngle = steerAngle;
+  }
+
+  /**
+   * Sets the velocity loop's gains.
+   *
+   * @param kp volts per m/s of speed error
+   * @param ki volts per m of accumulated speed error
+   * @param kd volts per m/s^2 of change in speed error
+   */
+  public void setVelocityGains(double kp, double ki, double kd) {
+    m_velocityKp = kp;
+    m_velocityKi = ki;
+    m_velocityKd = kd;
+  }
+
+  /** Gets the speed the way the Talon measures it for its velocity loop, a few milliseconds behind. */
+  public double getMeasuredDriveVelocity() {
+    if (m_measurementSteps == 0) {
+      return m_driveVelocity;
+    }
+    int samples = (int) Math.min(m_measurementSteps, VELOCITY_MEASUREMENT_WINDOW);
+    double sum = 0.0;
+    for (int i = 0; i < samples; i++) {
+      sum += m_velocitySamples[i];
+    }
+    return sum / samples;
+  }
+
+  /**
+   * Sets the battery voltage the motor controllers run from. Commands above it are clipped to it, and below it they
+   * come out as commanded, like a Talon with voltage compensation.
+   */
+  public void setBusVoltage(double busVoltage) {
+    m_busVoltage = busVoltage;
+  }
+
+  /** Turns the motor outputs off, like a brownout does, or back on. Off holds both motors in brake. */
+  public void setEnabled(boolean enabled) {
+    m_enabled = enabled;
+  }
+
+  /** Sets an outside force pushing the wheel along its rolling direction, e.g. another robot pushing back. */
+  public void setLoadForce(double newtons) {
+    m_loadForceNewtons = newtons;
+  }
+
+  /** Advances the model. Keep {@code dtSeconds} to a millisecond or so; the integration is explicit. */
+  public void step(double dtSeconds) {
+    if (m_closedLoop) {
+      stepVelocityLoop(dtSeconds);
+    }
+    stepDrive(dtSeconds);
+    stepSteer(dtSeconds);
+    measureVelocity(dtSeconds);
+  }
+
+  private void stepVelocityLoop(double dtSeconds) {
+    double error = m_targetVelocity - getMeasuredDriveVelocity();
+    m_velocityErrorIntegral += error * dtSeconds;
+    double derivative = (error - m_lastVelocityError) / dtSeconds;
+    m_lastVelocityError = error;
+    double voltage = m_feedforwardVoltage + m_velocityKp * error + m_velocityKi * m_velocityErrorIntegral
+            + m_velocityKd * derivative;
+    m_commandedVoltage = MathUtil.clamp(voltage, -FALCON_500.nominalVoltageVolts, FALCON_500.nominalVoltageVolts);
+  }
+
+  private void measureVelocity(double dtSeconds) {
+    int slot = (int) (m_measurementSteps % VELOCITY_MEASUREMENT_STEPS);
+    // Until there's 10 ms of history, measure over what there is.
+    int span = (int) Math.min(m_measurementSteps, VELOCITY_MEASUREMENT_STEPS);
+    double oldestPosition = m_measurementSteps >= VELOCITY_MEASUREMENT_STEPS ? m_positionHistory[slot]
+            : m_positionHistory[0];
+    m_velocitySamples[(int) (m_measurementSteps % VELOCITY_MEASUREMENT_WINDOW)] = span > 0
+            ? (m_drivePosition - oldestPosition) / (span * dtSeconds)
+            : m_driveVelocity;
+    m_positionHistory[slot] = m_drivePosition;
+    m_measurementSteps++;
+  }
+
+  private void stepDrive(double dtSeconds) {
+    m_driveVoltage = m_enabled ? MathUtil.clamp(m_commandedVoltage, -m_busVoltage, m_busVoltage) : 0.0;
+    double current = driveCurrent(m_slipping ? m_driveVelocity : m_groundVelocity);
+    double wheelForce = FALCON_500.KtNMPerAmp * current / DRIVE_REDUCTION / WHEEL_RADIUS_METERS;
+    if (!m_slipping && Math.abs(wheelForce) > m_tractionNewtons) {
+      // More than the tread can hold; it starts sliding from the speed it was rolling at.
+      m_slipping = true;
+      m_driveVelocity = m_groundVelocity;
+    }
+    m_driveCurrent = current;
+
+    double groundForce = wheelForce;
+    double newWheelVelocity = Double.NaN;
+    double slideDirection = 0.0;
+    if (m_slipping) {
+      slideDirection = m_driveVelocity != m_groundVelocity ? Math.signum(m_driveVelocity - m_groundVelocity)
+              : Math.signum(wheelForce);
+      groundForce = slideDirection * SLIDING_FRICTION_RATIO * m_tractionNewtons;
+      newWheelVelocity = m_driveVelocity + (wheelForce - groundForce) / WHEEL_EFFECTIVE_MASS_KG * dtSeconds;
+    }
+
+    double force = groundForce + m_loadForceNewtons;
+    double newVelocity;
+    if (m_groundVelocity == 0.0 && Math.abs(force) <= m_rollingFrictionNewtons) {
+      // Static friction holds the module.
+      newVelocity = 0.0;
+    } else {
+      double friction = Math.copySign(m_rollingFrictionNewtons, m_groundVelocity != 0.0 ? m_groundVelocity : force);
+      newVelocity = m_groundVelocity + (force - friction) / m_massKg * dtSeconds;
+      if (m_groundVelocity != 0.0 && Math.signum(newVelocity) != Math.signum(m_groundVelocity)
+              && Math.abs(force) <= m_rollingFrictionNewtons) {
+        // Friction stops the module, it doesn't push it backwards.
+        newVelocity = 0.0;
+      }
+    }
+    m_groundVelocity = newVelocity;
+    if (m_slipping && Math.signum(newWheelVelocity - newVelocity) != slideDirection) {
+      // The wheel caught up with the carpet and grips again.
+      m_slipping = false;
+    }
+    if (!m_slipping) {
+      newWheelVelocity = newVelocity;
+    }
+    m_drivePosition += 0.5 * (m_driveVelocity + newWheelVelocity) * dtSeconds;
+    m_driveVelocity = newWheelVelocity;
+  }
+
+  /** Gets the drive motor's current with the wheel's surface turning at the given speed. */
+  private double driveCurrent(double wheelVelocity) {
+    double motorSpeed = wheelVelocity / WHEEL_RADIUS_METERS / DRIVE_REDUCTION;
+    double current = (m_driveVoltage - motorSpeed / FALCON_500.KvRadPerSecPerVolt) / FALCON_500.rOhms;
+    // The Talon limits what it draws from the bus, which is the motor current times the duty cycle.
+    double currentLimit = Math.abs(m_driveVoltage) > 1e-9
+            ? DRIVE_CURRENT_LIMIT_AMPS * m_busVoltage / Math.abs(m_driveVoltage)
+            : Double.POSITIVE_INFINITY;
+    return MathUtil.clamp(current, -currentLimit, currentLimit);
+  }
+
+  private void stepSteer(double dtSeconds) {
+    double error = MathUtil.angleModulus(m_targetSteerAngle - m_steerAngle);
+    double voltage = STEER_KP_VOLTS_PER_RADIAN * error - STEER_KD_VOLTS_PER_RADIAN_PER_SECOND * m_steerRate;
+    voltage = MathUtil.clamp(voltage, -FALCON_500.nominalVoltageVolts, FALCON_500.nominalVoltageVolts);
+    voltage = m_enabled ? MathUtil.clamp(voltage, -m_busVoltage, m_busVoltage) : 0.0;
+    m_steerVoltage = voltage;
+
+    double motorSpeed = m_steerRate / STEER_REDUCTION;
+    double current = (voltage - motorSpeed / FALCON_500.KvRadPerSecPerVolt) / FALCON_500.rOhms;
+    current = MathUtil.clamp(current, -STEER_CURRENT_LIMIT_AMPS, STEER_CURRENT_LIMIT_AMPS);
+    m_steerCurrent = current;
+
+    double torque = FALCON_500.KtNMPerAmp * current / STEER_REDUCTION;
+    m_steerRate += torque / m_steerInertiaKgMetersSquared * dtSeconds;
+    m_steerAngle += m_steerRate * dtSeconds;
+  }
+
+  public double getCommandedVoltage() {
+    return m_commandedVoltage;
+  }
+
+  /** Gets how far the wheel has rolled, in meters. */
+  public double getDrivePosition() {
+    return m_drivePosition;
+  }
+
+  /** Gets the drive motor's stator current. Negative while braking. */
+  public double getDriveCurrentAmps() {
+    return m_driveCurrent;
+  }
+
+  public double getSteerCurrentAmps() {
+    return m_steerCurrent;
+  }
+
+  /**
+   * Gets the current both motor controllers draw from the bus. They pass the motors' power through, so this is each
+   * motor's current times the fraction of the bus voltage applied to it. Negative while braking.
+   */
+  public double getSupplyCurrentAmps() {
+    if (m_busVoltage <= 0.0) {
+      return 0.0;
+    }
+    return (m_driveCurrent * m_driveVoltage + m_steerCurrent * m_steerVoltage) / m_busVoltage;
+  }
+
+  /** Gets the steering angle without wrapping it. */
+  public double getContinuousSteerAngle() {
+    return m_steerAngle;
+  }
+
+  public double getSteerRateRadiansPerSecond() {
+    return m_steerRate;
+  }
+
+  /** Puts the module back at rest, pointing forward. */
+  public void reset() {
+    m_commandedVoltage = 0.0;
+    m_closedLoop = false;
+    m_targetVelocity = 0.0;
+    m_feedforwardVoltage = 0.0;
+    m_velocityErrorIntegral = 0.0;
+    m_lastVelocityError = 0.0;
+    m_measurementSteps = 0;
+    m_targetSteerAngle = 0.0;
+    m_loadForceNewtons = 0.0;
+    m_driveVelocity = 0.0;
+    m_drivePosition = 0.0;
+    m_groundVelocity = 0.0;
+    m_slipping = false;
+    m_driveCurrent = 0.0;
+    m_driveVoltage = 0.0;
+    m_steerVoltage = 0.0;
+    m_steerAngle = 0.0;
+    m_steerRate = 0.0;
+    m_steerCurrent = 0.0;
+  }
+}
@@ -0,0 +1,154 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.subsystems;
+
+import java.util.function.DoubleSupplier;
+
+import com.swervedrivespecialties.swervelib.SwerveModule;
+
+import edu.wpi.first.math.MathUtil;
+
+/**
+ * Wraps a {@link SwerveModule} and drops {@link #set(double, double)} and
+ * {@link #setVelocity(double, double, double)} calls that match the last command sent.
+ * <p>
+ * Each set() on an SDS module sends new control frames to both Falcons. When the robot sits still, or
+ * sturdyBaseCommand holds the X, we send the exact same thing every 20 ms. This keeps the last voltage and angle that
+ * actually went out and skips the write if the new one is within tolerance. It still re-sends at least once every
+ * refresh period so the motor controllers never think we've stopped talking to them. Switching between voltage and
+ * velocity control always goes out.
+ * <p>
+ * Velocity setpoints go to the wrapped module's own velocity loop if it has one; otherwise it gets just the
+ * feedforward voltage.
+ */
+public class ChangeDetectingSwerveModule implements VelocitySwerveModule {
+  private final SwerveModule m_module;
+  private final double m_voltageTolerance;
+  private final double m_velocityTolerance;
+  private final double m_angleToleranceRadians;
+  private final double m_refreshPeriodSeconds;
+  private final DoubleSupplier m_clockSeconds;
+
+  private boolean m_hasSent = false;
+  // Set by invalidate(), possibly from another thread than the one sending.
+  private volatile boolean m_resendRequested = false;
+  private boolean m_lastClosedLoop;
+  private double m_lastVoltage;
+  private double m_lastVelocity;
+  private double m_lastAngleRadians;
+  private double m_lastSendSeconds;
+
+  // Only the sending thread writes these, but telemetry reads them from others.
+  private volatile long m_sentWrites = 0;
+  private volatile long m_suppressedWrites = 0;
+
+  /**
+   * @param module                the module to send outputs to
+   * @param voltageTolerance      voltage changes smaller than this are skipped, feedforward included
+   * @param velocityTolerance     velocity setpoint changes smaller than this (m/s) are skipped
+   * @param angleToleranceRadians steering angle changes smaller than this are skipped
+   * @param refreshPeriodSeconds  the longest we'll go without sending anything
+   * @param clockSeconds          the clock used for the refresh period, normally the FPGA timestamp
+   */
+  public ChangeDetectingSwerveModule(SwerveModule module, double voltageTolerance, double velocityTolerance,
+                                     double angleToleranceRadians, double refreshPeriodSeconds,
+                                     DoubleSupplier clockSeconds) {
+    m_module = module;
+    m_voltageTolerance = voltageTolerance;
+    m_velocityTolerance = velocityTolerance;
+    m_angleToleranceRadians = angleToleranceRadians;
+    m_refreshPeriodSeconds = refreshPeriodSeconds;
+    m_clockSeconds = clockSeconds;
+  }
+
+  @Override
+  public double getDriveVelocity() {
+    return m_module.getDriveVelocity();
+  }
+
+  @Override
+  public double getSteerAngle() {
+    return m_module.getSteerAngle();
+  }
+
+  @Override
+  public void set(double driveVoltage, double steerAngle) {
+    double now = m_clockSeconds.getAsDouble();
+    if (isUnchanged(false, driveVoltage, 0.0, steerAngle, now)
+            // Always send a stop, even if it's close to the last voltage.
+            && (driveVoltage != 0.0 || m_lastVoltage == 0.0)) {
+      m_suppressedWrites++;
+      return;
+    }
+
+    m_module.set(driveVoltage, steerAngle);
+    recordSend(false, driveVoltage, 0.0, steerAngle, now);
+  }
+
+  @Override
+  public void setVelocity(double driveVelocityMetersPerSecond, double driveFeedforwardVolts, double steerAngle) {
+    double now = m_clockSeconds.getAsDouble();
+    if (isUnchanged(true, driveFeedforwardVolts, driveVelocityMetersPerSecond, steerAngle, now)
+            // Always send a stop, even if it's close to the last speed.
+            && (driveVelocityMetersPerSecond != 0.0 || m_lastVelocity == 0.0)) {
+      m_suppressedWrites++;
+      return;
+    }
+
+    if (m_module instanceof VelocitySwerveModule) {
+      ((VelocitySwerveModule) m_module).setVelocity(driveVelocityMetersPerSecond, driveFeedforwardVolts, steerAngle);
+    } else {
+      m_module.set(driveFeedforwardVolts, steerAngle);
+    }
+    recordSend(true, driveFeedforwardVolts, driveVelocityMetersPerSecond, steerAngle, now);
+  }
+
+  private boolean isUnchanged(boolean closedLoop, double driveVoltage, double driveVelocity, double steerAngle,
+                              double now) {
+    return m_hasSent
+            && !m_resendRequested
+            && closedLoop == m_lastClosedLoop
+            && now - m_lastSendSeconds < m_refreshPeriodSeconds
+            && Math.abs(driveVoltage - m_lastVoltage) <= m_voltageTolerance
+            && Math.abs(driveVelocity - m_lastVelocity) <= m_velocityTolerance
+            && Math.abs(MathUtil.angleModulus(steerAngle - m_lastAngleRadians)) <= m_angleToleranceRadians;
+  }
+
+  private void recordSend(boolean closedLoop, double driveVoltage, double driveVelocity, double steerAngle,
+                          double now) {
+    m_hasSent = true;
+    m_resendRequested = false;
+    m_lastClosedLoop = closedLoop;
+    m_lastVoltage = driveVoltage;
+    m_lastVelocity = driveVelocity;
+    m_lastAngleRadians = steerAngle;
+    m_lastSendSeconds = now;
+    m_sentWrites++;
+  }
+
+  /**
+   * Makes the next {@link #set(double, double)} or {@link #setVelocity(double, double, double)} go out no matter what,
+   * e.g. because the module dropped the last ones. This can be called from any thread.
+   */
+  public void invalidate() {
+    m_resendRequested = true;
+  }
+
+  /**
+   * Gets the drive voltage that last actually went out, or 0 if nothing has. Under velocity control, that's the
+   * feedforward.
+   */
+  public double getLastSentVoltage() {
+    return m_lastVoltage;
+  }
+
+  public long getSentWrites() {
+    return m_sentWrites;
+  }
+
+  public long getSuppressedWrites() {
+    return m_suppressedWrites;
+  }
+}
@@ -0,0 +1,42 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.subsystems;
+
+import frc.robot.util.DeviceInitializer;
+
+/**
+ * Stands in for a {@link GyroIO} that's still being configured by a {@link DeviceInitializer}.
+ * <p>
+ * Until the gyro is ready it reads as zero and isn't turning, and {@link #setYawDegrees(double)} is ignored. When it
+ * comes up, the yaw jumps to whatever it really reads; {@link DrivetrainOdometry} treats that like a gyro reset and
+ * keeps the pose's heading continuous.
+ */
+public class DeferredGyroIO implements GyroIO {
+  private final DeviceInitializer.Device<? extends GyroIO> m_device;
+
+  public DeferredGyroIO(DeviceInitializer.Device<? extends GyroIO> device) {
+    m_device = device;
+  }
+
+  @Override
+  public double getYawDegrees() {
+    GyroIO gyro = m_device.get();
+    return gyro != null ? gyro.getYawDegrees() : 0.0;
+  }
+
+  @Override
+  public double getYawRateDegreesPerSecond() {
+    GyroIO gyro = m_device.get();
+    return gyro != null ? gyro.getYawRateDegreesPerSecond() : 0.0;
+  }
+
+  @Override
+  public void setYawDegrees(double yawDegrees) {
+    GyroIO gyro = m_device.get();
+    if (gyro != null) {
+      gyro.setYawDegrees(yawDegrees);
+    }
+  }
+}
@@ -0,0 +1,57 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.subsystems;
+
+import com.swervedrivespecialties.swervelib.SwerveModule;
+
+import frc.robot.util.DeviceInitializer;
+
+/**
+ * Stands in for a {@link SwerveModule} that's still being configured by a {@link DeviceInitializer}.
+ * <p>
+ * Until the module is ready it reads as stopped and pointing forward, and outputs are dropped. After that, every call
+ * goes straight through. A module that can't hold a speed itself gets just the feedforward voltage.
+ */
+public class DeferredSwerveModule implements VelocitySwerveModule {
+  private final DeviceInitializer.Device<SwerveModule> m_device;
+
+  public DeferredSwerveModule(DeviceInitializer.Device<SwerveModule> device) {
+    m_device = device;
+  }
+
+  @Override
+  public double getDriveVelocity() {
+    SwerveModule module = m_device.get();
+    return module != null ? module.getDriveVelocity() : 0.0;
+  }
+
+  @Override
+  public double getSteerAngle() {
+    SwerveModule module = m_device.get();
+    return module != null ? module.getSteerAngle() : 0.0;
+  }
+
+  @Override
+  public void set(double driveVoltage, double steerAngle) {
+    SwerveModule module = m_device.get();
+    if (module != null) {
+      module.set(driveVoltage, steerAngle);
+    }
+  }
+
+  @Override
+  public void setVelocity(double driveVelocityMetersPerSecond, double driveFeedforwardVolts, double steerAngle) {
+    SwerveModule module = m_device.get();
+    if (module instanceof VelocitySwerveModule) {
+      ((VelocitySwerveModule) module).setVelocity(driveVelocityMetersPerSecond, driveFeedforwardVolts, steerAngle);
+    } else if (module != null) {
+      module.set(driveFeedforwardVolts, steerAngle);
+    }
+  }
+
+  public boolean isReady() {
+    return m_device.isReady();
+  }
+}
@@ -0,0 +1,100 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.subsystems;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import frc.robot.util.RingBufferLogger;
+
+/**
+ * Records what the drivetrain did every loop into a {@link RingBufferLogger}, so it's still around after the match.
+ * <p>
+ * Every record is {@link #RECORD_BYTES} bytes, little-endian, laid out as the offsets below. The module setpoints are
+ * what {@link DrivetrainSubsystem#periodic()} sent at the start of the loop, which were computed from the chassis
+ * speeds the drive command requested in the previous loop. The chassis speeds in the same record are the ones the
+ * command requested this loop.
+ * <p>
+ * The log's header carries {@link #FORMAT_VERSION}, so a reader can tell which layout the records have.
+ */
+public class DrivetrainLog implements AutoCloseable {
+  /** FPGA time of the loop's gyro sample (double, seconds). */
+  public static final int TIMESTAMP = 0;
+  /** Raw driver stick axes, before deadband and shaping (double). */
+  public static final int LEFT_X = 8;
+  public static final int LEFT_Y = 16;
+  public static final int RIGHT_X = 24;
+  /** The loop's gyro sample (double, degrees). */
+  public static final int GYRO_YAW = 32;
+  /** The loop's gyro rate (float, degrees per second). */
+  public static final int GYRO_RATE = 40;
+  /** Robot-relative chassis speeds requested this loop (float, m/s, m/s, rad/s). */
+  public static final int CHASSIS_VX = 44;
+  public static final int CHASSIS_VY = 48;
+  public static final int CHASSIS_OMEGA = 52;
+  /** Per-module setpoints sent this loop: speed (float, m/s) then angle (float, radians), 8 bytes per module. */
+  public static final int MODULE_SETPOINTS = 56;
+  /** Per-module measured state: speed (float, m/s) then angle (float, radians), 8 bytes per module. */
+  public static final int MODULE_MEASURED = 88;
+  /**
+   * The measured output period and gyro-to-output latency the module setpoints were corrected over (double, seconds),
+   * or 0 where that correction is off. See {@link DrivetrainSubsystem#setSpeedCompensation(boolean, boolean)}.
+   */
+  public static final int DISCRETIZATION_PERIOD = 120;
+  public static final int LOOKAHEAD = 128;
+  public static final int RECORD_BYTES = 136;
+  /** Bump this whenever the layout above changes. Logs from before there was a version have 0. */
+  public static final int FORMAT_VERSION = 1;
+
+  /** About 16 s of records at 250 Hz before anything gets dropped. */
+  public static final int DEFAULT_CAPACITY_RECORDS = 4096;
+
+  private final RingBufferLogger m_logger;
+
+  public DrivetrainLog(Path file, int capacityRecords, long maxFileBytes) throws IOException {
+    m_logger = new RingBufferLogger(file, RECORD_BYTES, FORMAT_VERSION, capacityRecords, maxFileBytes);
+  }
+
+  /**
+   * Records one loop. Call it after the scheduler has run. Doesn't allocate or block.
+   */
+  public void log(DrivetrainSubsystem drivetrain, double leftX, double leftY, double rightX) {
+    if (!m_logger.beginRecord()) {
+      return;
+    }
+    GyroSample gyro = drivetrain.getGyroSample();
+    m_logger.putDouble(TIMESTAMP, gyro.getTimestampSeconds());
+    m_logger.putDouble(LEFT_X, leftX);
+    m_logger.putDouble(LEFT_Y, leftY);
+    m_logger.putDouble(RIGHT_X, rightX);
+    m_logger.putDouble(GYRO_YAW, gyro.getYawDegrees());
+    m_logger.putFloat(GYRO_RATE, (float) gyro.getYawRateDegreesPerSecond());
+    m_logger.putFloat(CHASSIS_VX, (float) drivetrain.getRequestedVxMetersPerSecond());
+    m_logger.putFloat(CHASSIS_VY, (float) drivetrain.getRequestedVyMetersPerSecond());
+    m_logger.putFloat(CHASSIS_OMEGA, (float) drivetrain.getRequestedOmegaRadiansPerSecond());
+    for (int i = 0; i < 4; i++) {
+      m_logger.putFloat(MODULE_SETPOINTS + 8 * i, (float) drivetrain.getModuleSpeedMetersPerSecond(i));
+      m_logger.putFloat(MODULE_SETPOINTS + 8 * i + 4, (float) drivetrain.getModuleAngleRadians(i));
+      m_logger.putFloat(MODULE_MEASURED + 8 * i, (float) drivetrain.getMeasuredModuleSpeedMetersPerSecond(i));
+      m_logger.putFloat(MODULE_MEASURED + 8 * i + 4, (float) drivetrain.getMeasuredModuleAngleRadians(i));
+    }
+    m_logger.putDouble(DISCRETIZATION_PERIOD, drivetrain.getDiscretizationPeriodSeconds());
+    m_logger.putDouble(LOOKAHEAD, drivetrain.getLookaheadSeconds());
+    m_logger.commitRecord();
+  }
+
+  public long getDroppedRecords() {
+    return m_logger.getDroppedRecords();
+  }
+
+  public long getWrittenRecords() {
+    return m_logger.getWrittenRecords();
+  }
+
+  @Override
+  public void close() throws IOException {
+    m_logger.close();
+  }
+}
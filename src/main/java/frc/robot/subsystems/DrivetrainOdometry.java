@@ -0,0 +1,221 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.subsystems;
+
+import static frc.robot.Constants.POSE_HISTORY_SECONDS;
+import static frc.robot.Constants.POSE_STATE_STD_DEV_METERS;
+import static frc.robot.Constants.POSE_STATE_STD_DEV_RADIANS;
+
+import java.util.function.DoubleSupplier;
+
+import com.swervedrivespecialties.swervelib.SwerveModule;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.wpilibj.Notifier;
+import frc.robot.util.InPlaceSwerveKinematics;
+import frc.robot.util.LatencyCompensatedPoseEstimator;
+import frc.robot.util.LoopProfiler;
+import frc.robot.util.PoseSnapshot;
+
+/**
+ * Integrates the robot's field pose from the module encoders and the gyro on its own thread.
+ * <p>
+ * Sampling once per 20 ms scheduler loop isn't fast enough at full speed, so a {@link Notifier} calls
+ * {@link #update()} at {@link #DEFAULT_PERIOD_SECONDS} instead. Every sample is timestamped, converted to a chassis
+ * velocity with least-squares forward kinematics, and integrated along an arc using the gyro's change in heading.
+ * <p>
+ * Late field pose measurements (e.g. from vision) are fused in with a {@link LatencyCompensatedPoseEstimator}, which
+ * keeps {@link frc.robot.Constants#POSE_HISTORY_SECONDS} of samples. The fused pose is published through a
+ * {@link PoseSnapshot}, so commands can read it without blocking this thread.
+ */
+public class DrivetrainOdometry implements AutoCloseable {
+  /** 250 Hz. */
+  public static final double DEFAULT_PERIOD_SECONDS = 1.0 / 250.0;
+
+  private final SwerveModule[] m_modules;
+  private final DoubleSupplier m_yawDegrees;
+  private final DoubleSupplier m_clockSeconds;
+  private final InPlaceSwerveKinematics m_kinematics;
+  private final PoseSnapshot m_snapshot = new PoseSnapshot();
+  private final LoopProfiler.Stage m_fuseStage =
+          LoopProfiler.getInstance().register("DrivetrainOdometry.addVisionMeasurement");
+  // Only created once the thread is started, so desktop harnesses can step odometry without the HAL.
+  private volatile Notifier m_notifier;
+  // Copied from the estimator after every measurement, so telemetry can read them without taking the lock.
+  private volatile long m_fusedMeasurements = 0;
+  private volatile long m_rejectedMeasurements = 0;
+  private volatile int m_lastReplayedSamples = 0;
+
+  // Everything below is only touched while holding the lock on this object.
+  private final double[] m_speeds;
+  private final double[] m_angles;
+  private final double[] m_chassisSpeeds = new double[3];
+  private final LatencyCompensatedPoseEstimator m_estimator = new LatencyCompensatedPoseEstimator(
+          (int) Math.ceil(POSE_HISTORY_SECONDS / DEFAULT_PERIOD_SECONDS) + 1,
+          POSE_STATE_STD_DEV_METERS, POSE_STATE_STD_DEV_RADIANS);
+  // The pose from the wheels and gyro alone. The estimator adds the vision corrections on top.
+  private double m_xMeters = 0.0;
+  private double m_yMeters = 0.0;
+  // Added to the gyro yaw to get the field heading. Changed by resetPose().
+  private double m_headingOffsetRadians = 0.0;
+  private double m_lastYawRadians = 0.0;
+  private double m_lastTimestampSeconds = Double.NaN;
+
+  /**
+   * @param modules      the modules, in the same order as the kinematics
+   * @param yawDegrees   the gyro yaw. Counter-clockwise must be positive, and it must never jump: every change is
+   *                     taken as the robot turning, so zero the driver's heading somewhere else, not on the gyro.
+   * @param clockSeconds a monotonic clock, normally the FPGA timestamp
+   * @param kinematics   the drivetrain's kinematics
+   */
+  public DrivetrainOdometry(SwerveModule[] modules, DoubleSupplier yawDegrees, DoubleSupplier clockSeconds,
+                            InPlaceSwerveKinematics kinematics) {
+    m_modules = modules.clone();
+    m_yawDegrees = yawDegrees;
+    m_clockSeconds = clockSeconds;
+    m_kinematics = kinematics;
+    m_speeds = new double[modules.length];
+    m_angles = new double[modules.length];
+  }
+
+  /** Starts sampling on the odometry thread. */
+  public synchronized void start(double periodSeconds) {
+    if (m_notifier == null) {
+      m_notifier = new Notifier(this::update);
+      m_notifier.setName("Odometry");
+    }
+    m_notifier.startPeriodic(periodSeconds);
+  }
+
+  public void stop() {
+    Notifier notifier = m_notifier;
+    if (notifier != null) {
+      notifier.stop();
+    }
+  }
+
+  /**
+   * Takes one sample and publishes the new pose. Normally this is called by the odometry thread, but simulation can
+   * call it directly to step at any rate.
+   */
+  public synchronized void update() {
+    double timestamp = m_clockSeconds.getAsDouble();
+    double yaw = Math.toRadians(m_yawDegrees.getAsDouble());
+    for (int i = 0; i < m_modules.length; i++) {
+      m_speeds[i] = m_modules[i].getDriveVelocity();
+      m_angles[i] = m_modules[i].getSteerAngle();
+    }
+    m_kinematics.toChassisSpeeds(m_speeds, m_angles, m_chassisSpeeds);
+    double vx = m_chassisSpeeds[0];
+    double vy = m_chassisSpeeds[1];
+    double omega = m_chassisSpeeds[2];
+
+    if (Double.isNaN(m_lastTimestampSeconds)) {
+      m_lastTimestampSeconds = timestamp;
+      m_lastYawRadians = yaw;
+    }
+    double dt = timestamp - m_lastTimestampSeconds;
+    if (dt > 0.0) {
+      double startHeading = m_lastYawRadians + m_headingOffsetRadians;
+      double deltaTheta = MathUtil.angleModulus(yaw - m_lastYawRadians);
+      integrate(vx * dt, vy * dt, deltaTheta, startHeading);
+    }
+    m_lastTimestampSeconds = timestamp;
+    m_lastYawRadians = yaw;
+
+    m_estimator.addOdometry(timestamp, m_xMeters, m_yMeters, MathUtil.angleModulus(yaw + m_headingOffsetRadians));
+    m_snapshot.write(timestamp, m_estimator.getXMeters(), m_estimator.getYMeters(), m_estimator.getHeadingRadians(),
+            vx, vy, omega);
+  }
+
+  /**
+   * Fuses a field pose measured at some point in the last {@link frc.robot.Constants#POSE_HISTORY_SECONDS}. It's
+   * applied against where the robot was at that time, and readers see the result with the next sample. This can be
+   * called from any thread.
+   *
+   * @param timestampSeconds     when the measurement was taken, on the same clock as the odometry
+   * @param xyStdDevMeters       how much to trust the measured x and y
+   * @param headingStdDevRadians how much to trust the measured heading, or {@link Double#POSITIVE_INFINITY} to
+   *                             ignore it
+   * @return false if the measurement was too old and was ignored
+   * @see LatencyCompensatedPoseEstimator#addMeasurement
+   */
+  public synchronized boolean addVisionMeasurement(double timestampSeconds, double xMeters, double yMeters,
+                                                   double headingRadians, double xyStdDevMeters,
+                                                   double headingStdDevRadians) {
+    long start = m_fuseStage.start();
+    boolean fused = m_estimator.addMeasurement(timestampSeconds, xMeters, yMeters, headingRadians, xyStdDevMeters,
+            headingStdDevRadians);
+    m_fuseStage.stop(start);
+    m_fusedMeasurements = m_estimator.getFusedMeasurements();
+    m_rejectedMeasurements = m_estimator.getRejectedMeasurements();
+    m_lastReplayedSamples = m_estimator.getLastReplayedSamples();
+    return fused;
+  }
+
+  /** Gets how many vision measurements have been fused. Never blocks. */
+  public long getFusedMeasurements() {
+    return m_fusedMeasurements;
+  }
+
+  /** Gets how many vision measurements were ignored because they were too old. Never blocks. */
+  public long getRejectedMeasurements() {
+    return m_rejectedMeasurements;
+  }
+
+  /** Gets how many samples the last vision measurement had to replay. Never blocks. */
+  public int getLastReplayedSamples() {
+    return m_lastReplayedSamples;
+  }
+
+  /**
+   * Moves the pose by a robot-relative displacement, assuming the robot travelled along a constant-curvature arc.
+   * This is the same pose exponential WPILib's odometry uses.
+   */
+  private void integrate(double dx, double dy, double dtheta, double startHeading) {
+    double s;
+    double c;
+    if (Math.abs(dtheta) < 1e-9) {
+      s = 1.0 - dtheta * dtheta / 6.0;
+      c = 0.5 * dtheta;
+    } else {
+      s = Math.sin(dtheta) / dtheta;
+      c = (1.0 - Math.cos(dtheta)) / dtheta;
+    }
+    double robotDx = dx * s - dy * c;
+    double robotDy = dx * c + dy * s;
+
+    double cos = Math.cos(startHeading);
+    double sin = Math.sin(startHeading);
+    m_xMeters += robotDx * cos - robotDy * sin;
+    m_yMeters += robotDx * sin + robotDy * cos;
+  }
+
+  /**
+   * Resets the pose and forgets every vision correction. Readers see the new pose on the next sample.
+   */
+  public synchronized void resetPose(Pose2d pose) {
+    m_estimator.reset();
+    m_xMeters = pose.getX();
+    m_yMeters = pose.getY();
+    double yaw = Math.toRadians(m_yawDegrees.getAsDouble());
+    m_headingOffsetRadians = pose.getRotation().getRadians() - yaw;
+    m_lastYawRadians = yaw;
+  }
+
+  /** Gets the snapshot the pose is published through. Reading it never blocks. */
+  public PoseSnapshot getSnapshot() {
+    return m_snapshot;
+  }
+
+  @Override
+  public void close() {
+    Notifier notifier = m_notifier;
+    if (notifier != null) {
+      notifier.close();
+    }
+  }
+}
@@ -12,9 +12,31 @@ import static frc.robot.Constants.BACK_RIGHT_MODULE_DRIVE_MOTOR;
 import static frc.robot.Constants.BACK_RIGHT_MODULE_STEER_ENCODER;
 import static frc.robot.Constants.BACK_RIGHT_MODULE_STEER_MOTOR;
 import static frc.robot.Constants.BACK_RIGHT_MODULE_STEER_OFFSET;
+import static frc.robot.Constants.BATTERY_RESISTANCE_OHMS;
+import static frc.robot.Constants.BATTERY_VOLTAGE_FILTER_SECONDS;
+import static frc.robot.Constants.CHARACTERIZATION_DYNAMIC_SECONDS;
+import static frc.robot.Constants.CHARACTERIZATION_MIN_VELOCITY_METERS_PER_SECOND;
+import static frc.robot.Constants.CHARACTERIZATION_QUASISTATIC_SECONDS;
+import static frc.robot.Constants.CHARACTERIZATION_RAMP_VOLTS_PER_SECOND;
+import static frc.robot.Constants.CHARACTERIZATION_REST_SECONDS;
+import static frc.robot.Constants.CHARACTERIZATION_STEP_VOLTS;
+import static frc.robot.Constants.DEVICE_INIT_ATTEMPTS;
+import static frc.robot.Constants.DEVICE_INIT_RETRY_DELAY_SECONDS;
+import static frc.robot.Constants.DEVICE_INIT_TIMEOUT_SECONDS;
 import static frc.robot.Constants.DRIVETRAIN_PIGEON_ID;
 import static frc.robot.Constants.DRIVETRAIN_TRACKWIDTH_METERS;
 import static frc.robot.Constants.DRIVETRAIN_WHEELBASE_METERS;
+import static frc.robot.Constants.DRIVE_CONTROL_LOOP_PERIOD_SECONDS;
+import static frc.robot.Constants.DRIVE_CONTROL_LOOP_PRIORITY;
+import static frc.robot.Constants.DRIVE_CURRENT_LIMIT_AMPS;
+import static frc.robot.Constants.DRIVE_DISCRETIZE_SPEEDS;
+import static frc.robot.Constants.DRIVE_FEEDFORWARD_FILE;
+import static frc.robot.Constants.DRIVE_LATENCY_LOOKAHEAD;
+import static frc.robot.Constants.DRIVE_MAX_ANGULAR_ACCELERATION_RADIANS_PER_SECOND_SQUARED;
+import static frc.robot.Constants.DRIVE_MAX_COMPENSATION_SECONDS;
+import static frc.robot.Constants.DRIVE_MAX_LINEAR_ACCELERATION_METERS_PER_SECOND_SQUARED;
+import static frc.robot.Constants.DRIVE_OUTPUT_SAME_LOOP;
+import static frc.robot.Constants.DRIVE_X_LOCK_MAX_SPEED_METERS_PER_SECOND;
 import static frc.robot.Constants.FRONT_LEFT_MODULE_DRIVE_MOTOR;
 import static frc.robot.Constants.FRONT_LEFT_MODULE_STEER_ENCODER;
 import static frc.robot.Constants.FRONT_LEFT_MODULE_STEER_MOTOR;
@@ -23,21 +45,59 @@ import static frc.robot.Constants.FRONT_RIGHT_MODULE_DRIVE_MOTOR;
 import static frc.robot.Constants.FRONT_RIGHT_MODULE_STEER_ENCODER;
 import static frc.robot.Constants.FRONT_RIGHT_MODULE_STEER_MOTOR;
 import static frc.robot.Constants.FRONT_RIGHT_MODULE_STEER_OFFSET;
+import static frc.robot.Constants.MINIMUM_BUS_VOLTAGE;
+import static frc.robot.Constants.MODULE_CONTROL_FILE;
+import static frc.robot.Constants.MODULE_MAX_ACCELERATION_METERS_PER_SECOND_SQUARED;
+import static frc.robot.Constants.MODULE_MAX_STEERING_RATE_RADIANS_PER_SECOND;
+import static frc.robot.Constants.MODULE_OUTPUT_ANGLE_TOLERANCE_RADIANS;
+import static frc.robot.Constants.MODULE_OUTPUT_REFRESH_PERIOD_SECONDS;
+import static frc.robot.Constants.MODULE_OUTPUT_VELOCITY_TOLERANCE_METERS_PER_SECOND;
+import static frc.robot.Constants.MODULE_OUTPUT_VOLTAGE_TOLERANCE;
+import static frc.robot.Constants.RESERVED_CURRENT_AMPS;
+import static frc.robot.Constants.STEER_CURRENT_ALLOWANCE_AMPS;
+import static frc.robot.Constants.STEER_CURRENT_LIMIT_AMPS;
+import static frc.robot.Constants.TOTAL_CURRENT_BUDGET_AMPS;
 
-import com.ctre.phoenix.sensors.Pigeon2;
 import com.swervedrivespecialties.swervelib.Mk4SwerveModuleHelper;
 import com.swervedrivespecialties.swervelib.SdsModuleConfigurations;
 import com.swervedrivespecialties.swervelib.SwerveModule;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.DoubleSupplier;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
 import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
-import edu.wpi.first.math.kinematics.SwerveModuleState;
-import edu.wpi.first.wpilibj.shuffleboard.BuiltInLayouts;
-import edu.wpi.first.wpilibj.shuffleboard.Shuffleboard;
-import edu.wpi.first.wpilibj.shuffleboard.ShuffleboardTab;
+import edu.wpi.first.math.system.plant.DCMotor;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Filesystem;
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.Threads;
+import edu.wpi.first.wpilibj.TimedRobot;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.util.ChassisSpeedDiscretizer;
+import frc.robot.util.DeviceInitializer;
+import frc.robot.util.DriveCharacterization;
+import frc.robot.util.DriveFeedforward;
+import frc.robot.util.DrivePowerBudget;
+import frc.robot.util.DriveRequest;
+import frc.robot.util.InPlaceSwerveKinematics;
+import frc.robot.util.LatencyTracer;
+import frc.robot.util.LoopJitter;
+import frc.robot.util.LoopProfiler;
+import frc.robot.util.ModuleControlConfig;
+import frc.robot.util.NetworkTablesTelemetrySink;
+import frc.robot.util.PoseSnapshot;
+import frc.robot.util.SwerveModuleOptimizer;
+import frc.robot.util.SwerveSetpointGenerator;
+import frc.robot.util.TelemetryPublisher;
 
 public class DrivetrainSubsystem extends SubsystemBase {
   /**
@@ -69,7 +129,23 @@ public class DrivetrainSubsystem extends SubsystemBase {
   public static final double MAX_ANGULAR_VELOCITY_RADIANS_PER_SECOND = MAX_VELOCITY_METERS_PER_SECOND /
           Math.hypot(DRIVETRAIN_TRACKWIDTH_METERS / 2.0, DRIVETRAIN_WHEELBASE_METERS / 2.0);
 
-  private final SwerveDriveKinematics m_kinematics = new SwerveDriveKinematics(
+  /**
+   * How often periodic() runs. Setpoints are limited assuming the next one comes one loop later.
+   */
+  public static final double LOOP_PERIOD_SECONDS = TimedRobot.kDefaultPeriod;
+
+  /** The name of the drive latency trace, see {@link #getDriveLatencyTrace()}. */
+  public static final String DRIVE_LATENCY_TRACE = "Drive";
+  /** The sticks were read. */
+  public static final int TRACE_INPUT = 0;
+  /** A command turned them into a drive request. */
+  public static final int TRACE_COMMAND = 1;
+  /** The request became module setpoints. */
+  public static final int TRACE_SETPOINT = 2;
+  /** The setpoints were sent to the motor controllers. */
+  public static final int TRACE_ACTUATION = 3;
+
+  static final Translation2d[] MODULE_LOCATIONS = {
           // Front left
           new Translation2d(DRIVETRAIN_TRACKWIDTH_METERS / 2.0, DRIVETRAIN_WHEELBASE_METERS / 2.0),
           // Front right
@@ -78,28 +154,233 @@ public class DrivetrainSubsystem extends SubsystemBase {
           new Translation2d(-DRIVETRAIN_TRACKWIDTH_METERS / 2.0, DRIVETRAIN_WHEELBASE_METERS / 2.0),
           // Back right
           new Translation2d(-DRIVETRAIN_TRACKWIDTH_METERS / 2.0, -DRIVETRAIN_WHEELBASE_METERS / 2.0)
-  );
+  };
+
+  static final String[] MODULE_NAMES = {
+          "Front Left Module", "Front Right Module", "Back Left Module", "Back Right Module"
+  };
+  // What each module is called in the module control file.
+  private static final String[] MODULE_CONTROL_KEYS = {"frontLeft", "frontRight", "backLeft", "backRight"};
+
+  // Every module pointed at the center of the robot, computed once from MODULE_LOCATIONS.
+  private static final double[] X_LOCK_ANGLES = SwerveModuleOptimizer.computeXLockAngles(MODULE_LOCATIONS);
+
+  private final SwerveDriveKinematics m_kinematics = new SwerveDriveKinematics(MODULE_LOCATIONS);
+  // Same math as m_kinematics, but it writes into the buffers below instead of allocating every loop.
+  private final InPlaceSwerveKinematics m_inPlaceKinematics = new InPlaceSwerveKinematics(MODULE_LOCATIONS);
+  // Limits how fast the requested speeds are actually applied, so a sudden request doesn't hit the motors all at
+  // once and the modules stay in step.
+  private final SwerveSetpointGenerator m_setpointGenerator;
+  // Scales the drive voltages down to what the battery can deliver without browning out.
+  private final DrivePowerBudget m_powerBudget = createPowerBudget();
+  // Turns each module's speed and acceleration into drive voltage. Replaced whole when new gains are fitted, so the
+  // output path always sees one consistent set.
+  private volatile DriveFeedforward m_driveFeedforward = loadDriveFeedforward();
+  // Which modules hold their own drive speed. Fixed once the drivetrain is built, since the hardware is set up for it.
+  private final ModuleControlConfig m_moduleControl;
 
-  // By default we use a Pigeon for our gyroscope. But if you use another gyroscope, like a NavX, you can change this.
-  // The important thing about how you configure your gyroscope is that rotating the robot counter-clockwise should
-  // cause the angle reading to increase until it wraps back over to zero.
-  // Don't Remove following if you are using a Pigeon
-//   private final PigeonIMU m_pigeon = new PigeonIMU(DRIVETRAIN_PIGEON_ID);
-  private final Pigeon2 m_pigeon = new Pigeon2(DRIVETRAIN_PIGEON_ID);
-  //  Uncomment following if you are using a NavX
-//  private final AHRS m_navx = new AHRS(SPI.Port.kMXP, (byte) 200); // NavX connected over MXP
+  // By default we use a Pigeon for our gyroscope. But if you use another gyroscope, like a NavX, you can change this
+  // by writing another GyroIO. The important thing about how you configure your gyroscope is that rotating the robot
+  // counter-clockwise should cause the angle reading to increase until it wraps back over to zero.
+  // The hardware constructor uses a Pigeon2GyroIO; simulation passes in a SimGyroIO.
+  private final GyroIO m_gyro;
+  // The gyro yaw the driver last zeroed at. See zeroGyroscope().
+  private volatile double m_yawZeroDegrees = 0.0;
+  // All timestamps come from here: the FPGA clock on the robot, or simulated time off-robot.
+  private final DoubleSupplier m_clockSeconds;
+  // The battery voltage, read once per loop into m_batteryVoltageSample.
+  private final DoubleSupplier m_batteryVoltage;
+  private double m_batteryVoltageSample;
+
+  // The gyro is read once per loop into here. Everyone reads the heading from this instead of the Pigeon.
+  private final GyroSample m_gyroSample = new GyroSample();
+
+  // Configures the hardware in the background on the real robot, and holds the outputs until it's done. Null when the
+  // modules and gyro were handed in ready to use, e.g. in simulation.
+  private final DeviceInitializer m_hardwareInit;
+  // The modules still being configured, or null. Outputs sent to one before it's ready are dropped.
+  private final DeferredSwerveModule[] m_deferredModules = new DeferredSwerveModule[4];
+  // The dashboard is set up in the first periodic() rather than while the robot boots, and published from then on.
+  private boolean m_dashboardPending = true;
+  private TelemetryPublisher m_telemetry;
 
   // These are our modules. We initialize them in the constructor.
   public SwerveModule m_frontLeftModule;
   public SwerveModule m_frontRightModule;
   public SwerveModule m_backLeftModule;
   public SwerveModule m_backRightModule;
+  // Every module output goes through one of these so unchanged setpoints aren't re-sent over CAN every loop.
+  private final ChangeDetectingSwerveModule[] m_outputStages;
+
+  // Tracks the robot's pose, either on its own thread or from periodic(). Created once the modules exist.
+  private final DrivetrainOdometry m_odometry;
+  private final boolean m_odometryThread;
+
+  // The requested chassis speeds are kept as primitives so periodic() doesn't have to hold onto (or allocate) a
+  // ChassisSpeeds. These are the scheduler thread's copy; the output path reads them through m_request.
+  private double m_vxMetersPerSecond = 0.0;
+  private double m_vyMetersPerSecond = 0.0;
+  private double m_omegaRadiansPerSecond = 0.0;
+  // Hands each request to whichever thread writes the outputs, without either one waiting on the other.
+  private final DriveRequest m_request = new DriveRequest();
 
-  private ChassisSpeeds m_chassisSpeeds = new ChassisSpeeds(0.0, 0.0, 0.0);
+  // Everything from here to m_outputVoltages belongs to the output path and is only touched while holding
+  // m_outputLock. The lock is only ever contended when the control loop is running.
+  private final Object m_outputLock = new Object();
+  private final DriveRequest.Sample m_requestSample = new DriveRequest.Sample();
+  // Module speeds (m/s) and angles (radians), in the same order as MODULE_LOCATIONS. Reused every loop.
+  private final double[] m_moduleSpeeds = new double[4];
+  private final double[] m_moduleAngles = new double[4];
+  // What actually goes to each module after optimizing against its measured angle. Reused every loop.
+  private final double[] m_outputSpeeds = new double[4];
+  private final double[] m_outputAngles = new double[4];
+  private final double[] m_measuredAngles = new double[4];
+  private final double[] m_measuredSpeeds = new double[4];
+  private final double[] m_outputVoltages = new double[4];
+  // Each module's last speed and angle setpoint, and its acceleration since then, for the feedforward.
+  private final double[] m_previousModuleSpeeds = new double[4];
+  private final double[] m_previousModuleAngles = new double[4];
+  private final double[] m_moduleAccelerations = new double[4];
+  // When the outputs last went out, or NaN to start over. The period and lookahead the last outputs were corrected
+  // over are kept for the log; they're 0 when that correction is off.
+  private double m_lastOutputSeconds = Double.NaN;
+  private volatile double m_discretizationPeriodSeconds = 0.0;
+  private volatile double m_lookaheadSeconds = 0.0;
+  // The request last marked at the setpoint stage of the latency trace.
+  private long m_lastTracedSequence = -1;
+  // While this is set, the modules drive straight at its voltages instead of following requests.
+  private DriveCharacterization m_characterization;
+  private double m_characterizationStartSeconds;
 
+  // Runs writeModuleOutputs() at a fixed rate when the control loop is on. Only created once it's started, so desktop
+  // harnesses can construct the drivetrain without the HAL.
+  private Notifier m_controlNotifier;
+  private volatile boolean m_controlLoopRunning = false;
+  private volatile double m_controlPeriodSeconds = DRIVE_CONTROL_LOOP_PERIOD_SECONDS;
+  // Only touched by the control loop thread.
+  private boolean m_controlThreadConfigured = false;
+  private final LoopProfiler.Stage m_controlLoopStage =
+          LoopProfiler.getInstance().register("DrivetrainSubsystem.controlLoop", DRIVE_CONTROL_LOOP_PERIOD_SECONDS);
+  private final LoopJitter m_controlLoopJitter =
+          new LoopJitter("DrivetrainSubsystem.controlLoop jitter", DRIVE_CONTROL_LOOP_PERIOD_SECONDS);
+
+  private final LoopProfiler.Stage m_periodicStage = LoopProfiler.getInstance().register("DrivetrainSubsystem.periodic");
+  private final LoopProfiler.Stage m_applyOutputsStage =
+          LoopProfiler.getInstance().register("DrivetrainSubsystem.applyOutputs");
+
+  // Follows drive requests from the sticks to the modules. This subsystem marks the last two stages.
+  private final LatencyTracer.Trace m_latencyTrace = getDriveLatencyTrace();
+  private boolean m_sameLoopOutput = DRIVE_OUTPUT_SAME_LOOP;
+  private volatile boolean m_discretizeSpeeds = DRIVE_DISCRETIZE_SPEEDS;
+  private volatile boolean m_latencyLookahead = DRIVE_LATENCY_LOOKAHEAD;
+
+  /**
+   * Creates the drivetrain on the real robot: four Mk4 L1 modules with Falcon 500s and a Pigeon 2.
+   * <p>
+   * The devices are configured in the background, all at the same time, so this returns right away. The drivetrain
+   * won't drive until every one of them has confirmed its configuration; see {@link #isHardwareReady()}.
+   */
   public DrivetrainSubsystem() {
-    ShuffleboardTab tab = Shuffleboard.getTab("Drivetrain");
+    this(new DeviceInitializer("Drivetrain", DEVICE_INIT_TIMEOUT_SECONDS, DEVICE_INIT_ATTEMPTS,
+            DEVICE_INIT_RETRY_DELAY_SECONDS), loadModuleControl());
+  }
+
+  private DrivetrainSubsystem(DeviceInitializer hardwareInit, ModuleControlConfig moduleControl) {
+    this(createHardwareModules(hardwareInit, moduleControl), createHardwareGyro(hardwareInit),
+            Timer::getFPGATimestamp, RobotController::getBatteryVoltage, true, moduleControl, createSetpointGenerator(),
+            hardwareInit);
+  }
+
+  /**
+   * Creates the drivetrain on top of any module and gyro implementation, e.g. the ones in {@link frc.robot.sim}.
+   *
+   * @param modules        front left, front right, back left and back right, in that order
+   * @param gyro           the gyro
+   * @param clockSeconds   the clock every timestamp is taken from
+   * @param batteryVoltage the battery voltage, e.g. from the roboRIO or a simulated battery
+   * @param odometryThread true to run odometry on its own thread, false to update it at the start of periodic()
+   */
+  public DrivetrainSubsystem(SwerveModule[] modules, GyroIO gyro, DoubleSupplier clockSeconds,
+                             DoubleSupplier batteryVoltage, boolean odometryThread) {
+    this(modules, gyro, clockSeconds, batteryVoltage, odometryThread, loadModuleControl());
+  }
+
+  /**
+   * Like {@link #DrivetrainSubsystem(SwerveModule[], GyroIO, DoubleSupplier, DoubleSupplier, boolean)}, but with the
+   * given module control instead of the one in the deploy directory.
+   *
+   * @param moduleControl which modules hold their own drive speed. Those should be {@link VelocitySwerveModule}s
+   *                      with its gains; any that aren't get just the feedforward voltage.
+   */
+  public DrivetrainSubsystem(SwerveModule[] modules, GyroIO gyro, DoubleSupplier clockSeconds,
+                             DoubleSupplier batteryVoltage, boolean odometryThread,
+                             ModuleControlConfig moduleControl) {
+    this(modules, gyro, clockSeconds, batteryVoltage, odometryThread, moduleControl, createSetpointGenerator());
+  }
+
+  /**
+   * Like {@link #DrivetrainSubsystem(SwerveModule[], GyroIO, DoubleSupplier, DoubleSupplier, boolean,
+   * ModuleControlConfig)}, but with the given setpoint generator instead of one with the limits in
+   * {@link frc.robot.Constants}, e.g. to see what those limits cost.
+   */
+  public DrivetrainSubsystem(SwerveModule[] modules, GyroIO gyro, DoubleSupplier clockSeconds,
+                             DoubleSupplier batteryVoltage, boolean odometryThread,
+                             ModuleControlConfig moduleControl, SwerveSetpointGenerator setpointGenerator) {
+    this(modules, gyro, clockSeconds, batteryVoltage, odometryThread, moduleControl, setpointGenerator, null);
+  }
+
+  private DrivetrainSubsystem(SwerveModule[] modules, GyroIO gyro, DoubleSupplier clockSeconds,
+                              DoubleSupplier batteryVoltage, boolean odometryThread, ModuleControlConfig moduleControl,
+                              SwerveSetpointGenerator setpointGenerator, DeviceInitializer hardwareInit) {
+    m_hardwareInit = hardwareInit;
+    m_moduleControl = moduleControl;
+    m_setpointGenerator = setpointGenerator;
+    m_gyro = gyro;
+    m_clockSeconds = clockSeconds;
+    m_batteryVoltage = batteryVoltage;
+    m_batteryVoltageSample = batteryVoltage.getAsDouble();
+    m_odometryThread = odometryThread;
+
+    m_outputStages = new ChangeDetectingSwerveModule[]{
+            createOutputStage(modules[0]),
+            createOutputStage(modules[1]),
+            createOutputStage(modules[2]),
+            createOutputStage(modules[3])
+    };
+    for (int i = 0; i < modules.length; i++) {
+      if (modules[i] instanceof DeferredSwerveModule) {
+        m_deferredModules[i] = (DeferredSwerveModule) modules[i];
+      }
+    }
+    m_frontLeftModule = m_outputStages[0];
+    m_frontRightModule = m_outputStages[1];
+    m_backLeftModule = m_outputStages[2];
+    m_backRightModule = m_outputStages[3];
+
+    m_odometry = new DrivetrainOdometry(
+            new SwerveModule[]{m_frontLeftModule, m_frontRightModule, m_backLeftModule, m_backRightModule},
+            m_gyro::getYawDegrees,
+            m_clockSeconds,
+            new InPlaceSwerveKinematics(MODULE_LOCATIONS)
+    );
+    if (m_odometryThread) {
+      m_odometry.start(DrivetrainOdometry.DEFAULT_PERIOD_SECONDS);
+    }
+
+    sampleGyroscope();
+  }
+
+  /** Gets where each module is relative to the center of the robot, in the same order as the constructor. */
+  public static Translation2d[] getModuleLocations() {
+    return MODULE_LOCATIONS.clone();
+  }
 
+  /**
+   * Starts configuring the four modules at once. Each one configures two Falcons and a CANCoder over CAN, which takes
+   * a while, so they're handed back as stand-ins that come alive as each module finishes.
+   */
+  private static SwerveModule[] createHardwareModules(DeviceInitializer hardwareInit,
+                                                      ModuleControlConfig moduleControl) {
     // There are 4 methods you can call to create your swerve modules.
     // The method you use depends on what motors you are using.
     //
@@ -122,98 +403,826 @@ public class DrivetrainSubsystem extends SubsystemBase {
     // Setup motor configuration DONE DONE DONE
         // Shuffleboard.putBoolean("Gyro Angle", m_pigeon.getAbsoluteCompassHeading());
   
-    m_frontLeftModule = Mk4SwerveModuleHelper.createFalcon500(
-            // This parameter is optional, but will allow you to see the current state of the module on the dashboard.
-            tab.getLayout("Front Left Module", BuiltInLayouts.kList)
-                    .withSize(2, 4)
-                    .withPosition(0, 0),
-            // This can either be STANDARD or FAST depending on your gear configuration
-            Mk4SwerveModuleHelper.GearRatio.L1,
-            // This is the ID of the drive motor
-            FRONT_LEFT_MODULE_DRIVE_MOTOR,
-            // This is the ID of the steer motor
-            FRONT_LEFT_MODULE_STEER_MOTOR,
-            // This is the ID of the steer encoder
-            FRONT_LEFT_MODULE_STEER_ENCODER,
-            // This is how much the steer encoder is offset from true zero (In our case, zero is facing straight forward)
-            FRONT_LEFT_MODULE_STEER_OFFSET
-    );
+    // The modules' dashboard layouts are left out here. SDS's publish every value every loop, and DrivetrainTelemetry
+    // publishes the same values for less.
+    DeviceInitializer.Device<SwerveModule> frontLeftModule = hardwareInit.submit(MODULE_NAMES[0], () ->
+            createHardwareModule(moduleControl, 0,
+                    // This is the ID of the drive motor
+                    FRONT_LEFT_MODULE_DRIVE_MOTOR,
+                    // This is the ID of the steer motor
+                    FRONT_LEFT_MODULE_STEER_MOTOR,
+                    // This is the ID of the steer encoder
+                    FRONT_LEFT_MODULE_STEER_ENCODER,
+                    // This is how much the steer encoder is offset from true zero (In our case, zero is facing
+                    // straight forward)
+                    FRONT_LEFT_MODULE_STEER_OFFSET
+            ));
 
     // We will do the same for the other modules
-    m_frontRightModule = Mk4SwerveModuleHelper.createFalcon500(
-            tab.getLayout("Front Right Module", BuiltInLayouts.kList)
-                    .withSize(2, 4)
-                    .withPosition(2, 0),
-            Mk4SwerveModuleHelper.GearRatio.L1,
-            FRONT_RIGHT_MODULE_DRIVE_MOTOR,
-            FRONT_RIGHT_MODULE_STEER_MOTOR,
-            FRONT_RIGHT_MODULE_STEER_ENCODER,
-            FRONT_RIGHT_MODULE_STEER_OFFSET
-    );
+    DeviceInitializer.Device<SwerveModule> frontRightModule = hardwareInit.submit(MODULE_NAMES[1], () ->
+            createHardwareModule(moduleControl, 1,
+                    FRONT_RIGHT_MODULE_DRIVE_MOTOR,
+                    FRONT_RIGHT_MODULE_STEER_MOTOR,
+                    FRONT_RIGHT_MODULE_STEER_ENCODER,
+                    FRONT_RIGHT_MODULE_STEER_OFFSET
+            ));
 
-    m_backLeftModule = Mk4SwerveModuleHelper.createFalcon500(
-            tab.getLayout("Back Left Module", BuiltInLayouts.kList)
-                    .withSize(2, 4)
-                    .withPosition(4, 0),
-            Mk4SwerveModuleHelper.GearRatio.L1,
-            BACK_LEFT_MODULE_DRIVE_MOTOR,
-            BACK_LEFT_MODULE_STEER_MOTOR,
-            BACK_LEFT_MODULE_STEER_ENCODER,
-            BACK_LEFT_MODULE_STEER_OFFSET
-    );
+    DeviceInitializer.Device<SwerveModule> backLeftModule = hardwareInit.submit(MODULE_NAMES[2], () ->
+            createHardwareModule(moduleControl, 2,
+                    BACK_LEFT_MODULE_DRIVE_MOTOR,
+                    BACK_LEFT_MODULE_STEER_MOTOR,
+                    BACK_LEFT_MODULE_STEER_ENCODER,
+                    BACK_LEFT_MODULE_STEER_OFFSET
+            ));
 
-    m_backRightModule = Mk4SwerveModuleHelper.createFalcon500(
-            tab.getLayout("Back Right Module", BuiltInLayouts.kList)
-                    .withSize(2, 4)
-                    .withPosition(6, 0),
-            Mk4SwerveModuleHelper.GearRatio.L1,
-            BACK_RIGHT_MODULE_DRIVE_MOTOR,
-            BACK_RIGHT_MODULE_STEER_MOTOR,
-            BACK_RIGHT_MODULE_STEER_ENCODER,
-            BACK_RIGHT_MODULE_STEER_OFFSET
-    );
+    DeviceInitializer.Device<SwerveModule> backRightModule = hardwareInit.submit(MODULE_NAMES[3], () ->
+            createHardwareModule(moduleControl, 3,
+                    BACK_RIGHT_MODULE_DRIVE_MOTOR,
+                    BACK_RIGHT_MODULE_STEER_MOTOR,
+                    BACK_RIGHT_MODULE_STEER_ENCODER,
+                    BACK_RIGHT_MODULE_STEER_OFFSET
+            ));
+
+    return new SwerveModule[]{
+            new DeferredSwerveModule(frontLeftModule),
+            new DeferredSwerveModule(frontRightModule),
+            new DeferredSwerveModule(backLeftModule),
+            new DeferredSwerveModule(backRightModule)
+    };
+  }
+
+  /**
+   * Creates one Mk4 L1 module with Falcon 500s. A module that holds its own drive speed needs its drive Falcon's
+   * velocity loop set up, so it's a {@link Falcon500SwerveModule}; the rest are SDS's, exactly as before.
+   */
+  private static SwerveModule createHardwareModule(ModuleControlConfig moduleControl, int module, int driveMotor,
+                                                   int steerMotor, int steerEncoder, double steerOffset) {
+    if (moduleControl.isClosedLoop(module)) {
+      return new Falcon500SwerveModule(SdsModuleConfigurations.MK4_L1, driveMotor, steerMotor, steerEncoder,
+              steerOffset, MAX_VOLTAGE, DRIVE_CURRENT_LIMIT_AMPS, STEER_CURRENT_LIMIT_AMPS, moduleControl);
+    }
+    // This can either be STANDARD or FAST depending on your gear configuration
+    return Mk4SwerveModuleHelper.createFalcon500(Mk4SwerveModuleHelper.GearRatio.L1, driveMotor, steerMotor,
+            steerEncoder, steerOffset);
+  }
+
+  /** Starts configuring the Pigeon alongside the modules. It counts as ready once it answers on the CAN bus. */
+  private static GyroIO createHardwareGyro(DeviceInitializer hardwareInit) {
+    return new DeferredGyroIO(hardwareInit.submit("Pigeon", () -> {
+      Pigeon2GyroIO gyro = new Pigeon2GyroIO(DRIVETRAIN_PIGEON_ID);
+      // Give up in time for the initializer to try again, rather than holding its thread forever.
+      gyro.awaitPresent(DEVICE_INIT_TIMEOUT_SECONDS);
+      return gyro;
+    }));
+  }
+
+  /**
+   * Puts the drivetrain on the dashboard. This waits until the first periodic() so it's off the boot path; see
+   * {@link DrivetrainTelemetry} for what's published and how often.
+   */
+  private void createDashboard() {
+    m_telemetry = new TelemetryPublisher("DrivetrainSubsystem.telemetry",
+            new NetworkTablesTelemetrySink(DrivetrainTelemetry.TABLE));
+    DrivetrainTelemetry.addSignals(m_telemetry, new TelemetrySource(), m_hardwareInit != null);
+  }
+
+  /** Feeds the dashboard. Only used from periodic(). */
+  private final class TelemetrySource implements DrivetrainTelemetry.Source {
+    private final PoseSnapshot.Sample m_pose = new PoseSnapshot.Sample();
+
+    @Override
+    public double getHeadingRadians() {
+      return getGyroscopeRadians();
+    }
+
+    @Override
+    public double getXMeters() {
+      readPose(m_pose);
+      return m_pose.xMeters;
+    }
+
+    @Override
+    public double getYMeters() {
+      readPose(m_pose);
+      return m_pose.yMeters;
+    }
+
+    @Override
+    public double getMeasuredModuleAngleRadians(int module) {
+      return DrivetrainSubsystem.this.getMeasuredModuleAngleRadians(module);
+    }
+
+    @Override
+    public double getModuleAngleRadians(int module) {
+      return DrivetrainSubsystem.this.getModuleAngleRadians(module);
+    }
+
+    @Override
+    public double getMeasuredModuleSpeedMetersPerSecond(int module) {
+      return DrivetrainSubsystem.this.getMeasuredModuleSpeedMetersPerSecond(module);
+    }
+
+    @Override
+    public boolean isHardwareReady() {
+      return DrivetrainSubsystem.this.isHardwareReady();
+    }
+
+    @Override
+    public boolean hasHardwareFault() {
+      return DrivetrainSubsystem.this.hasHardwareFault();
+    }
+
+    @Override
+    public long getSuppressedModuleWrites() {
+      return DrivetrainSubsystem.this.getSuppressedModuleWrites();
+    }
+
+    @Override
+    public long getSentModuleWrites() {
+      return DrivetrainSubsystem.this.getSentModuleWrites();
+    }
+
+    @Override
+    public long getFusedVisionMeasurements() {
+      return m_odometry.getFusedMeasurements();
+    }
+
+    @Override
+    public long getRejectedVisionMeasurements() {
+      return m_odometry.getRejectedMeasurements();
+    }
+
+    @Override
+    public DrivePowerBudget getPowerBudget() {
+      return m_powerBudget;
+    }
+  }
+
+  /**
+   * Whether every module and the gyro have confirmed their configuration. Until then, drive requests are accepted
+   * but nothing is sent to the modules.
+   */
+  public boolean isHardwareReady() {
+    return m_hardwareInit == null || m_hardwareInit.isReady();
+  }
+
+  /**
+   * Whether a module or the gyro failed to configure, or is taking far too long. The drivetrain won't drive until it's
+   * fixed, so the drivers need to know before the match starts.
+   */
+  public boolean hasHardwareFault() {
+    return m_hardwareInit != null && m_hardwareInit.hasFailures();
+  }
+
+  private ChangeDetectingSwerveModule createOutputStage(SwerveModule module) {
+    return new ChangeDetectingSwerveModule(module, MODULE_OUTPUT_VOLTAGE_TOLERANCE,
+            MODULE_OUTPUT_VELOCITY_TOLERANCE_METERS_PER_SECOND, MODULE_OUTPUT_ANGLE_TOLERANCE_RADIANS,
+            MODULE_OUTPUT_REFRESH_PERIOD_SECONDS, m_clockSeconds);
+  }
+
+  /** Gets how many module set() calls were skipped because nothing changed, across all four modules. */
+  public long getSuppressedModuleWrites() {
+    long total = 0;
+    for (ChangeDetectingSwerveModule stage : m_outputStages) {
+      total += stage.getSuppressedWrites();
+    }
+    return total;
+  }
+
+  /** Gets how many module set() calls actually went out to the motor controllers, across all four modules. */
+  public long getSentModuleWrites() {
+    long total = 0;
+    for (ChangeDetectingSwerveModule stage : m_outputStages) {
+      total += stage.getSentWrites();
+    }
+    return total;
   }
 
   /**
    * Sets the gyroscope angle to zero. This can be used to set the direction the robot is currently facing to the
    * 'forwards' direction.
+   * <p>
+   * The gyro itself isn't touched: the yaw it reads now becomes the new zero for the heading the drivetrain reports.
+   * The odometry reads the gyro directly, so its heading never jumps and the field pose carries straight on.
    */
   public void zeroGyroscope() {
-    // Don't Remove following if you are using a Pigeon
-//     m_pigeon.setFusedHeading(0.0);
-    m_pigeon.setYaw(0.0);
+    m_yawZeroDegrees = m_gyro.getYawDegrees();
 
-    // Uncomment Following if you are using a NavX
-//    m_navx.zeroYaw();
+    // Anything that reads the heading later in this loop should see the reset.
+    m_gyroSample.update(0.0, m_gyroSample.getYawRateDegreesPerSecond(), m_clockSeconds.getAsDouble());
+  }
+
+  /**
+   * Reads the gyro into the cached sample. This is called once at the start of every loop.
+   */
+  private void sampleGyroscope() {
+    double timestamp = m_clockSeconds.getAsDouble();
+    m_gyroSample.update(m_gyro.getYawDegrees() - m_yawZeroDegrees, m_gyro.getYawRateDegreesPerSecond(), timestamp);
+  }
+
+  /**
+   * Gets this loop's gyro sample. The same reading is returned until the next loop, so every caller agrees on the
+   * heading.
+   */
+  public GyroSample getGyroSample() {
+    return m_gyroSample;
+  }
+
+  /**
+   * Gets this loop's heading in radians without allocating a {@link Rotation2d}. Counter-clockwise is positive.
+   */
+  public double getGyroscopeRadians() {
+    return m_gyroSample.getYawRadians();
+  }
+
+  /**
+   * Reads the heading straight from the gyro instead of using this loop's sample. This costs a read from the
+   * Pigeon and may not match what other callers saw this loop, so only use it when the newest value matters more.
+   */
+  public double getFreshGyroscopeRadians() {
+    return Math.toRadians(m_gyro.getYawDegrees() - m_yawZeroDegrees);
   }
 
   public Rotation2d getGyroscopeRotation() {
-    // Don't Remove Follwoing if you are using a Pigeon
-//     return Rotation2d.fromDegrees(m_pigeon.getFusedHeading());
-    return Rotation2d.fromDegrees(m_pigeon.getYaw());
+    return m_gyroSample.getRotation();
+  }
+
+  /**
+   * Gets the latest pose from the odometry thread, with any vision measurements fused in. This allocates; use
+   * {@link #readPose(PoseSnapshot.Sample)} in code that runs every loop.
+   */
+  public Pose2d getPose() {
+    return m_odometry.getSnapshot().getPose();
+  }
+
+  /** Copies the latest odometry sample into {@code out} without blocking or allocating. */
+  public void readPose(PoseSnapshot.Sample out) {
+    m_odometry.getSnapshot().read(out);
+  }
 
-    // Uncomment following if you are using a NavX
-//    if (m_navx.isMagnetometerCalibrated()) {
-//      // We will only get valid fused headings if the magnetometer is calibrated
-//      return Rotation2d.fromDegrees(m_navx.getFusedHeading());
-//    }
-//
-//    // We have to invert the angle of the NavX so that rotating the robot counter-clockwise makes the angle increase.
-//    return Rotation2d.fromDegrees(360.0 - m_navx.getYaw());
+  public void resetPose(Pose2d pose) {
+    m_odometry.resetPose(pose);
+  }
+
+  /**
+   * Fuses a field pose from vision into the odometry. Vision results arrive late, so pass the time the frame was
+   * captured (on the same clock as the drivetrain) and the pose is corrected as of that time. Safe to call from any
+   * thread.
+   *
+   * @param captureTimestampSeconds when the frame was captured
+   * @param xyStdDevMeters          how much to trust the measured x and y, e.g. more the closer the target
+   * @param headingStdDevRadians    how much to trust the measured heading, or {@link Double#POSITIVE_INFINITY} to
+   *                                keep the gyro's
+   * @return false if the measurement was older than {@link frc.robot.Constants#POSE_HISTORY_SECONDS} and was ignored
+   */
+  public boolean addVisionMeasurement(double captureTimestampSeconds, double xMeters, double yMeters,
+                                      double headingRadians, double xyStdDevMeters, double headingStdDevRadians) {
+    return m_odometry.addVisionMeasurement(captureTimestampSeconds, xMeters, yMeters, headingRadians,
+            xyStdDevMeters, headingStdDevRadians);
   }
 
   public void drive(ChassisSpeeds chassisSpeeds) {
-    m_chassisSpeeds = chassisSpeeds;
+    drive(chassisSpeeds.vxMetersPerSecond, chassisSpeeds.vyMetersPerSecond, chassisSpeeds.omegaRadiansPerSecond);
+  }
+
+  /**
+   * Sets the robot-relative speeds to drive at. This is the allocation-free version of {@link #drive(ChassisSpeeds)}.
+   */
+  public void drive(double vxMetersPerSecond, double vyMetersPerSecond, double omegaRadiansPerSecond) {
+    m_vxMetersPerSecond = vxMetersPerSecond;
+    m_vyMetersPerSecond = vyMetersPerSecond;
+    m_omegaRadiansPerSecond = omegaRadiansPerSecond;
+    m_request.write(vxMetersPerSecond, vyMetersPerSecond, omegaRadiansPerSecond, false,
+            m_gyroSample.getTimestampSeconds());
+  }
+
+  /**
+   * Stops and turns the modules into an X, so the robot is hard to push. The robot slows down through the setpoint
+   * generator like any other stop, and the modules only turn once every wheel is below
+   * {@link frc.robot.Constants#DRIVE_X_LOCK_MAX_SPEED_METERS_PER_SECOND}. They stay locked until the next call to
+   * {@link #drive(double, double, double)}.
+   */
+  public void lockModules() {
+    m_vxMetersPerSecond = 0.0;
+    m_vyMetersPerSecond = 0.0;
+    m_omegaRadiansPerSecond = 0.0;
+    m_request.write(0.0, 0.0, 0.0, true, m_gyroSample.getTimestampSeconds());
+  }
+
+  public double getRequestedVxMetersPerSecond() {
+    return m_vxMetersPerSecond;
+  }
+
+  public double getRequestedVyMetersPerSecond() {
+    return m_vyMetersPerSecond;
+  }
+
+  public double getRequestedOmegaRadiansPerSecond() {
+    return m_omegaRadiansPerSecond;
+  }
+
+  public SwerveDriveKinematics getKinematics() {
+    return m_kinematics;
+  }
+
+  /**
+   * Gets a module's last speed setpoint in meters per second, after desaturation. This is before it's optimized
+   * against the measured angle, so it may have the opposite sign to what was sent.
+   */
+  public double getModuleSpeedMetersPerSecond(int module) {
+    synchronized (m_outputLock) {
+      return m_moduleSpeeds[module];
+    }
+  }
+
+  /** Gets a module's last angle setpoint in radians, before it's optimized against the measured angle. */
+  public double getModuleAngleRadians(int module) {
+    synchronized (m_outputLock) {
+      return m_moduleAngles[module];
+    }
+  }
+
+  /**
+   * Stops following requests and runs the drive motors through {@code characterization}, with every module pointed
+   * straight ahead. Each output loop records every module's voltage and velocity into it, so it runs as fast as the
+   * control loop does if that's on. Requests are followed again after {@link #stopCharacterization()}.
+   */
+  public void startCharacterization(DriveCharacterization characterization) {
+    synchronized (m_outputLock) {
+      m_characterization = characterization;
+      m_characterizationStartSeconds = m_clockSeconds.getAsDouble();
+    }
+  }
+
+  /**
+   * Goes back to following requests, starting from rest. Once this returns, the characterization isn't touched again,
+   * so its fit is safe to read.
+   */
+  public void stopCharacterization() {
+    synchronized (m_outputLock) {
+      m_characterization = null;
+      resetOutputState();
+    }
+  }
+
+  /** Gets the drive feedforward in use. */
+  public DriveFeedforward getDriveFeedforward() {
+    return m_driveFeedforward;
+  }
+
+  /** Uses new drive feedforward gains from the next output loop on. */
+  public void setDriveFeedforward(DriveFeedforward feedforward) {
+    m_driveFeedforward = feedforward;
+  }
+
+  /** Gets which modules hold their own drive speed, and their gains. */
+  public ModuleControlConfig getModuleControl() {
+    return m_moduleControl;
+  }
+
+  /** Creates the drive characterization routine with the settings from {@link frc.robot.Constants}. */
+  public static DriveCharacterization createCharacterization() {
+    return new DriveCharacterization(MODULE_LOCATIONS.length, CHARACTERIZATION_RAMP_VOLTS_PER_SECOND,
+            CHARACTERIZATION_QUASISTATIC_SECONDS, CHARACTERIZATION_STEP_VOLTS, CHARACTERIZATION_DYNAMIC_SECONDS,
+            CHARACTERIZATION_REST_SECONDS, CHARACTERIZATION_MIN_VELOCITY_METERS_PER_SECOND);
+  }
+
+  /**
+   * Gets the feedforward the drivetrain uses before it's been characterized: voltage proportional to speed, with full
+   * voltage at the theoretical top speed.
+   */
+  public static DriveFeedforward createOpenLoopFeedforward() {
+    return DriveFeedforward.openLoop(MAX_VOLTAGE, MAX_VELOCITY_METERS_PER_SECOND);
+  }
+
+  /** Gets where the fitted feedforward gains are kept, in the deploy directory. */
+  public static Path getDriveFeedforwardFile() {
+    return Filesystem.getDeployDirectory().toPath().resolve(DRIVE_FEEDFORWARD_FILE);
+  }
+
+  /**
+   * Reads which modules hold their own drive speed from the deploy directory. Without the file, or if it can't be
+   * read, every module drives open loop.
+   */
+  public static ModuleControlConfig loadModuleControl() {
+    Path file = Filesystem.getDeployDirectory().toPath().resolve(MODULE_CONTROL_FILE);
+    if (!Files.exists(file)) {
+      return ModuleControlConfig.openLoop(MODULE_LOCATIONS.length);
+    }
+    try {
+      ModuleControlConfig moduleControl = ModuleControlConfig.load(file, MODULE_CONTROL_KEYS);
+      if (moduleControl.isAnyClosedLoop()) {
+        System.out.println("Drivetrain: module control " + moduleControl);
+      }
+      return moduleControl;
+    } catch (IOException e) {
+      DriverStation.reportError("Couldn't read the module control file, driving open loop: " + e.getMessage(), false);
+      return ModuleControlConfig.openLoop(MODULE_LOCATIONS.length);
+    }
+  }
+
+  private static DriveFeedforward loadDriveFeedforward() {
+    Path file = getDriveFeedforwardFile();
+    if (!Files.exists(file)) {
+      return createOpenLoopFeedforward();
+    }
+    try {
+      DriveFeedforward feedforward = DriveFeedforward.load(file);
+      System.out.println("Drivetrain: using the characterized feedforward, " + feedforward);
+      return feedforward;
+    } catch (IOException e) {
+      DriverStation.reportError("Couldn't read the drive feedforward, driving open loop: " + e.getMessage(), false);
+      return createOpenLoopFeedforward();
+    }
+  }
+
+  /**
+   * Creates a setpoint generator with the drivetrain's acceleration and steering limits from
+   * {@link frc.robot.Constants}.
+   */
+  public static SwerveSetpointGenerator createSetpointGenerator() {
+    return new SwerveSetpointGenerator(MODULE_LOCATIONS, MAX_VELOCITY_METERS_PER_SECOND,
+            DRIVE_MAX_LINEAR_ACCELERATION_METERS_PER_SECOND_SQUARED,
+            DRIVE_MAX_ANGULAR_ACCELERATION_RADIANS_PER_SECOND_SQUARED,
+            MODULE_MAX_ACCELERATION_METERS_PER_SECOND_SQUARED,
+            MODULE_MAX_STEERING_RATE_RADIANS_PER_SECOND);
+  }
+
+  /**
+   * Creates a power budget for the drive motors with the battery model and limits from {@link frc.robot.Constants}.
+   * The steer motors aren't modeled, so their allowance comes off the total first.
+   */
+  public static DrivePowerBudget createPowerBudget() {
+    double motorRadiansPerMeter = 1.0 / (SdsModuleConfigurations.MK4_L1.getWheelDiameter() / 2.0
+            * SdsModuleConfigurations.MK4_L1.getDriveReduction());
+    return new DrivePowerBudget(DCMotor.getFalcon500(1), motorRadiansPerMeter, DRIVE_CURRENT_LIMIT_AMPS,
+            MODULE_LOCATIONS.length, TOTAL_CURRENT_BUDGET_AMPS - STEER_CURRENT_ALLOWANCE_AMPS, RESERVED_CURRENT_AMPS,
+            BATTERY_RESISTANCE_OHMS, MINIMUM_BUS_VOLTAGE, BATTERY_VOLTAGE_FILTER_SECONDS);
+  }
+
+  /**
+   * Turns requested chassis speeds into module speeds and angles, the way periodic() does. The request is first
+   * limited to what the drivetrain can reach in one loop, then, with
+   * {@link frc.robot.Constants#DRIVE_DISCRETIZE_SPEEDS}, corrected for the robot turning over one nominal loop.
+   * Simulations call this to drive like the drivetrain does.
+   */
+  public static void computeModuleSetpoints(InPlaceSwerveKinematics kinematics, SwerveSetpointGenerator generator,
+                                            double vxMetersPerSecond, double vyMetersPerSecond,
+                                            double omegaRadiansPerSecond, double[] speedsOut, double[] anglesOut) {
+    computeModuleSetpoints(kinematics, generator, vxMetersPerSecond, vyMetersPerSecond, omegaRadiansPerSecond,
+            LOOP_PERIOD_SECONDS, speedsOut, anglesOut);
+  }
+
+  /**
+   * Like {@link #computeModuleSetpoints(InPlaceSwerveKinematics, SwerveSetpointGenerator, double, double, double,
+   * double[], double[])}, for an output loop that runs every {@code dtSeconds} instead of every robot loop.
+   */
+  public static void computeModuleSetpoints(InPlaceSwerveKinematics kinematics, SwerveSetpointGenerator generator,
+                                            double vxMetersPerSecond, double vyMetersPerSecond,
+                                            double omegaRadiansPerSecond, double dtSeconds, double[] speedsOut,
+                                            double[] anglesOut) {
+    computeModuleSetpoints(kinematics, generator, vxMetersPerSecond, vyMetersPerSecond, omegaRadiansPerSecond,
+            dtSeconds, DRIVE_DISCRETIZE_SPEEDS ? dtSeconds : 0.0, 0.0, speedsOut, anglesOut);
+  }
+
+  /**
+   * Turns requested chassis speeds into module speeds and angles exactly the way the drivetrain does, given the
+   * period and lookahead it corrected for the robot turning over. Log replay calls this with the ones it recorded, so
+   * it recomputes exactly what the drivetrain sent.
+   *
+   * @param dtSeconds                   how often the outputs are written, for the setpoint limits
+   * @param discretizationPeriodSeconds the measured output period to discretize over, or 0 for none
+   * @param lookaheadSeconds            the measured gyro-to-output latency to look ahead by, or 0 for none
+   * @see ChassisSpeedDiscretizer
+   */
+  public static void computeModuleSetpoints(InPlaceSwerveKinematics kinematics, SwerveSetpointGenerator generator,
+                                            double vxMetersPerSecond, double vyMetersPerSecond,
+                                            double omegaRadiansPerSecond, double dtSeconds,
+                                            double discretizationPeriodSeconds, double lookaheadSeconds,
+                                            double[] speedsOut, double[] anglesOut) {
+    generator.generate(vxMetersPerSecond, vyMetersPerSecond, omegaRadiansPerSecond, dtSeconds);
+    // The corrected chassis speeds go through the start of speedsOut, which kinematics reads before it writes.
+    ChassisSpeedDiscretizer.discretize(generator.getVxMetersPerSecond(), generator.getVyMetersPerSecond(),
+            generator.getOmegaRadiansPerSecond(), discretizationPeriodSeconds, lookaheadSeconds, speedsOut);
+    kinematics.toModuleStates(speedsOut[0], speedsOut[1], speedsOut[2], speedsOut, anglesOut);
+    InPlaceSwerveKinematics.desaturateWheelSpeeds(speedsOut, MAX_VELOCITY_METERS_PER_SECOND);
+  }
+
+  /** Reads a module's measured speed in meters per second. */
+  public double getMeasuredModuleSpeedMetersPerSecond(int module) {
+    return m_outputStages[module].getDriveVelocity();
+  }
+
+  /** Reads a module's measured angle in radians. */
+  public double getMeasuredModuleAngleRadians(int module) {
+    return m_outputStages[module].getSteerAngle();
+  }
+
+  /**
+   * Chooses when requested speeds reach the modules. By default, periodic() applies them, but the scheduler runs
+   * subsystems before commands, so whatever a command requests waits for the next loop. In same-loop mode,
+   * periodic() only reads the sensors, and {@link #applyOutputs()}, called after the scheduler, writes the outputs
+   * in the same loop as the request.
+   */
+  public void setSameLoopOutput(boolean sameLoopOutput) {
+    m_sameLoopOutput = sameLoopOutput;
+  }
+
+  public boolean isSameLoopOutput() {
+    return m_sameLoopOutput;
+  }
+
+  /**
+   * Chooses how the drivetrain corrects its chassis speeds for the robot turning while it translates. See
+   * {@link ChassisSpeedDiscretizer}.
+   *
+   * @param discretize       true to discretize over the measured time between outputs
+   * @param latencyLookahead true to also look ahead by the measured time from the gyro sample to the outputs
+   */
+  public void setSpeedCompensation(boolean discretize, boolean latencyLookahead) {
+    m_discretizeSpeeds = discretize;
+    m_latencyLookahead = latencyLookahead;
+  }
+
+  /** Gets the output period the last outputs were discretized over, or 0 if they weren't. */
+  public double getDiscretizationPeriodSeconds() {
+    return m_discretizationPeriodSeconds;
+  }
+
+  /** Gets the gyro-to-output latency the last outputs looked ahead by, or 0 if they didn't. */
+  public double getLookaheadSeconds() {
+    return m_lookaheadSeconds;
+  }
+
+  /**
+   * Writes this loop's requested speeds to the modules if the drivetrain is in same-loop mode. Call it once per loop,
+   * after the command scheduler runs. Otherwise this does nothing, since periodic() already wrote the outputs.
+   */
+  public void applyOutputs() {
+    if (m_sameLoopOutput && !m_controlLoopRunning) {
+      long start = m_applyOutputsStage.start();
+      writeModuleOutputs(m_batteryVoltageSample, LOOP_PERIOD_SECONDS);
+      m_applyOutputsStage.stop(start);
+    }
+  }
+
+  /**
+   * Moves kinematics and the module outputs onto their own thread, which runs every {@code periodSeconds} at
+   * real-time priority. From then on, {@link #drive(double, double, double)} only hands the request over; the next
+   * control loop iteration picks it up, however long the rest of the robot loop takes. periodic() and
+   * {@link #applyOutputs()} stop writing outputs until {@link #stopControlLoop()}.
+   * <p>
+   * Log replay recomputes setpoints once per robot loop, so it only reproduces the outputs exactly without the control
+   * loop.
+   */
+  public synchronized void startControlLoop(double periodSeconds) {
+    if (m_controlNotifier == null) {
+      m_controlNotifier = new Notifier(this::runControlLoop);
+      m_controlNotifier.setName("DriveControl");
+    }
+    m_controlPeriodSeconds = periodSeconds;
+    m_controlLoopJitter.setPeriod(periodSeconds);
+    m_controlLoopRunning = true;
+    m_controlNotifier.startPeriodic(periodSeconds);
+  }
+
+  /** Stops the control loop. The robot loop writes the outputs again from the next periodic(). */
+  public synchronized void stopControlLoop() {
+    if (m_controlNotifier != null) {
+      m_controlNotifier.stop();
+    }
+    m_controlLoopRunning = false;
+  }
+
+  public boolean isControlLoopRunning() {
+    return m_controlLoopRunning;
+  }
+
+  /**
+   * Runs one control loop iteration: reads the latest request and the battery voltage, and writes the module outputs.
+   * Normally the control loop thread calls this, but simulation can call it directly to step at any rate.
+   */
+  public void runControlLoop() {
+    if (!m_controlThreadConfigured) {
+      // The Notifier calls back on its own thread, so this raises the priority of just that thread.
+      Threads.setCurrentThreadPriority(true, DRIVE_CONTROL_LOOP_PRIORITY);
+      m_controlThreadConfigured = true;
+    }
+    m_controlLoopJitter.tick();
+    long start = m_controlLoopStage.start();
+    writeModuleOutputs(m_batteryVoltage.getAsDouble(), m_controlPeriodSeconds);
+    m_controlLoopStage.stop(start);
+  }
+
+  /** Gets how far apart the control loop's iterations really are, compared to its period. */
+  public LoopJitter getControlLoopJitter() {
+    return m_controlLoopJitter;
+  }
+
+  /**
+   * Gets the trace that follows a drive request from the driver's sticks to the module outputs. Every stage
+   * registers it by name, so they all share one.
+   */
+  public static LatencyTracer.Trace getDriveLatencyTrace() {
+    return LatencyTracer.getInstance().register(DRIVE_LATENCY_TRACE, "input", "command", "setpoint", "actuation");
+  }
+
+  /**
+   * Turns the latest request into module outputs and writes them.
+   *
+   * @param batteryVoltage the measured battery voltage
+   * @param dtSeconds      how often this is called
+   */
+  private void writeModuleOutputs(double batteryVoltage, double dtSeconds) {
+    synchronized (m_outputLock) {
+      if (!isHardwareReady()) {
+        // Don't drive a drivetrain that's only partly there. Once it is, start from rest.
+        resetOutputState();
+        return;
+      }
+      if (m_characterization != null) {
+        writeCharacterizationOutputs(batteryVoltage, dtSeconds);
+        return;
+      }
+      m_request.read(m_requestSample);
+      writeModuleOutputs(m_requestSample, batteryVoltage, dtSeconds);
+    }
+  }
+
+  private void writeModuleOutputs(DriveRequest.Sample request, double batteryVoltage, double dtSeconds) {
+    // The outputs are held until the next ones go out, which should take about as long as it did since the last ones,
+    // and were asked for with the heading as of the request's gyro sample. Measure both; a gap much longer than a
+    // loop is a stall, though, not a loop period.
+    double now = m_clockSeconds.getAsDouble();
+    double periodSeconds = now - m_lastOutputSeconds;
+    if (!(periodSeconds > 0.0 && periodSeconds <= DRIVE_MAX_COMPENSATION_SECONDS)) {
+      periodSeconds = dtSeconds;
+    }
+    m_lastOutputSeconds = now;
+    double latencySeconds = MathUtil.clamp(now - request.timestampSeconds, 0.0, DRIVE_MAX_COMPENSATION_SECONDS);
+    m_discretizationPeriodSeconds = m_discretizeSpeeds ? periodSeconds : 0.0;
+    m_lookaheadSeconds = m_latencyLookahead ? latencySeconds : 0.0;
+
+    // The control loop can run several times on one request. Only the first is how long the request waited.
+    boolean newRequest = request.sequence != m_lastTracedSequence;
+    m_lastTracedSequence = request.sequence;
+
+    computeModuleSetpoints(m_inPlaceKinematics, m_setpointGenerator, request.vxMetersPerSecond,
+            request.vyMetersPerSecond, request.omegaRadiansPerSecond, dtSeconds, m_discretizationPeriodSeconds,
+            m_lookaheadSeconds, m_moduleSpeeds, m_moduleAngles);
+    if (request.xLocked && isStoppedForXLock()) {
+      // A locked request asks for zero, so until now the setpoint generator has been slowing the robot down. Once it's
+      // all but stopped, drop what's left and start the generator over from there.
+      m_setpointGenerator.reset(0.0, 0.0, 0.0);
+      for (int i = 0; i < m_moduleSpeeds.length; i++) {
+        m_moduleSpeeds[i] = 0.0;
+        m_moduleAngles[i] = X_LOCK_ANGLES[i];
+      }
+    }
+    if (newRequest) {
+      m_latencyTrace.mark(TRACE_SETPOINT);
+    } else {
+      m_latencyTrace.markRepeat(TRACE_SETPOINT);
+    }
+
+    // Each module's setpoint acceleration, for the feedforward. The setpoint generator may turn a module around
+    // rather than reverse it, so compare against the last speed in the same direction. The change is spread over the
+    // measured period, like the discretization, so a late loop doesn't read as a harder push.
+    for (int i = 0; i < m_moduleSpeeds.length; i++) {
+      double previousSpeed = m_previousModuleSpeeds[i];
+      if (Math.abs(MathUtil.angleModulus(m_moduleAngles[i] - m_previousModuleAngles[i])) > Math.PI / 2.0) {
+        previousSpeed = -previousSpeed;
+      }
+      m_moduleAccelerations[i] = (m_moduleSpeeds[i] - previousSpeed) / periodSeconds;
+      m_previousModuleSpeeds[i] = m_moduleSpeeds[i];
+      m_previousModuleAngles[i] = m_moduleAngles[i];
+    }
+
+    // Steer the short way and only drive as hard as the module is lined up. This uses the measured angles, so it
+    // happens here rather than in computeModuleSetpoints(); the logged setpoints stay replayable.
+    for (int i = 0; i < m_moduleSpeeds.length; i++) {
+      m_outputSpeeds[i] = m_moduleSpeeds[i];
+      m_outputAngles[i] = m_moduleAngles[i];
+      m_measuredAngles[i] = m_outputStages[i].getSteerAngle();
+      m_measuredSpeeds[i] = m_outputStages[i].getDriveVelocity();
+    }
+    SwerveModuleOptimizer.minimizeSteering(m_outputSpeeds, m_outputAngles, m_measuredAngles);
+    SwerveModuleOptimizer.scaleByAlignment(m_outputSpeeds, m_outputAngles, m_measuredAngles);
+
+    // The feedforward turns speed and acceleration into voltage. Optimizing flipped and scaled the speed, and the
+    // acceleration goes the same way. Then scale the voltages down together to what the battery can give, before it
+    // sags rather than after.
+    DriveFeedforward feedforward = m_driveFeedforward;
+    for (int i = 0; i < m_outputSpeeds.length; i++) {
+      double acceleration = m_moduleSpeeds[i] != 0.0
+              ? m_moduleAccelerations[i] * m_outputSpeeds[i] / m_moduleSpeeds[i]
+              : 0.0;
+      m_outputVoltages[i] = feedforward.calculate(m_outputSpeeds[i], acceleration);
+    }
+    double budgetScale = m_powerBudget.apply(m_outputVoltages, m_measuredSpeeds, batteryVoltage, dtSeconds);
+
+    // Closed-loop modules send the speed with the voltage as its feedforward, and their Falcons correct from there.
+    // The correction could draw more than the budget allows, so while the budget is cutting back, they drive open
+    // loop at the voltage it allowed.
+    for (int i = 0; i < m_outputStages.length; i++) {
+      if (m_moduleControl.isClosedLoop(i) && budgetScale >= 1.0) {
+        m_outputStages[i].setVelocity(m_outputSpeeds[i], m_outputVoltages[i], m_outputAngles[i]);
+      } else {
+        m_outputStages[i].set(m_outputVoltages[i], m_outputAngles[i]);
+      }
+    }
+    m_latencyTrace.mark(TRACE_ACTUATION);
+  }
+
+  /**
+   * Whether both the module setpoints and the wheels themselves are slow enough to turn the modules into the X. Called
+   * with the output lock held.
+   */
+  private boolean isStoppedForXLock() {
+    for (int i = 0; i < m_moduleSpeeds.length; i++) {
+      if (Math.abs(m_moduleSpeeds[i]) > DRIVE_X_LOCK_MAX_SPEED_METERS_PER_SECOND
+              || Math.abs(m_outputStages[i].getDriveVelocity()) > DRIVE_X_LOCK_MAX_SPEED_METERS_PER_SECOND) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Drives every module straight ahead at the characterization's voltage, and records what each one did since the
+   * last loop. Called with the output lock held.
+   */
+  private void writeCharacterizationOutputs(double batteryVoltage, double dtSeconds) {
+    double elapsedSeconds = m_clockSeconds.getAsDouble() - m_characterizationStartSeconds;
+    for (int i = 0; i < m_outputStages.length; i++) {
+      m_measuredAngles[i] = m_outputStages[i].getSteerAngle();
+      m_measuredSpeeds[i] = m_outputStages[i].getDriveVelocity();
+      // The velocity measured now is what the voltage sent last loop did.
+      m_characterization.record(i, elapsedSeconds, m_outputStages[i].getLastSentVoltage(), m_measuredSpeeds[i]);
+    }
+
+    double voltage = m_characterization.getVoltage(elapsedSeconds);
+    for (int i = 0; i < m_outputVoltages.length; i++) {
+      m_outputVoltages[i] = voltage;
+      m_outputAngles[i] = 0.0;
+    }
+    // A module facing backwards is reversed rather than turned around, the same as when driving, so voltage and
+    // velocity stay in the motor's frame. The power budget still applies; the fit uses what was actually sent.
+    SwerveModuleOptimizer.minimizeSteering(m_outputVoltages, m_outputAngles, m_measuredAngles);
+    SwerveModuleOptimizer.scaleByAlignment(m_outputVoltages, m_outputAngles, m_measuredAngles);
+    m_powerBudget.apply(m_outputVoltages, m_measuredSpeeds, batteryVoltage, dtSeconds);
+
+    m_frontLeftModule.set(m_outputVoltages[0], m_outputAngles[0]);
+    m_frontRightModule.set(m_outputVoltages[1], m_outputAngles[1]);
+    m_backLeftModule.set(m_outputVoltages[2], m_outputAngles[2]);
+    m_backRightModule.set(m_outputVoltages[3], m_outputAngles[3]);
+  }
+
+  /** Starts the output path over from rest. Called with the output lock held. */
+  private void resetOutputState() {
+    m_setpointGenerator.reset(0.0, 0.0, 0.0);
+    m_lastOutputSeconds = Double.NaN;
+    for (int i = 0; i < m_previousModuleSpeeds.length; i++) {
+      m_previousModuleSpeeds[i] = 0.0;
+      m_previousModuleAngles[i] = m_moduleAngles[i];
+    }
   }
 
   @Override
   public void periodic() {
-    SwerveModuleState[] states = m_kinematics.toSwerveModuleStates(m_chassisSpeeds);
-    SwerveDriveKinematics.desaturateWheelSpeeds(states, MAX_VELOCITY_METERS_PER_SECOND);//this is the only error in the code and I don't know why it is an error.
+    if (m_dashboardPending) {
+      // Once, and outside the timed part so it doesn't show up as an overrun.
+      m_dashboardPending = false;
+      createDashboard();
+    }
+    long start = m_periodicStage.start();
+
+    if (m_hardwareInit != null) {
+      m_hardwareInit.poll();
+    }
+    for (int i = 0; i < m_deferredModules.length; i++) {
+      if (m_deferredModules[i] != null && m_deferredModules[i].isReady()) {
+        // The module dropped everything sent before now, so don't let the change detection skip the next output.
+        m_outputStages[i].invalidate();
+        m_deferredModules[i] = null;
+      }
+    }
+
+    sampleGyroscope();
+    m_batteryVoltageSample = m_batteryVoltage.getAsDouble();
+    if (!m_odometryThread) {
+      m_odometry.update();
+    }
+
+    if (!m_sameLoopOutput && !m_controlLoopRunning) {
+      writeModuleOutputs(m_batteryVoltageSample, LOOP_PERIOD_SECONDS);
+    }
+
+    m_periodicStage.stop(start);
 
-    m_frontLeftModule.set(states[0].speedMetersPerSecond / MAX_VELOCITY_METERS_PER_SECOND * MAX_VOLTAGE, states[0].angle.getRadians());
-    m_frontRightModule.set(states[1].speedMetersPerSecond / MAX_VELOCITY_METERS_PER_SECOND * MAX_VOLTAGE, states[1].angle.getRadians());
-    m_backLeftModule.set(states[2].speedMetersPerSecond / MAX_VELOCITY_METERS_PER_SECOND * MAX_VOLTAGE, states[2].angle.getRadians());
-    m_backRightModule.set(states[3].speedMetersPerSecond / MAX_VELOCITY_METERS_PER_SECOND * MAX_VOLTAGE, states[3].angle.getRadians());
+    // Timed as its own stage.
+    if (m_telemetry != null) {
+      m_telemetry.periodic();
+    }
   }
 }
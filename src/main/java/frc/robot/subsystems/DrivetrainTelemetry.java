@@ -0,0 +1,117 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.subsystems;
+
+import frc.robot.util.DrivePowerBudget;
+import frc.robot.util.TelemetryPublisher;
+import frc.robot.util.TelemetryPublisher.Tier;
+
+/**
+ * What the drivetrain puts on the dashboard, how often, and how much each value has to move before it's worth sending
+ * again.
+ * <p>
+ * The pose and heading go out every loop. The module layouts SDS used to publish go out at 10 Hz, which is as fast
+ * as anyone can read them, along with whether the hardware is ready or faulted; the power budget and counters go out
+ * at 5 Hz. The deadbands are around what the sensors jitter by sitting still. Everything is under "Drivetrain/" on
+ * the SmartDashboard table.
+ * <p>
+ * The values come from a {@link Source}, so the telemetry simulation can publish exactly the same set from the
+ * drivetrain simulation.
+ */
+public final class DrivetrainTelemetry {
+  /** The table the drivetrain publishes to. */
+  public static final String TABLE = "SmartDashboard";
+
+  private static final double POSE_DEADBAND_METERS = 0.002;
+  private static final double HEADING_DEADBAND_DEGREES = 0.1;
+  private static final double MODULE_ANGLE_DEADBAND_DEGREES = 0.5;
+  private static final double MODULE_SPEED_DEADBAND_METERS_PER_SECOND = 0.02;
+  private static final double VOLTAGE_DEADBAND = 0.05;
+  private static final double CURRENT_DEADBAND_AMPS = 1.0;
+  private static final double RESISTANCE_DEADBAND_OHMS = 0.001;
+  private static final double SCALE_DEADBAND = 0.01;
+
+  private DrivetrainTelemetry() {}
+
+  /** Where the drivetrain's dashboard values come from. */
+  public interface Source {
+    double getHeadingRadians();
+
+    double getXMeters();
+
+    double getYMeters();
+
+    double getMeasuredModuleAngleRadians(int module);
+
+    double getModuleAngleRadians(int module);
+
+    double getMeasuredModuleSpeedMetersPerSecond(int module);
+
+    boolean isHardwareReady();
+
+    boolean hasHardwareFault();
+
+    long getSuppressedModuleWrites();
+
+    long getSentModuleWrites();
+
+    long getFusedVisionMeasurements();
+
+    long getRejectedVisionMeasurements();
+
+    DrivePowerBudget getPowerBudget();
+  }
+
+  /**
+   * Registers every drivetrain signal with {@code publisher}.
+   *
+   * @param hardware whether the drivetrain is on real devices. Without them there's nothing to be ready or faulted,
+   *                 so those signals are left out.
+   */
+  public static void addSignals(TelemetryPublisher publisher, Source source, boolean hardware) {
+    publisher.addDouble("Drivetrain/Heading (deg)", Tier.FAST, HEADING_DEADBAND_DEGREES,
+            () -> Math.toDegrees(source.getHeadingRadians()));
+    publisher.addDouble("Drivetrain/X (m)", Tier.FAST, POSE_DEADBAND_METERS, source::getXMeters);
+    publisher.addDouble("Drivetrain/Y (m)", Tier.FAST, POSE_DEADBAND_METERS, source::getYMeters);
+
+    for (int i = 0; i < DrivetrainSubsystem.MODULE_NAMES.length; i++) {
+      int module = i;
+      String prefix = "Drivetrain/" + DrivetrainSubsystem.MODULE_NAMES[i] + "/";
+      publisher.addDouble(prefix + "Current Angle", Tier.NORMAL, MODULE_ANGLE_DEADBAND_DEGREES,
+              () -> Math.toDegrees(source.getMeasuredModuleAngleRadians(module)));
+      publisher.addDouble(prefix + "Target Angle", Tier.NORMAL, MODULE_ANGLE_DEADBAND_DEGREES,
+              () -> Math.toDegrees(source.getModuleAngleRadians(module)));
+      publisher.addDouble(prefix + "Current Velocity", Tier.NORMAL, MODULE_SPEED_DEADBAND_METERS_PER_SECOND,
+              () -> source.getMeasuredModuleSpeedMetersPerSecond(module));
+    }
+
+    // Whether the drivetrain can drive at all, where the drivers will see it.
+    if (hardware) {
+      publisher.addBoolean("Drivetrain/Hardware Ready", Tier.NORMAL, source::isHardwareReady);
+      publisher.addBoolean("Drivetrain/Hardware Fault", Tier.NORMAL, source::hasHardwareFault);
+    }
+
+    DrivePowerBudget powerBudget = source.getPowerBudget();
+    publisher.addDouble("Drivetrain/Suppressed Module Writes", Tier.DIAGNOSTIC, 0.0,
+            source::getSuppressedModuleWrites);
+    publisher.addDouble("Drivetrain/Sent Module Writes", Tier.DIAGNOSTIC, 0.0, source::getSentModuleWrites);
+    publisher.addDouble("Drivetrain/Fused Vision Measurements", Tier.DIAGNOSTIC, 0.0,
+            source::getFusedVisionMeasurements);
+    publisher.addDouble("Drivetrain/Rejected Vision Measurements", Tier.DIAGNOSTIC, 0.0,
+            source::getRejectedVisionMeasurements);
+    publisher.addDouble("Drivetrain/Battery Voltage", Tier.DIAGNOSTIC, VOLTAGE_DEADBAND, powerBudget::getBusVoltage);
+    publisher.addDouble("Drivetrain/Predicted Bus Voltage", Tier.DIAGNOSTIC, VOLTAGE_DEADBAND,
+            powerBudget::getPredictedBusVoltage);
+    publisher.addDouble("Drivetrain/Estimated Current (A)", Tier.DIAGNOSTIC, CURRENT_DEADBAND_AMPS,
+            powerBudget::getEstimatedCurrentAmps);
+    publisher.addDouble("Drivetrain/Battery Resistance (Ohms)", Tier.DIAGNOSTIC, RESISTANCE_DEADBAND_OHMS,
+            powerBudget::getResistanceOhms);
+    publisher.addDouble("Drivetrain/Drive Power Scale", Tier.DIAGNOSTIC, SCALE_DEADBAND, powerBudget::getScale);
+
+    // And what the publishing itself costs, so it can be watched on the robot.
+    publisher.addDouble("Drivetrain/Telemetry Updates", Tier.DIAGNOSTIC, 0.0, publisher::getUpdatesSent);
+    publisher.addDouble("Drivetrain/Telemetry Bytes", Tier.DIAGNOSTIC, 0.0, publisher::getEstimatedBytesSent);
+  }
+}
@@ -0,0 +1,157 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.subsystems;
+
+import com.ctre.phoenix.ErrorCode;
+import com.ctre.phoenix.motorcontrol.DemandType;
+import com.ctre.phoenix.motorcontrol.NeutralMode;
+import com.ctre.phoenix.motorcontrol.StatusFrameEnhanced;
+import com.ctre.phoenix.motorcontrol.TalonFXControlMode;
+import com.ctre.phoenix.motorcontrol.TalonFXInvertType;
+import com.ctre.phoenix.motorcontrol.can.TalonFX;
+import com.ctre.phoenix.motorcontrol.can.TalonFXConfiguration;
+import com.ctre.phoenix.sensors.SensorVelocityMeasPeriod;
+import com.swervedrivespecialties.swervelib.ModuleConfiguration;
+import com.swervedrivespecialties.swervelib.SteerController;
+import com.swervedrivespecialties.swervelib.ctre.CanCoderAbsoluteConfiguration;
+import com.swervedrivespecialties.swervelib.ctre.CanCoderFactoryBuilder;
+import com.swervedrivespecialties.swervelib.ctre.Falcon500SteerConfiguration;
+import com.swervedrivespecialties.swervelib.ctre.Falcon500SteerControllerFactoryBuilder;
+
+import edu.wpi.first.math.MathUtil;
+import frc.robot.util.ModuleControlConfig;
+
+/**
+ * A swerve module with two Falcon 500s whose drive Falcon can hold a wheel speed on its own.
+ * <p>
+ * The steering is SDS's: a Falcon position loop with the steer gains from the {@link ModuleControlConfig}, against
+ * the CANCoder. The drive Falcon is configured the way SDS configures it (voltage compensation, supply current limit,
+ * brake mode) plus a velocity loop in slot 0. {@link #set(double, double)} drives open loop exactly like an SDS
+ * module; {@link #setVelocity(double, double, double)} sends the speed and feedforward in one frame and the Talon
+ * corrects every millisecond.
+ * <p>
+ * The Talon's velocity measurement defaults to a 100 ms average, far too slow to close a loop on, so it's shortened
+ * to 10 ms.
+ */
+public class Falcon500SwerveModule implements VelocitySwerveModule {
+  private static final double TICKS_PER_ROTATION = 2048.0;
+  private static final double TALON_FULL_OUTPUT = 1023.0;
+  // The Talon's closed loop runs every millisecond, and measures speed in ticks per 100 ms.
+  private static final double TALON_LOOP_SECONDS = 0.001;
+  private static final double TALON_VELOCITY_SECONDS = 0.1;
+  private static final int VELOCITY_MEASUREMENT_WINDOW = 8;
+  private static final int CAN_TIMEOUT_MS = 250;
+  private static final int STATUS_FRAME_GENERAL_PERIOD_MS = 250;
+  private static final int STEER_ENCODER_READING_PERIOD_MS = 100;
+
+  private final TalonFX m_driveMotor;
+  private final SteerController m_steerController;
+  private final double m_nominalVoltage;
+  // Converts meters per second to the Talon's ticks per 100 ms.
+  private final double m_ticksPer100MsPerMeterPerSecond;
+
+  /**
+   * Creates and configures the module, blocking until both Falcons and the CANCoder have taken their configuration.
+   *
+   * @param moduleConfiguration the module's reductions and inversions, e.g. {@code SdsModuleConfigurations.MK4_L1}
+   * @param nominalVoltage      the voltage both Falcons compensate to
+   * @param driveCurrentLimit   the drive Falcon's supply current limit in amps
+   * @param steerCurrentLimit   the steer Falcon's supply current limit in amps
+   * @param controlConfig       the drive velocity and steer position gains
+   * @throws IllegalStateException if the drive Falcon doesn't take its configuration
+   */
+  public Falcon500SwerveModule(ModuleConfiguration moduleConfiguration, int driveMotorId, int steerMotorId,
+                               int steerEncoderId, double steerOffsetRadians, double nominalVoltage,
+                               double driveCurrentLimit, double steerCurrentLimit, ModuleControlConfig controlConfig) {
+    m_nominalVoltage = nominalVoltage;
+    double metersPerTick = Math.PI * moduleConfiguration.getWheelDiameter() * moduleConfiguration.getDriveReduction()
+            / TICKS_PER_ROTATION;
+    m_ticksPer100MsPerMeterPerSecond = TALON_VELOCITY_SECONDS / metersPerTick;
+
+    TalonFXConfiguration driveConfiguration = new TalonFXConfiguration();
+    driveConfiguration.voltageCompSaturation = nominalVoltage;
+    driveConfiguration.supplyCurrLimit.currentLimit = driveCurrentLimit;
+    driveConfiguration.supplyCurrLimit.enable = true;
+    driveConfiguration.velocityMeasurementPeriod = SensorVelocityMeasPeriod.Period_10Ms;
+    driveConfiguration.velocityMeasurementWindow = VELOCITY_MEASUREMENT_WINDOW;
+    // The gains are in volts per m/s and so on; the Talon wants output units per tick per 100 ms, summed or
+    // differenced once a millisecond.
+    double outputPerVoltPerNativeVelocity = TALON_FULL_OUTPUT / nominalVoltage / m_ticksPer100MsPerMeterPerSecond;
+    driveConfiguration.slot0.kP = controlConfig.getDriveKp() * outputPerVoltPerNativeVelocity;
+    driveConfiguration.slot0.kI = controlConfig.getDriveKi() * outputPerVoltPerNativeVelocity * TALON_LOOP_SECONDS;
+    driveConfiguration.slot0.kD = controlConfig.getDriveKd() * outputPerVoltPerNativeVelocity / TALON_LOOP_SECONDS;
+    driveConfiguration.slot0.kF = 0.0;
+
+    m_driveMotor = new TalonFX(driveMotorId);
+    checkError(m_driveMotor.configAllSettings(driveConfiguration, CAN_TIMEOUT_MS), "configure", driveMotorId);
+    m_driveMotor.enableVoltageCompensation(true);
+    m_driveMotor.setNeutralMode(NeutralMode.Brake);
+    m_driveMotor.setInverted(moduleConfiguration.isDriveInverted()
+            ? TalonFXInvertType.Clockwise
+            : TalonFXInvertType.CounterClockwise);
+    m_driveMotor.setSensorPhase(true);
+    checkError(m_driveMotor.setStatusFramePeriod(StatusFrameEnhanced.Status_1_General,
+            STATUS_FRAME_GENERAL_PERIOD_MS, CAN_TIMEOUT_MS), "set the status frame period of", driveMotorId);
+
+    m_steerController = new Falcon500SteerControllerFactoryBuilder()
+            .withVoltageCompensation(nominalVoltage)
+            .withPidConstants(controlConfig.getSteerKp(), controlConfig.getSteerKi(), controlConfig.getSteerKd())
+            .withCurrentLimit(steerCurrentLimit)
+            .build(new CanCoderFactoryBuilder()
+                    .withReadingUpdatePeriod(STEER_ENCODER_READING_PERIOD_MS)
+                    .build())
+            .create(new Falcon500SteerConfiguration<>(steerMotorId,
+                    new CanCoderAbsoluteConfiguration(steerEncoderId, steerOffsetRadians)), moduleConfiguration);
+  }
+
+  private static void checkError(ErrorCode error, String action, int id) {
+    if (error != ErrorCode.OK) {
+      throw new IllegalStateException("Couldn't " + action + " the drive Falcon " + id + ": " + error);
+    }
+  }
+
+  @Override
+  public double getDriveVelocity() {
+    return m_driveMotor.getSelectedSensorVelocity() / m_ticksPer100MsPerMeterPerSecond;
+  }
+
+  @Override
+  public double getSteerAngle() {
+    return m_steerController.getStateAngle();
+  }
+
+  @Override
+  public void set(double driveVoltage, double steerAngle) {
+    if (isFlipped(steerAngle)) {
+      steerAngle += Math.PI;
+      driveVoltage = -driveVoltage;
+    }
+    m_driveMotor.set(TalonFXControlMode.PercentOutput, driveVoltage / m_nominalVoltage);
+    m_steerController.setReferenceAngle(normalizeAngle(steerAngle));
+  }
+
+  @Override
+  public void setVelocity(double driveVelocityMetersPerSecond, double driveFeedforwardVolts, double steerAngle) {
+    if (isFlipped(steerAngle)) {
+      steerAngle += Math.PI;
+      driveVelocityMetersPerSecond = -driveVelocityMetersPerSecond;
+      driveFeedforwardVolts = -driveFeedforwardVolts;
+    }
+    m_driveMotor.set(TalonFXControlMode.Velocity, driveVelocityMetersPerSecond * m_ticksPer100MsPerMeterPerSecond,
+            DemandType.ArbitraryFeedForward, driveFeedforwardVolts / m_nominalVoltage);
+    m_steerController.setReferenceAngle(normalizeAngle(steerAngle));
+  }
+
+  /** Whether to turn the other way round and reverse the wheel, the same choice SDS's modules make. */
+  private boolean isFlipped(double steerAngle) {
+    return Math.abs(MathUtil.angleModulus(steerAngle - getSteerAngle())) > Math.PI / 2.0;
+  }
+
+  /** Puts an angle in [0, 2pi), which is what SDS's steer controller expects. */
+  private static double normalizeAngle(double angle) {
+    angle %= 2.0 * Math.PI;
+    return angle < 0.0 ? angle + 2.0 * Math.PI : angle;
+  }
+}
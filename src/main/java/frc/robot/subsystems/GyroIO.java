@@ -0,0 +1,25 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.subsystems;
+
+/**
+ * The gyro as {@link DrivetrainSubsystem} sees it. The modules already have an interface of their own (SDS's
+ * {@link com.swervedrivespecialties.swervelib.SwerveModule}); this lets the gyro be swapped out the same way, e.g. for
+ * the simulated one in {@link frc.robot.sim.DrivetrainSim}.
+ * <p>
+ * Rotating the robot counter-clockwise must make the yaw increase.
+ */
+public interface GyroIO {
+  /**
+   * Gets the yaw in degrees. This may be called from the odometry thread, so it must be thread safe.
+   */
+  double getYawDegrees();
+
+  /** Gets the yaw rate in degrees per second. Only called from the main robot thread. */
+  double getYawRateDegreesPerSecond();
+
+  /** Sets the current yaw to the given value. */
+  void setYawDegrees(double yawDegrees);
+}
@@ -0,0 +1,58 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.subsystems;
+
+import edu.wpi.first.math.geometry.Rotation2d;
+
+/**
+ * One reading of the gyro, taken once per loop by {@link DrivetrainSubsystem#periodic()}.
+ * <p>
+ * Callers get a read-only view: only the drivetrain can update it. Everything that reads the heading during a loop
+ * therefore sees the same value, and the Pigeon is only asked once.
+ */
+public class GyroSample {
+  private double m_yawDegrees = 0.0;
+  private double m_yawRateDegreesPerSecond = 0.0;
+  private double m_timestampSeconds = 0.0;
+  // Built on first request and kept until the next update, so a loop allocates at most one.
+  private Rotation2d m_rotation = null;
+
+  void update(double yawDegrees, double yawRateDegreesPerSecond, double timestampSeconds) {
+    m_yawDegrees = yawDegrees;
+    m_yawRateDegreesPerSecond = yawRateDegreesPerSecond;
+    m_timestampSeconds = timestampSeconds;
+    m_rotation = null;
+  }
+
+  /** Counter-clockwise positive. Not wrapped, so it keeps counting past 360. */
+  public double getYawDegrees() {
+    return m_yawDegrees;
+  }
+
+  public double getYawRadians() {
+    return Math.toRadians(m_yawDegrees);
+  }
+
+  /** Counter-clockwise positive. */
+  public double getYawRateDegreesPerSecond() {
+    return m_yawRateDegreesPerSecond;
+  }
+
+  public double getYawRateRadiansPerSecond() {
+    return Math.toRadians(m_yawRateDegreesPerSecond);
+  }
+
+  /** The FPGA time the sample was taken. */
+  public double getTimestampSeconds() {
+    return m_timestampSeconds;
+  }
+
+  public Rotation2d getRotation() {
+    if (m_rotation == null) {
+      m_rotation = Rotation2d.fromDegrees(m_yawDegrees);
+    }
+    return m_rotation;
+  }
+}
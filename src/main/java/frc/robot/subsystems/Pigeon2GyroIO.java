@@ -0,0 +1,61 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.subsystems;
+
+import java.util.concurrent.TimeoutException;
+
+import com.ctre.phoenix.ErrorCode;
+import com.ctre.phoenix.sensors.Pigeon2;
+
+/**
+ * A {@link GyroIO} backed by a CTRE Pigeon 2 on the CAN bus.
+ */
+public class Pigeon2GyroIO implements GyroIO {
+  private final Pigeon2 m_pigeon;
+  private final double[] m_rates = new double[3];
+
+  public Pigeon2GyroIO(int canId) {
+    m_pigeon = new Pigeon2(canId);
+  }
+
+  /**
+   * Blocks until the Pigeon answers on the CAN bus. Until then, reads come back as zero with an error instead of the
+   * real yaw.
+   *
+   * @param timeoutSeconds how long to wait
+   * @throws TimeoutException     if it still hasn't answered after that long
+   * @throws InterruptedException if the thread is interrupted while waiting
+   */
+  public void awaitPresent(double timeoutSeconds) throws TimeoutException, InterruptedException {
+    long deadline = System.nanoTime() + (long) (timeoutSeconds * 1e9);
+    while (true) {
+      m_pigeon.getYaw();
+      if (m_pigeon.getLastError() == ErrorCode.OK) {
+        return;
+      }
+      if (System.nanoTime() - deadline >= 0) {
+        throw new TimeoutException("The Pigeon didn't answer within " + timeoutSeconds + " s");
+      }
+      Thread.sleep(20);
+    }
+  }
+
+  @Override
+  public double getYawDegrees() {
+    return m_pigeon.getYaw();
+  }
+
+  @Override
+  public double getYawRateDegreesPerSecond() {
+    // getRawGyro() fills in x, y and z. Yaw is about z.
+    m_pigeon.getRawGyro(m_rates);
+    return m_rates[2];
+  }
+
+  @Override
+  public void setYawDegrees(double yawDegrees) {
+    m_pigeon.setYaw(yawDegrees);
+  }
+}
@@ -0,0 +1,23 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.subsystems;
+
+import com.swervedrivespecialties.swervelib.SwerveModule;
+
+/**
+ * A {@link SwerveModule} whose drive motor controller can hold a wheel speed itself. The motor controller closes the
+ * loop every millisecond against its own encoder, so the robot loop only has to send the setpoint.
+ */
+public interface VelocitySwerveModule extends SwerveModule {
+  /**
+   * Drives at a wheel speed, with the motor controller's velocity loop correcting on top of a feedforward voltage.
+   * Like {@link #set(double, double)}, the module may turn the other way round and reverse the wheel instead.
+   *
+   * @param driveVelocityMetersPerSecond the wheel speed to hold
+   * @param driveFeedforwardVolts        the voltage that should hold it without any correction
+   * @param steerAngle                   the steering angle in radians
+   */
+  void setVelocity(double driveVelocityMetersPerSecond, double driveFeedforwardVolts, double steerAngle);
+}
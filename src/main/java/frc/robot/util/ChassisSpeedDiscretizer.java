@@ -0,0 +1,68 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+/**
+ * Corrects robot-relative chassis speeds for the robot turning while it holds them.
+ * <p>
+ * A field-relative request is turned into robot-relative speeds with the heading as of the gyro sample, and the
+ * modules then hold those speeds for a whole output period. While the robot spins, the robot frame turns under them,
+ * so the translation sweeps an arc and comes out rotated towards the spin, by half the turn in the period. It also
+ * turns during the time between the gyro sample and the outputs, so the arc starts late as well. Both show up as the
+ * robot curving away from the commanded direction, by an amount that depends on how fast it spins.
+ * <p>
+ * {@link #discretize} first turns the translation back by however far the robot will have turned by the time the
+ * outputs go out (the lookahead), then picks the speeds whose arc over the period ends exactly where holding the
+ * request in a straight line would have. That's the pose exponential's inverse: the twist that reaches
+ * {@code (vx dt, vy dt, omega dt)}. Everything is done on primitives, so nothing is allocated.
+ * <p>
+ * This only corrects for the speeds being held while the robot turns. The modules take a while to follow a new
+ * setpoint too, and the robot still drifts by however far it turns in that time; see
+ * SpinDriftTest.
+ */
+public final class ChassisSpeedDiscretizer {
+  private ChassisSpeedDiscretizer() {}
+
+  /**
+   * Corrects robot-relative speeds for the robot turning during the lookahead and the output period.
+   *
+   * @param vxMetersPerSecond     requested robot-relative forward velocity
+   * @param vyMetersPerSecond     requested robot-relative leftward velocity
+   * @param omegaRadiansPerSecond requested counter-clockwise angular velocity
+   * @param periodSeconds         how long the outputs will be held, or 0 to not discretize
+   * @param lookaheadSeconds      how long ago the heading the request used was measured, or 0 to not look ahead
+   * @param out                   receives the corrected vx, vy and omega; omega is unchanged
+   */
+  public static void discretize(double vxMetersPerSecond, double vyMetersPerSecond, double omegaRadiansPerSecond,
+                                double periodSeconds, double lookaheadSeconds, double[] out) {
+    double vx = vxMetersPerSecond;
+    double vy = vyMetersPerSecond;
+    if (lookaheadSeconds > 0.0) {
+      // By the time the outputs go out, the robot frame has turned this far from the one the request was made in.
+      double turned = omegaRadiansPerSecond * lookaheadSeconds;
+      double cos = Math.cos(turned);
+      double sin = Math.sin(turned);
+      vx = vxMetersPerSecond * cos + vyMetersPerSecond * sin;
+      vy = -vxMetersPerSecond * sin + vyMetersPerSecond * cos;
+    }
+
+    if (periodSeconds > 0.0) {
+      // Pose2d.log() of (vx dt, vy dt, omega dt), divided by dt again. The dt cancels everywhere but the angle.
+      double halfTheta = 0.5 * omegaRadiansPerSecond * periodSeconds;
+      double cosMinusOne = Math.cos(2.0 * halfTheta) - 1.0;
+      double halfThetaByTanOfHalfTheta = Math.abs(cosMinusOne) < 1e-9
+              ? 1.0 - halfTheta * halfTheta / 3.0
+              : -(halfTheta * Math.sin(2.0 * halfTheta)) / cosMinusOne;
+      double twistVx = halfThetaByTanOfHalfTheta * vx + halfTheta * vy;
+      double twistVy = -halfTheta * vx + halfThetaByTanOfHalfTheta * vy;
+      vx = twistVx;
+      vy = twistVy;
+    }
+
+    out[0] = vx;
+    out[1] = vy;
+    out[2] = omegaRadiansPerSecond;
+  }
+}
@@ -0,0 +1,249 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+
+/**
+ * Creates and configures hardware devices on background threads, all at once, so robotInit() doesn't wait through
+ * each device's CAN configuration in turn.
+ * <p>
+ * Every device gets its own thread, and {@link Device#get()} returns null until that device is ready. If the factory
+ * throws, it's tried again, up to the given number of attempts. Configuring a CTRE device can't be interrupted, so a
+ * device that takes longer than the timeout can't be retried; it's marked failed instead, and picked up if it
+ * finishes later after all. {@link #isReady()} is the readiness gate, true once every device has been created without
+ * throwing, and {@link #hasFailures()} says whether any device has failed or timed out, a hard fault until it's ready.
+ * <p>
+ * {@link #poll()} reports failures and timeouts to the driver station, and how long each device took to SmartDashboard
+ * under "Boot/", along with whether each device failed, so boot time regressions and missing devices show up. Call it
+ * from the main robot thread.
+ */
+public class DeviceInitializer {
+  private final String m_name;
+  private final long m_timeoutNanos;
+  private final int m_attempts;
+  private final long m_retryDelayMillis;
+  private final long m_startNanos = System.nanoTime();
+  private final List<Device<?>> m_devices = new ArrayList<>();
+  // Once every device is ready this stays true, so the gate is a single volatile read from then on.
+  private volatile boolean m_ready = false;
+  private boolean m_readyReported = false;
+
+  /**
+   * Creates an initializer that tries each device once.
+   *
+   * @param name           the name devices are reported under, e.g. the subsystem's
+   * @param timeoutSeconds how long any one device may take before it's marked failed
+   */
+  public DeviceInitializer(String name, double timeoutSeconds) {
+    this(name, timeoutSeconds, 1, 0.0);
+  }
+
+  /**
+   * @param name              the name devices are reported under, e.g. the subsystem's
+   * @param timeoutSeconds    how long any one device may take before it's marked failed
+   * @param attempts          how many times to try a device whose factory throws
+   * @param retryDelaySeconds how long to wait between attempts
+   */
+  public DeviceInitializer(String name, double timeoutSeconds, int attempts, double retryDelaySeconds) {
+    if (attempts < 1) {
+      throw new IllegalArgumentException("A device needs at least one attempt");
+    }
+    m_name = name;
+    m_timeoutNanos = (long) (timeoutSeconds * 1e9);
+    m_attempts = attempts;
+    m_retryDelayMillis = (long) (retryDelaySeconds * 1000.0);
+  }
+
+  /**
+   * Starts creating a device on its own thread.
+   *
+   * @param deviceName the name it's reported under
+   * @param factory    creates and configures the device, blocking until it has confirmed its configuration
+   */
+  public synchronized <T> Device<T> submit(String deviceName, Factory<T> factory) {
+    Device<T> device = new Device<>(deviceName, factory, m_attempts, m_retryDelayMillis);
+    m_devices.add(device);
+    m_ready = false;
+    Thread thread = new Thread(device::initialize, m_name + " init: " + deviceName);
+    thread.setDaemon(true);
+    thread.start();
+    return device;
+  }
+
+  /** Whether every device has been created and configured. Safe to call from any thread. */
+  public boolean isReady() {
+    if (m_ready) {
+      return true;
+    }
+    synchronized (this) {
+      for (Device<?> device : m_devices) {
+        if (!device.isReady()) {
+          return false;
+        }
+      }
+      m_ready = true;
+      return true;
+    }
+  }
+
+  /**
+   * Whether any device has failed every attempt, or timed out and hasn't finished since. The drivetrain can't drive
+   * until it's fixed, so this is a hard fault. Safe to call from any thread.
+   */
+  public synchronized boolean hasFailures() {
+    if (m_ready) {
+      return false;
+    }
+    for (Device<?> device : m_devices) {
+      if (device.isFailed()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Reports devices that finished, failed, were retried or timed out since the last call, each once. Call it every
+   * loop from the main robot thread.
+   */
+  public synchronized void poll() {
+    long now = System.nanoTime();
+    for (Device<?> device : m_devices) {
+      if (device.m_reported) {
+        continue;
+      }
+      String key = "Boot/" + m_name + "/" + device.m_name;
+      int failedAttempts = device.m_failedAttempts;
+      long initNanos = device.m_initNanos;
+      if (initNanos < 0 && failedAttempts > device.m_reportedAttempts) {
+        device.m_reportedAttempts = failedAttempts;
+        DriverStation.reportWarning(m_name + ": " + device.m_name + " failed to initialize on attempt "
+                + failedAttempts + " of " + device.m_attempts + ", retrying: " + device.m_failure, false);
+      }
+      if (initNanos >= 0) {
+        device.m_reported = true;
+        SmartDashboard.putNumber(key + " (ms)", initNanos / 1e6);
+        SmartDashboard.putBoolean(key + " failed", device.isFailed());
+        Throwable failure = device.m_failure;
+        if (device.isFailed()) {
+          DriverStation.reportError(m_name + ": " + device.m_name + " failed to initialize after "
+                  + device.m_attempts + " attempts and " + initNanos / 1000000 + " ms: " + failure, false);
+        }
+      } else if (!device.m_timedOut && now - device.m_startNanos > m_timeoutNanos) {
+        device.m_timedOut = true;
+        SmartDashboard.putBoolean(key + " failed", true);
+        DriverStation.reportError(m_name + ": " + device.m_name + " still isn't configured after "
+                + m_timeoutNanos / 1000000 + " ms. Marked failed; outputs stay off unless it finishes.", false);
+      }
+    }
+    if (!m_readyReported && isReady()) {
+      m_readyReported = true;
+      SmartDashboard.putNumber("Boot/" + m_name + "/ready (ms)", (now - m_startNanos) / 1e6);
+    }
+  }
+
+  public synchronized List<Device<?>> getDevices() {
+    return new ArrayList<>(m_devices);
+  }
+
+  /** Creates a device. May block on the CAN bus for as long as it takes. */
+  @FunctionalInterface
+  public interface Factory<T> {
+    T create() throws Exception;
+  }
+
+  /** One device being created in the background. */
+  public static final class Device<T> {
+    private final String m_name;
+    private final Factory<T> m_factory;
+    private final int m_attempts;
+    private final long m_retryDelayMillis;
+    private final long m_startNanos = System.nanoTime();
+    private volatile T m_value;
+    // What the last failed attempt threw, and how many attempts have failed so far.
+    private volatile Throwable m_failure;
+    private volatile int m_failedAttempts = 0;
+    // How long it took to create, or -1 while it's still going. Written after m_value and m_failure.
+    private volatile long m_initNanos = -1;
+    // Set by poll() once the device takes longer than the timeout.
+    private volatile boolean m_timedOut = false;
+
+    // Only touched by poll(), under the initializer's lock.
+    private boolean m_reported = false;
+    private int m_reportedAttempts = 0;
+
+    private Device(String name, Factory<T> factory, int attempts, long retryDelayMillis) {
+      m_name = name;
+      m_factory = factory;
+      m_attempts = attempts;
+      m_retryDelayMillis = retryDelayMillis;
+    }
+
+    private void initialize() {
+      for (int attempt = 1; attempt <= m_attempts; attempt++) {
+        try {
+          T value = m_factory.create();
+          if (value == null) {
+            throw new IllegalStateException("the factory returned null");
+          }
+          m_value = value;
+          break;
+        } catch (InterruptedException e) {
+          // Someone wants this thread to stop, so don't try again.
+          m_failure = e;
+          m_failedAttempts = attempt;
+          Thread.currentThread().interrupt();
+          break;
+        } catch (Exception e) {
+          m_failure = e;
+          m_failedAttempts = attempt;
+        }
+        if (attempt < m_attempts && m_retryDelayMillis > 0) {
+          try {
+            Thread.sleep(m_retryDelayMillis);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            break;
+          }
+        }
+      }
+      m_initNanos = System.nanoTime() - m_startNanos;
+    }
+
+    public String getName() {
+      return m_name;
+    }
+
+    /** Gets the device, or null if it isn't ready (yet). */
+    public T get() {
+      return m_value;
+    }
+
+    public boolean isReady() {
+      return m_value != null;
+    }
+
+    /** Whether every attempt failed, or it timed out and hasn't finished since. */
+    public boolean isFailed() {
+      return m_value == null && (m_initNanos >= 0 || m_timedOut);
+    }
+
+    /** Gets what the factory last threw, or null if it hasn't (yet). */
+    public Throwable getFailure() {
+      return m_failure;
+    }
+
+    /** Gets how long the device took to create and configure, or NaN if it's still going. */
+    public double getInitSeconds() {
+      long initNanos = m_initNanos;
+      return initNanos < 0 ? Double.NaN : initNanos / 1e9;
+    }
+  }
+}
@@ -0,0 +1,157 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+/**
+ * Runs the drive motors through the usual system identification tests and fits their feedforward gains as it goes.
+ * <p>
+ * The tests are a slow (quasistatic) voltage ramp forwards and backwards, then a voltage step (dynamic) forwards and
+ * backwards, with a rest before each so the robot stops and the modules line up. Going forwards then backwards
+ * leaves the robot roughly where it started. {@link #getVoltage(double)} says what to apply when.
+ * <p>
+ * Every output loop, each module's applied voltage and measured velocity go to {@link #record(int, double, double,
+ * double)}. Each module keeps the last {@link #WINDOW} samples in preallocated arrays; acceleration is the slope of
+ * velocity across that window, credited to the sample in the middle of it, and that sample goes straight into a
+ * {@link FeedforwardFit}. Nothing else is kept, so the run can be as long as it likes and recording doesn't allocate.
+ * Samples slower than the minimum velocity are left out, since static friction doesn't follow the model there. The
+ * window starts over at every change of phase, so a voltage step never shows up as acceleration.
+ * <p>
+ * Recording has to come from one thread; read the fit once that thread is done with it.
+ */
+public class DriveCharacterization {
+  /** How many samples acceleration is measured across. Odd, so one sample is in the middle. */
+  public static final int WINDOW = 5;
+
+  private final double[] m_phaseStartSeconds;
+  private final double[] m_phaseStartVolts;
+  private final double[] m_phaseRampVoltsPerSecond;
+  private final boolean[] m_phaseRecorded;
+  private final double m_durationSeconds;
+  private final double m_minVelocityMetersPerSecond;
+
+  private final double[][] m_windowSeconds;
+  private final double[][] m_windowVolts;
+  private final double[][] m_windowVelocities;
+  private final int[] m_windowCounts;
+  private final int[] m_windowPhases;
+
+  private final FeedforwardFit m_fit = new FeedforwardFit();
+
+  /**
+   * @param moduleCount                  how many modules record
+   * @param quasistaticRampVoltsPerSecond how fast the slow ramp climbs
+   * @param quasistaticSeconds           how long each slow ramp lasts
+   * @param dynamicStepVolts             the size of the voltage step
+   * @param dynamicSeconds               how long each step lasts
+   * @param restSeconds                  how long to rest before each test
+   * @param minVelocityMetersPerSecond   samples slower than this aren't fitted
+   */
+  public DriveCharacterization(int moduleCount, double quasistaticRampVoltsPerSecond, double quasistaticSeconds,
+                               double dynamicStepVolts, double dynamicSeconds, double restSeconds,
+                               double minVelocityMetersPerSecond) {
+    // Rest, then test, four times over, with a rest at the end so the robot stops before the command ends.
+    double[][] phases = {
+            {restSeconds, 0.0, 0.0, 0.0},
+            {quasistaticSeconds, 0.0, quasistaticRampVoltsPerSecond, 1.0},
+            {restSeconds, 0.0, 0.0, 0.0},
+            {quasistaticSeconds, 0.0, -quasistaticRampVoltsPerSecond, 1.0},
+            {restSeconds, 0.0, 0.0, 0.0},
+            {dynamicSeconds, dynamicStepVolts, 0.0, 1.0},
+            {restSeconds, 0.0, 0.0, 0.0},
+            {dynamicSeconds, -dynamicStepVolts, 0.0, 1.0},
+            {restSeconds, 0.0, 0.0, 0.0},
+    };
+    m_phaseStartSeconds = new double[phases.length];
+    m_phaseStartVolts = new double[phases.length];
+    m_phaseRampVoltsPerSecond = new double[phases.length];
+    m_phaseRecorded = new boolean[phases.length];
+    double start = 0.0;
+    for (int i = 0; i < phases.length; i++) {
+      m_phaseStartSeconds[i] = start;
+      m_phaseStartVolts[i] = phases[i][1];
+      m_phaseRampVoltsPerSecond[i] = phases[i][2];
+      m_phaseRecorded[i] = phases[i][3] != 0.0;
+      start += phases[i][0];
+    }
+    m_durationSeconds = start;
+    m_minVelocityMetersPerSecond = minVelocityMetersPerSecond;
+
+    m_windowSeconds = new double[moduleCount][WINDOW];
+    m_windowVolts = new double[moduleCount][WINDOW];
+    m_windowVelocities = new double[moduleCount][WINDOW];
+    m_windowCounts = new int[moduleCount];
+    m_windowPhases = new int[moduleCount];
+  }
+
+  /** Gets how long the whole routine takes. */
+  public double getDurationSeconds() {
+    return m_durationSeconds;
+  }
+
+  public boolean isFinished(double elapsedSeconds) {
+    return elapsedSeconds >= m_durationSeconds;
+  }
+
+  /** Gets the voltage every drive motor should have, this far into the routine. Zero once it's finished. */
+  public double getVoltage(double elapsedSeconds) {
+    if (elapsedSeconds < 0.0 || isFinished(elapsedSeconds)) {
+      return 0.0;
+    }
+    int phase = getPhase(elapsedSeconds);
+    return m_phaseStartVolts[phase]
+            + m_phaseRampVoltsPerSecond[phase] * (elapsedSeconds - m_phaseStartSeconds[phase]);
+  }
+
+  private int getPhase(double elapsedSeconds) {
+    int phase = 0;
+    while (phase + 1 < m_phaseStartSeconds.length && elapsedSeconds >= m_phaseStartSeconds[phase + 1]) {
+      phase++;
+    }
+    return phase;
+  }
+
+  /**
+   * Records one module's output. The voltage and velocity must be in the same frame, i.e. the voltage that actually
+   * went to the motor and the velocity that motor measured.
+   *
+   * @param module         which module
+   * @param elapsedSeconds how far into the routine this was measured
+   * @param voltage        the voltage applied to the drive motor
+   * @param velocity       the drive velocity measured, in meters per second
+   */
+  public void record(int module, double elapsedSeconds, double voltage, double velocity) {
+    int phase = isFinished(elapsedSeconds) ? -1 : getPhase(elapsedSeconds);
+    if (phase != m_windowPhases[module]) {
+      m_windowPhases[module] = phase;
+      m_windowCounts[module] = 0;
+    }
+    if (phase < 0 || !m_phaseRecorded[phase]) {
+      return;
+    }
+
+    int count = m_windowCounts[module];
+    int newest = count % WINDOW;
+    m_windowSeconds[module][newest] = elapsedSeconds;
+    m_windowVolts[module][newest] = voltage;
+    m_windowVelocities[module][newest] = velocity;
+    m_windowCounts[module] = ++count;
+    if (count < WINDOW) {
+      return;
+    }
+
+    int oldest = count % WINDOW;
+    int middle = (count - 1 - WINDOW / 2) % WINDOW;
+    double dt = m_windowSeconds[module][newest] - m_windowSeconds[module][oldest];
+    double middleVelocity = m_windowVelocities[module][middle];
+    if (dt > 0.0 && Math.abs(middleVelocity) >= m_minVelocityMetersPerSecond) {
+      double acceleration = (m_windowVelocities[module][newest] - m_windowVelocities[module][oldest]) / dt;
+      m_fit.add(m_windowVolts[module][middle], middleVelocity, acceleration);
+    }
+  }
+
+  public FeedforwardFit getFit() {
+    return m_fit;
+  }
+}
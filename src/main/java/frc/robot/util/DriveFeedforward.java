@@ -0,0 +1,113 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * The voltage a drive motor needs to hold a wheel speed and acceleration: kS to get past friction, kV per m/s, and kA
+ * per m/s^2. Immutable, so it can be swapped out from one thread while another uses it.
+ * <p>
+ * The gains come from {@link DriveCharacterization} and are kept in a properties file in the deploy directory. Until
+ * there is one, {@link #openLoop(double, double)} does what the drivetrain always did: voltage proportional to speed,
+ * reaching full voltage at the theoretical top speed.
+ */
+public final class DriveFeedforward {
+  private static final String KS = "kS";
+  private static final String KV = "kV";
+  private static final String KA = "kA";
+
+  private final double m_ks;
+  private final double m_kv;
+  private final double m_ka;
+
+  /**
+   * @param ks volts to overcome friction, applied in the direction of travel
+   * @param kv volts per meter per second
+   * @param ka volts per meter per second squared
+   */
+  public DriveFeedforward(double ks, double kv, double ka) {
+    m_ks = ks;
+    m_kv = kv;
+    m_ka = ka;
+  }
+
+  /** Scales speed straight to voltage, so {@code maxVelocityMetersPerSecond} takes {@code maxVoltage}. */
+  public static DriveFeedforward openLoop(double maxVoltage, double maxVelocityMetersPerSecond) {
+    return new DriveFeedforward(0.0, maxVoltage / maxVelocityMetersPerSecond, 0.0);
+  }
+
+  /**
+   * Reads gains written by {@link #save(Path, String)}.
+   *
+   * @throws IOException if the file can't be read, or is missing a gain
+   */
+  public static DriveFeedforward load(Path file) throws IOException {
+    Properties properties = new Properties();
+    try (InputStream in = Files.newInputStream(file)) {
+      properties.load(in);
+    }
+    return new DriveFeedforward(readGain(properties, KS, file), readGain(properties, KV, file),
+            readGain(properties, KA, file));
+  }
+
+  private static double readGain(Properties properties, String key, Path file) throws IOException {
+    String value = properties.getProperty(key);
+    if (value == null) {
+      throw new IOException(file + " has no " + key);
+    }
+    try {
+      return Double.parseDouble(value);
+    } catch (NumberFormatException e) {
+      throw new IOException(file + " has a bad " + key + ": " + value, e);
+    }
+  }
+
+  /**
+   * Writes the gains to {@code file}, with a comment saying where they came from.
+   *
+   * @param comment one line, e.g. how good the fit was
+   */
+  public void save(Path file, String comment) throws IOException {
+    if (file.getParent() != null) {
+      Files.createDirectories(file.getParent());
+    }
+    try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+      out.write("# Drive motor feedforward, fitted by DriveCharacterization. " + comment + "\n");
+      out.write(KS + "=" + m_ks + "\n");
+      out.write(KV + "=" + m_kv + "\n");
+      out.write(KA + "=" + m_ka + "\n");
+    }
+  }
+
+  /** Gets the voltage for a wheel speed and acceleration. Stopped and not accelerating is zero volts. */
+  public double calculate(double velocityMetersPerSecond, double accelerationMetersPerSecondSquared) {
+    return m_ks * Math.signum(velocityMetersPerSecond) + m_kv * velocityMetersPerSecond
+            + m_ka * accelerationMetersPerSecondSquared;
+  }
+
+  public double getKs() {
+    return m_ks;
+  }
+
+  public double getKv() {
+    return m_kv;
+  }
+
+  public double getKa() {
+    return m_ka;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("kS %.4f V, kV %.4f V/(m/s), kA %.4f V/(m/s^2)", m_ks, m_kv, m_ka);
+  }
+}
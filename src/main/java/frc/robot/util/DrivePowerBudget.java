@@ -0,0 +1,216 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.system.plant.DCMotor;
+
+/**
+ * Scales the drive motor voltages so the robot never asks the battery for more than it can give.
+ * <p>
+ * The battery is modeled as an open-circuit voltage behind a resistance (the cells, the main breaker and the wiring).
+ * Both drift over a match and differ from battery to battery, so both are estimated from the measured bus voltage and
+ * the current the drive motors should be drawing: the open-circuit voltage while the robot draws little, where an
+ * error in the resistance hardly matters, and the resistance from how far the bus sags while it draws a lot. Each
+ * drive motor's supply current is then predicted from the voltage it's about to get and its back-EMF at the measured
+ * wheel speed. From that we can tell what the bus voltage will sag to before it happens.
+ * <p>
+ * All the drive voltages are scaled by one factor, so the modules keep pulling in the same direction relative to
+ * each other. The factor is as large as possible while:
+ * <ul>
+ *   <li>the drive motors' total supply current stays within the budget. The budget is the current allowance, or
+ *       whatever keeps the bus above the minimum voltage, whichever is less, minus a reserve for everything else on
+ *       the robot. The steering motors aren't modeled: the caller takes what they may draw off the allowance;</li>
+ *   <li>no motor is asked for more than the predicted bus voltage. Past that, the motor controller would clip it and
+ *       the modules would stop agreeing.</li>
+ * </ul>
+ * Everything is computed with primitives, so this allocates nothing.
+ */
+public class DrivePowerBudget {
+  private static final int SEARCH_ITERATIONS = 12;
+  // Below this much drive current the sag is small enough to read the open-circuit voltage through.
+  private static final double LIGHT_LOAD_AMPS = 20.0;
+  // Above this much the sag is large enough to read the resistance from.
+  private static final double HEAVY_LOAD_AMPS = 60.0;
+  private static final double RESISTANCE_FILTER_SECONDS = 0.1;
+
+  private final double m_motorResistanceOhms;
+  private final double m_motorKvRadiansPerSecondPerVolt;
+  private final double m_motorRadiansPerMeter;
+  private final double m_motorCurrentLimitAmps;
+  private final double m_totalCurrentBudgetAmps;
+  private final double m_reservedCurrentAmps;
+  private final double m_nominalResistanceOhms;
+  private final double m_minimumBusVoltage;
+  private final double m_filterTimeConstantSeconds;
+
+  // The voltages sent last loop, to estimate the current flowing now.
+  private final double[] m_lastVoltages;
+
+  private double m_openCircuitVoltage = Double.NaN;
+  private double m_resistanceOhms;
+  private double m_busVoltage = 0.0;
+  private double m_estimatedCurrentAmps = 0.0;
+  private double m_predictedBusVoltage = 0.0;
+  private double m_predictedCurrentAmps = 0.0;
+  private double m_scale = 1.0;
+
+  /**
+   * @param motor                     the drive motor
+   * @param motorRadiansPerMeter      motor radians per meter the wheel rolls, i.e. one over the wheel radius times the
+   *                                  reduction
+   * @param motorCurrentLimitAmps     each drive motor controller's supply current limit
+   * @param numModules                how many drive motors there are
+   * @param totalCurrentBudgetAmps    the most the drive motors and the reserve may draw together
+   * @param reservedCurrentAmps       how much of that to leave for everything else, also counted as drawn when
+   *                                  predicting the bus voltage
+   * @param batteryResistanceOhms     the battery's internal resistance plus the breaker and wiring, as a first guess
+   * @param minimumBusVoltage         the lowest the bus may sag to, with some margin above the brownout voltage
+   * @param filterTimeConstantSeconds how quickly the open-circuit voltage estimate follows the measurements
+   */
+  public DrivePowerBudget(DCMotor motor, double motorRadiansPerMeter, double motorCurrentLimitAmps, int numModules,
+                          double totalCurrentBudgetAmps, double reservedCurrentAmps, double batteryResistanceOhms,
+                          double minimumBusVoltage, double filterTimeConstantSeconds) {
+    m_motorResistanceOhms = motor.rOhms;
+    m_motorKvRadiansPerSecondPerVolt = motor.KvRadPerSecPerVolt;
+    m_motorRadiansPerMeter = motorRadiansPerMeter;
+    m_motorCurrentLimitAmps = motorCurrentLimitAmps;
+    m_totalCurrentBudgetAmps = totalCurrentBudgetAmps;
+    m_reservedCurrentAmps = reservedCurrentAmps;
+    m_nominalResistanceOhms = batteryResistanceOhms;
+    m_resistanceOhms = batteryResistanceOhms;
+    m_minimumBusVoltage = minimumBusVoltage;
+    m_filterTimeConstantSeconds = filterTimeConstantSeconds;
+    m_lastVoltages = new double[numModules];
+  }
+
+  /**
+   * Scales this loop's drive voltages in place so they fit the budget.
+   *
+   * @param voltages                   each drive motor's voltage, modified in place
+   * @param wheelSpeedsMetersPerSecond each module's measured wheel speed, with the same sign convention as the
+   *                                   voltages
+   * @param busVoltage                 the measured battery voltage
+   * @param dtSeconds                  the time since the last call
+   * @return the factor the voltages were scaled by, in [0, 1]
+   */
+  public double apply(double[] voltages, double[] wheelSpeedsMetersPerSecond, double busVoltage, double dtSeconds) {
+    m_busVoltage = busVoltage;
+
+    // What's flowing now is what last loop's voltages draw at this loop's speeds. Braking pushes the bus up, so the
+    // current it returns has to count here or the battery would look stronger than it is.
+    m_estimatedCurrentAmps = m_reservedCurrentAmps + totalSupplyCurrent(m_lastVoltages, 1.0,
+            wheelSpeedsMetersPerSecond, true);
+    double driveCurrent = m_estimatedCurrentAmps - m_reservedCurrentAmps;
+    // The battery is estimated from the drive current alone. The reserve is an allowance, not a measurement; counting
+    // it would read the open-circuit voltage high by the resistance times whatever of it isn't being drawn.
+    if (Double.isNaN(m_openCircuitVoltage)) {
+      m_openCircuitVoltage = busVoltage + m_resistanceOhms * driveCurrent;
+    } else if (Math.abs(driveCurrent) < LIGHT_LOAD_AMPS) {
+      m_openCircuitVoltage += (busVoltage + m_resistanceOhms * driveCurrent - m_openCircuitVoltage)
+              * Math.min(1.0, dtSeconds / m_filterTimeConstantSeconds);
+    } else if (driveCurrent > HEAVY_LOAD_AMPS) {
+      // Kept within reason so one bad reading can't make the battery look infinitely strong or weak.
+      double resistance = MathUtil.clamp((m_openCircuitVoltage - busVoltage) / driveCurrent,
+              0.5 * m_nominalResistanceOhms, 4.0 * m_nominalResistanceOhms);
+      m_resistanceOhms += (resistance - m_resistanceOhms) * Math.min(1.0, dtSeconds / RESISTANCE_FILTER_SECONDS);
+    }
+
+    double budget = Math.min(m_totalCurrentBudgetAmps,
+            (m_openCircuitVoltage - m_minimumBusVoltage) / m_resistanceOhms) - m_reservedCurrentAmps;
+    double scale = 1.0;
+    if (!fits(voltages, 1.0, wheelSpeedsMetersPerSecond, budget)) {
+      // Less voltage never draws more current, so a bisection finds the largest scale that fits.
+      double low = 0.0;
+      double high = 1.0;
+      for (int iteration = 0; iteration < SEARCH_ITERATIONS; iteration++) {
+        double middle = 0.5 * (low + high);
+        if (fits(voltages, middle, wheelSpeedsMetersPerSecond, budget)) {
+          low = middle;
+        } else {
+          high = middle;
+        }
+      }
+      scale = low;
+    }
+
+    for (int i = 0; i < voltages.length; i++) {
+      voltages[i] *= scale;
+      m_lastVoltages[i] = voltages[i];
+    }
+    m_scale = scale;
+    m_predictedCurrentAmps = m_reservedCurrentAmps + totalSupplyCurrent(voltages, 1.0, wheelSpeedsMetersPerSecond,
+            false);
+    m_predictedBusVoltage = m_openCircuitVoltage - m_resistanceOhms * m_predictedCurrentAmps;
+    return scale;
+  }
+
+  private boolean fits(double[] voltages, double scale, double[] wheelSpeeds, double budgetAmps) {
+    double current = totalSupplyCurrent(voltages, scale, wheelSpeeds, false);
+    if (current > budgetAmps) {
+      return false;
+    }
+    double busVoltage = m_openCircuitVoltage - m_resistanceOhms * (current + m_reservedCurrentAmps);
+    for (double voltage : voltages) {
+      if (Math.abs(voltage * scale) > busVoltage) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Predicts the drive motors' total supply current. A motor controller draws its output power from the bus, so the
+   * supply current is the motor current times the fraction of the bus voltage applied, up to the controller's limit.
+   * Motors that are braking return current, which is only counted if {@code countBraking} is set; a prediction
+   * shouldn't count on it.
+   */
+  private double totalSupplyCurrent(double[] voltages, double scale, double[] wheelSpeeds, boolean countBraking) {
+    double busVoltage = Math.max(m_busVoltage, 1.0);
+    double total = 0.0;
+    for (int i = 0; i < voltages.length; i++) {
+      double voltage = voltages[i] * scale;
+      double backEmf = wheelSpeeds[i] * m_motorRadiansPerMeter / m_motorKvRadiansPerSecondPerVolt;
+      double supplyCurrent = (voltage - backEmf) / m_motorResistanceOhms * voltage / busVoltage;
+      total += Math.min(m_motorCurrentLimitAmps, Math.max(countBraking ? -m_motorCurrentLimitAmps : 0.0,
+              supplyCurrent));
+    }
+    return total;
+  }
+
+  /** Gets the factor the last voltages were scaled by. 1 means the budget didn't limit anything. */
+  public double getScale() {
+    return m_scale;
+  }
+
+  public double getBusVoltage() {
+    return m_busVoltage;
+  }
+
+  /** Gets the estimated battery voltage with nothing drawing current. */
+  public double getOpenCircuitVoltage() {
+    return m_openCircuitVoltage;
+  }
+
+  /** Gets the estimated resistance of the battery, breaker and wiring. */
+  public double getResistanceOhms() {
+    return m_resistanceOhms;
+  }
+
+  /** Gets the estimated current the robot is drawing now, including the reserve. */
+  public double getEstimatedCurrentAmps() {
+    return m_estimatedCurrentAmps;
+  }
+
+  /** Gets the current the last voltages are expected to draw, including the reserve. */
+  public double getPredictedCurrentAmps() {
+    return m_predictedCurrentAmps;
+  }
+
+  /** Gets what the bus voltage is expected to sag to with the last voltages applied. */
+  public double getPredictedBusVoltage() {
+    return m_predictedBusVoltage;
+  }
+}
@@ -0,0 +1,81 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+/**
+ * Hands the requested chassis speeds from the thread that makes drive requests (the command scheduler) to the thread
+ * that turns them into module outputs, seqlock style; see {@link SeqLock}.
+ * <p>
+ * The requester never waits on the control loop and the control loop never waits on the requester. A read always sees
+ * all three speeds, the X-lock flag and the timestamp from the same request.
+ * <p>
+ * Only one thread may call {@link #write}.
+ */
+public class DriveRequest extends SeqLock {
+  private double m_vxMetersPerSecond;
+  private double m_vyMetersPerSecond;
+  private double m_omegaRadiansPerSecond;
+  private boolean m_xLocked;
+  private double m_timestampSeconds;
+
+  /**
+   * Publishes a new request. Must only be called from the requesting thread.
+   *
+   * @param vxMetersPerSecond     robot-relative forward velocity
+   * @param vyMetersPerSecond     robot-relative leftward velocity
+   * @param omegaRadiansPerSecond counter-clockwise angular velocity
+   * @param xLocked               true to stop with the modules in an X instead
+   * @param timestampSeconds      when the heading the request was made from was measured
+   */
+  public void write(double vxMetersPerSecond, double vyMetersPerSecond, double omegaRadiansPerSecond,
+                    boolean xLocked, double timestampSeconds) {
+    long sequence = beginWrite();
+
+    m_vxMetersPerSecond = vxMetersPerSecond;
+    m_vyMetersPerSecond = vyMetersPerSecond;
+    m_omegaRadiansPerSecond = omegaRadiansPerSecond;
+    m_xLocked = xLocked;
+    m_timestampSeconds = timestampSeconds;
+
+    endWrite(sequence);
+  }
+
+  /**
+   * Copies the latest request into {@code out}. Never blocks and never allocates.
+   */
+  public void read(Sample out) {
+    while (true) {
+      long before = beginRead();
+
+      double vx = m_vxMetersPerSecond;
+      double vy = m_vyMetersPerSecond;
+      double omega = m_omegaRadiansPerSecond;
+      boolean xLocked = m_xLocked;
+      double timestamp = m_timestampSeconds;
+
+      if (validate(before)) {
+        out.vxMetersPerSecond = vx;
+        out.vyMetersPerSecond = vy;
+        out.omegaRadiansPerSecond = omega;
+        out.xLocked = xLocked;
+        out.timestampSeconds = timestamp;
+        out.sequence = before;
+        return;
+      }
+    }
+  }
+
+  /** A reader-owned copy of one request. Reuse it between reads to avoid allocating. */
+  public static final class Sample {
+    public double vxMetersPerSecond;
+    public double vyMetersPerSecond;
+    public double omegaRadiansPerSecond;
+    public boolean xLocked;
+    /** When the heading the request was made from was measured. */
+    public double timestampSeconds;
+    /** Even, and increases by two with every write. */
+    public long sequence;
+  }
+}
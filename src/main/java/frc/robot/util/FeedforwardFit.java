@@ -0,0 +1,117 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+/**
+ * Fits {@code voltage = kS * sign(velocity) + kV * velocity + kA * acceleration} by least squares, one sample at a
+ * time.
+ * <p>
+ * Only the sums that make up the normal equations are kept, so a run of any length takes the same few dozen bytes and
+ * adding a sample doesn't allocate. {@link #solve()} solves the 3x3 system when asked.
+ */
+public class FeedforwardFit {
+  // The upper triangle of X^T X, X^T y, and y^T y, where each row of X is (sign(v), v, a).
+  private double m_ss;
+  private double m_sv;
+  private double m_sa;
+  private double m_vv;
+  private double m_va;
+  private double m_aa;
+  private double m_sy;
+  private double m_vy;
+  private double m_ay;
+  private double m_yy;
+  private long m_samples;
+
+  public void add(double voltage, double velocity, double acceleration) {
+    double sign = Math.signum(velocity);
+    m_ss += sign * sign;
+    m_sv += sign * velocity;
+    m_sa += sign * acceleration;
+    m_vv += velocity * velocity;
+    m_va += velocity * acceleration;
+    m_aa += acceleration * acceleration;
+    m_sy += sign * voltage;
+    m_vy += velocity * voltage;
+    m_ay += acceleration * voltage;
+    m_yy += voltage * voltage;
+    m_samples++;
+  }
+
+  public void reset() {
+    m_ss = m_sv = m_sa = m_vv = m_va = m_aa = 0.0;
+    m_sy = m_vy = m_ay = m_yy = 0.0;
+    m_samples = 0;
+  }
+
+  public long getSampleCount() {
+    return m_samples;
+  }
+
+  /**
+   * Solves for the gains.
+   *
+   * @return the gains, or null if the samples don't pin all three down, e.g. the robot never accelerated
+   */
+  public DriveFeedforward solve() {
+    double[][] a = {
+            {m_ss, m_sv, m_sa, m_sy},
+            {m_sv, m_vv, m_va, m_vy},
+            {m_sa, m_va, m_aa, m_ay},
+    };
+    // Gaussian elimination with partial pivoting. Relative to the diagonal, so the units of each column don't matter.
+    for (int column = 0; column < 3; column++) {
+      int pivot = column;
+      for (int row = column + 1; row < 3; row++) {
+        if (Math.abs(a[row][column]) > Math.abs(a[pivot][column])) {
+          pivot = row;
+        }
+      }
+      double[] swap = a[column];
+      a[column] = a[pivot];
+      a[pivot] = swap;
+      double scale = Math.max(Math.max(m_ss, m_vv), m_aa);
+      if (!(Math.abs(a[column][column]) > 1e-12 * scale)) {
+        return null;
+      }
+      for (int row = column + 1; row < 3; row++) {
+        double factor = a[row][column] / a[column][column];
+        for (int k = column; k < 4; k++) {
+          a[row][k] -= factor * a[column][k];
+        }
+      }
+    }
+    double[] gains = new double[3];
+    for (int row = 2; row >= 0; row--) {
+      double sum = a[row][3];
+      for (int k = row + 1; k < 3; k++) {
+        sum -= a[row][k] * gains[k];
+      }
+      gains[row] = sum / a[row][row];
+    }
+    return new DriveFeedforward(gains[0], gains[1], gains[2]);
+  }
+
+  /**
+   * Gets how much of the variation in voltage the gains explain, from 0 to 1.
+   *
+   * @param gains usually what {@link #solve()} returned
+   */
+  public double getRSquared(DriveFeedforward gains) {
+    if (m_samples == 0) {
+      return Double.NaN;
+    }
+    double ks = gains.getKs();
+    double kv = gains.getKv();
+    double ka = gains.getKa();
+    // The sum of squared residuals, expanded in terms of the stored sums.
+    double residual = m_yy - 2.0 * (ks * m_sy + kv * m_vy + ka * m_ay)
+            + ks * ks * m_ss + kv * kv * m_vv + ka * ka * m_aa
+            + 2.0 * (ks * kv * m_sv + ks * ka * m_sa + kv * ka * m_va);
+    // The voltage is centered on zero by design (forwards and backwards), so compare against zero rather than the
+    // mean.
+    return m_yy > 0.0 ? 1.0 - residual / m_yy : Double.NaN;
+  }
+}
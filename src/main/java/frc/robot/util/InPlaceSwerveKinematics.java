@@ -0,0 +1,166 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import edu.wpi.first.math.geometry.Translation2d;
+
+/**
+ * Swerve inverse kinematics that writes module speeds and angles into caller-owned primitive arrays.
+ * <p>
+ * This produces the same results as {@link edu.wpi.first.math.kinematics.SwerveDriveKinematics#toSwerveModuleStates}
+ * followed by {@link edu.wpi.first.math.kinematics.SwerveDriveKinematics#desaturateWheelSpeeds}, but without
+ * allocating a {@code SwerveModuleState[]} and a {@code Rotation2d} per module every loop.
+ */
+public class InPlaceSwerveKinematics {
+  private final int m_numModules;
+  private final double[] m_moduleX;
+  private final double[] m_moduleY;
+  // Like WPILib, we hold the last angles so the modules don't snap back to zero when the robot stops.
+  private final double[] m_lastAngles;
+  // Least-squares forward kinematics: row r maps the interleaved module (vx, vy) vector to chassis component r.
+  private final double[][] m_forwardKinematics;
+
+  public InPlaceSwerveKinematics(Translation2d... moduleLocations) {
+    if (moduleLocations.length < 2) {
+      throw new IllegalArgumentException("A swerve drive requires at least two modules");
+    }
+    m_numModules = moduleLocations.length;
+    m_moduleX = new double[m_numModules];
+    m_moduleY = new double[m_numModules];
+    m_lastAngles = new double[m_numModules];
+    for (int i = 0; i < m_numModules; i++) {
+      m_moduleX[i] = moduleLocations[i].getX();
+      m_moduleY[i] = moduleLocations[i].getY();
+    }
+    m_forwardKinematics = buildForwardKinematics(m_moduleX, m_moduleY);
+  }
+
+  public int getNumModules() {
+    return m_numModules;
+  }
+
+  /**
+   * Converts a robot-relative chassis velocity into module speeds and angles.
+   *
+   * @param vxMetersPerSecond     forward velocity
+   * @param vyMetersPerSecond     leftward velocity
+   * @param omegaRadiansPerSecond counter-clockwise angular velocity
+   * @param speedsOut             receives each module's speed in meters per second
+   * @param anglesOut             receives each module's angle in radians, in the range (-pi, pi]
+   */
+  public void toModuleStates(double vxMetersPerSecond, double vyMetersPerSecond, double omegaRadiansPerSecond,
+                             double[] speedsOut, double[] anglesOut) {
+    if (vxMetersPerSecond == 0.0 && vyMetersPerSecond == 0.0 && omegaRadiansPerSecond == 0.0) {
+      for (int i = 0; i < m_numModules; i++) {
+        speedsOut[i] = 0.0;
+        anglesOut[i] = m_lastAngles[i];
+      }
+      return;
+    }
+
+    for (int i = 0; i < m_numModules; i++) {
+      double x = vxMetersPerSecond - omegaRadiansPerSecond * m_moduleY[i];
+      double y = vyMetersPerSecond + omegaRadiansPerSecond * m_moduleX[i];
+      speedsOut[i] = Math.hypot(x, y);
+      // Rotation2d(x, y) falls back to zero degrees for a zero-length vector, so we do the same.
+      double angle = speedsOut[i] > 1e-6 ? Math.atan2(y, x) : 0.0;
+      anglesOut[i] = angle;
+      m_lastAngles[i] = angle;
+    }
+  }
+
+  /**
+   * Converts measured module speeds and angles back into a robot-relative chassis velocity. Like WPILib, this is the
+   * least-squares fit, so modules that disagree with each other (e.g. one is slipping) are averaged out.
+   *
+   * @param speeds     each module's speed in meters per second
+   * @param angles     each module's angle in radians
+   * @param chassisOut receives vx (m/s), vy (m/s) and omega (rad/s), in that order
+   */
+  public void toChassisSpeeds(double[] speeds, double[] angles, double[] chassisOut) {
+    double vx = 0.0;
+    double vy = 0.0;
+    double omega = 0.0;
+    for (int i = 0; i < m_numModules; i++) {
+      double moduleVx = speeds[i] * Math.cos(angles[i]);
+      double moduleVy = speeds[i] * Math.sin(angles[i]);
+      vx += m_forwardKinematics[0][2 * i] * moduleVx + m_forwardKinematics[0][2 * i + 1] * moduleVy;
+      vy += m_forwardKinematics[1][2 * i] * moduleVx + m_forwardKinematics[1][2 * i + 1] * moduleVy;
+      omega += m_forwardKinematics[2][2 * i] * moduleVx + m_forwardKinematics[2][2 * i + 1] * moduleVy;
+    }
+    chassisOut[0] = vx;
+    chassisOut[1] = vy;
+    chassisOut[2] = omega;
+  }
+
+  /**
+   * Scales all module speeds down so that none of them exceed the attainable maximum, preserving the ratio
+   * between modules.
+   *
+   * @param speeds                            module speeds, modified in place
+   * @param attainableMaxSpeedMetersPerSecond the fastest any module can drive
+   */
+  public static void desaturateWheelSpeeds(double[] speeds, double attainableMaxSpeedMetersPerSecond) {
+    double realMaxSpeed = 0.0;
+    for (double speed : speeds) {
+      realMaxSpeed = Math.max(realMaxSpeed, Math.abs(speed));
+    }
+    if (realMaxSpeed > attainableMaxSpeedMetersPerSecond) {
+      double scale = attainableMaxSpeedMetersPerSecond / realMaxSpeed;
+      for (int i = 0; i < speeds.length; i++) {
+        speeds[i] *= scale;
+      }
+    }
+  }
+
+  /**
+   * Builds the pseudo-inverse of the inverse kinematics matrix. Each module contributes the rows [1, 0, -y] and
+   * [0, 1, x], so the normal equations are a 3x3 system we can invert by hand once, up front.
+   */
+  private static double[][] buildForwardKinematics(double[] moduleX, double[] moduleY) {
+    int n = moduleX.length;
+    double sumX = 0.0;
+    double sumY = 0.0;
+    double sumSquares = 0.0;
+    for (int i = 0; i < n; i++) {
+      sumX += moduleX[i];
+      sumY += moduleY[i];
+      sumSquares += moduleX[i] * moduleX[i] + moduleY[i] * moduleY[i];
+    }
+
+    // A^T A = [[n, 0, -sumY], [0, n, sumX], [-sumY, sumX, sumSquares]]
+    double[][] ata = {
+            {n, 0.0, -sumY},
+            {0.0, n, sumX},
+            {-sumY, sumX, sumSquares}
+    };
+    double[][] inverse = invert3x3(ata);
+
+    double[][] result = new double[3][2 * n];
+    for (int r = 0; r < 3; r++) {
+      for (int i = 0; i < n; i++) {
+        result[r][2 * i] = inverse[r][0] - inverse[r][2] * moduleY[i];
+        result[r][2 * i + 1] = inverse[r][1] + inverse[r][2] * moduleX[i];
+      }
+    }
+    return result;
+  }
+
+  private static double[][] invert3x3(double[][] m) {
+    double c00 = m[1][1] * m[2][2] - m[1][2] * m[2][1];
+    double c01 = m[1][2] * m[2][0] - m[1][0] * m[2][2];
+    double c02 = m[1][0] * m[2][1] - m[1][1] * m[2][0];
+    double determinant = m[0][0] * c00 + m[0][1] * c01 + m[0][2] * c02;
+    if (Math.abs(determinant) < 1e-12) {
+      throw new IllegalArgumentException("Module locations do not determine a chassis velocity");
+    }
+    double invDet = 1.0 / determinant;
+    return new double[][]{
+            {c00 * invDet, (m[0][2] * m[2][1] - m[0][1] * m[2][2]) * invDet, (m[0][1] * m[1][2] - m[0][2] * m[1][1]) * invDet},
+            {c01 * invDet, (m[0][0] * m[2][2] - m[0][2] * m[2][0]) * invDet, (m[0][2] * m[1][0] - m[0][0] * m[1][2]) * invDet},
+            {c02 * invDet, (m[0][1] * m[2][0] - m[0][0] * m[2][1]) * invDet, (m[0][0] * m[1][1] - m[0][1] * m[1][0]) * invDet}
+    };
+  }
+}
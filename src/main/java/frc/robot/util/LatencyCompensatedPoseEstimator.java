@@ -0,0 +1,265 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import edu.wpi.first.math.MathUtil;
+
+/**
+ * Fuses odometry with field pose measurements that arrive late, e.g. from a camera whose results show up 30 to
+ * 100 ms after the frame was captured.
+ * <p>
+ * Every odometry sample is kept, timestamped, in a fixed-size ring buffer of primitive arrays, together with the
+ * fused pose at that time. A late measurement is compared against where the robot was when it was captured, not
+ * where it is now. The pose at the capture time is found with a binary search and interpolated between the two
+ * samples around it, then nudged toward the measurement. Only the samples after the capture time are replayed from
+ * the corrected pose. Odometry moves the robot by the same rigid motion between two samples no matter where it
+ * started, so replaying them is just applying one rotation and translation to each later sample. That gives exactly
+ * what re-integrating the module positions would, without storing them or redoing the kinematics.
+ * <p>
+ * How far each measurement moves the pose is set like WPILib's pose estimators: from standard deviations for the
+ * odometry and for the measurement. This does no allocation and isn't thread safe; the caller has to keep odometry
+ * and measurements on one thread or behind one lock.
+ */
+public class LatencyCompensatedPoseEstimator {
+  private final int m_capacity;
+  private final double[] m_timestamps;
+  private final double[] m_xMeters;
+  private final double[] m_yMeters;
+  private final double[] m_headingRadians;
+  // The physical index of the oldest sample, and how many samples there are.
+  private int m_start = 0;
+  private int m_size = 0;
+
+  // Variances of the odometry's x/y and heading.
+  private final double m_stateTranslationVariance;
+  private final double m_stateHeadingVariance;
+
+  // The fused pose is this correction applied to the odometry pose: rotated by m_correctionRadians, then moved by
+  // (m_correctionX, m_correctionY). It only changes when a measurement is fused.
+  private double m_correctionX = 0.0;
+  private double m_correctionY = 0.0;
+  private double m_correctionRadians = 0.0;
+
+  // Scratch space for interpolating, so fusing doesn't allocate.
+  private final double[] m_interpolated = new double[3];
+
+  private long m_fusedMeasurements = 0;
+  private long m_rejectedMeasurements = 0;
+  private int m_lastReplayedSamples = 0;
+
+  /**
+   * @param capacity                     how many odometry samples to keep. Measurements older than the oldest sample
+   *                                     are rejected.
+   * @param stateTranslationStdDevMeters how much to trust the odometry's x and y
+   * @param stateHeadingStdDevRadians    how much to trust the odometry's heading
+   */
+  public LatencyCompensatedPoseEstimator(int capacity, double stateTranslationStdDevMeters,
+                                         double stateHeadingStdDevRadians) {
+    if (capacity < 2) {
+      throw new IllegalArgumentException("The pose history needs room for at least two samples");
+    }
+    m_capacity = capacity;
+    m_timestamps = new double[capacity];
+    m_xMeters = new double[capacity];
+    m_yMeters = new double[capacity];
+    m_headingRadians = new double[capacity];
+    m_stateTranslationVariance = stateTranslationStdDevMeters * stateTranslationStdDevMeters;
+    m_stateHeadingVariance = stateHeadingStdDevRadians * stateHeadingStdDevRadians;
+  }
+
+  /**
+   * Records a new odometry pose and stores the fused pose that goes with it. Timestamps must not go backwards; a
+   * sample with the same timestamp as the newest one replaces it.
+   */
+  public void addOdometry(double timestampSeconds, double xMeters, double yMeters, double headingRadians) {
+    int index;
+    if (m_size > 0 && timestampSeconds <= m_timestamps[physical(m_size - 1)]) {
+      if (timestampSeconds < m_timestamps[physical(m_size - 1)]) {
+        throw new IllegalArgumentException("Odometry timestamps must not go backwards");
+      }
+      index = physical(m_size - 1);
+    } else if (m_size < m_capacity) {
+      index = physical(m_size);
+      m_size++;
+    } else {
+      // Full: overwrite the oldest sample.
+      index = m_start;
+      m_start = physical(1);
+    }
+
+    double cos = Math.cos(m_correctionRadians);
+    double sin = Math.sin(m_correctionRadians);
+    m_timestamps[index] = timestampSeconds;
+    m_xMeters[index] = xMeters * cos - yMeters * sin + m_correctionX;
+    m_yMeters[index] = xMeters * sin + yMeters * cos + m_correctionY;
+    m_headingRadians[index] = MathUtil.angleModulus(headingRadians + m_correctionRadians);
+  }
+
+  /**
+   * Fuses a field pose measured at {@code timestampSeconds}, which may be well before the newest odometry sample.
+   * Measurements newer than the newest sample are treated as if they were taken at it.
+   *
+   * @param timestampSeconds     when the measurement was taken (e.g. the camera frame's capture time), on the same
+   *                             clock as the odometry
+   * @param xyStdDevMeters       how much to trust the measured x and y
+   * @param headingStdDevRadians how much to trust the measured heading. Pass {@link Double#POSITIVE_INFINITY} to
+   *                             ignore it.
+   * @return false if the measurement was older than the history and was ignored
+   */
+  public boolean addMeasurement(double timestampSeconds, double xMeters, double yMeters, double headingRadians,
+                                double xyStdDevMeters, double headingStdDevRadians) {
+    m_lastReplayedSamples = 0;
+    if (!getPoseAt(timestampSeconds, m_interpolated)) {
+      m_rejectedMeasurements++;
+      return false;
+    }
+    double oldX = m_interpolated[0];
+    double oldY = m_interpolated[1];
+    double oldHeading = m_interpolated[2];
+
+    double translationGain = gain(m_stateTranslationVariance, xyStdDevMeters * xyStdDevMeters);
+    double headingGain = gain(m_stateHeadingVariance, headingStdDevRadians * headingStdDevRadians);
+    double newX = oldX + translationGain * (xMeters - oldX);
+    double newY = oldY + translationGain * (yMeters - oldY);
+    double rotation = headingGain * MathUtil.angleModulus(headingRadians - oldHeading);
+
+    // Every sample from the capture time on moves with the robot's pose at the capture time: rotated about the old
+    // pose by the heading correction, then shifted to the new one. A measurement newer than the history moves the
+    // newest sample.
+    double cos = Math.cos(rotation);
+    double sin = Math.sin(rotation);
+    int first = Math.min(findFirstAtOrAfter(timestampSeconds), m_size - 1);
+    for (int i = first; i < m_size; i++) {
+      int index = physical(i);
+      double dx = m_xMeters[index] - oldX;
+      double dy = m_yMeters[index] - oldY;
+      m_xMeters[index] = newX + dx * cos - dy * sin;
+      m_yMeters[index] = newY + dx * sin + dy * cos;
+      m_headingRadians[index] = MathUtil.angleModulus(m_headingRadians[index] + rotation);
+    }
+    m_lastReplayedSamples = m_size - first;
+
+    // Later odometry samples get the same treatment.
+    double dx = m_correctionX - oldX;
+    double dy = m_correctionY - oldY;
+    m_correctionX = newX + dx * cos - dy * sin;
+    m_correctionY = newY + dx * sin + dy * cos;
+    m_correctionRadians = MathUtil.angleModulus(m_correctionRadians + rotation);
+
+    m_fusedMeasurements++;
+    return true;
+  }
+
+  /**
+   * Gets the fused pose at any time in the history, interpolated between the samples on either side of it. Times
+   * after the newest sample get the newest pose.
+   *
+   * @param out receives x, y (meters) and heading (radians)
+   * @return false if there's no history yet or the time is before the oldest sample
+   */
+  public boolean getPoseAt(double timestampSeconds, double[] out) {
+    if (m_size == 0 || timestampSeconds < m_timestamps[m_start]) {
+      return false;
+    }
+    int after = findFirstAtOrAfter(timestampSeconds);
+    if (after == m_size) {
+      int newest = physical(m_size - 1);
+      out[0] = m_xMeters[newest];
+      out[1] = m_yMeters[newest];
+      out[2] = m_headingRadians[newest];
+      return true;
+    }
+    int next = physical(after);
+    if (after == 0 || m_timestamps[next] == timestampSeconds) {
+      out[0] = m_xMeters[next];
+      out[1] = m_yMeters[next];
+      out[2] = m_headingRadians[next];
+      return true;
+    }
+    int previous = physical(after - 1);
+    double t = (timestampSeconds - m_timestamps[previous]) / (m_timestamps[next] - m_timestamps[previous]);
+    out[0] = m_xMeters[previous] + (m_xMeters[next] - m_xMeters[previous]) * t;
+    out[1] = m_yMeters[previous] + (m_yMeters[next] - m_yMeters[previous]) * t;
+    out[2] = MathUtil.angleModulus(m_headingRadians[previous]
+            + MathUtil.angleModulus(m_headingRadians[next] - m_headingRadians[previous]) * t);
+    return true;
+  }
+
+  /**
+   * Binary searches for the first sample at or after the given time.
+   *
+   * @return its logical index, 0 being the oldest, or the number of samples if they're all earlier
+   */
+  private int findFirstAtOrAfter(double timestampSeconds) {
+    int low = 0;
+    int high = m_size;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (m_timestamps[physical(middle)] < timestampSeconds) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /** Converts a logical index (0 is the oldest sample) to an index into the arrays. */
+  private int physical(int logicalIndex) {
+    int index = m_start + logicalIndex;
+    return index >= m_capacity ? index - m_capacity : index;
+  }
+
+  /**
+   * How far to move toward a measurement, given the odometry's and the measurement's variance. This is the closed
+   * form WPILib's pose estimators use.
+   */
+  private static double gain(double stateVariance, double measurementVariance) {
+    if (stateVariance == 0.0) {
+      return 0.0;
+    }
+    return stateVariance / (stateVariance + Math.sqrt(stateVariance * measurementVariance));
+  }
+
+  /** Drops the history and any correction, e.g. when the odometry is reset to a known pose. */
+  public void reset() {
+    m_start = 0;
+    m_size = 0;
+    m_correctionX = 0.0;
+    m_correctionY = 0.0;
+    m_correctionRadians = 0.0;
+  }
+
+  /** Gets the newest fused x, or 0 if there's no history yet. */
+  public double getXMeters() {
+    return m_size == 0 ? 0.0 : m_xMeters[physical(m_size - 1)];
+  }
+
+  public double getYMeters() {
+    return m_size == 0 ? 0.0 : m_yMeters[physical(m_size - 1)];
+  }
+
+  public double getHeadingRadians() {
+    return m_size == 0 ? 0.0 : m_headingRadians[physical(m_size - 1)];
+  }
+
+  public int getSampleCount() {
+    return m_size;
+  }
+
+  public long getFusedMeasurements() {
+    return m_fusedMeasurements;
+  }
+
+  /** Gets how many measurements were ignored because they were older than the history. */
+  public long getRejectedMeasurements() {
+    return m_rejectedMeasurements;
+  }
+
+  /** Gets how many samples the last measurement had to replay, which is what its cost scales with. */
+  public int getLastReplayedSamples() {
+    return m_lastReplayedSamples;
+  }
+}
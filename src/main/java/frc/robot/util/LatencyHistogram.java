@@ -0,0 +1,104 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size, lock-free histogram of durations in microseconds.
+ * <p>
+ * Values below 64 us get their own bucket. Above that, every power of two is split into 32 buckets, so percentiles
+ * are accurate to about 3%. All storage is allocated up front, so {@link #record(long)} never allocates and never
+ * blocks. It is safe to record from one thread while another thread reads percentiles.
+ */
+public class LatencyHistogram {
+  private static final int LINEAR_BUCKETS = 64;
+  private static final int LINEAR_BITS = 6;
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  // 2^31 us is over half an hour. Anything longer than that goes in the last bucket.
+  private static final int MAX_EXPONENT = 30;
+  private static final int BUCKET_COUNT = LINEAR_BUCKETS + (MAX_EXPONENT - LINEAR_BITS + 1) * SUB_BUCKETS;
+
+  private final AtomicLongArray m_counts = new AtomicLongArray(BUCKET_COUNT);
+  private final AtomicLong m_totalCount = new AtomicLong();
+  private final AtomicLong m_maxMicros = new AtomicLong();
+
+  /** Adds one sample. Negative values are treated as zero. */
+  public void record(long micros) {
+    if (micros < 0) {
+      micros = 0;
+    }
+    m_counts.incrementAndGet(bucketIndex(micros));
+    m_totalCount.incrementAndGet();
+
+    long max = m_maxMicros.get();
+    while (micros > max && !m_maxMicros.compareAndSet(max, micros)) {
+      max = m_maxMicros.get();
+    }
+  }
+
+  public long getCount() {
+    return m_totalCount.get();
+  }
+
+  public long getMaxMicros() {
+    return m_maxMicros.get();
+  }
+
+  /**
+   * Gets an upper bound on the given percentile.
+   *
+   * @param percentile a value between 0 and 1, e.g. 0.99 for p99
+   * @return the percentile in microseconds, or 0 if nothing has been recorded
+   */
+  public long getPercentileMicros(double percentile) {
+    long total = m_totalCount.get();
+    if (total == 0) {
+      return 0;
+    }
+    long target = Math.max(1, (long) Math.ceil(percentile * total));
+    long cumulative = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      cumulative += m_counts.get(i);
+      if (cumulative >= target) {
+        return Math.min(bucketUpperBound(i), m_maxMicros.get());
+      }
+    }
+    return m_maxMicros.get();
+  }
+
+  /** Clears all samples. Samples recorded while the reset is in progress may be kept or dropped. */
+  public void reset() {
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      m_counts.set(i, 0);
+    }
+    m_totalCount.set(0);
+    m_maxMicros.set(0);
+  }
+
+  private static int bucketIndex(long micros) {
+    if (micros < LINEAR_BUCKETS) {
+      return (int) micros;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(micros);
+    if (exponent > MAX_EXPONENT) {
+      return BUCKET_COUNT - 1;
+    }
+    int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return LINEAR_BUCKETS + (exponent - LINEAR_BITS) * SUB_BUCKETS + subBucket;
+  }
+
+  private static long bucketUpperBound(int index) {
+    if (index < LINEAR_BUCKETS) {
+      return index;
+    }
+    int exponent = (index - LINEAR_BUCKETS) / SUB_BUCKETS + LINEAR_BITS;
+    int subBucket = (index - LINEAR_BUCKETS) % SUB_BUCKETS;
+    long width = 1L << (exponent - SUB_BUCKET_BITS);
+    return (1L << exponent) + subBucket * width + width - 1;
+  }
+}
@@ -0,0 +1,191 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+
+/**
+ * Measures how old data is by the time it reaches each stage of a pipeline, e.g. from reading the driver's sticks to
+ * writing the motor outputs.
+ * <p>
+ * A trace is a fixed list of stages. Each stage calls {@link Trace#mark(int)} when it hands its output on. A stage
+ * always works on the newest output of the stage before it, so every mark records how long that output waited since
+ * the previous stage marked it. The input's timestamp is carried along, so the last stage also records the total
+ * age from input to output. If a stage runs without fresh input (say, the setpoint is recomputed from a request
+ * made one loop earlier), the wait shows up in the histogram, which is the point. A stage that runs several times on
+ * the same input, like the drivetrain's 5 ms control loop working on a 20 ms request, calls {@link Trace#markRepeat}
+ * after the first time, so that input's wait and total are only counted once.
+ * <p>
+ * Like {@link LoopProfiler}, traces are registered once, marking is a {@link System#nanoTime()} call plus a histogram
+ * update with no allocation, and {@link #periodic()} publishes p50, p99 and max for each stage boundary to
+ * SmartDashboard under "Latency/". Each stage must always be marked from the same thread, but different stages may run
+ * on different threads, e.g. the drivetrain's setpoint and actuation stages on its control loop.
+ */
+public final class LatencyTracer {
+  private static LatencyTracer instance;
+
+  private final List<Trace> m_traces = new ArrayList<>();
+  private int m_loopsSincePublish = 0;
+
+  private LatencyTracer() {}
+
+  public static synchronized LatencyTracer getInstance() {
+    if (instance == null) {
+      instance = new LatencyTracer();
+    }
+    return instance;
+  }
+
+  /**
+   * Registers a trace. Registering the same name twice returns the existing trace.
+   *
+   * @param name   the name shown on the dashboard
+   * @param stages the stage names, in pipeline order. The first stage is where the data enters.
+   */
+  public synchronized Trace register(String name, String... stages) {
+    for (Trace trace : m_traces) {
+      if (trace.m_name.equals(name)) {
+        if (!Arrays.equals(trace.m_stageNames, stages)) {
+          throw new IllegalArgumentException("Trace " + name + " is already registered with different stages");
+        }
+        return trace;
+      }
+    }
+    if (stages.length < 2) {
+      throw new IllegalArgumentException("A trace needs at least two stages");
+    }
+    Trace trace = new Trace(name, stages.clone());
+    m_traces.add(trace);
+    return trace;
+  }
+
+  public synchronized List<Trace> getTraces() {
+    return new ArrayList<>(m_traces);
+  }
+
+  /** Clears every trace's histograms. */
+  public synchronized void reset() {
+    for (Trace trace : m_traces) {
+      trace.reset();
+    }
+  }
+
+  /** Call once per robot loop. Publishes to the dashboard every {@link LoopProfiler#PUBLISH_PERIOD_LOOPS} loops. */
+  public void periodic() {
+    if (++m_loopsSincePublish < LoopProfiler.PUBLISH_PERIOD_LOOPS) {
+      return;
+    }
+    m_loopsSincePublish = 0;
+    publish();
+  }
+
+  private synchronized void publish() {
+    for (Trace trace : m_traces) {
+      for (int i = 1; i < trace.m_stageNames.length; i++) {
+        publish(trace.m_keys[i], trace.m_histograms[i]);
+      }
+      publish(trace.m_keys[0], trace.m_histograms[0]);
+    }
+  }
+
+  private static void publish(String[] keys, LatencyHistogram histogram) {
+    SmartDashboard.putNumber(keys[0], histogram.getPercentileMicros(0.50));
+    SmartDashboard.putNumber(keys[1], histogram.getPercentileMicros(0.99));
+    SmartDashboard.putNumber(keys[2], histogram.getMaxMicros());
+  }
+
+  /** One pipeline being traced. */
+  public static final class Trace {
+    private final String m_name;
+    private final String[] m_stageNames;
+    // When each stage last marked, and when the input it was working on entered the pipeline. 0 means never.
+    // Atomic so a stage on another thread never sees half of a timestamp.
+    private final AtomicLongArray m_markNanos;
+    private final AtomicLongArray m_inputNanos;
+    // Index i > 0 holds the wait from stage i - 1 to stage i. Index 0 holds the total, first stage to last.
+    private final LatencyHistogram[] m_histograms;
+    // Dashboard keys (p50, p99, max) for each histogram, built once so publishing doesn't concatenate strings.
+    private final String[][] m_keys;
+
+    private Trace(String name, String[] stageNames) {
+      m_name = name;
+      m_stageNames = stageNames;
+      int count = stageNames.length;
+      m_markNanos = new AtomicLongArray(count);
+      m_inputNanos = new AtomicLongArray(count);
+      m_histograms = new LatencyHistogram[count];
+      m_keys = new String[count][];
+      for (int i = 0; i < count; i++) {
+        m_histograms[i] = new LatencyHistogram();
+        String boundary = i == 0
+                ? stageNames[0] + " to " + stageNames[count - 1]
+                : stageNames[i - 1] + " to " + stageNames[i];
+        String prefix = "Latency/" + name + "/" + boundary;
+        m_keys[i] = new String[]{prefix + "/p50 (us)", prefix + "/p99 (us)", prefix + "/max (us)"};
+      }
+    }
+
+    /**
+     * Records that a stage has handed on its output. Stage 0 is the input, so marking it starts a new sample.
+     */
+    public void mark(int stage) {
+      long now = System.nanoTime();
+      if (stage == 0) {
+        m_inputNanos.set(0, now);
+      } else {
+        long upstream = m_markNanos.get(stage - 1);
+        if (upstream == 0) {
+          // Nothing has come through the earlier stages yet.
+          return;
+        }
+        long input = m_inputNanos.get(stage - 1);
+        m_inputNanos.set(stage, input);
+        m_histograms[stage].record((now - upstream) / 1000);
+        // 0 if an earlier stage was repeating, and the total was recorded the first time.
+        if (stage == m_stageNames.length - 1 && input != 0) {
+          m_histograms[0].record((now - input) / 1000);
+        }
+      }
+      m_markNanos.set(stage, now);
+    }
+
+    /**
+     * Records that a stage has run again on the input it already handed on. The wait from the previous stage and the
+     * total aren't recorded again, but the next stage's wait is measured from here.
+     */
+    public void markRepeat(int stage) {
+      m_inputNanos.set(stage, 0);
+      m_markNanos.set(stage, System.nanoTime());
+    }
+
+    public String getName() {
+      return m_name;
+    }
+
+    public int getStageCount() {
+      return m_stageNames.length;
+    }
+
+    public String getStageName(int stage) {
+      return m_stageNames[stage];
+    }
+
+    /** Gets the latency from the previous stage to {@code stage}, or the total from input to output for stage 0. */
+    public LatencyHistogram getHistogram(int stage) {
+      return m_histograms[stage];
+    }
+
+    private void reset() {
+      for (LatencyHistogram histogram : m_histograms) {
+        histogram.reset();
+      }
+    }
+  }
+}
@@ -0,0 +1,74 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+/**
+ * Measures how far a periodic loop's actual period strays from the period it's supposed to run at.
+ * <p>
+ * Call {@link #tick()} at the start of every iteration. Each tick records the difference between the time since the
+ * last tick and the nominal period, as a {@link LoopProfiler} stage, so p50, p99 and max jitter show up on the
+ * dashboard next to the loop timings. A tick that comes a whole period or more late counts as an overrun, i.e. the
+ * loop missed an iteration.
+ * <p>
+ * Ticks must all come from the same thread. Like the rest of the profiler, ticking doesn't allocate.
+ */
+public class LoopJitter {
+  private final LoopProfiler.Stage m_stage;
+  private volatile long m_periodNanos;
+  // 0 means the next tick starts over instead of measuring.
+  private volatile long m_lastTickNanos = 0;
+
+  /**
+   * @param name          the name shown on the dashboard
+   * @param periodSeconds how often the loop is supposed to run
+   */
+  public LoopJitter(String name, double periodSeconds) {
+    // Jitter past a whole period means a missed iteration; that's what the overrun count counts.
+    m_stage = LoopProfiler.getInstance().register(name, periodSeconds);
+    m_periodNanos = (long) (periodSeconds * 1e9);
+  }
+
+  /** Changes the nominal period, e.g. when the loop is restarted at a different rate. */
+  public void setPeriod(double periodSeconds) {
+    m_periodNanos = (long) (periodSeconds * 1e9);
+    restart();
+  }
+
+  /** Forgets the last tick, so a loop that was stopped and started again doesn't record the pause as jitter. */
+  public void restart() {
+    m_lastTickNanos = 0;
+  }
+
+  /** Marks the start of an iteration. */
+  public void tick() {
+    long now = System.nanoTime();
+    long last = m_lastTickNanos;
+    if (last != 0) {
+      m_stage.record(Math.abs(now - last - m_periodNanos));
+    }
+    m_lastTickNanos = now;
+  }
+
+  public LoopProfiler.Stage getStage() {
+    return m_stage;
+  }
+
+  public long getP50Micros() {
+    return m_stage.getP50Micros();
+  }
+
+  public long getP99Micros() {
+    return m_stage.getP99Micros();
+  }
+
+  public long getMaxMicros() {
+    return m_stage.getMaxMicros();
+  }
+
+  /** Gets how many iterations came at least a whole period late. */
+  public long getMissedIterations() {
+    return m_stage.getOverrunCount();
+  }
+}
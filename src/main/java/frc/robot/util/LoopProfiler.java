@@ -0,0 +1,182 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+
+/**
+ * Times the stages of the robot loop (subsystem periodic() methods, command execute() methods, and the loop as a
+ * whole) so we can see which one blew the 20 ms budget.
+ * <p>
+ * Stages are registered once, when the subsystem or command is constructed. In the loop, each stage is timed with
+ * {@link Stage#start()} and {@link Stage#stop(long)}. That is two {@link System#nanoTime()} calls plus a few atomic
+ * increments, and it doesn't allocate. Every {@link #PUBLISH_PERIOD_LOOPS} loops, {@link #periodic()} pushes p50,
+ * p99, max, and overrun count for each stage to SmartDashboard under "Profiler/".
+ */
+public final class LoopProfiler {
+  /** How many loops to wait between dashboard updates. At 50 Hz this is once a second. */
+  public static final int PUBLISH_PERIOD_LOOPS = 50;
+
+  private static LoopProfiler instance;
+
+  private final List<Stage> m_stages = new ArrayList<>();
+  private volatile boolean m_enabled = true;
+  private int m_loopsSincePublish = 0;
+
+  private LoopProfiler() {}
+
+  public static synchronized LoopProfiler getInstance() {
+    if (instance == null) {
+      instance = new LoopProfiler();
+    }
+    return instance;
+  }
+
+  /**
+   * Registers a stage with no budget. Registering the same name twice returns the existing stage.
+   */
+  public Stage register(String name) {
+    return register(name, 0.0);
+  }
+
+  /**
+   * Registers a stage. Registering the same name twice returns the existing stage.
+   *
+   * @param name          the name shown on the dashboard
+   * @param budgetSeconds samples longer than this count as overruns, or 0 to not count overruns
+   */
+  public synchronized Stage register(String name, double budgetSeconds) {
+    for (Stage stage : m_stages) {
+      if (stage.m_name.equals(name)) {
+        return stage;
+      }
+    }
+    Stage stage = new Stage(this, name, (long) (budgetSeconds * 1e9));
+    m_stages.add(stage);
+    return stage;
+  }
+
+  public synchronized List<Stage> getStages() {
+    return new ArrayList<>(m_stages);
+  }
+
+  /** Turns timing on or off. While off, {@link Stage#stop(long)} records nothing. */
+  public void setEnabled(boolean enabled) {
+    m_enabled = enabled;
+  }
+
+  public boolean isEnabled() {
+    return m_enabled;
+  }
+
+  /** Clears every stage's histogram and overrun count, e.g. when switching robot modes. */
+  public synchronized void reset() {
+    for (Stage stage : m_stages) {
+      stage.reset();
+    }
+  }
+
+  /** Call once per robot loop. Publishes to the dashboard every {@link #PUBLISH_PERIOD_LOOPS} loops. */
+  public void periodic() {
+    if (++m_loopsSincePublish < PUBLISH_PERIOD_LOOPS) {
+      return;
+    }
+    m_loopsSincePublish = 0;
+    publish();
+  }
+
+  private synchronized void publish() {
+    for (Stage stage : m_stages) {
+      SmartDashboard.putNumber(stage.m_p50Key, stage.getP50Micros());
+      SmartDashboard.putNumber(stage.m_p99Key, stage.getP99Micros());
+      SmartDashboard.putNumber(stage.m_maxKey, stage.getMaxMicros());
+      SmartDashboard.putNumber(stage.m_overrunKey, stage.getOverrunCount());
+    }
+  }
+
+  /** One timed section of the loop. */
+  public static final class Stage {
+    private final LoopProfiler m_profiler;
+    private final String m_name;
+    private final long m_budgetNanos;
+    private final LatencyHistogram m_histogram = new LatencyHistogram();
+    private final AtomicLong m_overruns = new AtomicLong();
+
+    // Built once so publishing doesn't concatenate strings.
+    private final String m_p50Key;
+    private final String m_p99Key;
+    private final String m_maxKey;
+    private final String m_overrunKey;
+
+    private Stage(LoopProfiler profiler, String name, long budgetNanos) {
+      m_profiler = profiler;
+      m_name = name;
+      m_budgetNanos = budgetNanos;
+      m_p50Key = "Profiler/" + name + "/p50 (us)";
+      m_p99Key = "Profiler/" + name + "/p99 (us)";
+      m_maxKey = "Profiler/" + name + "/max (us)";
+      m_overrunKey = "Profiler/" + name + "/overruns";
+    }
+
+    /** Marks the start of the stage. Pass the return value to {@link #stop(long)}. */
+    public long start() {
+      return System.nanoTime();
+    }
+
+    /**
+     * Marks the end of the stage and records how long it took.
+     *
+     * @return the elapsed time in nanoseconds
+     */
+    public long stop(long startNanos) {
+      long elapsed = System.nanoTime() - startNanos;
+      record(elapsed);
+      return elapsed;
+    }
+
+    /** Records a duration measured some other way, e.g. by {@link LoopJitter}. */
+    public void record(long elapsedNanos) {
+      if (m_profiler.m_enabled) {
+        m_histogram.record(elapsedNanos / 1000);
+        if (m_budgetNanos > 0 && elapsedNanos > m_budgetNanos) {
+          m_overruns.incrementAndGet();
+        }
+      }
+    }
+
+    public String getName() {
+      return m_name;
+    }
+
+    public long getSampleCount() {
+      return m_histogram.getCount();
+    }
+
+    public long getP50Micros() {
+      return m_histogram.getPercentileMicros(0.50);
+    }
+
+    public long getP99Micros() {
+      return m_histogram.getPercentileMicros(0.99);
+    }
+
+    public long getMaxMicros() {
+      return m_histogram.getMaxMicros();
+    }
+
+    public long getOverrunCount() {
+      return m_overruns.get();
+    }
+
+    private void reset() {
+      m_histogram.reset();
+      m_overruns.set(0);
+    }
+  }
+}
@@ -0,0 +1,183 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * Which swerve modules run their drive speed closed loop on the motor controller, and the gains the motor controllers
+ * use. Immutable.
+ * <p>
+ * Kept in a properties file in the deploy directory so the gains can be tuned without touching the code. Any key the
+ * file leaves out keeps its default, and by default every module drives open loop, the way the drivetrain always
+ * has. The keys are:
+ * <ul>
+ *   <li>{@code closedLoop.<module>}: true to run that module's drive speed on its Falcon;</li>
+ *   <li>{@code driveKp}, {@code driveKi}, {@code driveKd}: the drive velocity loop, in volts per m/s of error, per m of
+ *       accumulated error, and per m/s^2. They're converted to Talon units for the module's reduction;</li>
+ *   <li>{@code steerKp}, {@code steerKi}, {@code steerKd}: the steer position loop in Talon units, as SDS takes them.
+ *       Only closed-loop modules use these; the others keep SDS's.</li>
+ * </ul>
+ */
+public final class ModuleControlConfig {
+  /** SDS's steer gains for the Falcon 500, in Talon units. */
+  public static final double DEFAULT_STEER_KP = 0.2;
+  public static final double DEFAULT_STEER_KI = 0.0;
+  public static final double DEFAULT_STEER_KD = 0.1;
+  /**
+   * Drive velocity gains that hold speed well on the simulated drivetrain. The Falcon closes the loop every
+   * millisecond, so it can take far more gain than a loop on the roboRIO could. Retune on the robot.
+   */
+  public static final double DEFAULT_DRIVE_KP = 20.0;
+  public static final double DEFAULT_DRIVE_KI = 0.0;
+  public static final double DEFAULT_DRIVE_KD = 0.0;
+
+  private static final String CLOSED_LOOP_PREFIX = "closedLoop.";
+
+  private final boolean[] m_closedLoop;
+  private final double m_driveKp;
+  private final double m_driveKi;
+  private final double m_driveKd;
+  private final double m_steerKp;
+  private final double m_steerKi;
+  private final double m_steerKd;
+
+  /**
+   * @param closedLoop which modules run their drive speed on the motor controller, copied
+   * @param driveKp    volts per m/s of speed error
+   * @param driveKi    volts per m of accumulated speed error
+   * @param driveKd    volts per m/s^2 of change in speed error
+   * @param steerKp    the steer position loop's P gain, in Talon units
+   * @param steerKi    its I gain, in Talon units
+   * @param steerKd    its D gain, in Talon units
+   */
+  public ModuleControlConfig(boolean[] closedLoop, double driveKp, double driveKi, double driveKd, double steerKp,
+                             double steerKi, double steerKd) {
+    m_closedLoop = closedLoop.clone();
+    m_driveKp = driveKp;
+    m_driveKi = driveKi;
+    m_driveKd = driveKd;
+    m_steerKp = steerKp;
+    m_steerKi = steerKi;
+    m_steerKd = steerKd;
+  }
+
+  /** Every module open loop, with the default gains. */
+  public static ModuleControlConfig openLoop(int moduleCount) {
+    return allModules(moduleCount, false);
+  }
+
+  /** Every module closed loop, or none, with the default gains. */
+  public static ModuleControlConfig allModules(int moduleCount, boolean closedLoop) {
+    boolean[] modules = new boolean[moduleCount];
+    Arrays.fill(modules, closedLoop);
+    return new ModuleControlConfig(modules, DEFAULT_DRIVE_KP, DEFAULT_DRIVE_KI, DEFAULT_DRIVE_KD, DEFAULT_STEER_KP,
+            DEFAULT_STEER_KI, DEFAULT_STEER_KD);
+  }
+
+  /**
+   * Reads the configuration from a properties file.
+   *
+   * @param file       the file
+   * @param moduleKeys each module's name in the {@code closedLoop.<module>} keys, in the drivetrain's module order
+   * @throws IOException if the file can't be read, or has a value that isn't a number or a boolean
+   */
+  public static ModuleControlConfig load(Path file, String[] moduleKeys) throws IOException {
+    Properties properties = new Properties();
+    try (InputStream in = Files.newInputStream(file)) {
+      properties.load(in);
+    }
+    boolean[] closedLoop = new boolean[moduleKeys.length];
+    for (int i = 0; i < moduleKeys.length; i++) {
+      closedLoop[i] = readBoolean(properties, CLOSED_LOOP_PREFIX + moduleKeys[i], file);
+    }
+    return new ModuleControlConfig(closedLoop,
+            readGain(properties, "driveKp", DEFAULT_DRIVE_KP, file),
+            readGain(properties, "driveKi", DEFAULT_DRIVE_KI, file),
+            readGain(properties, "driveKd", DEFAULT_DRIVE_KD, file),
+            readGain(properties, "steerKp", DEFAULT_STEER_KP, file),
+            readGain(properties, "steerKi", DEFAULT_STEER_KI, file),
+            readGain(properties, "steerKd", DEFAULT_STEER_KD, file));
+  }
+
+  private static boolean readBoolean(Properties properties, String key, Path file) throws IOException {
+    String value = properties.getProperty(key, "false").trim();
+    if (!value.equalsIgnoreCase("true") && !value.equalsIgnoreCase("false")) {
+      throw new IOException(file + " has a bad " + key + ": " + value);
+    }
+    return Boolean.parseBoolean(value);
+  }
+
+  private static double readGain(Properties properties, String key, double defaultValue, Path file)
+          throws IOException {
+    String value = properties.getProperty(key);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      return Double.parseDouble(value.trim());
+    } catch (NumberFormatException e) {
+      throw new IOException(file + " has a bad " + key + ": " + value, e);
+    }
+  }
+
+  public int getModuleCount() {
+    return m_closedLoop.length;
+  }
+
+  /** Whether a module runs its drive speed on its motor controller. */
+  public boolean isClosedLoop(int module) {
+    return m_closedLoop[module];
+  }
+
+  /** Whether any module does. */
+  public boolean isAnyClosedLoop() {
+    for (boolean closedLoop : m_closedLoop) {
+      if (closedLoop) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public double getDriveKp() {
+    return m_driveKp;
+  }
+
+  public double getDriveKi() {
+    return m_driveKi;
+  }
+
+  public double getDriveKd() {
+    return m_driveKd;
+  }
+
+  public double getSteerKp() {
+    return m_steerKp;
+  }
+
+  public double getSteerKi() {
+    return m_steerKi;
+  }
+
+  public double getSteerKd() {
+    return m_steerKd;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder modules = new StringBuilder();
+    for (int i = 0; i < m_closedLoop.length; i++) {
+      modules.append(m_closedLoop[i] ? 'C' : 'O');
+    }
+    return String.format("modules %s (C closed, O open), drive kP %.3f kI %.3f kD %.3f, steer kP %.3f kI %.3f kD %.3f",
+            modules, m_driveKp, m_driveKi, m_driveKd, m_steerKp, m_steerKi, m_steerKd);
+  }
+}
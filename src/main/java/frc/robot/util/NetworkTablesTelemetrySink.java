@@ -0,0 +1,45 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import java.util.Arrays;
+
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableEntry;
+import edu.wpi.first.networktables.NetworkTableInstance;
+
+/**
+ * Publishes a {@link TelemetryPublisher}'s signals to a NetworkTables table. Entries are looked up once, when each
+ * signal is registered, so publishing is an array index and a set.
+ */
+public class NetworkTablesTelemetrySink implements TelemetryPublisher.Sink {
+  private final NetworkTable m_table;
+  private NetworkTableEntry[] m_entries = new NetworkTableEntry[16];
+
+  /**
+   * @param tableName the table to publish under, e.g. "SmartDashboard" so the values show up on the SmartDashboard tab
+   */
+  public NetworkTablesTelemetrySink(String tableName) {
+    m_table = NetworkTableInstance.getDefault().getTable(tableName);
+  }
+
+  @Override
+  public void register(int signal, String key) {
+    if (signal >= m_entries.length) {
+      m_entries = Arrays.copyOf(m_entries, Math.max(signal + 1, 2 * m_entries.length));
+    }
+    m_entries[signal] = m_table.getEntry(key);
+  }
+
+  @Override
+  public void putDouble(int signal, double value) {
+    m_entries[signal].setDouble(value);
+  }
+
+  @Override
+  public void putBoolean(int signal, boolean value) {
+    m_entries[signal].setBoolean(value);
+  }
+}
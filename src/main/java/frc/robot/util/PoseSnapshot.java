@@ -0,0 +1,99 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+
+/**
+ * Publishes a timestamped pose and velocity from one writer thread to any number of reader threads, seqlock style;
+ * see {@link SeqLock}. Readers never block the writer and never see a half-written pose.
+ * <p>
+ * Only one thread may call {@link #write}.
+ */
+public class PoseSnapshot extends SeqLock {
+  private double m_timestampSeconds;
+  private double m_xMeters;
+  private double m_yMeters;
+  private double m_thetaRadians;
+  private double m_vxMetersPerSecond;
+  private double m_vyMetersPerSecond;
+  private double m_omegaRadiansPerSecond;
+
+  /**
+   * Publishes a new sample. Must only be called from the writer thread.
+   *
+   * @param vxMetersPerSecond     robot-relative forward velocity
+   * @param vyMetersPerSecond     robot-relative leftward velocity
+   * @param omegaRadiansPerSecond counter-clockwise angular velocity
+   */
+  public void write(double timestampSeconds, double xMeters, double yMeters, double thetaRadians,
+                    double vxMetersPerSecond, double vyMetersPerSecond, double omegaRadiansPerSecond) {
+    long sequence = beginWrite();
+
+    m_timestampSeconds = timestampSeconds;
+    m_xMeters = xMeters;
+    m_yMeters = yMeters;
+    m_thetaRadians = thetaRadians;
+    m_vxMetersPerSecond = vxMetersPerSecond;
+    m_vyMetersPerSecond = vyMetersPerSecond;
+    m_omegaRadiansPerSecond = omegaRadiansPerSecond;
+
+    endWrite(sequence);
+  }
+
+  /**
+   * Copies the latest sample into {@code out}. Never blocks and never allocates.
+   */
+  public void read(Sample out) {
+    while (true) {
+      long before = beginRead();
+
+      double timestamp = m_timestampSeconds;
+      double x = m_xMeters;
+      double y = m_yMeters;
+      double theta = m_thetaRadians;
+      double vx = m_vxMetersPerSecond;
+      double vy = m_vyMetersPerSecond;
+      double omega = m_omegaRadiansPerSecond;
+
+      if (validate(before)) {
+        out.timestampSeconds = timestamp;
+        out.xMeters = x;
+        out.yMeters = y;
+        out.thetaRadians = theta;
+        out.vxMetersPerSecond = vx;
+        out.vyMetersPerSecond = vy;
+        out.omegaRadiansPerSecond = omega;
+        out.sequence = before;
+        return;
+      }
+    }
+  }
+
+  /** Gets the latest pose. This allocates, so prefer {@link #read(Sample)} in anything that runs every loop. */
+  public Pose2d getPose() {
+    Sample sample = new Sample();
+    read(sample);
+    return sample.toPose();
+  }
+
+  /** A reader-owned copy of one snapshot. Reuse it between reads to avoid allocating. */
+  public static final class Sample {
+    public double timestampSeconds;
+    public double xMeters;
+    public double yMeters;
+    public double thetaRadians;
+    public double vxMetersPerSecond;
+    public double vyMetersPerSecond;
+    public double omegaRadiansPerSecond;
+    /** Even, and increases by two with every write. Useful for telling whether anything new was published. */
+    public long sequence;
+
+    public Pose2d toPose() {
+      return new Pose2d(xMeters, yMeters, new Rotation2d(thetaRadians));
+    }
+  }
+}
@@ -0,0 +1,242 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Logs fixed-width binary records to a file without ever making the robot loop wait on the disk.
+ * <p>
+ * The robot loop fills records in a preallocated off-heap ring buffer: {@link #beginRecord()}, a few absolute
+ * {@code put} calls, then {@link #commitRecord()}. None of that allocates or blocks. A low-priority background thread
+ * copies committed records into a memory-mapped file. If it falls so far behind that the ring fills up, new records
+ * are dropped and counted rather than waited on.
+ * <p>
+ * The file starts with a {@link #HEADER_BYTES}-byte little-endian header: {@link #MAGIC}, the record size (int),
+ * the format version of the records (int), and the number of records written (long). The records follow, back to
+ * back, also little-endian. The version is whatever the caller says it is; files written before it existed have 0.
+ * <p>
+ * Only one thread may write records.
+ */
+public class RingBufferLogger implements AutoCloseable {
+  /** "FRCLOG01" read as a little-endian long. */
+  public static final long MAGIC = 0x3130474F_4C435246L;
+  public static final int HEADER_BYTES = 24;
+  /** Where the header fields are, from the start of the file. */
+  public static final int RECORD_BYTES_OFFSET = 8;
+  public static final int FORMAT_VERSION_OFFSET = 12;
+  public static final int RECORD_COUNT_OFFSET = 16;
+  private static final long MAP_CHUNK_BYTES = 4L << 20;
+  private static final long DRAIN_PERIOD_NANOS = 20_000_000L;
+
+  private final int m_recordBytes;
+  private final int m_capacityMask;
+  private final long m_maxRecords;
+  private final ByteBuffer m_ring;
+  // The drain thread's own view of the ring, so it never touches the writer's position or limit.
+  private final ByteBuffer m_drainView;
+
+  // Records [m_tail, m_head) are committed but not yet on disk.
+  private final AtomicLong m_head = new AtomicLong();
+  private final AtomicLong m_tail = new AtomicLong();
+  private final AtomicLong m_dropped = new AtomicLong();
+
+  // Writer thread only.
+  private long m_writeIndex = 0;
+  private int m_recordOffset = -1;
+
+  // Drain thread only (and close(), after the thread has stopped).
+  private final FileChannel m_channel;
+  private final MappedByteBuffer m_header;
+  private MappedByteBuffer m_chunk;
+  // Only written by the drain thread, but read by anyone.
+  private volatile long m_recordsWritten = 0;
+
+  private final Thread m_drainThread;
+  private volatile boolean m_running = true;
+
+  /**
+   * Creates the file and starts the drain thread.
+   *
+   * @param file            where to write. Overwritten if it exists.
+   * @param recordBytes     the size of every record
+   * @param formatVersion   which layout the records have, so readers can refuse a file they don't understand
+   * @param capacityRecords how many records the ring holds; rounded up to a power of two
+   * @param maxFileBytes    records past this size are dropped, so a long session can't fill the disk
+   */
+  public RingBufferLogger(Path file, int recordBytes, int formatVersion, int capacityRecords, long maxFileBytes)
+          throws IOException {
+    int capacity = Integer.highestOneBit(Math.max(capacityRecords, 2) - 1) << 1;
+    m_recordBytes = recordBytes;
+    m_capacityMask = capacity - 1;
+    m_maxRecords = Math.max(0, (maxFileBytes - HEADER_BYTES) / recordBytes);
+    m_ring = ByteBuffer.allocateDirect(capacity * recordBytes).order(ByteOrder.LITTLE_ENDIAN);
+    m_drainView = m_ring.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+
+    if (file.getParent() != null) {
+      Files.createDirectories(file.getParent());
+    }
+    m_channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+    m_header = m_channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+    m_header.order(ByteOrder.LITTLE_ENDIAN);
+    m_header.putLong(0, MAGIC);
+    m_header.putInt(RECORD_BYTES_OFFSET, recordBytes);
+    m_header.putInt(FORMAT_VERSION_OFFSET, formatVersion);
+    m_header.putLong(RECORD_COUNT_OFFSET, 0);
+
+    m_drainThread = new Thread(this::drainLoop, "Log writer");
+    m_drainThread.setDaemon(true);
+    m_drainThread.setPriority(Thread.MIN_PRIORITY);
+    m_drainThread.start();
+  }
+
+  public int getRecordBytes() {
+    return m_recordBytes;
+  }
+
+  /**
+   * Starts a new record. If the ring is full, the record is dropped and every put until {@link #commitRecord()} is
+   * ignored.
+   *
+   * @return false if the record is being dropped
+   */
+  public boolean beginRecord() {
+    if (m_writeIndex - m_tail.get() > m_capacityMask) {
+      m_dropped.incrementAndGet();
+      m_recordOffset = -1;
+      return false;
+    }
+    m_recordOffset = (int) (m_writeIndex & m_capacityMask) * m_recordBytes;
+    // Clear any leftovers from the last lap so fields that aren't written read as zero.
+    for (int i = 0; i + 8 <= m_recordBytes; i += 8) {
+      m_ring.putLong(m_recordOffset + i, 0L);
+    }
+    for (int i = m_recordBytes & ~7; i < m_recordBytes; i++) {
+      m_ring.put(m_recordOffset + i, (byte) 0);
+    }
+    return true;
+  }
+
+  public void putDouble(int offset, double value) {
+    if (checkOffset(offset, Double.BYTES)) {
+      m_ring.putDouble(m_recordOffset + offset, value);
+    }
+  }
+
+  public void putFloat(int offset, float value) {
+    if (checkOffset(offset, Float.BYTES)) {
+      m_ring.putFloat(m_recordOffset + offset, value);
+    }
+  }
+
+  public void putLong(int offset, long value) {
+    if (checkOffset(offset, Long.BYTES)) {
+      m_ring.putLong(m_recordOffset + offset, value);
+    }
+  }
+
+  public void putInt(int offset, int value) {
+    if (checkOffset(offset, Integer.BYTES)) {
+      m_ring.putInt(m_recordOffset + offset, value);
+    }
+  }
+
+  private boolean checkOffset(int offset, int size) {
+    if (offset < 0 || offset + size > m_recordBytes) {
+      throw new IndexOutOfBoundsException("Field at " + offset + " doesn't fit in a " + m_recordBytes + " byte record");
+    }
+    return m_recordOffset >= 0;
+  }
+
+  /** Hands the record to the drain thread. */
+  public void commitRecord() {
+    if (m_recordOffset < 0) {
+      return;
+    }
+    m_recordOffset = -1;
+    m_writeIndex++;
+    m_head.lazySet(m_writeIndex);
+  }
+
+  /** Gets how many records were dropped because the ring was full or the file hit its size limit. */
+  public long getDroppedRecords() {
+    return m_dropped.get();
+  }
+
+  /** Gets how many records have made it to the file. */
+  public long getWrittenRecords() {
+    return m_recordsWritten;
+  }
+
+  private void drainLoop() {
+    while (m_running) {
+      drain();
+      LockSupport.parkNanos(DRAIN_PERIOD_NANOS);
+    }
+    drain();
+  }
+
+  private void drain() {
+    long head = m_head.get();
+    long tail = m_tail.get();
+    try {
+      while (tail < head) {
+        if (m_recordsWritten >= m_maxRecords) {
+          m_dropped.incrementAndGet();
+        } else {
+          ensureChunkSpace();
+          int offset = (int) (tail & m_capacityMask) * m_recordBytes;
+          m_drainView.clear();
+          m_drainView.position(offset);
+          m_drainView.limit(offset + m_recordBytes);
+          m_chunk.put(m_drainView);
+          m_recordsWritten++;
+        }
+        tail++;
+      }
+    } catch (IOException e) {
+      // Keep the robot running; just stop logging.
+      m_running = false;
+    }
+    m_header.putLong(RECORD_COUNT_OFFSET, m_recordsWritten);
+    m_tail.lazySet(tail);
+  }
+
+  private void ensureChunkSpace() throws IOException {
+    if (m_chunk == null || m_chunk.remaining() < m_recordBytes) {
+      long position = HEADER_BYTES + m_recordsWritten * m_recordBytes;
+      long size = Math.min(MAP_CHUNK_BYTES, (m_maxRecords - m_recordsWritten) * m_recordBytes);
+      m_chunk = m_channel.map(FileChannel.MapMode.READ_WRITE, position, size);
+    }
+  }
+
+  /** Writes out everything that's been committed, trims the file to size and closes it. */
+  @Override
+  public void close() throws IOException {
+    m_running = false;
+    LockSupport.unpark(m_drainThread);
+    try {
+      m_drainThread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (m_chunk != null) {
+      m_chunk.force();
+    }
+    m_header.force();
+    m_channel.truncate(HEADER_BYTES + m_recordsWritten * m_recordBytes);
+    m_channel.close();
+  }
+}
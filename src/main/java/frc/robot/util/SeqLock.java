@@ -0,0 +1,80 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Base class for a set of fields handed from one writer thread to any number of reader threads, seqlock style.
+ * Subclasses hold the fields and wrap their writes and reads like this:
+ * <pre>
+ *   long sequence = beginWrite();
+ *   m_x = x;
+ *   endWrite(sequence);
+ *
+ *   while (true) {
+ *     long sequence = beginRead();
+ *     double x = m_x;
+ *     if (validate(sequence)) {
+ *       return x;
+ *     }
+ *   }
+ * </pre>
+ * The writer bumps the sequence number to an odd value, writes the fields, then bumps it to an even value. A reader
+ * copies the fields into locals and retries if the sequence number was odd or changed while it was copying. Readers
+ * never block the writer and never see a half-written set of fields, even though doubles aren't atomic on the
+ * roboRIO's 32-bit ARM. Only use what a reader copied once {@link #validate(long)} says it's consistent.
+ * <p>
+ * Only one thread may write.
+ */
+public abstract class SeqLock {
+  private static final VarHandle SEQUENCE;
+
+  static {
+    try {
+      SEQUENCE = MethodHandles.lookup().findVarHandle(SeqLock.class, "m_sequence", long.class);
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  @SuppressWarnings("unused") // Accessed through SEQUENCE
+  private volatile long m_sequence = 0;
+
+  /** Starts a write. Pass what it returns to {@link #endWrite(long)}. Only call this from the writer thread. */
+  protected final long beginWrite() {
+    long sequence = (long) SEQUENCE.getOpaque(this);
+    SEQUENCE.setOpaque(this, sequence + 1);
+    VarHandle.storeStoreFence();
+    return sequence;
+  }
+
+  /** Publishes everything written since {@link #beginWrite()}. */
+  protected final void endWrite(long sequence) {
+    SEQUENCE.setRelease(this, sequence + 2);
+  }
+
+  /**
+   * Waits out any write in progress and starts a read. Pass what it returns to {@link #validate(long)}.
+   *
+   * @return the sequence number, which is even, and increases by two with every write
+   */
+  protected final long beginRead() {
+    while (true) {
+      long sequence = (long) SEQUENCE.getAcquire(this);
+      if ((sequence & 1) == 0) {
+        return sequence;
+      }
+      Thread.onSpinWait();
+    }
+  }
+
+  /** Returns whether nothing was written since {@link #beginRead()}, so the fields read since then belong together. */
+  protected final boolean validate(long sequence) {
+    VarHandle.loadLoadFence();
+    return (long) SEQUENCE.getOpaque(this) == sequence;
+  }
+}
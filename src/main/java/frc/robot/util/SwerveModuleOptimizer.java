@@ -0,0 +1,78 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import edu.wpi.first.math.geometry.Translation2d;
+
+/**
+ * Adjusts module speeds and angles against where each module is actually pointing, right before they're sent.
+ * <p>
+ * A module pointing at {@code a} driving at {@code v} moves the robot the same as one pointing at {@code a + pi}
+ * driving at {@code -v}. {@link #minimizeSteering} picks whichever of the two is closer to the measured angle, so a
+ * module never steers more than 90 degrees. {@link #scaleByAlignment} then scales each speed by the cosine of the
+ * remaining steering error. While a module is still turning, it only pushes as hard as is useful in the direction it
+ * should be going, instead of driving full speed sideways.
+ * <p>
+ * Both work in place on primitive arrays, so they allocate nothing.
+ */
+public final class SwerveModuleOptimizer {
+  private SwerveModuleOptimizer() {}
+
+  /**
+   * Flips each module whose target is more than 90 degrees from its measured angle. Afterwards, each angle is within
+   * 90 degrees of the measured one, written relative to it (not wrapped to a fixed range).
+   *
+   * @param speeds         module speeds, modified in place
+   * @param angles         module angles in radians, modified in place
+   * @param measuredAngles where each module is pointing now, in radians
+   */
+  public static void minimizeSteering(double[] speeds, double[] angles, double[] measuredAngles) {
+    for (int i = 0; i < speeds.length; i++) {
+      double error = wrap(angles[i] - measuredAngles[i]);
+      if (error > Math.PI / 2.0) {
+        error -= Math.PI;
+        speeds[i] = -speeds[i];
+      } else if (error < -Math.PI / 2.0) {
+        error += Math.PI;
+        speeds[i] = -speeds[i];
+      }
+      angles[i] = measuredAngles[i] + error;
+    }
+  }
+
+  /**
+   * Scales each speed by the cosine of how far its module still has to steer. A module that's 90 degrees or more off
+   * gets no drive output at all.
+   *
+   * @param speeds         module speeds, modified in place
+   * @param angles         module angles in radians
+   * @param measuredAngles where each module is pointing now, in radians
+   */
+  public static void scaleByAlignment(double[] speeds, double[] angles, double[] measuredAngles) {
+    for (int i = 0; i < speeds.length; i++) {
+      speeds[i] *= Math.max(0.0, Math.cos(angles[i] - measuredAngles[i]));
+    }
+  }
+
+  /**
+   * Computes the X-lock formation: every module turned to point at the center of the robot, so the wheels resist
+   * being pushed in any direction.
+   *
+   * @param moduleLocations where each module is relative to the center of the robot
+   * @return each module's angle in radians
+   */
+  public static double[] computeXLockAngles(Translation2d... moduleLocations) {
+    double[] angles = new double[moduleLocations.length];
+    for (int i = 0; i < moduleLocations.length; i++) {
+      angles[i] = Math.atan2(moduleLocations[i].getY(), moduleLocations[i].getX());
+    }
+    return angles;
+  }
+
+  /** Wraps an angle to [-pi, pi]. */
+  private static double wrap(double angle) {
+    return Math.IEEEremainder(angle, 2.0 * Math.PI);
+  }
+}
@@ -0,0 +1,184 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import edu.wpi.first.math.geometry.Translation2d;
+
+/**
+ * Turns requested chassis speeds into the closest speeds a swerve drive can actually reach in one loop.
+ * <p>
+ * Each loop, the setpoint moves from the previous one toward the request along a straight line in (vx, vy, omega)
+ * space, as far as every limit allows:
+ * <ul>
+ *   <li>the request is first scaled down so no module would have to exceed its top speed,</li>
+ *   <li>the chassis' linear and angular acceleration are limited,</li>
+ *   <li>each module's velocity vector may only change by its acceleration limit, which is what keeps the wheels
+ *       from slipping and the current from spiking,</li>
+ *   <li>each moving module may only change direction as fast as it can steer. Reversing is free, because the
+ *       modules flip their drive direction instead of turning around.</li>
+ * </ul>
+ * Because every module's velocity is linear in the chassis speeds, one fraction of the step satisfies all of them at
+ * once. The modules stay consistent with each other the whole way, instead of fighting while some of them re-steer.
+ * <p>
+ * Everything is computed with primitives, so this allocates nothing.
+ */
+public class SwerveSetpointGenerator {
+  /** Modules slower than this can point anywhere, so their steering isn't limited. */
+  static final double STEERING_LIMIT_MIN_SPEED_METERS_PER_SECOND = 0.2;
+  private static final int STEERING_SEARCH_ITERATIONS = 12;
+
+  private final int m_numModules;
+  private final double[] m_moduleX;
+  private final double[] m_moduleY;
+  private final double m_maxModuleSpeed;
+  private final double m_maxLinearAcceleration;
+  private final double m_maxAngularAcceleration;
+  private final double m_maxModuleAcceleration;
+  private final double m_maxSteeringRate;
+
+  // The last setpoint we generated.
+  private double m_vx = 0.0;
+  private double m_vy = 0.0;
+  private double m_omega = 0.0;
+
+  /**
+   * @param moduleLocations        where each module is relative to the center of the robot
+   * @param maxModuleSpeed         the fastest any module can drive, in meters per second
+   * @param maxLinearAcceleration  the chassis' maximum acceleration, in meters per second squared
+   * @param maxAngularAcceleration the chassis' maximum angular acceleration, in radians per second squared
+   * @param maxModuleAcceleration  the most any module's velocity vector can change, in meters per second squared
+   * @param maxSteeringRate        how fast a module can steer, in radians per second
+   */
+  public SwerveSetpointGenerator(Translation2d[] moduleLocations, double maxModuleSpeed, double maxLinearAcceleration,
+                                 double maxAngularAcceleration, double maxModuleAcceleration, double maxSteeringRate) {
+    m_numModules = moduleLocations.length;
+    m_moduleX = new double[m_numModules];
+    m_moduleY = new double[m_numModules];
+    for (int i = 0; i < m_numModules; i++) {
+      m_moduleX[i] = moduleLocations[i].getX();
+      m_moduleY[i] = moduleLocations[i].getY();
+    }
+    m_maxModuleSpeed = maxModuleSpeed;
+    m_maxLinearAcceleration = maxLinearAcceleration;
+    m_maxAngularAcceleration = maxAngularAcceleration;
+    m_maxModuleAcceleration = maxModuleAcceleration;
+    m_maxSteeringRate = maxSteeringRate;
+  }
+
+  /**
+   * Moves the setpoint one loop toward the requested robot-relative speeds. Read the result back with
+   * {@link #getVxMetersPerSecond()}, {@link #getVyMetersPerSecond()} and {@link #getOmegaRadiansPerSecond()}.
+   *
+   * @param dtSeconds how long until the next setpoint is generated
+   */
+  public void generate(double vxMetersPerSecond, double vyMetersPerSecond, double omegaRadiansPerSecond,
+                       double dtSeconds) {
+    // Scale the request down, keeping its direction, until every module can reach its speed.
+    double fastestModule = 0.0;
+    for (int i = 0; i < m_numModules; i++) {
+      fastestModule = Math.max(fastestModule, Math.hypot(
+              vxMetersPerSecond - omegaRadiansPerSecond * m_moduleY[i],
+              vyMetersPerSecond + omegaRadiansPerSecond * m_moduleX[i]));
+    }
+    if (fastestModule > m_maxModuleSpeed) {
+      double scale = m_maxModuleSpeed / fastestModule;
+      vxMetersPerSecond *= scale;
+      vyMetersPerSecond *= scale;
+      omegaRadiansPerSecond *= scale;
+    }
+
+    double dvx = vxMetersPerSecond - m_vx;
+    double dvy = vyMetersPerSecond - m_vy;
+    double domega = omegaRadiansPerSecond - m_omega;
+
+    // The fraction of the step toward the request we can take this loop.
+    double fraction = 1.0;
+    fraction = limit(fraction, Math.hypot(dvx, dvy), m_maxLinearAcceleration * dtSeconds);
+    fraction = limit(fraction, Math.abs(domega), m_maxAngularAcceleration * dtSeconds);
+
+    double maxSteeringChange = m_maxSteeringRate * dtSeconds;
+    for (int i = 0; i < m_numModules; i++) {
+      double moduleVx = m_vx - m_omega * m_moduleY[i];
+      double moduleVy = m_vy + m_omega * m_moduleX[i];
+      double moduleDvx = dvx - domega * m_moduleY[i];
+      double moduleDvy = dvy + domega * m_moduleX[i];
+      fraction = limit(fraction, Math.hypot(moduleDvx, moduleDvy), m_maxModuleAcceleration * dtSeconds);
+      if (Math.hypot(moduleVx, moduleVy) > STEERING_LIMIT_MIN_SPEED_METERS_PER_SECOND) {
+        fraction = limitSteering(fraction, moduleVx, moduleVy, moduleDvx, moduleDvy, maxSteeringChange);
+      }
+    }
+
+    m_vx += dvx * fraction;
+    m_vy += dvy * fraction;
+    m_omega += domega * fraction;
+  }
+
+  /** Shrinks {@code fraction} so that {@code fraction * change} is at most {@code maxChange}. */
+  private static double limit(double fraction, double change, double maxChange) {
+    return change * fraction > maxChange ? maxChange / change : fraction;
+  }
+
+  /**
+   * Shrinks {@code fraction} so that the module's direction turns by at most {@code maxChange} between its current
+   * velocity {@code (vx, vy)} and {@code (vx, vy) + fraction * (dvx, dvy)}.
+   * <p>
+   * Walking along that line, the direction turns monotonically, so a bisection finds the largest fraction that stays
+   * within the limit.
+   */
+  private static double limitSteering(double fraction, double vx, double vy, double dvx, double dvy,
+                                      double maxChange) {
+    if (steeringChange(vx, vy, dvx, dvy, fraction) <= maxChange
+            || Math.hypot(vx + dvx * fraction, vy + dvy * fraction) <= STEERING_LIMIT_MIN_SPEED_METERS_PER_SECOND) {
+      // Either it can steer that far, or it's slowing down enough that where it points doesn't matter.
+      return fraction;
+    }
+    double low = 0.0;
+    double high = fraction;
+    for (int iteration = 0; iteration < STEERING_SEARCH_ITERATIONS; iteration++) {
+      double middle = 0.5 * (low + high);
+      if (directionChange(vx, vy, dvx, dvy, middle) <= maxChange) {
+        low = middle;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /** The angle between the module's velocity now and after taking {@code fraction} of the step, in [0, pi]. */
+  private static double directionChange(double vx, double vy, double dvx, double dvy, double fraction) {
+    double nextVx = vx + dvx * fraction;
+    double nextVy = vy + dvy * fraction;
+    return Math.abs(Math.atan2(vx * nextVy - vy * nextVx, vx * nextVx + vy * nextVy));
+  }
+
+  /** How far the module has to steer for that direction change, given that it can flip instead of turning past 90. */
+  private static double steeringChange(double vx, double vy, double dvx, double dvy, double fraction) {
+    double change = directionChange(vx, vy, dvx, dvy, fraction);
+    return Math.min(change, Math.PI - change);
+  }
+
+  /**
+   * Forgets the previous setpoint and starts from the given speeds, e.g. the measured ones after the robot was
+   * disabled or pushed.
+   */
+  public void reset(double vxMetersPerSecond, double vyMetersPerSecond, double omegaRadiansPerSecond) {
+    m_vx = vxMetersPerSecond;
+    m_vy = vyMetersPerSecond;
+    m_omega = omegaRadiansPerSecond;
+  }
+
+  public double getVxMetersPerSecond() {
+    return m_vx;
+  }
+
+  public double getVyMetersPerSecond() {
+    return m_vy;
+  }
+
+  public double getOmegaRadiansPerSecond() {
+    return m_omega;
+  }
+}
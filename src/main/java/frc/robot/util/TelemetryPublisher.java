@@ -0,0 +1,226 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Publishes dashboard values at the rate each one is worth, and only when it has changed by more than its deadband.
+ * <p>
+ * Shuffleboard's supplied widgets read every supplier and hand every value to NetworkTables every loop, whether it
+ * changed or not. Here each signal is registered once with a {@link Tier} and a deadband. {@link #periodic()} reads
+ * only the tiers that are due that loop, hands the {@link Sink} only the values that moved more than their deadband
+ * since they were last published. Nothing is flushed: NetworkTables sends whatever changed every 100 ms on its own,
+ * and every flush would be one more packet, whose headers cost more than the tiers save (see
+ * TelemetryBandwidthTest). The {@link Tier#FAST} signals are still read every loop, so each send carries
+ * the newest value. The deadband is measured from the last published value, so a slow drift still gets published
+ * once it adds up.
+ * <p>
+ * The slower tiers are staggered so they don't all land on the same loop. {@link #periodic()} doesn't allocate, and
+ * times itself as a {@link LoopProfiler} stage. It also keeps a running estimate of how many bytes it has put on the
+ * wire; see {@link #UPDATE_OVERHEAD_BYTES}.
+ * <p>
+ * Register signals and call {@link #periodic()} from the same thread.
+ */
+public class TelemetryPublisher {
+  /**
+   * How much one value update costs on the wire in NetworkTables 3, not counting the value itself: a message type,
+   * entry id, sequence number and value type.
+   */
+  public static final int UPDATE_OVERHEAD_BYTES = 6;
+  /**
+   * How much each send costs on the wire on top of the updates in it: the headers of the packet it goes out in.
+   * That's 14 bytes of Ethernet, 20 of IP and 32 of TCP with the timestamp option Linux sends.
+   */
+  public static final int SEND_OVERHEAD_BYTES = 66;
+  public static final int DOUBLE_BYTES = 8;
+  public static final int BOOLEAN_BYTES = 1;
+
+  /** How often a signal is read and, if it changed, published. Rates assume the 50 Hz robot loop. */
+  public enum Tier {
+    /** Every loop, 50 Hz. For what the drivers watch move, like the heading. */
+    FAST(1),
+    /** Every 5th loop, 10 Hz. */
+    NORMAL(5),
+    /** Every 10th loop, 5 Hz. For diagnostics. */
+    DIAGNOSTIC(10);
+
+    private final int m_periodLoops;
+
+    Tier(int periodLoops) {
+      m_periodLoops = periodLoops;
+    }
+
+    public int getPeriodLoops() {
+      return m_periodLoops;
+    }
+
+    public double getRateHz(double loopPeriodSeconds) {
+      return 1.0 / (m_periodLoops * loopPeriodSeconds);
+    }
+  }
+
+  /** Where published values go: NetworkTables on the robot, see {@link NetworkTablesTelemetrySink}. */
+  public interface Sink {
+    /** Called once per signal, in order, as it's registered. */
+    void register(int signal, String key);
+
+    void putDouble(int signal, double value);
+
+    void putBoolean(int signal, boolean value);
+  }
+
+  private final Sink m_sink;
+  private final LoopProfiler.Stage m_stage;
+  // The signals in each tier, indexed by Tier.ordinal().
+  private final List<List<Signal>> m_tiers = new ArrayList<>();
+  private int m_signalCount = 0;
+  private boolean m_filtering = true;
+
+  private long m_loop = 0;
+  private long m_samples = 0;
+  private long m_updates = 0;
+  private long m_bytes = 0;
+
+  /**
+   * @param name the name its profiler stage is shown under
+   * @param sink where values go
+   */
+  public TelemetryPublisher(String name, Sink sink) {
+    m_sink = sink;
+    m_stage = LoopProfiler.getInstance().register(name);
+    for (int i = 0; i < Tier.values().length; i++) {
+      m_tiers.add(new ArrayList<>());
+    }
+  }
+
+  /**
+   * Adds a number.
+   *
+   * @param key      where it's published, relative to the sink's table
+   * @param tier     how often it's read
+   * @param deadband how far it has to move from the last published value to be published again, or 0 to publish any
+   *                 change
+   * @param supplier reads it
+   */
+  public void addDouble(String key, Tier tier, double deadband, DoubleSupplier supplier) {
+    add(key, tier, new Signal(supplier, null, deadband));
+  }
+
+  /** Adds a boolean, published whenever it flips (as of the tier's last read). */
+  public void addBoolean(String key, Tier tier, BooleanSupplier supplier) {
+    add(key, tier, new Signal(null, supplier, 0.0));
+  }
+
+  private void add(String key, Tier tier, Signal signal) {
+    signal.m_index = m_signalCount++;
+    m_tiers.get(tier.ordinal()).add(signal);
+    m_sink.register(signal.m_index, key);
+  }
+
+  /**
+   * Turns the tiers and deadbands on or off. With them off, every signal is read and handed to the sink every loop,
+   * and only exact repeats are dropped, which is how Shuffleboard's supplied widgets behave. That's there to measure
+   * against.
+   */
+  public void setFiltering(boolean filtering) {
+    m_filtering = filtering;
+  }
+
+  public boolean isFiltering() {
+    return m_filtering;
+  }
+
+  /** Reads the signals that are due and publishes the ones that changed. Call it once per robot loop. */
+  public void periodic() {
+    long start = m_stage.start();
+    for (int tier = 0; tier < m_tiers.size(); tier++) {
+      int periodLoops = Tier.values()[tier].m_periodLoops;
+      // Staggered by tier, so e.g. NORMAL and DIAGNOSTIC never come due on the same loop.
+      if (m_filtering && (m_loop + tier) % periodLoops != 0) {
+        continue;
+      }
+      List<Signal> signals = m_tiers.get(tier);
+      for (int i = 0; i < signals.size(); i++) {
+        publish(signals.get(i));
+      }
+    }
+    m_loop++;
+    m_stage.stop(start);
+  }
+
+  private void publish(Signal signal) {
+    m_samples++;
+    double value = signal.read();
+    double deadband = m_filtering ? signal.m_deadband : 0.0;
+    boolean changed = !signal.m_published
+            || (deadband > 0.0 ? Math.abs(value - signal.m_lastValue) > deadband : value != signal.m_lastValue);
+    if (!changed) {
+      return;
+    }
+    signal.m_published = true;
+    signal.m_lastValue = value;
+    m_updates++;
+    if (signal.m_booleanSupplier != null) {
+      m_sink.putBoolean(signal.m_index, value != 0.0);
+      m_bytes += UPDATE_OVERHEAD_BYTES + BOOLEAN_BYTES;
+    } else {
+      m_sink.putDouble(signal.m_index, value);
+      m_bytes += UPDATE_OVERHEAD_BYTES + DOUBLE_BYTES;
+    }
+  }
+
+  public int getSignalCount() {
+    return m_signalCount;
+  }
+
+  /** Gets how many times a signal has been read. */
+  public long getSamples() {
+    return m_samples;
+  }
+
+  /** Gets how many values have been handed to the sink. */
+  public long getUpdatesSent() {
+    return m_updates;
+  }
+
+  /**
+   * Gets roughly how many bytes those updates would take on the wire if each one was sent. It's an upper bound on the
+   * updates themselves, since NetworkTables only sends the last of several changes between sends, but leaves out the
+   * packet headers, {@link #SEND_OVERHEAD_BYTES} per send.
+   */
+  public long getEstimatedBytesSent() {
+    return m_bytes;
+  }
+
+  public LoopProfiler.Stage getStage() {
+    return m_stage;
+  }
+
+  private static final class Signal {
+    private final DoubleSupplier m_doubleSupplier;
+    private final BooleanSupplier m_booleanSupplier;
+    private final double m_deadband;
+    private int m_index;
+    private boolean m_published = false;
+    private double m_lastValue;
+
+    private Signal(DoubleSupplier doubleSupplier, BooleanSupplier booleanSupplier, double deadband) {
+      m_doubleSupplier = doubleSupplier;
+      m_booleanSupplier = booleanSupplier;
+      m_deadband = deadband;
+    }
+
+    private double read() {
+      if (m_booleanSupplier != null) {
+        return m_booleanSupplier.getAsBoolean() ? 1.0 : 0.0;
+      }
+      return m_doubleSupplier.getAsDouble();
+    }
+  }
+}
@@ -0,0 +1,266 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import com.sun.management.ThreadMXBean;
+
+import org.junit.Test;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+import edu.wpi.first.wpilibj.simulation.XboxControllerSim;
+
+/**
+ * Runs the whole robot loop headless, in simulated time, through scripted driving scenarios, and fails if any of them
+ * allocates more than its budget, or, when asked to, got slower.
+ * <p>
+ * The robot is built exactly as it is for simulation: {@link RobotContainer} on the drivetrain simulation, with the
+ * HAL simulation underneath. Each loop the scenario sets the Xbox controller, then {@link Robot#robotPeriodic()} is
+ * timed, and {@link ThreadMXBean} counts the bytes it allocated on this thread. Stepping the simulation happens
+ * between the measured loops, so it isn't counted. Simulated time only moves when the suite steps it, so a slow run
+ * doesn't change what the robot does.
+ * <p>
+ * The budgets live in {@code perf/loop-budgets.properties}: the mean bytes allocated per loop, and the p99 loop time
+ * in microseconds, for each scenario. Allocations don't depend on the machine, so they're budgeted tightly and checked
+ * on every build. Loop times depend on the machine and whatever else it's doing, so they're only checked with
+ * {@code -PcheckLoopTime}, against budgets recorded on the same machine. After a change that's meant to cost more,
+ * measure and write new budgets with
+ * {@code ./gradlew test --tests frc.robot.LoopPerformanceTest -PrecordLoopBudgets} and commit them.
+ */
+public class LoopPerformanceTest {
+  // Set by the build: where the budgets are, whether to write new ones instead of checking them, and whether to check
+  // loop times as well as allocations.
+  private static final String BUDGETS_FILE_PROPERTY = "loopBudgets.file";
+  private static final String RECORD_PROPERTY = "loopBudgets.record";
+  private static final String CHECK_TIME_PROPERTY = "loopBudgets.checkTime";
+
+  private static final double LOOP_PERIOD_SECONDS = 0.02;
+  private static final int WARMUP_LOOPS = 1500;
+  private static final int MEASURED_LOOPS = 1500;
+
+  // New budgets are what was measured times the headroom, plus the slack.
+  private static final double TIME_HEADROOM = 3.0;
+  private static final double TIME_SLACK_MICROS = 500.0;
+  private static final double ALLOCATION_HEADROOM = 1.25;
+  private static final long ALLOCATION_SLACK_BYTES = 256;
+
+  private static final Scenario[] SCENARIOS = {
+          // Both sticks sweeping around, out of phase, through DefaultDriveCommand.
+          new Scenario("teleopSweep", (controller, t) -> {
+            controller.setLeftX(Math.cos(2.0 * Math.PI * t / 4.0));
+            controller.setLeftY(Math.sin(2.0 * Math.PI * t / 4.0));
+            controller.setRightX(Math.sin(2.0 * Math.PI * t / 3.0));
+            controller.setBButton(false);
+            controller.setBackButton(false);
+          }),
+          // Holding B for sturdyBaseCommand while the sticks still move.
+          new Scenario("sturdyBase", (controller, t) -> {
+            controller.setLeftX(Math.cos(2.0 * Math.PI * t / 4.0));
+            controller.setLeftY(Math.sin(2.0 * Math.PI * t / 4.0));
+            controller.setRightX(0.0);
+            controller.setBButton(true);
+            controller.setBackButton(false);
+          }),
+          // Driving, and tapping back to zero the gyro twice a second. Each tap is held for two loops so it isn't
+          // missed.
+          new Scenario("gyroZero", (controller, t) -> {
+            controller.setLeftX(0.0);
+            controller.setLeftY(-0.5);
+            controller.setRightX(0.5);
+            controller.setBButton(false);
+            controller.setBackButton(t % 0.5 < 2 * LOOP_PERIOD_SECONDS);
+          }),
+  };
+
+  @Test
+  public void robotLoopStaysWithinBudget() throws IOException {
+    Path budgetsFile = Paths.get(System.getProperty(BUDGETS_FILE_PROPERTY, "perf/loop-budgets.properties"));
+    boolean record = Boolean.getBoolean(RECORD_PROPERTY);
+    boolean checkTime = Boolean.getBoolean(CHECK_TIME_PROPERTY);
+
+    assertTrue("Couldn't start the HAL simulation", HAL.initialize(500, 0));
+    SimHooks.pauseTiming();
+    DriverStationSim.setDsAttached(true);
+    DriverStationSim.setAutonomous(false);
+    DriverStationSim.setTest(false);
+    DriverStationSim.setEnabled(true);
+    DriverStationSim.notifyNewData();
+
+    Robot robot = new Robot();
+    robot.robotInit();
+    XboxControllerSim controller = new XboxControllerSim(0);
+
+    ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    threads.setThreadAllocatedMemoryEnabled(true);
+    long thread = Thread.currentThread().getId();
+
+    // Warm everything up first, so the JIT has compiled the loop before anything is measured.
+    for (Scenario scenario : SCENARIOS) {
+      run(robot, controller, scenario, WARMUP_LOOPS, null, threads, thread);
+    }
+    List<Result> results = new ArrayList<>();
+    for (Scenario scenario : SCENARIOS) {
+      Result result = new Result(scenario.m_name);
+      run(robot, controller, scenario, MEASURED_LOOPS, result, threads, thread);
+      results.add(result);
+    }
+
+    System.out.printf("%-14s %10s %10s %10s %16s %14s%n", "scenario", "p50 (us)", "p99 (us)", "max (us)",
+            "mean (B/loop)", "max (B/loop)");
+    for (Result result : results) {
+      result.print();
+    }
+
+    if (record) {
+      writeBudgets(budgetsFile, results);
+      System.out.println("Wrote new budgets to " + budgetsFile);
+      return;
+    }
+    if (!checkTime) {
+      System.out.println("Loop times not checked; run with -PcheckLoopTime to check them");
+    }
+    String failures = checkBudgets(budgetsFile, results, checkTime);
+    assertTrue(failures + "If that's expected, record new budgets with ./gradlew test --tests "
+            + "frc.robot.LoopPerformanceTest -PrecordLoopBudgets and commit " + budgetsFile.getFileName(),
+            failures.isEmpty());
+  }
+
+  private static void run(Robot robot, XboxControllerSim controller, Scenario scenario, int loops, Result result,
+                          ThreadMXBean threads, long thread) {
+    for (int loop = 0; loop < loops; loop++) {
+      scenario.m_script.apply(controller, loop * LOOP_PERIOD_SECONDS);
+      controller.notifyNewData();
+
+      long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+      long start = System.nanoTime();
+      robot.robotPeriodic();
+      long elapsed = System.nanoTime() - start;
+      long allocated = threads.getThreadAllocatedBytes(thread) - allocatedBefore;
+
+      robot.simulationPeriodic();
+      SimHooks.stepTiming(LOOP_PERIOD_SECONDS);
+      if (result != null) {
+        result.m_loopNanos[loop] = elapsed;
+        result.m_allocatedBytes[loop] = allocated;
+      }
+    }
+    if (result != null) {
+      result.summarize();
+    }
+  }
+
+  /** Gets a line for each budget that was missing or exceeded, or an empty string if none were. */
+  private static String checkBudgets(Path budgetsFile, List<Result> results, boolean checkTime) throws IOException {
+    Properties budgets = new Properties();
+    try (InputStream in = Files.newInputStream(budgetsFile)) {
+      budgets.load(in);
+    }
+    StringBuilder failures = new StringBuilder();
+    for (Result result : results) {
+      checkBudget(budgets, result.m_name + ".allocatedBytesPerLoop", result.m_meanAllocatedBytes, failures);
+      if (checkTime) {
+        checkBudget(budgets, result.m_name + ".p99Micros", result.m_p99Micros, failures);
+      }
+    }
+    return failures.toString();
+  }
+
+  private static void checkBudget(Properties budgets, String key, double measured, StringBuilder failures) {
+    String budget = budgets.getProperty(key);
+    if (budget == null) {
+      failures.append("No budget for ").append(key).append(". ");
+    } else if (measured > Double.parseDouble(budget)) {
+      failures.append(String.format("%s is %.0f, over its budget of %s. ", key, measured, budget));
+    }
+  }
+
+  private static void writeBudgets(Path budgetsFile, List<Result> results) throws IOException {
+    if (budgetsFile.getParent() != null) {
+      Files.createDirectories(budgetsFile.getParent());
+    }
+    try (Writer out = Files.newBufferedWriter(budgetsFile, StandardCharsets.UTF_8)) {
+      out.write("# Robot loop budgets for LoopPerformanceTest. ./gradlew test checks the allocations; loop times\n");
+      out.write("# are only checked with -PcheckLoopTime, and only mean anything on the machine that recorded them.\n");
+      out.write("# Re-record on the desktop HAL simulation with\n");
+      out.write("# ./gradlew test --tests frc.robot.LoopPerformanceTest -PrecordLoopBudgets.\n");
+      out.write("# Times are measured x" + TIME_HEADROOM + " + " + Math.round(TIME_SLACK_MICROS)
+              + " us for noise;\n");
+      out.write("# allocations are measured x" + ALLOCATION_HEADROOM + " + " + ALLOCATION_SLACK_BYTES + " bytes.\n");
+      for (Result result : results) {
+        out.write(result.m_name + ".p99Micros="
+                + Math.round(Math.ceil(result.m_p99Micros * TIME_HEADROOM + TIME_SLACK_MICROS)) + "\n");
+        out.write(result.m_name + ".allocatedBytesPerLoop="
+                + Math.round(Math.ceil(result.m_meanAllocatedBytes * ALLOCATION_HEADROOM + ALLOCATION_SLACK_BYTES))
+                + "\n");
+      }
+    }
+  }
+
+  /** Sets the controller for a moment in the scenario. */
+  @FunctionalInterface
+  private interface Script {
+    void apply(XboxControllerSim controller, double timeSeconds);
+  }
+
+  private static final class Scenario {
+    final String m_name;
+    final Script m_script;
+
+    Scenario(String name, Script script) {
+      m_name = name;
+      m_script = script;
+    }
+  }
+
+  private static final class Result {
+    final String m_name;
+    final long[] m_loopNanos = new long[MEASURED_LOOPS];
+    final long[] m_allocatedBytes = new long[MEASURED_LOOPS];
+    double m_p50Micros;
+    double m_p99Micros;
+    double m_maxMicros;
+    double m_meanAllocatedBytes;
+    long m_maxAllocatedBytes;
+
+    Result(String name) {
+      m_name = name;
+    }
+
+    void summarize() {
+      long[] sorted = m_loopNanos.clone();
+      Arrays.sort(sorted);
+      m_p50Micros = sorted[sorted.length / 2] / 1e3;
+      m_p99Micros = sorted[(int) (0.99 * (sorted.length - 1))] / 1e3;
+      m_maxMicros = sorted[sorted.length - 1] / 1e3;
+      long total = 0;
+      for (long bytes : m_allocatedBytes) {
+        total += bytes;
+        m_maxAllocatedBytes = Math.max(m_maxAllocatedBytes, bytes);
+      }
+      m_meanAllocatedBytes = (double) total / m_allocatedBytes.length;
+    }
+
+    void print() {
+      System.out.printf("%-14s %10.1f %10.1f %10.1f %16.1f %14d%n", m_name, m_p50Micros, m_p99Micros, m_maxMicros,
+              m_meanAllocatedBytes, m_maxAllocatedBytes);
+    }
+  }
+}
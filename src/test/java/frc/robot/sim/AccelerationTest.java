@@ -0,0 +1,138 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.sim;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import edu.wpi.first.hal.HAL;
+import frc.robot.subsystems.DrivetrainSubsystem;
+import frc.robot.util.ModuleControlConfig;
+import frc.robot.util.SwerveSetpointGenerator;
+
+/**
+ * Drives full-stick step requests on a {@link DrivetrainSim} and checks that the drivetrain's setpoint generator keeps
+ * the wheels from slipping and draws less current than sending the requests straight to the modules, without taking
+ * much longer to get up to speed.
+ * <p>
+ * The steps are forward from rest, straight into reverse, a strafe, then a spin, {@link #PHASE_SECONDS} each.
+ * Both runs are the whole {@link DrivetrainSubsystem}, feedforward and power budget included; the only difference
+ * is the setpoint generator:
+ * <ul>
+ *   <li>unlimited: a generator with no acceleration or steering limits, so every request goes straight to the
+ *       modules, the way the drivetrain drove before it had one;</li>
+ *   <li>generator: the acceleration and steering limits in {@link frc.robot.Constants}.</li>
+ * </ul>
+ * The times to 90% are from the start of each step to 90% of top speed: from rest, from full speed the other way,
+ * and from a strafe to a spin. Peak current is the most any one drive motor drew, and slip is the fraction of time
+ * the wheels spent sliding, both checked every millisecond. Sliding wheels still push with most of their grip, and the
+ * generator holds some grip back, so the unlimited drive gets going about as fast; the generator has to stay within
+ * {@link #MAX_LAUNCH_SLOWDOWN} of it. A table of the results is printed either way.
+ */
+public class AccelerationTest {
+  private static final double STEP_SECONDS = DrivetrainSim.SUBSTEP_SECONDS;
+  private static final int STEPS_PER_LOOP = (int) Math.round(DrivetrainSubsystem.LOOP_PERIOD_SECONDS / STEP_SECONDS);
+  private static final double PHASE_SECONDS = 1.5;
+  private static final double MAX = DrivetrainSubsystem.MAX_VELOCITY_METERS_PER_SECOND;
+  // Robot-relative (vx, vy, omega).
+  private static final double[][] PHASES = {
+          {MAX, 0.0, 0.0},
+          {-MAX, 0.0, 0.0},
+          {0.0, MAX, 0.0},
+          {0.0, 0.0, DrivetrainSubsystem.MAX_ANGULAR_VELOCITY_RADIANS_PER_SECOND},
+  };
+  private static final double SPEED_FRACTION = 0.9;
+  // How many times longer than the unlimited drive the generator may take to get up to speed from rest.
+  private static final double MAX_LAUNCH_SLOWDOWN = 1.15;
+  // The most of their time the wheels may spend slipping under the generator.
+  private static final double MAX_SLIP_FRACTION = 0.01;
+
+  @BeforeClass
+  public static void initializeHal() {
+    assertTrue(HAL.initialize(500, 0));
+  }
+
+  @Test
+  public void generatorStopsWheelSlipAndSavesCurrent() {
+    Result unlimited = run(false);
+    Result limited = run(true);
+    System.out.printf("%-10s %18s %19s %16s %9s %13s %7s%n", "drive", "launch to 90% (s)", "reverse to 90% (s)",
+            "spin to 90% (s)", "peak (A)", "charge (A*s)", "slip");
+    unlimited.print("unlimited");
+    limited.print("generator");
+
+    assertTrue(String.format("The wheels slipped %.1f%% of the time under the generator",
+            100.0 * limited.m_slipFraction), limited.m_slipFraction <= MAX_SLIP_FRACTION);
+    assertTrue(String.format("The generator peaked at %.1f A, the unlimited drive at %.1f A",
+            limited.m_peakCurrent, unlimited.m_peakCurrent), limited.m_peakCurrent < unlimited.m_peakCurrent);
+    assertTrue(String.format("The generator drew %.1f A*s, the unlimited drive %.1f A*s",
+            limited.m_charge, unlimited.m_charge), limited.m_charge < unlimited.m_charge);
+    assertTrue(String.format("The generator took %.3f s to get up to speed, the unlimited drive %.3f s",
+            limited.m_launchSeconds, unlimited.m_launchSeconds),
+            limited.m_launchSeconds <= MAX_LAUNCH_SLOWDOWN * unlimited.m_launchSeconds);
+  }
+
+  private static Result run(boolean limited) {
+    DrivetrainSim sim = new DrivetrainSim();
+    SwerveSetpointGenerator generator = limited
+            ? DrivetrainSubsystem.createSetpointGenerator()
+            : new SwerveSetpointGenerator(DrivetrainSubsystem.getModuleLocations(), MAX, Double.POSITIVE_INFINITY,
+                    Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY);
+    DrivetrainSubsystem drivetrain = new DrivetrainSubsystem(sim.getModules(), sim.getGyro(), sim::getTimeSeconds,
+            sim::getBusVoltage, false, ModuleControlConfig.openLoop(4), generator);
+
+    Result result = new Result();
+    int stepsPerPhase = (int) Math.round(PHASE_SECONDS / STEP_SECONDS);
+    int slippingSteps = 0;
+    for (int phase = 0; phase < PHASES.length; phase++) {
+      double[] request = PHASES[phase];
+      for (int step = 0; step < stepsPerPhase; step++) {
+        if (step % STEPS_PER_LOOP == 0) {
+          drivetrain.periodic();
+          drivetrain.drive(request[0], request[1], request[2]);
+        }
+        sim.step(STEP_SECONDS);
+
+        for (int i = 0; i < 4; i++) {
+          double current = Math.abs(sim.getModule(i).getDriveCurrentAmps());
+          result.m_peakCurrent = Math.max(result.m_peakCurrent, current);
+          result.m_charge += current * STEP_SECONDS;
+          if (sim.getModule(i).isSlipping()) {
+            slippingSteps++;
+          }
+        }
+        double seconds = (step + 1) * STEP_SECONDS;
+        double vx = sim.getChassisSpeed(0);
+        if (phase == 0 && Double.isNaN(result.m_launchSeconds) && vx >= SPEED_FRACTION * MAX) {
+          result.m_launchSeconds = seconds;
+        } else if (phase == 1 && Double.isNaN(result.m_reverseSeconds) && vx <= -SPEED_FRACTION * MAX) {
+          result.m_reverseSeconds = seconds;
+        } else if (phase == 3 && Double.isNaN(result.m_spinSeconds)
+                && sim.getChassisSpeed(2) >= SPEED_FRACTION * PHASES[3][2]) {
+          result.m_spinSeconds = seconds;
+        }
+      }
+    }
+    result.m_slipFraction = slippingSteps / (4.0 * stepsPerPhase * PHASES.length);
+    return result;
+  }
+
+  private static final class Result {
+    // NaN until reached; a step that never gets there fails the comparison.
+    double m_launchSeconds = Double.NaN;
+    double m_reverseSeconds = Double.NaN;
+    double m_spinSeconds = Double.NaN;
+    double m_peakCurrent;
+    double m_charge;
+    double m_slipFraction;
+
+    void print(String name) {
+      System.out.printf("%-10s %18.3f %19.3f %16.3f %9.1f %13.1f %6.1f%%%n", name, m_launchSeconds,
+              m_reverseSeconds, m_spinSeconds, m_peakCurrent, m_charge, 100.0 * m_slipFraction);
+    }
+  }
+}
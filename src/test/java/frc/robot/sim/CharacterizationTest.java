@@ -0,0 +1,133 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.sim;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import edu.wpi.first.math.system.plant.DCMotor;
+import frc.robot.Constants;
+import frc.robot.subsystems.DrivetrainSubsystem;
+import frc.robot.util.DriveCharacterization;
+import frc.robot.util.DriveFeedforward;
+import frc.robot.util.FeedforwardFit;
+
+/**
+ * Runs the drive characterization on a {@link DrivetrainSim}, compares the fitted gains with the ones the
+ * simulation's motor model implies, and then checks how closely each set of gains makes the wheels follow a speed
+ * profile.
+ * <p>
+ * The characterization runs at the control loop's rate and records the same way DrivetrainSubsystem does: each loop,
+ * the voltage sent last loop with the velocity measured now. The profile accelerates, cruises, crawls and reverses,
+ * and is driven open loop from the feedforward alone, so whatever the gains get wrong shows up as speed error. Each
+ * fitted gain has to be within 10% of the model's, and the fitted gains have to track the profile better than plain
+ * open loop.
+ */
+public class CharacterizationTest {
+  private static final double LOOP_PERIOD_SECONDS = Constants.DRIVE_CONTROL_LOOP_PERIOD_SECONDS;
+  private static final double GAIN_TOLERANCE = 0.1;
+
+  // Target wheel speed (m/s) and how fast to get there (m/s^2), each held for PROFILE_SECONDS.
+  private static final double[][] PROFILE = {
+          {3.0, 4.0},
+          {0.3, 4.0},
+          {0.0, 2.0},
+          {-2.0, 6.0},
+          {-0.5, 3.0},
+          {1.0, 1.0},
+          {0.0, 4.0},
+  };
+  private static final double PROFILE_SECONDS = 2.0;
+
+  @Test
+  public void fittedGainsMatchTheMotorModelAndBeatOpenLoop() {
+    DriveFeedforward model = computeModelFeedforward();
+
+    DrivetrainSim sim = new DrivetrainSim();
+    DriveCharacterization characterization = DrivetrainSubsystem.createCharacterization();
+    double[] sentVoltages = new double[4];
+    double farthestMeters = 0.0;
+    for (double t = 0.0; !characterization.isFinished(t); t += LOOP_PERIOD_SECONDS) {
+      double voltage = characterization.getVoltage(t);
+      for (int i = 0; i < sentVoltages.length; i++) {
+        characterization.record(i, t, sentVoltages[i], sim.getModule(i).getDriveVelocity());
+        sim.getModule(i).set(voltage, 0.0);
+        sentVoltages[i] = voltage;
+      }
+      sim.step(LOOP_PERIOD_SECONDS);
+      farthestMeters = Math.max(farthestMeters, Math.abs(sim.getXMeters()));
+    }
+
+    FeedforwardFit fit = characterization.getFit();
+    DriveFeedforward fitted = fit.solve();
+    assertNotNull("the fit didn't converge", fitted);
+    System.out.printf("Characterization took %.1f s, went at most %.2f m from the start, and fitted %d samples "
+                    + "with r^2 %.5f%n", characterization.getDurationSeconds(), farthestMeters, fit.getSampleCount(),
+            fit.getRSquared(fitted));
+    System.out.printf("%-10s %10s %14s %16s %18s%n", "gains", "kS (V)", "kV (V/(m/s))", "kA (V/(m/s^2))",
+            "RMS speed err (m/s)");
+    DriveFeedforward openLoop = DrivetrainSubsystem.createOpenLoopFeedforward();
+    double openLoopError = printGains("open loop", openLoop);
+    printGains("model", model);
+    double fittedError = printGains("fitted", fitted);
+
+    assertEquals("kS", model.getKs(), fitted.getKs(), GAIN_TOLERANCE * model.getKs());
+    assertEquals("kV", model.getKv(), fitted.getKv(), GAIN_TOLERANCE * model.getKv());
+    assertEquals("kA", model.getKa(), fitted.getKa(), GAIN_TOLERANCE * model.getKa());
+    assertTrue(String.format("the fitted gains tracked to %.4f m/s RMS, open loop to %.4f m/s", fittedError,
+            openLoopError), fittedError < openLoopError);
+  }
+
+  private static double printGains(String name, DriveFeedforward feedforward) {
+    double error = trackProfile(feedforward);
+    System.out.printf("%-10s %10.4f %14.4f %16.4f %18.4f%n", name, feedforward.getKs(), feedforward.getKv(),
+            feedforward.getKa(), error);
+    return error;
+  }
+
+  /** Drives every module through PROFILE from the feedforward alone, and returns the RMS speed error. */
+  private static double trackProfile(DriveFeedforward feedforward) {
+    DrivetrainSim sim = new DrivetrainSim();
+    double speed = 0.0;
+    double squaredError = 0.0;
+    int samples = 0;
+    int loops = (int) Math.round(PROFILE.length * PROFILE_SECONDS / LOOP_PERIOD_SECONDS);
+    for (int loop = 0; loop < loops; loop++) {
+      double[] step = PROFILE[(int) (loop * LOOP_PERIOD_SECONDS / PROFILE_SECONDS)];
+      double change = Math.max(-step[1] * LOOP_PERIOD_SECONDS, Math.min(step[1] * LOOP_PERIOD_SECONDS,
+              step[0] - speed));
+      double acceleration = change / LOOP_PERIOD_SECONDS;
+      // The voltage for the middle of this loop, when the speed is halfway there.
+      double voltage = feedforward.calculate(speed + 0.5 * change, acceleration);
+      for (int i = 0; i < 4; i++) {
+        sim.getModule(i).set(voltage, 0.0);
+      }
+      sim.step(LOOP_PERIOD_SECONDS);
+      speed += change;
+      for (int i = 0; i < 4; i++) {
+        double error = sim.getModule(i).getDriveVelocity() - speed;
+        squaredError += error * error;
+        samples++;
+      }
+    }
+    return Math.sqrt(squaredError / samples);
+  }
+
+  /**
+   * Works the gains out from the motor model in {@link SimSwerveModule}: each module pushes a quarter of the robot
+   * through the Falcon, the reduction and the wheel, against rolling friction.
+   */
+  private static DriveFeedforward computeModelFeedforward() {
+    DCMotor motor = DCMotor.getFalcon500(1);
+    double metersPerMotorRadian = SimSwerveModule.WHEEL_RADIUS_METERS * SimSwerveModule.DRIVE_REDUCTION;
+    double voltsPerNewton = motor.rOhms * metersPerMotorRadian / motor.KtNMPerAmp;
+    double moduleMassKg = DrivetrainSim.ROBOT_MASS_KG / 4.0;
+    return new DriveFeedforward(voltsPerNewton * DrivetrainSim.ROLLING_FRICTION_NEWTONS,
+            1.0 / (motor.KvRadPerSecPerVolt * metersPerMotorRadian), voltsPerNewton * moduleMassKg);
+  }
+}
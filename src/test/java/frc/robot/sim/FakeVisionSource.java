@@ -0,0 +1,121 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.sim;
+
+import java.util.Random;
+
+/**
+ * Pretends to be a camera that localizes the robot on the field, for testing pose estimation without one.
+ * <p>
+ * It captures the {@link DrivetrainSim}'s true pose at a fixed frame rate, adds Gaussian noise, and hands each frame
+ * back only after a random processing latency, like a coprocessor would. Frames come out in the order they were
+ * captured, and each one carries its capture time so it can be applied against where the robot was back then. The
+ * noise comes from a seeded {@link Random}, so runs are repeatable.
+ */
+public class FakeVisionSource {
+  /** One frame's result. Reuse it between polls to avoid allocating. */
+  public static final class Measurement {
+    public double captureTimestampSeconds;
+    public double xMeters;
+    public double yMeters;
+    public double headingRadians;
+  }
+
+  private final DrivetrainSim m_sim;
+  private final double m_framePeriodSeconds;
+  private final double m_minLatencySeconds;
+  private final double m_maxLatencySeconds;
+  private final double m_xyStdDevMeters;
+  private final double m_headingStdDevRadians;
+  private final Random m_random;
+
+  // Frames that have been captured but not delivered yet, oldest first.
+  private final double[] m_captureTimes;
+  private final double[] m_deliveryTimes;
+  private final double[] m_x;
+  private final double[] m_y;
+  private final double[] m_heading;
+  private int m_head = 0;
+  private int m_size = 0;
+
+  private double m_nextCaptureSeconds;
+  private double m_lastDeliverySeconds = Double.NEGATIVE_INFINITY;
+
+  /**
+   * @param sim                  where the true pose comes from
+   * @param framePeriodSeconds   the time between frames
+   * @param minLatencySeconds    the shortest time from capture to delivery
+   * @param maxLatencySeconds    the longest time from capture to delivery
+   * @param xyStdDevMeters       the noise on x and y
+   * @param headingStdDevRadians the noise on the heading
+   * @param seed                 seeds the noise and the latencies
+   */
+  public FakeVisionSource(DrivetrainSim sim, double framePeriodSeconds, double minLatencySeconds,
+                          double maxLatencySeconds, double xyStdDevMeters, double headingStdDevRadians, long seed) {
+    m_sim = sim;
+    m_framePeriodSeconds = framePeriodSeconds;
+    m_minLatencySeconds = minLatencySeconds;
+    m_maxLatencySeconds = maxLatencySeconds;
+    m_xyStdDevMeters = xyStdDevMeters;
+    m_headingStdDevRadians = headingStdDevRadians;
+    m_random = new Random(seed);
+
+    int capacity = (int) Math.ceil(maxLatencySeconds / framePeriodSeconds) + 2;
+    m_captureTimes = new double[capacity];
+    m_deliveryTimes = new double[capacity];
+    m_x = new double[capacity];
+    m_y = new double[capacity];
+    m_heading = new double[capacity];
+    m_nextCaptureSeconds = sim.getTimeSeconds();
+  }
+
+  /** Captures a frame if one is due. Call this after every simulation step. */
+  public void update() {
+    double now = m_sim.getTimeSeconds();
+    if (now < m_nextCaptureSeconds || m_size == m_captureTimes.length) {
+      return;
+    }
+    m_nextCaptureSeconds += m_framePeriodSeconds;
+
+    double latency = m_minLatencySeconds + m_random.nextDouble() * (m_maxLatencySeconds - m_minLatencySeconds);
+    // A coprocessor finishes frames in order, so a fast frame can't overtake a slow one.
+    double delivery = Math.max(now + latency, m_lastDeliverySeconds);
+    m_lastDeliverySeconds = delivery;
+
+    int index = (m_head + m_size) % m_captureTimes.length;
+    m_captureTimes[index] = now;
+    m_deliveryTimes[index] = delivery;
+    m_x[index] = m_sim.getXMeters() + m_random.nextGaussian() * m_xyStdDevMeters;
+    m_y[index] = m_sim.getYMeters() + m_random.nextGaussian() * m_xyStdDevMeters;
+    m_heading[index] = m_sim.getHeadingRadians() + m_random.nextGaussian() * m_headingStdDevRadians;
+    m_size++;
+  }
+
+  /**
+   * Takes the oldest frame that has finished processing by now, if any.
+   *
+   * @return false if no frame is ready
+   */
+  public boolean poll(Measurement out) {
+    if (m_size == 0 || m_deliveryTimes[m_head] > m_sim.getTimeSeconds()) {
+      return false;
+    }
+    out.captureTimestampSeconds = m_captureTimes[m_head];
+    out.xMeters = m_x[m_head];
+    out.yMeters = m_y[m_head];
+    out.headingRadians = m_heading[m_head];
+    m_head = (m_head + 1) % m_captureTimes.length;
+    m_size--;
+    return true;
+  }
+
+  public double getXyStdDevMeters() {
+    return m_xyStdDevMeters;
+  }
+
+  public double getHeadingStdDevRadians() {
+    return m_headingStdDevRadians;
+  }
+}
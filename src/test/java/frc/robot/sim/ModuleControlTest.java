@@ -0,0 +1,275 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.sim;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.function.DoubleSupplier;
+
+import com.swervedrivespecialties.swervelib.SwerveModule;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.math.MathUtil;
+import frc.robot.subsystems.DrivetrainSubsystem;
+import frc.robot.subsystems.VelocitySwerveModule;
+import frc.robot.util.ModuleControlConfig;
+
+/**
+ * Drives a {@link DrivetrainSubsystem} on a {@link DrivetrainSim} through a speed profile with each way of controlling
+ * the drive speed, and compares how closely the wheels follow their setpoints against how much work the roboRIO does.
+ * <ul>
+ *   <li>open loop: the feedforward alone, sent every 20 ms robot loop, the way the drivetrain has always driven;</li>
+ *   <li>roboRIO PID: the same speed loop the Falcons would run, but in Java on the roboRIO, correcting every robot
+ *       loop, or every 5 ms on a faster loop of its own;</li>
+ *   <li>Falcon: the drivetrain sends the setpoint and feedforward every robot loop, and the simulated Talon closes the
+ *       loop every millisecond on its own, slightly late, speed measurement.</li>
+ * </ul>
+ * Every loop uses the gains from {@link ModuleControlConfig}. At 50 Hz they're more than the roboRIO loop can take
+ * and it oscillates; that's the point, the Falcon can run gains the roboRIO can't. The feedforward is the
+ * uncharacterized one, and partway through a defender leans on the robot, so there's something to correct.
+ * <p>
+ * roboRIO work is counted as output loop runs and module frames sent per second rather than timed, since desktop
+ * timings say little about the roboRIO. The Falcon loop has to track better than open loop and at least as well as
+ * the fast roboRIO loop, with at most {@link #MAX_COST_RATIO} of the fast loop's roboRIO loops and frames.
+ */
+public class ModuleControlTest {
+  private static final double STEP_SECONDS = DrivetrainSim.SUBSTEP_SECONDS;
+  private static final int STEPS_PER_LOOP = (int) Math.round(DrivetrainSubsystem.LOOP_PERIOD_SECONDS / STEP_SECONDS);
+  private static final int STEPS_PER_FAST_LOOP = 5;
+  // The Talon's feedback status frame, which carries its speed measurement, comes every 20 ms by default.
+  private static final int STEPS_PER_STATUS_FRAME = 20;
+
+  // Forward speed (m/s) and the force a defender pushes back with (N), each held for PHASE_SECONDS.
+  private static final double[][] PHASES = {
+          {3.0, 0.0},
+          {0.3, 0.0},
+          {2.0, 200.0},
+          {0.0, 0.0},
+          {-2.5, 0.0},
+          {-0.5, 0.0},
+          {1.0, 150.0},
+          {0.0, 0.0},
+  };
+  private static final double PHASE_SECONDS = 2.0;
+  // The Falcon loop runs when the robot loop does, a quarter as often as the fast roboRIO loop.
+  private static final double MAX_COST_RATIO = 0.25;
+
+  private enum Mode {
+    OPEN_LOOP("open loop", false, false, 0),
+    ROBORIO_LOOP("roboRIO PID 50 Hz", true, true, 0),
+    ROBORIO_FAST_LOOP("roboRIO PID 200 Hz", true, true, STEPS_PER_FAST_LOOP),
+    FALCON("Falcon PID 1 kHz", true, false, 0);
+
+    final String m_name;
+    final boolean m_closedLoop;
+    final boolean m_onRoboRio;
+    // How often the roboRIO corrects on its own loop, in steps, or 0 for only when the drivetrain sends.
+    final int m_correctionSteps;
+
+    Mode(String name, boolean closedLoop, boolean onRoboRio, int correctionSteps) {
+      m_name = name;
+      m_closedLoop = closedLoop;
+      m_onRoboRio = onRoboRio;
+      m_correctionSteps = correctionSteps;
+    }
+  }
+
+  @BeforeClass
+  public static void initializeHal() {
+    assertTrue(HAL.initialize(500, 0));
+  }
+
+  @Test
+  public void falconLoopTracksLikeTheFastRoboRioLoopForLessWork() {
+    System.out.printf("%-20s %16s %14s %14s %14s%n", "drive control", "RMS err (m/s)", "max err (m/s)",
+            "RIO loops/s", "frames/s");
+    Result[] results = new Result[Mode.values().length];
+    for (Mode mode : Mode.values()) {
+      results[mode.ordinal()] = run(mode);
+      results[mode.ordinal()].print(mode.m_name);
+    }
+
+    Result openLoop = results[Mode.OPEN_LOOP.ordinal()];
+    Result fastLoop = results[Mode.ROBORIO_FAST_LOOP.ordinal()];
+    Result falcon = results[Mode.FALCON.ordinal()];
+    assertTrue(String.format("the Falcon loop's RMS error %.4f m/s isn't below open loop's %.4f m/s",
+            falcon.m_rmsError, openLoop.m_rmsError), falcon.m_rmsError < openLoop.m_rmsError);
+    assertTrue(String.format("the Falcon loop's RMS error %.4f m/s is above the 200 Hz roboRIO loop's %.4f m/s",
+            falcon.m_rmsError, fastLoop.m_rmsError), falcon.m_rmsError <= fastLoop.m_rmsError);
+    assertTrue(String.format("the Falcon loop ran %.0f roboRIO loops a second, the 200 Hz loop %.0f",
+            falcon.m_loopsPerSecond, fastLoop.m_loopsPerSecond),
+            falcon.m_loopsPerSecond <= MAX_COST_RATIO * fastLoop.m_loopsPerSecond);
+    assertTrue(String.format("the Falcon loop sent %.0f frames a second, the 200 Hz loop %.0f",
+            falcon.m_framesPerSecond, fastLoop.m_framesPerSecond),
+            falcon.m_framesPerSecond <= MAX_COST_RATIO * fastLoop.m_framesPerSecond);
+  }
+
+  private static Result run(Mode mode) {
+    DrivetrainSim sim = new DrivetrainSim();
+    ModuleControlConfig moduleControl = ModuleControlConfig.allModules(4, mode.m_closedLoop);
+    sim.setModuleControl(moduleControl);
+    SwerveModule[] modules = new SwerveModule[4];
+    RoboRioVelocityLoop[] velocityLoops = new RoboRioVelocityLoop[4];
+    for (int i = 0; i < modules.length; i++) {
+      if (mode.m_onRoboRio) {
+        velocityLoops[i] = new RoboRioVelocityLoop(sim.getModule(i), moduleControl, sim::getTimeSeconds);
+        modules[i] = velocityLoops[i];
+      } else {
+        modules[i] = sim.getModule(i);
+      }
+    }
+    DrivetrainSubsystem drivetrain = new DrivetrainSubsystem(modules, sim.getGyro(), sim::getTimeSeconds,
+            sim::getBusVoltage, false, moduleControl);
+    drivetrain.setDriveFeedforward(DrivetrainSubsystem.createOpenLoopFeedforward());
+
+    double squaredError = 0.0;
+    double maxError = 0.0;
+    long samples = 0;
+    long roboRioLoops = 0;
+    long correctionFrames = 0;
+    int steps = (int) Math.round(PHASES.length * PHASE_SECONDS / STEP_SECONDS);
+    for (int step = 0; step < steps; step++) {
+      if (mode.m_onRoboRio && step % STEPS_PER_STATUS_FRAME == STEPS_PER_STATUS_FRAME / 2) {
+        // Halfway between robot loops, so each loop sees a measurement 10 ms old on average.
+        for (RoboRioVelocityLoop loop : velocityLoops) {
+          loop.receiveStatusFrame();
+        }
+      }
+      if (step % STEPS_PER_LOOP == 0) {
+        double[] phase = PHASES[(int) (step * STEP_SECONDS / PHASE_SECONDS)];
+        sim.setExternalForce(-Math.signum(phase[0]) * phase[1], 0.0);
+        drivetrain.drive(phase[0], 0.0, 0.0);
+        drivetrain.periodic();
+        roboRioLoops++;
+      } else if (mode.m_correctionSteps > 0 && step % mode.m_correctionSteps == 0) {
+        for (RoboRioVelocityLoop loop : velocityLoops) {
+          loop.correct();
+        }
+        roboRioLoops++;
+        correctionFrames += velocityLoops.length;
+      }
+      sim.step(STEP_SECONDS);
+
+      for (int i = 0; i < 4; i++) {
+        // The setpoint along the direction the wheel is actually pointing.
+        double setpoint = drivetrain.getModuleSpeedMetersPerSecond(i) * Math.cos(
+                drivetrain.getModuleAngleRadians(i) - sim.getModule(i).getSteerAngle());
+        double error = sim.getModule(i).getDriveVelocity() - setpoint;
+        squaredError += error * error;
+        maxError = Math.max(maxError, Math.abs(error));
+        samples++;
+      }
+    }
+
+    double seconds = steps * STEP_SECONDS;
+    Result result = new Result();
+    result.m_rmsError = Math.sqrt(squaredError / samples);
+    result.m_maxError = maxError;
+    result.m_loopsPerSecond = roboRioLoops / seconds;
+    result.m_framesPerSecond = (drivetrain.getSentModuleWrites() + correctionFrames) / seconds;
+    return result;
+  }
+
+  /**
+   * A speed loop on the roboRIO: the drivetrain's setpoint and feedforward, corrected by the same PID the Falcons
+   * would run, against the speed the module reports. The roboRIO only hears the Talon's speed measurement in its
+   * feedback status frame, so it corrects on that, as of the last {@link #receiveStatusFrame()}. It corrects whenever
+   * the drivetrain sends, and again on every {@link #correct()}.
+   */
+  private static final class RoboRioVelocityLoop implements VelocitySwerveModule {
+    private final SimSwerveModule m_module;
+    private final double m_kp;
+    private final double m_ki;
+    private final double m_kd;
+    private final DoubleSupplier m_clockSeconds;
+
+    private boolean m_closedLoop = false;
+    private double m_velocity;
+    private double m_feedforwardVolts;
+    private double m_steerAngle;
+    private double m_errorIntegral;
+    private double m_lastError;
+    private double m_lastCorrectionSeconds;
+    private double m_reportedVelocity;
+
+    RoboRioVelocityLoop(SimSwerveModule module, ModuleControlConfig moduleControl, DoubleSupplier clockSeconds) {
+      m_module = module;
+      m_kp = moduleControl.getDriveKp();
+      m_ki = moduleControl.getDriveKi();
+      m_kd = moduleControl.getDriveKd();
+      m_clockSeconds = clockSeconds;
+    }
+
+    @Override
+    public double getDriveVelocity() {
+      return m_module.getDriveVelocity();
+    }
+
+    @Override
+    public double getSteerAngle() {
+      return m_module.getSteerAngle();
+    }
+
+    @Override
+    public void set(double driveVoltage, double steerAngle) {
+      m_closedLoop = false;
+      m_module.set(driveVoltage, steerAngle);
+    }
+
+    @Override
+    public void setVelocity(double driveVelocityMetersPerSecond, double driveFeedforwardVolts, double steerAngle) {
+      if (!m_closedLoop) {
+        m_errorIntegral = 0.0;
+        m_lastError = 0.0;
+        m_lastCorrectionSeconds = m_clockSeconds.getAsDouble();
+        m_closedLoop = true;
+      }
+      m_velocity = driveVelocityMetersPerSecond;
+      m_feedforwardVolts = driveFeedforwardVolts;
+      m_steerAngle = steerAngle;
+      correct();
+    }
+
+    /** Takes the Talon's latest speed measurement, the way its feedback status frame brings it to the roboRIO. */
+    void receiveStatusFrame() {
+      m_reportedVelocity = m_module.getMeasuredDriveVelocity();
+    }
+
+    /** Runs the PID once against the latest setpoint and sends the result, if the loop is on. */
+    void correct() {
+      if (!m_closedLoop) {
+        return;
+      }
+      // Measure in the direction the module will drive, the same way it decides whether to flip.
+      double measured = m_reportedVelocity;
+      if (Math.abs(MathUtil.angleModulus(m_steerAngle - m_module.getSteerAngle())) > Math.PI / 2.0) {
+        measured = -measured;
+      }
+      double now = m_clockSeconds.getAsDouble();
+      double dt = now - m_lastCorrectionSeconds;
+      m_lastCorrectionSeconds = now;
+      double error = m_velocity - measured;
+      m_errorIntegral += error * dt;
+      double derivative = dt > 0.0 ? (error - m_lastError) / dt : 0.0;
+      m_lastError = error;
+      m_module.set(m_feedforwardVolts + m_kp * error + m_ki * m_errorIntegral + m_kd * derivative, m_steerAngle);
+    }
+  }
+
+  private static final class Result {
+    double m_rmsError;
+    double m_maxError;
+    double m_loopsPerSecond;
+    double m_framesPerSecond;
+
+    void print(String name) {
+      System.out.printf("%-20s %16.4f %14.3f %14.0f %14.0f%n", name, m_rmsError, m_maxError, m_loopsPerSecond,
+              m_framesPerSecond);
+    }
+  }
+}
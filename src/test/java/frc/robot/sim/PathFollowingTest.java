@@ -0,0 +1,122 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.sim;
+
+import static frc.robot.Constants.AUTO_HEADING_TOLERANCE_RADIANS;
+import static frc.robot.Constants.AUTO_POSITION_TOLERANCE_METERS;
+import static frc.robot.Constants.AUTO_SETTLE_TIMEOUT_SECONDS;
+import static frc.robot.Constants.AUTO_TRAJECTORY_SAMPLE_PERIOD_SECONDS;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.trajectory.Trajectory;
+import edu.wpi.first.math.trajectory.TrajectoryConfig;
+import edu.wpi.first.math.trajectory.TrajectoryGenerator;
+import frc.robot.auto.AutoPaths;
+import frc.robot.auto.CachedTrajectory;
+import frc.robot.auto.HolonomicPathController;
+import frc.robot.auto.SampledPath;
+import frc.robot.auto.TrajectoryCacheGenerator;
+import frc.robot.subsystems.DrivetrainSubsystem;
+import frc.robot.util.InPlaceSwerveKinematics;
+import frc.robot.util.SwerveModuleOptimizer;
+import frc.robot.util.SwerveSetpointGenerator;
+
+/**
+ * Drives every path in {@link AutoPaths} on a {@link DrivetrainSim} with the same controller and the same module
+ * setpoint math as the robot, and checks that the robot stops at the end of each path within the autonomous
+ * tolerances in {@link frc.robot.Constants}.
+ * <p>
+ * The paths are generated and encoded exactly the way the build does it, and the module outputs are optimized
+ * against the measured angles like DrivetrainSubsystem does. The loop runs at 50 Hz like the robot's.
+ * The controller is fed the simulator's true pose, so this checks path following on its own, without odometry
+ * drift. A table of each path's time and errors is printed either way.
+ */
+public class PathFollowingTest {
+  private static final double LOOP_PERIOD_SECONDS = 0.02;
+
+  private final DrivetrainSim m_sim = new DrivetrainSim();
+  private final InPlaceSwerveKinematics m_kinematics =
+          new InPlaceSwerveKinematics(DrivetrainSubsystem.getModuleLocations());
+  private final SwerveSetpointGenerator m_setpointGenerator = DrivetrainSubsystem.createSetpointGenerator();
+  private final HolonomicPathController m_controller = HolonomicPathController.createDefault();
+  private final SampledPath.Sample m_reference = new SampledPath.Sample();
+  private final double[] m_robotRelativeSpeeds = new double[3];
+  private final double[] m_moduleSpeeds = new double[4];
+  private final double[] m_moduleAngles = new double[4];
+  private final double[] m_measuredAngles = new double[4];
+
+  @Test
+  public void everyAutoPathEndsWithinTolerance() {
+    TrajectoryConfig config = TrajectoryCacheGenerator.createConfig();
+    StringBuilder failures = new StringBuilder();
+
+    System.out.printf("%-16s %8s %10s %10s %10s %10s%n",
+            "path", "time (s)", "max (m)", "final (m)", "final (deg)", "result");
+    for (AutoPaths.Definition definition : AutoPaths.getDefinitions()) {
+      Trajectory trajectory = TrajectoryGenerator.generateTrajectory(
+              definition.start, definition.interiorWaypoints, definition.end, config);
+      SampledPath path = SampledPath.from(CachedTrajectory.wrap(definition.name,
+              TrajectoryCacheGenerator.encode(definition, trajectory, AUTO_TRAJECTORY_SAMPLE_PERIOD_SECONDS)));
+      run(path, failures);
+    }
+    assertTrue(failures.toString(), failures.length() == 0);
+  }
+
+  /** Follows one path from its start until the command would have finished, and prints the result. */
+  private void run(SampledPath path, StringBuilder failures) {
+    path.sample(0.0, m_reference);
+    m_sim.reset(m_reference.xMeters, m_reference.yMeters, m_reference.headingRadians);
+    m_controller.reset();
+    m_setpointGenerator.reset(0.0, 0.0, 0.0);
+
+    double maxErrorMeters = 0.0;
+    double elapsed = 0.0;
+    while (true) {
+      path.sample(elapsed, m_reference);
+      m_controller.calculate(m_reference, m_sim.getXMeters(), m_sim.getYMeters(), m_sim.getHeadingRadians(),
+              m_robotRelativeSpeeds);
+      maxErrorMeters = Math.max(maxErrorMeters, m_controller.getPositionErrorMeters());
+
+      // The same checks as FollowPathCommand.isFinished().
+      double overtime = elapsed - path.getTotalTimeSeconds();
+      if (overtime >= 0.0
+              && (m_controller.atReference(AUTO_POSITION_TOLERANCE_METERS, AUTO_HEADING_TOLERANCE_RADIANS)
+              || overtime >= AUTO_SETTLE_TIMEOUT_SECONDS)) {
+        break;
+      }
+
+      DrivetrainSubsystem.computeModuleSetpoints(m_kinematics, m_setpointGenerator, m_robotRelativeSpeeds[0],
+              m_robotRelativeSpeeds[1], m_robotRelativeSpeeds[2], m_moduleSpeeds, m_moduleAngles);
+      for (int i = 0; i < m_measuredAngles.length; i++) {
+        m_measuredAngles[i] = m_sim.getModule(i).getSteerAngle();
+      }
+      SwerveModuleOptimizer.minimizeSteering(m_moduleSpeeds, m_moduleAngles, m_measuredAngles);
+      SwerveModuleOptimizer.scaleByAlignment(m_moduleSpeeds, m_moduleAngles, m_measuredAngles);
+      for (int i = 0; i < m_moduleSpeeds.length; i++) {
+        m_sim.getModule(i).set(m_moduleSpeeds[i] / DrivetrainSubsystem.MAX_VELOCITY_METERS_PER_SECOND
+                * DrivetrainSubsystem.MAX_VOLTAGE, m_moduleAngles[i]);
+      }
+      m_sim.step(LOOP_PERIOD_SECONDS);
+      elapsed += LOOP_PERIOD_SECONDS;
+    }
+
+    // Measure against the end of the path, not wherever the reference was when we stopped.
+    path.sample(path.getTotalTimeSeconds(), m_reference);
+    double finalErrorMeters = Math.hypot(m_reference.xMeters - m_sim.getXMeters(),
+            m_reference.yMeters - m_sim.getYMeters());
+    double finalHeadingError = MathUtil.angleModulus(m_reference.headingRadians - m_sim.getHeadingRadians());
+    boolean passed = finalErrorMeters <= AUTO_POSITION_TOLERANCE_METERS
+            && Math.abs(finalHeadingError) <= AUTO_HEADING_TOLERANCE_RADIANS;
+    System.out.printf("%-16s %8.2f %10.3f %10.3f %10.2f %10s%n", path.getName(), elapsed, maxErrorMeters,
+            finalErrorMeters, Math.toDegrees(finalHeadingError), passed ? "ok" : "FAILED");
+    if (!passed) {
+      failures.append(String.format("%s ended %.3f m and %.2f deg from its end pose. ", path.getName(),
+              finalErrorMeters, Math.toDegrees(finalHeadingError)));
+    }
+  }
+}
@@ -0,0 +1,206 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.sim;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import com.swervedrivespecialties.swervelib.SwerveModule;
+
+import org.junit.Test;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import frc.robot.subsystems.DrivetrainOdometry;
+import frc.robot.subsystems.DrivetrainSubsystem;
+import frc.robot.util.InPlaceSwerveKinematics;
+import frc.robot.util.PoseSnapshot;
+import frc.robot.util.SwerveModuleOptimizer;
+import frc.robot.util.SwerveSetpointGenerator;
+
+/**
+ * Drives a {@link DrivetrainSim} around with odometry that's a little wrong and a {@link FakeVisionSource} whose
+ * results arrive 30 to 100 ms late, and compares how far three pose estimates end up from the true pose:
+ * <ul>
+ *   <li>odometry alone,</li>
+ *   <li>vision fused as if each frame was captured when it arrived,</li>
+ *   <li>vision fused at the time each frame was captured, which is what the robot does.</li>
+ * </ul>
+ * All three are {@link DrivetrainOdometry} instances reading the same modules and gyro, stepped at the odometry
+ * thread's rate. The odometry starts from the wrong pose, and its wheels read 3% fast. The error is only measured
+ * after the first few seconds, once vision has pulled the estimates in. Fusing at capture time has to have at most
+ * {@link #MAX_ERROR_RATIO} of the RMS position and heading error of either of the others. It also prints what each
+ * fused measurement cost, but doesn't check it, since that depends on the machine.
+ */
+public class PoseEstimationTest {
+  private static final double STEP_SECONDS = DrivetrainOdometry.DEFAULT_PERIOD_SECONDS;
+  private static final int STEPS_PER_LOOP = (int) Math.round(0.02 / STEP_SECONDS);
+  private static final double DURATION_SECONDS = 20.0;
+  private static final double SETTLE_SECONDS = 3.0;
+  private static final double WHEEL_SPEED_ERROR = 0.03;
+  private static final Pose2d START_POSE_ERROR = new Pose2d(0.5, -0.3, new Rotation2d(Math.toRadians(5.0)));
+
+  private static final double FRAME_PERIOD_SECONDS = 1.0 / 15.0;
+  private static final double MIN_LATENCY_SECONDS = 0.03;
+  private static final double MAX_LATENCY_SECONDS = 0.1;
+  private static final double XY_NOISE_METERS = 0.05;
+  private static final double HEADING_NOISE_RADIANS = Math.toRadians(2.0);
+  private static final long SEED = 2022;
+
+  // Robot-relative vx, vy, omega, each held for PHASE_SECONDS in turn.
+  private static final double[][] PHASES = {
+          {2.0, 0.0, 1.0},
+          {0.0, 2.0, -1.0},
+          {-1.5, -1.0, 2.0},
+          {1.0, -1.5, 0.0},
+  };
+  private static final double PHASE_SECONDS = 2.5;
+
+  private static final String[] NAMES = {"odometry only", "fused on arrival", "fused at capture"};
+  private static final int ODOMETRY_ONLY = 0;
+  private static final int ON_ARRIVAL = 1;
+  private static final int AT_CAPTURE = 2;
+  // Seeded, so the errors are the same every run: fusing at capture has about 0.4 of the position error of fusing on
+  // arrival and 0.1 of odometry alone, and 0.15 of the heading error of both.
+  private static final double MAX_ERROR_RATIO = 0.5;
+
+  @Test
+  public void fusingAtCaptureTimeBeatsOdometryAndNaiveFusion() {
+    DrivetrainSim sim = new DrivetrainSim();
+    sim.reset(2.0, 3.0, 0.0);
+    FakeVisionSource vision = new FakeVisionSource(sim, FRAME_PERIOD_SECONDS, MIN_LATENCY_SECONDS,
+            MAX_LATENCY_SECONDS, XY_NOISE_METERS, HEADING_NOISE_RADIANS, SEED);
+
+    // The odometry sees wheels that read a little fast, like a worn or mis-measured tread.
+    SwerveModule[] modules = new SwerveModule[4];
+    for (int i = 0; i < modules.length; i++) {
+      SimSwerveModule module = sim.getModule(i);
+      modules[i] = new SwerveModule() {
+        @Override
+        public double getDriveVelocity() {
+          return module.getDriveVelocity() * (1.0 + WHEEL_SPEED_ERROR);
+        }
+
+        @Override
+        public double getSteerAngle() {
+          return module.getSteerAngle();
+        }
+
+        @Override
+        public void set(double driveVoltage, double steerAngle) {
+          module.set(driveVoltage, steerAngle);
+        }
+      };
+    }
+
+    DrivetrainOdometry[] estimators = new DrivetrainOdometry[NAMES.length];
+    Pose2d wrongStart = new Pose2d(sim.getXMeters() + START_POSE_ERROR.getX(),
+            sim.getYMeters() + START_POSE_ERROR.getY(), START_POSE_ERROR.getRotation());
+    for (int i = 0; i < estimators.length; i++) {
+      estimators[i] = new DrivetrainOdometry(modules, sim.getGyro()::getYawDegrees, sim::getTimeSeconds,
+              new InPlaceSwerveKinematics(DrivetrainSubsystem.getModuleLocations()));
+      estimators[i].resetPose(wrongStart);
+      estimators[i].update();
+    }
+
+    InPlaceSwerveKinematics kinematics = new InPlaceSwerveKinematics(DrivetrainSubsystem.getModuleLocations());
+    SwerveSetpointGenerator setpointGenerator = DrivetrainSubsystem.createSetpointGenerator();
+    double[] moduleSpeeds = new double[4];
+    double[] moduleAngles = new double[4];
+    double[] measuredAngles = new double[4];
+    PoseSnapshot.Sample pose = new PoseSnapshot.Sample();
+    FakeVisionSource.Measurement measurement = new FakeVisionSource.Measurement();
+
+    double[] sumSquaredError = new double[NAMES.length];
+    double[] maxError = new double[NAMES.length];
+    double[] sumSquaredHeadingError = new double[NAMES.length];
+    long samples = 0;
+    long[] fuseNanos = new long[(int) (DURATION_SECONDS / FRAME_PERIOD_SECONDS) + 1];
+    int fused = 0;
+    long replayedSamples = 0;
+
+    int steps = (int) Math.round(DURATION_SECONDS / STEP_SECONDS);
+    for (int step = 0; step < steps; step++) {
+      double now = sim.getTimeSeconds();
+      if (step % STEPS_PER_LOOP == 0) {
+        double[] phase = PHASES[(int) (now / PHASE_SECONDS) % PHASES.length];
+        DrivetrainSubsystem.computeModuleSetpoints(kinematics, setpointGenerator, phase[0], phase[1], phase[2],
+                moduleSpeeds, moduleAngles);
+        for (int i = 0; i < measuredAngles.length; i++) {
+          measuredAngles[i] = sim.getModule(i).getSteerAngle();
+        }
+        SwerveModuleOptimizer.minimizeSteering(moduleSpeeds, moduleAngles, measuredAngles);
+        SwerveModuleOptimizer.scaleByAlignment(moduleSpeeds, moduleAngles, measuredAngles);
+        for (int i = 0; i < moduleSpeeds.length; i++) {
+          sim.getModule(i).set(moduleSpeeds[i] / DrivetrainSubsystem.MAX_VELOCITY_METERS_PER_SECOND
+                  * DrivetrainSubsystem.MAX_VOLTAGE, moduleAngles[i]);
+        }
+      }
+
+      sim.step(STEP_SECONDS);
+      vision.update();
+      for (DrivetrainOdometry estimator : estimators) {
+        estimator.update();
+      }
+
+      while (vision.poll(measurement)) {
+        estimators[ON_ARRIVAL].addVisionMeasurement(sim.getTimeSeconds(), measurement.xMeters,
+                measurement.yMeters, measurement.headingRadians, vision.getXyStdDevMeters(),
+                vision.getHeadingStdDevRadians());
+
+        long start = System.nanoTime();
+        estimators[AT_CAPTURE].addVisionMeasurement(measurement.captureTimestampSeconds, measurement.xMeters,
+                measurement.yMeters, measurement.headingRadians, vision.getXyStdDevMeters(),
+                vision.getHeadingStdDevRadians());
+        fuseNanos[fused++] = System.nanoTime() - start;
+        replayedSamples += estimators[AT_CAPTURE].getLastReplayedSamples();
+      }
+
+      if (sim.getTimeSeconds() >= SETTLE_SECONDS) {
+        for (int i = 0; i < estimators.length; i++) {
+          estimators[i].getSnapshot().read(pose);
+          double error = Math.hypot(pose.xMeters - sim.getXMeters(), pose.yMeters - sim.getYMeters());
+          double headingError = MathUtil.angleModulus(pose.thetaRadians - sim.getHeadingRadians());
+          sumSquaredError[i] += error * error;
+          sumSquaredHeadingError[i] += headingError * headingError;
+          maxError[i] = Math.max(maxError[i], error);
+        }
+        samples++;
+      }
+    }
+
+    System.out.printf("%-18s %10s %10s %14s%n", "estimate", "rms (m)", "max (m)", "rms (deg)");
+    double[] rmsError = new double[NAMES.length];
+    double[] rmsHeadingError = new double[NAMES.length];
+    for (int i = 0; i < NAMES.length; i++) {
+      rmsError[i] = Math.sqrt(sumSquaredError[i] / samples);
+      rmsHeadingError[i] = Math.sqrt(sumSquaredHeadingError[i] / samples);
+      System.out.printf("%-18s %10.3f %10.3f %14.2f%n", NAMES[i], rmsError[i], maxError[i],
+              Math.toDegrees(rmsHeadingError[i]));
+    }
+
+    long[] sorted = Arrays.copyOf(fuseNanos, fused);
+    Arrays.sort(sorted);
+    long total = 0;
+    for (long nanos : sorted) {
+      total += nanos;
+    }
+    System.out.printf("%nfused %d measurements at capture time: p50 %d ns, mean %d ns, max %d ns, "
+                    + "%.1f samples replayed on average%n",
+            fused, sorted[fused / 2], total / fused, sorted[fused - 1], (double) replayedSamples / fused);
+
+    for (int other : new int[] {ODOMETRY_ONLY, ON_ARRIVAL}) {
+      assertTrue(String.format("fusing at capture time should have at most %.1f of the position error of %s: "
+              + "%.3f m vs %.3f m", MAX_ERROR_RATIO, NAMES[other], rmsError[AT_CAPTURE], rmsError[other]),
+              rmsError[AT_CAPTURE] <= MAX_ERROR_RATIO * rmsError[other]);
+      assertTrue(String.format("fusing at capture time should have at most %.1f of the heading error of %s: "
+              + "%.2f deg vs %.2f deg", MAX_ERROR_RATIO, NAMES[other], Math.toDegrees(rmsHeadingError[AT_CAPTURE]),
+              Math.toDegrees(rmsHeadingError[other])),
+              rmsHeadingError[AT_CAPTURE] <= MAX_ERROR_RATIO * rmsHeadingError[other]);
+    }
+  }
+}
@@ -0,0 +1,151 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.sim;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import frc.robot.Constants;
+import frc.robot.commands.DefaultDriveCommand;
+import frc.robot.subsystems.DrivetrainSubsystem;
+import frc.robot.util.DrivePowerBudget;
+import frc.robot.util.InPlaceSwerveKinematics;
+import frc.robot.util.SwerveModuleOptimizer;
+import frc.robot.util.SwerveSetpointGenerator;
+
+/**
+ * Drives full-stick sprints and pushing matches on a {@link DrivetrainSim} with a tired battery, with and without the
+ * {@link DrivePowerBudget}, and checks that the budget keeps the bus above brownout without slowing the robot down.
+ * <p>
+ * In the pushing phases a defender pushes back against the direction the driver is asking for, hard enough that the
+ * robot can only just win at full power. Speed is measured as progress in the direction the driver asked for, so
+ * being shoved backwards while browned out counts against it.
+ * <p>
+ * The output path is the same as DrivetrainSubsystem's: setpoint generator, module optimizer, then the budget. The
+ * battery in the simulation is worse than the one the budget assumes, so this also checks that the budget copes with
+ * a battery it wasn't tuned for. The unbudgeted run has to brown out, or the test wouldn't be hard enough to show
+ * anything; the budgeted one must never let the bus down to {@link SimBattery#BROWNOUT_VOLTAGE}, and has to make at
+ * least as much progress.
+ */
+public class PowerBudgetTest {
+  private static final double LOOP_PERIOD_SECONDS = 0.02;
+  private static final double DURATION_SECONDS = 30.0;
+
+  // A battery near the end of a match: lower resting voltage and double the internal resistance of a fresh one.
+  private static final double OPEN_CIRCUIT_VOLTAGE = 12.2;
+  private static final double RESISTANCE_OHMS = 0.04;
+  private static final double OTHER_LOAD_AMPS = 5.0;
+
+  // How hard a defender pushes, in newtons. A robot like ours pushing with most of what its wheels hold, so winning
+  // takes a lot of current.
+  private static final double DEFENDER_FORCE_NEWTONS = 0.6 * Constants.DRIVE_WHEEL_FRICTION_COEFFICIENT
+          * DrivetrainSim.ROBOT_MASS_KG * Constants.GRAVITY_METERS_PER_SECOND_SQUARED;
+
+  // Field-relative full stick (vx, vy, omega), and whether a defender is pushing back. Each held for PHASE_SECONDS.
+  private static final double MAX = DrivetrainSubsystem.MAX_VELOCITY_METERS_PER_SECOND;
+  private static final double[][] PHASES = {
+          {MAX, 0.0, 0.0, 0.0},
+          {-MAX, 0.0, 0.0, 1.0},
+          {0.0, MAX, 0.0, 0.0},
+          {0.0, -MAX, 0.0, 1.0},
+          {0.7 * MAX, 0.7 * MAX, 4.0, 0.0},
+          {-0.7 * MAX, -0.7 * MAX, -4.0, 0.0},
+  };
+  private static final double PHASE_SECONDS = 2.0;
+
+  @Test
+  public void budgetKeepsTheBusAboveBrownoutAndIsNoSlower() {
+    System.out.printf("%-16s %12s %10s %12s %14s %12s%n",
+            "drive output", "mean (m/s)", "brownouts", "dark (s)", "min bus (V)", "peak (A)");
+    Result unbudgeted = run(false);
+    Result budgeted = run(true);
+    unbudgeted.print("unbudgeted");
+    budgeted.print("budgeted");
+
+    assertTrue("the unbudgeted drive should brown out on this battery", unbudgeted.m_brownouts > 0);
+    assertEquals("brownouts with the budget", 0, budgeted.m_brownouts);
+    assertTrue(String.format("the budget let the bus sag to %.2f V", budgeted.m_minimumBusVoltage),
+            budgeted.m_minimumBusVoltage > SimBattery.BROWNOUT_VOLTAGE);
+    assertTrue(String.format("the budgeted drive averaged %.2f m/s, slower than %.2f m/s without it",
+            budgeted.m_meanSpeed, unbudgeted.m_meanSpeed), budgeted.m_meanSpeed >= unbudgeted.m_meanSpeed);
+  }
+
+  private static Result run(boolean budgeted) {
+    SimBattery battery = new SimBattery(OPEN_CIRCUIT_VOLTAGE, RESISTANCE_OHMS, OTHER_LOAD_AMPS);
+    DrivetrainSim sim = new DrivetrainSim(battery);
+    InPlaceSwerveKinematics kinematics = new InPlaceSwerveKinematics(DrivetrainSubsystem.getModuleLocations());
+    SwerveSetpointGenerator setpointGenerator = DrivetrainSubsystem.createSetpointGenerator();
+    DrivePowerBudget powerBudget = DrivetrainSubsystem.createPowerBudget();
+    double[] speeds = new double[4];
+    double[] angles = new double[4];
+    double[] measuredAngles = new double[4];
+    double[] measuredSpeeds = new double[4];
+    double[] voltages = new double[4];
+    double[] robotRelative = new double[3];
+
+    double progress = 0.0;
+    double peakCurrent = 0.0;
+    int loops = (int) Math.round(DURATION_SECONDS / LOOP_PERIOD_SECONDS);
+    for (int loop = 0; loop < loops; loop++) {
+      double[] phase = PHASES[(int) (loop * LOOP_PERIOD_SECONDS / PHASE_SECONDS) % PHASES.length];
+      double requestedSpeed = Math.hypot(phase[0], phase[1]);
+      double directionX = phase[0] / requestedSpeed;
+      double directionY = phase[1] / requestedSpeed;
+      sim.setExternalForce(-directionX * DEFENDER_FORCE_NEWTONS * phase[3],
+              -directionY * DEFENDER_FORCE_NEWTONS * phase[3]);
+
+      DefaultDriveCommand.toRobotRelative(phase[0], phase[1], phase[2], sim.getHeadingRadians(), robotRelative);
+      DrivetrainSubsystem.computeModuleSetpoints(kinematics, setpointGenerator, robotRelative[0], robotRelative[1],
+              robotRelative[2], speeds, angles);
+      for (int i = 0; i < speeds.length; i++) {
+        measuredAngles[i] = sim.getModule(i).getSteerAngle();
+        measuredSpeeds[i] = sim.getModule(i).getDriveVelocity();
+      }
+      SwerveModuleOptimizer.minimizeSteering(speeds, angles, measuredAngles);
+      SwerveModuleOptimizer.scaleByAlignment(speeds, angles, measuredAngles);
+      for (int i = 0; i < speeds.length; i++) {
+        voltages[i] = speeds[i] / MAX * DrivetrainSubsystem.MAX_VOLTAGE;
+      }
+      if (budgeted) {
+        powerBudget.apply(voltages, measuredSpeeds, sim.getBusVoltage(), LOOP_PERIOD_SECONDS);
+      }
+      for (int i = 0; i < speeds.length; i++) {
+        sim.getModule(i).set(voltages[i], angles[i]);
+      }
+
+      // Step a millisecond at a time to catch the peak current.
+      for (int step = 0; step < 20; step++) {
+        double xBefore = sim.getXMeters();
+        double yBefore = sim.getYMeters();
+        sim.step(LOOP_PERIOD_SECONDS / 20);
+        progress += (sim.getXMeters() - xBefore) * directionX + (sim.getYMeters() - yBefore) * directionY;
+        peakCurrent = Math.max(peakCurrent, battery.getCurrentAmps());
+      }
+    }
+
+    Result result = new Result();
+    result.m_meanSpeed = progress / DURATION_SECONDS;
+    result.m_brownouts = battery.getBrownouts();
+    result.m_brownedOutSeconds = battery.getBrownedOutSeconds();
+    result.m_minimumBusVoltage = battery.getMinimumBusVoltage();
+    result.m_peakCurrent = peakCurrent;
+    return result;
+  }
+
+  private static final class Result {
+    double m_meanSpeed;
+    int m_brownouts;
+    double m_brownedOutSeconds;
+    double m_minimumBusVoltage;
+    double m_peakCurrent;
+
+    void print(String name) {
+      System.out.printf("%-16s %12.2f %10d %12.2f %14.2f %12.0f%n", name, m_meanSpeed, m_brownouts,
+              m_brownedOutSeconds, m_minimumBusVoltage, m_peakCurrent);
+    }
+  }
+}
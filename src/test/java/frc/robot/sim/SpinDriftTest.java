@@ -0,0 +1,178 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.sim;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.math.MathUtil;
+import frc.robot.commands.DefaultDriveCommand;
+import frc.robot.subsystems.DrivetrainSubsystem;
+import frc.robot.util.ModuleControlConfig;
+
+/**
+ * Drives a {@link DrivetrainSubsystem} on a {@link DrivetrainSim} in a straight line, field-relative, while spinning,
+ * and measures how far the robot drifts off the line with each of the drivetrain's speed corrections (see
+ * {@link frc.robot.util.ChassisSpeedDiscretizer}).
+ * <ul>
+ *   <li>none: the robot-relative request is held as is, so the robot curves towards the spin;</li>
+ *   <li>discretized: corrected for the robot turning over the measured time between outputs;</li>
+ *   <li>discretized + lookahead: also turned ahead by the measured time from the gyro sample to the outputs.</li>
+ * </ul>
+ * Each loop runs like the robot's: the drivetrain's periodic() reads the gyro and sends last loop's request, then the
+ * drive command turns the driver's field-relative request into a new one with that gyro sample. Every correction runs
+ * with steady 20 ms loops and with loops anywhere from 15 to 30 ms apart.
+ * <p>
+ * The robot drives at full speed and slower, spinning both ways, in four directions. The spin is as fast as the
+ * setpoint generator lets it go at that speed: turning the translation around under a spinning robot takes an
+ * acceleration of speed times spin, and past the chassis acceleration limit the setpoint falls behind the request
+ * whatever the correction. The drift is the average speed off the commanded line as a share of the speed along it,
+ * once the robot is up to speed; the worst drift over eight ranges of heading, relative to the direction of travel,
+ * is printed too. Each correction has to drift less than the one before it, for every motion and either loop timing.
+ * <p>
+ * Neither correction gets rid of the drift. What's left after both is the modules' own lag in following their
+ * setpoints, which nothing here models: a few percent at full speed, but over a fifth of the speed at 1 m/s and
+ * 5 rad/s. Looking further ahead by a fixed time would cancel some of it here, but the time that works best depends
+ * on the speed, and on modules this simulation only approximates.
+ */
+public class SpinDriftTest {
+  private static final double STEP_SECONDS = DrivetrainSim.SUBSTEP_SECONDS;
+  private static final int STEPS_PER_LOOP = (int) Math.round(DrivetrainSubsystem.LOOP_PERIOD_SECONDS / STEP_SECONDS);
+  // The shortest and longest loop in the jittery runs, in steps.
+  private static final int JITTER_MIN_STEPS = 15;
+  private static final int JITTER_MAX_STEPS = 30;
+  private static final long JITTER_SEED = 254;
+
+  private static final double RUN_SECONDS = 4.0;
+  // Long enough to get up to speed, which is measured from the setpoint generator's acceleration limits.
+  private static final double SETTLE_SECONDS = 1.0;
+  private static final double[] DIRECTIONS_DEGREES = {0.0, 90.0, 180.0, 270.0};
+  // Field speed (m/s) and spin (rad/s).
+  private static final double[][] MOTIONS = {
+          {DrivetrainSubsystem.MAX_VELOCITY_METERS_PER_SECOND, 1.2},
+          {2.0, 2.5},
+          {1.0, 5.0},
+  };
+  private static final double[] SPIN_DIRECTIONS = {1.0, -1.0};
+  // The robot's heading relative to the direction of travel, binned to show how the drift depends on it.
+  private static final int HEADING_BINS = 8;
+
+  private enum Mode {
+    NONE("none", false, false),
+    DISCRETIZED("discretized", true, false),
+    LOOKAHEAD("discretized + lookahead", true, true);
+
+    final String m_name;
+    final boolean m_discretize;
+    final boolean m_lookahead;
+
+    Mode(String name, boolean discretize, boolean lookahead) {
+      m_name = name;
+      m_discretize = discretize;
+      m_lookahead = lookahead;
+    }
+  }
+
+  @BeforeClass
+  public static void initializeHal() {
+    assertTrue(HAL.initialize(500, 0));
+  }
+
+  @Test
+  public void eachCorrectionDriftsLessThanTheOneBefore() {
+    System.out.printf("%-8s %-14s %-26s %12s %22s%n", "loops", "motion", "correction", "drift (%)",
+            "worst heading drift (%)");
+    StringBuilder failures = new StringBuilder();
+    for (boolean jitter : new boolean[] {false, true}) {
+      for (double[] motion : MOTIONS) {
+        String motionName = String.format("%.1f m/s %.1f/s", motion[0], motion[1]);
+        double previousDrift = Double.POSITIVE_INFINITY;
+        for (Mode mode : Mode.values()) {
+          Result result = run(mode, jitter, motion[0], motion[1]);
+          System.out.printf("%-8s %-14s %-26s %12.2f %22.2f%n", jitter ? "jittery" : "steady", motionName,
+                  mode.m_name, result.m_drift * 100.0, result.m_worstDrift * 100.0);
+          if (result.m_drift >= previousDrift) {
+            failures.append(String.format("%s loops, %s: %s drifts %.2f%%, no less than without it. ",
+                    jitter ? "jittery" : "steady", motionName, mode.m_name, result.m_drift * 100.0));
+          }
+          previousDrift = result.m_drift;
+        }
+      }
+    }
+    assertTrue(failures.toString(), failures.length() == 0);
+  }
+
+  private static Result run(Mode mode, boolean jitter, double speedMetersPerSecond, double spinRadiansPerSecond) {
+    Random random = new Random(JITTER_SEED);
+    double[] binOff = new double[HEADING_BINS];
+    double[] binAlong = new double[HEADING_BINS];
+    double totalOff = 0.0;
+    double totalAlong = 0.0;
+    for (double directionDegrees : DIRECTIONS_DEGREES) {
+      for (double spin : SPIN_DIRECTIONS) {
+        double direction = Math.toRadians(directionDegrees);
+        DrivetrainSim sim = new DrivetrainSim();
+        DrivetrainSubsystem drivetrain = new DrivetrainSubsystem(sim.getModules(), sim.getGyro(),
+                sim::getTimeSeconds, sim::getBusVoltage, false, ModuleControlConfig.openLoop(4));
+        drivetrain.setSpeedCompensation(mode.m_discretize, mode.m_lookahead);
+        double[] request = new double[3];
+
+        int steps = (int) Math.round(RUN_SECONDS / STEP_SECONDS);
+        int nextLoop = 0;
+        for (int step = 0; step < steps; step++) {
+          if (step == nextLoop) {
+            drivetrain.periodic();
+            DefaultDriveCommand.toRobotRelative(
+                    speedMetersPerSecond * Math.cos(direction),
+                    speedMetersPerSecond * Math.sin(direction),
+                    spin * spinRadiansPerSecond,
+                    drivetrain.getGyroscopeRadians(), request);
+            drivetrain.drive(request[0], request[1], request[2]);
+            nextLoop += jitter
+                    ? JITTER_MIN_STEPS + random.nextInt(JITTER_MAX_STEPS - JITTER_MIN_STEPS + 1)
+                    : STEPS_PER_LOOP;
+          }
+          sim.step(STEP_SECONDS);
+
+          if (step * STEP_SECONDS < SETTLE_SECONDS) {
+            continue;
+          }
+          // The robot's field velocity, split along and across the commanded line, and mirrored for the clockwise
+          // runs so drift towards the spin always counts the same way.
+          double heading = sim.getHeadingRadians();
+          double vx = sim.getChassisSpeed(0);
+          double vy = sim.getChassisSpeed(1);
+          double fieldVx = vx * Math.cos(heading) - vy * Math.sin(heading);
+          double fieldVy = vx * Math.sin(heading) + vy * Math.cos(heading);
+          double along = fieldVx * Math.cos(direction) + fieldVy * Math.sin(direction);
+          double off = spin * (-fieldVx * Math.sin(direction) + fieldVy * Math.cos(direction));
+          double relativeHeading = MathUtil.inputModulus(spin * (heading - direction), 0.0, 2.0 * Math.PI);
+          int bin = Math.min(HEADING_BINS - 1, (int) (relativeHeading / (2.0 * Math.PI) * HEADING_BINS));
+          binOff[bin] += off;
+          binAlong[bin] += along;
+          totalOff += off;
+          totalAlong += along;
+        }
+      }
+    }
+
+    Result result = new Result();
+    result.m_drift = Math.abs(totalOff / totalAlong);
+    for (int bin = 0; bin < HEADING_BINS; bin++) {
+      result.m_worstDrift = Math.max(result.m_worstDrift, Math.abs(binOff[bin] / binAlong[bin]));
+    }
+    return result;
+  }
+
+  private static final class Result {
+    double m_drift;
+    double m_worstDrift;
+  }
+}
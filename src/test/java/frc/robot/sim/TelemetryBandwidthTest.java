@@ -0,0 +1,279 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.sim;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import frc.robot.subsystems.DrivetrainSubsystem;
+import frc.robot.subsystems.DrivetrainTelemetry;
+import frc.robot.util.DrivePowerBudget;
+import frc.robot.util.InPlaceSwerveKinematics;
+import frc.robot.util.SwerveSetpointGenerator;
+import frc.robot.util.TelemetryPublisher;
+
+/**
+ * Publishes the drivetrain's dashboard values from a {@link DrivetrainSim} the way Shuffleboard's supplied widgets
+ * did and the way {@link TelemetryPublisher} does, and compares how much each puts on the wire.
+ * <p>
+ * Both publish exactly the signals in {@link DrivetrainTelemetry}. The robot drives, turns and sits still in turn, and
+ * the measured module angles and speeds get a little noise, like the real encoders. Bytes are counted by a sink that
+ * behaves like NetworkTables 3: it sends whatever changed every 100 ms, and a value that changed twice between sends
+ * only goes once. Every send that has anything in it also costs a packet's headers,
+ * {@link TelemetryPublisher#SEND_OVERHEAD_BYTES}, so a publisher that flushed more often than NetworkTables sends
+ * on its own would show up. The tiered publisher has to read fewer signals per loop, send at most
+ * {@link #MAX_BYTES_RATIO} of the bytes, and never send more often than NetworkTables does. Per-loop cost is printed
+ * too, but not checked: it's timed on whatever machine runs the test.
+ */
+public class TelemetryBandwidthTest {
+  private static final double LOOP_PERIOD_SECONDS = 0.02;
+  private static final double DURATION_SECONDS = 120.0;
+  // NetworkTables 3's default update period.
+  private static final int NT_UPDATE_PERIOD_LOOPS = 5;
+
+  // Encoder noise sitting still: about a tenth of a degree on the CANCoders, and a few mm/s on the drive velocity.
+  private static final double ANGLE_NOISE_RADIANS = Math.toRadians(0.1);
+  private static final double SPEED_NOISE_METERS_PER_SECOND = 0.005;
+
+  // Robot-relative (vx, vy, omega), each held for PHASE_SECONDS: drive, turn, drive and turn, then sit still.
+  private static final double MAX = DrivetrainSubsystem.MAX_VELOCITY_METERS_PER_SECOND;
+  private static final double[][] PHASES = {
+          {0.6 * MAX, 0.0, 0.0},
+          {0.0, 0.0, 3.0},
+          {0.3 * MAX, 0.3 * MAX, 1.5},
+          {0.0, 0.0, 0.0},
+          {0.0, 0.0, 0.0},
+  };
+  private static final double PHASE_SECONDS = 3.0;
+  // The noise is seeded, so the bytes are the same every run: the tiered publisher sends about 0.4 of them.
+  private static final double MAX_BYTES_RATIO = 0.5;
+
+  @Test
+  public void tieredPublisherSendsLessThanPublishingEveryLoop() {
+    // The first pass of each only warms up the JIT.
+    run(false);
+    run(true);
+    Result shuffleboard = run(false);
+    Result tiered = run(true);
+
+    System.out.printf("%-14s %8s %16s %12s %14s %12s %12s %12s %12s%n", "publisher", "signals", "reads per loop",
+            "puts per s", "updates per s", "sends per s", "bytes per s", "mean (us)", "p99 (us)");
+    shuffleboard.print("every loop");
+    tiered.print("tiered");
+
+    assertTrue(String.format("the tiered publisher read %.1f signals a loop, publishing every loop %.1f",
+            tiered.m_samplesPerLoop, shuffleboard.m_samplesPerLoop),
+            tiered.m_samplesPerLoop < shuffleboard.m_samplesPerLoop);
+    assertTrue(String.format("the tiered publisher sent %.0f B/s, over %.1f of the %.0f B/s publishing every loop",
+            tiered.m_bytesPerSecond, MAX_BYTES_RATIO, shuffleboard.m_bytesPerSecond),
+            tiered.m_bytesPerSecond <= MAX_BYTES_RATIO * shuffleboard.m_bytesPerSecond);
+    assertTrue(String.format("the tiered publisher sent %.1f times a second, more than NetworkTables on its own",
+            tiered.m_sendsPerSecond), tiered.m_sendsPerSecond <= 1.0 / (NT_UPDATE_PERIOD_LOOPS * LOOP_PERIOD_SECONDS));
+  }
+
+  private static Result run(boolean tiered) {
+    DrivetrainSim sim = new DrivetrainSim();
+    InPlaceSwerveKinematics kinematics = new InPlaceSwerveKinematics(DrivetrainSubsystem.getModuleLocations());
+    SwerveSetpointGenerator setpointGenerator = DrivetrainSubsystem.createSetpointGenerator();
+    DrivePowerBudget powerBudget = DrivetrainSubsystem.createPowerBudget();
+    double[] speeds = new double[4];
+    double[] angles = new double[4];
+    double[] measuredSpeeds = new double[4];
+    double[] voltages = new double[4];
+
+    SimSource source = new SimSource(sim, angles, powerBudget);
+    WireSink sink = new WireSink();
+    TelemetryPublisher publisher = new TelemetryPublisher(
+            tiered ? "TelemetryBandwidthTest.tiered" : "TelemetryBandwidthTest.everyLoop", sink);
+    publisher.setFiltering(tiered);
+    DrivetrainTelemetry.addSignals(publisher, source, true);
+
+    int loops = (int) Math.round(DURATION_SECONDS / LOOP_PERIOD_SECONDS);
+    long[] publishNanos = new long[loops];
+    for (int loop = 0; loop < loops; loop++) {
+      double[] phase = PHASES[(int) (loop * LOOP_PERIOD_SECONDS / PHASE_SECONDS) % PHASES.length];
+      DrivetrainSubsystem.computeModuleSetpoints(kinematics, setpointGenerator, phase[0], phase[1], phase[2],
+              speeds, angles);
+      for (int i = 0; i < speeds.length; i++) {
+        measuredSpeeds[i] = sim.getModule(i).getDriveVelocity();
+        voltages[i] = speeds[i] / MAX * DrivetrainSubsystem.MAX_VOLTAGE;
+      }
+      powerBudget.apply(voltages, measuredSpeeds, sim.getBusVoltage(), LOOP_PERIOD_SECONDS);
+      for (int i = 0; i < speeds.length; i++) {
+        sim.getModule(i).set(voltages[i], angles[i]);
+      }
+      sim.step(LOOP_PERIOD_SECONDS);
+      source.m_sentWrites += speeds.length;
+
+      long start = System.nanoTime();
+      publisher.periodic();
+      publishNanos[loop] = System.nanoTime() - start;
+      if (loop % NT_UPDATE_PERIOD_LOOPS == NT_UPDATE_PERIOD_LOOPS - 1) {
+        sink.send();
+      }
+    }
+
+    Arrays.sort(publishNanos);
+    long totalNanos = 0;
+    for (long nanos : publishNanos) {
+      totalNanos += nanos;
+    }
+    Result result = new Result();
+    result.m_signals = publisher.getSignalCount();
+    result.m_samplesPerLoop = (double) publisher.getSamples() / loops;
+    result.m_putsPerSecond = publisher.getUpdatesSent() / DURATION_SECONDS;
+    result.m_updatesPerSecond = sink.m_sent / DURATION_SECONDS;
+    result.m_sendsPerSecond = sink.m_sends / DURATION_SECONDS;
+    result.m_bytesPerSecond = sink.m_bytes / DURATION_SECONDS;
+    result.m_meanMicros = totalNanos / 1e3 / loops;
+    result.m_p99Micros = publishNanos[(int) (0.99 * (loops - 1))] / 1e3;
+    return result;
+  }
+
+  /** The drivetrain's dashboard values, read off the simulation with some encoder noise. */
+  private static final class SimSource implements DrivetrainTelemetry.Source {
+    private final DrivetrainSim m_sim;
+    private final double[] m_targetAngles;
+    private final DrivePowerBudget m_powerBudget;
+    private final Random m_random = new Random(19);
+    private long m_sentWrites = 0;
+
+    private SimSource(DrivetrainSim sim, double[] targetAngles, DrivePowerBudget powerBudget) {
+      m_sim = sim;
+      m_targetAngles = targetAngles;
+      m_powerBudget = powerBudget;
+    }
+
+    @Override
+    public double getHeadingRadians() {
+      return m_sim.getHeadingRadians();
+    }
+
+    @Override
+    public double getXMeters() {
+      return m_sim.getXMeters();
+    }
+
+    @Override
+    public double getYMeters() {
+      return m_sim.getYMeters();
+    }
+
+    @Override
+    public double getMeasuredModuleAngleRadians(int module) {
+      return m_sim.getModule(module).getSteerAngle() + m_random.nextGaussian() * ANGLE_NOISE_RADIANS;
+    }
+
+    @Override
+    public double getModuleAngleRadians(int module) {
+      return m_targetAngles[module];
+    }
+
+    @Override
+    public double getMeasuredModuleSpeedMetersPerSecond(int module) {
+      return m_sim.getModule(module).getDriveVelocity() + m_random.nextGaussian() * SPEED_NOISE_METERS_PER_SECOND;
+    }
+
+    @Override
+    public boolean isHardwareReady() {
+      return true;
+    }
+
+    @Override
+    public boolean hasHardwareFault() {
+      return false;
+    }
+
+    @Override
+    public long getSuppressedModuleWrites() {
+      return 0;
+    }
+
+    @Override
+    public long getSentModuleWrites() {
+      return m_sentWrites;
+    }
+
+    @Override
+    public long getFusedVisionMeasurements() {
+      return 0;
+    }
+
+    @Override
+    public long getRejectedVisionMeasurements() {
+      return 0;
+    }
+
+    @Override
+    public DrivePowerBudget getPowerBudget() {
+      return m_powerBudget;
+    }
+  }
+
+  /**
+   * Counts what NetworkTables 3 would send: each changed entry once per update period, plus the packet headers of each
+   * send that isn't empty.
+   */
+  private static final class WireSink implements TelemetryPublisher.Sink {
+    private int[] m_pendingBytes = new int[0];
+    private long m_sent = 0;
+    private long m_sends = 0;
+    private long m_bytes = 0;
+
+    @Override
+    public void register(int signal, String key) {
+      m_pendingBytes = Arrays.copyOf(m_pendingBytes, signal + 1);
+    }
+
+    @Override
+    public void putDouble(int signal, double value) {
+      m_pendingBytes[signal] = TelemetryPublisher.UPDATE_OVERHEAD_BYTES + TelemetryPublisher.DOUBLE_BYTES;
+    }
+
+    @Override
+    public void putBoolean(int signal, boolean value) {
+      m_pendingBytes[signal] = TelemetryPublisher.UPDATE_OVERHEAD_BYTES + TelemetryPublisher.BOOLEAN_BYTES;
+    }
+
+    /** Sends whatever changed since the last send, like NetworkTables' update timer. */
+    void send() {
+      boolean sending = false;
+      for (int i = 0; i < m_pendingBytes.length; i++) {
+        if (m_pendingBytes[i] != 0) {
+          sending = true;
+          m_sent++;
+          m_bytes += m_pendingBytes[i];
+          m_pendingBytes[i] = 0;
+        }
+      }
+      if (sending) {
+        m_sends++;
+        m_bytes += TelemetryPublisher.SEND_OVERHEAD_BYTES;
+      }
+    }
+  }
+
+  private static final class Result {
+    int m_signals;
+    double m_samplesPerLoop;
+    // Values handed to NetworkTables, and values it actually sent.
+    double m_putsPerSecond;
+    double m_updatesPerSecond;
+    double m_sendsPerSecond;
+    double m_bytesPerSecond;
+    double m_meanMicros;
+    double m_p99Micros;
+
+    void print(String name) {
+      System.out.printf("%-14s %8d %16.1f %12.1f %14.1f %12.1f %12.0f %12.2f %12.2f%n", name, m_signals,
+              m_samplesPerLoop, m_putsPerSecond, m_updatesPerSecond, m_sendsPerSecond, m_bytesPerSecond, m_meanMicros,
+              m_p99Micros);
+    }
+  }
+}
@@ -0,0 +1,162 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.subsystems;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.LockSupport;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import edu.wpi.first.hal.HAL;
+import frc.robot.sim.DrivetrainSim;
+import frc.robot.util.ModuleControlConfig;
+import frc.robot.util.RingBufferLogger;
+
+/**
+ * Writes a few seconds of {@link DrivetrainLog} records at 250 Hz, in real time, from a simulated drivetrain, then
+ * reads the file back. Nothing may be dropped and every field has to come back as it was logged.
+ * <p>
+ * The ring only holds a quarter of a second of records, so the background thread has to keep up the whole time
+ * rather than catch up at the end.
+ */
+public class DrivetrainLogTest {
+  private static final double PERIOD_SECONDS = 0.004;
+  private static final double RUN_SECONDS = 5.0;
+  private static final int RECORDS = (int) Math.round(RUN_SECONDS / PERIOD_SECONDS);
+  private static final int CAPACITY_RECORDS = 64;
+  // The drivetrain's own loop runs every fifth record, like the 20 ms robot loop under the 250 Hz log.
+  private static final int RECORDS_PER_LOOP = 5;
+  private static final int MODULE_COUNT = 4;
+  // Per record: the stick axes and what the drivetrain reported, in the order they're checked below.
+  private static final int EXPECTED_FIELDS = 27;
+
+  private Path m_file;
+
+  @BeforeClass
+  public static void initializeHal() {
+    assertTrue(HAL.initialize(500, 0));
+  }
+
+  @Before
+  public void createFile() throws IOException {
+    m_file = Files.createTempFile("drivetrain-log", ".bin");
+  }
+
+  @After
+  public void deleteFile() throws IOException {
+    Files.deleteIfExists(m_file);
+  }
+
+  @Test(timeout = 60000)
+  public void keepsUpAt250HzAndRoundTripsEveryRecord() throws IOException {
+    DrivetrainSim sim = new DrivetrainSim();
+    DrivetrainSubsystem drivetrain = new DrivetrainSubsystem(sim.getModules(), sim.getGyro(), sim::getTimeSeconds,
+            sim::getBusVoltage, false, ModuleControlConfig.openLoop(MODULE_COUNT));
+    double[][] expected = new double[RECORDS][];
+
+    long start = System.nanoTime();
+    try (DrivetrainLog log = new DrivetrainLog(m_file, CAPACITY_RECORDS, 1L << 30)) {
+      for (int record = 0; record < RECORDS; record++) {
+        double t = record * PERIOD_SECONDS;
+        double leftX = 0.5 * Math.sin(0.7 * t);
+        double leftY = -0.8 * Math.cos(0.3 * t);
+        double rightX = 0.4 * Math.sin(1.9 * t);
+        if (record % RECORDS_PER_LOOP == 0) {
+          drivetrain.periodic();
+          drivetrain.drive(-leftY * DrivetrainSubsystem.MAX_VELOCITY_METERS_PER_SECOND,
+                  -leftX * DrivetrainSubsystem.MAX_VELOCITY_METERS_PER_SECOND,
+                  -rightX * DrivetrainSubsystem.MAX_ANGULAR_VELOCITY_RADIANS_PER_SECOND);
+        }
+
+        log.log(drivetrain, leftX, leftY, rightX);
+        expected[record] = expectedRecord(drivetrain, leftX, leftY, rightX);
+
+        sim.step(PERIOD_SECONDS);
+        LockSupport.parkNanos(start + (long) ((record + 1) * PERIOD_SECONDS * 1e9) - System.nanoTime());
+      }
+      assertEquals("dropped records", 0, log.getDroppedRecords());
+    }
+    // Otherwise most of the fields would be zero and hardly tell the records apart.
+    assertTrue("the drivetrain didn't move", Math.hypot(sim.getXMeters(), sim.getYMeters()) > 1.0);
+
+    try (FileChannel channel = FileChannel.open(m_file, StandardOpenOption.READ)) {
+      MappedByteBuffer file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      file.order(ByteOrder.LITTLE_ENDIAN);
+      assertEquals("magic", RingBufferLogger.MAGIC, file.getLong(0));
+      assertEquals("record size", DrivetrainLog.RECORD_BYTES, file.getInt(RingBufferLogger.RECORD_BYTES_OFFSET));
+      assertEquals("format version", DrivetrainLog.FORMAT_VERSION,
+              file.getInt(RingBufferLogger.FORMAT_VERSION_OFFSET));
+      assertEquals("record count", RECORDS, file.getLong(RingBufferLogger.RECORD_COUNT_OFFSET));
+      assertEquals("file size", RingBufferLogger.HEADER_BYTES + (long) RECORDS * DrivetrainLog.RECORD_BYTES,
+              channel.size());
+
+      for (int record = 0; record < RECORDS; record++) {
+        double[] actual = readRecord(file, RingBufferLogger.HEADER_BYTES + record * DrivetrainLog.RECORD_BYTES);
+        for (int field = 0; field < EXPECTED_FIELDS; field++) {
+          assertEquals("record " + record + " field " + field, expected[record][field], actual[field], 0.0);
+        }
+      }
+    }
+  }
+
+  /** What {@link DrivetrainLog#log} should have written, with the float fields rounded the same way. */
+  private static double[] expectedRecord(DrivetrainSubsystem drivetrain, double leftX, double leftY,
+                                         double rightX) {
+    GyroSample gyro = drivetrain.getGyroSample();
+    double[] fields = new double[EXPECTED_FIELDS];
+    fields[0] = gyro.getTimestampSeconds();
+    fields[1] = leftX;
+    fields[2] = leftY;
+    fields[3] = rightX;
+    fields[4] = gyro.getYawDegrees();
+    fields[5] = (float) gyro.getYawRateDegreesPerSecond();
+    fields[6] = (float) drivetrain.getRequestedVxMetersPerSecond();
+    fields[7] = (float) drivetrain.getRequestedVyMetersPerSecond();
+    fields[8] = (float) drivetrain.getRequestedOmegaRadiansPerSecond();
+    for (int i = 0; i < MODULE_COUNT; i++) {
+      fields[9 + 4 * i] = (float) drivetrain.getModuleSpeedMetersPerSecond(i);
+      fields[10 + 4 * i] = (float) drivetrain.getModuleAngleRadians(i);
+      fields[11 + 4 * i] = (float) drivetrain.getMeasuredModuleSpeedMetersPerSecond(i);
+      fields[12 + 4 * i] = (float) drivetrain.getMeasuredModuleAngleRadians(i);
+    }
+    fields[25] = drivetrain.getDiscretizationPeriodSeconds();
+    fields[26] = drivetrain.getLookaheadSeconds();
+    return fields;
+  }
+
+  private static double[] readRecord(MappedByteBuffer file, int base) {
+    double[] fields = new double[EXPECTED_FIELDS];
+    fields[0] = file.getDouble(base + DrivetrainLog.TIMESTAMP);
+    fields[1] = file.getDouble(base + DrivetrainLog.LEFT_X);
+    fields[2] = file.getDouble(base + DrivetrainLog.LEFT_Y);
+    fields[3] = file.getDouble(base + DrivetrainLog.RIGHT_X);
+    fields[4] = file.getDouble(base + DrivetrainLog.GYRO_YAW);
+    fields[5] = file.getFloat(base + DrivetrainLog.GYRO_RATE);
+    fields[6] = file.getFloat(base + DrivetrainLog.CHASSIS_VX);
+    fields[7] = file.getFloat(base + DrivetrainLog.CHASSIS_VY);
+    fields[8] = file.getFloat(base + DrivetrainLog.CHASSIS_OMEGA);
+    for (int i = 0; i < MODULE_COUNT; i++) {
+      fields[9 + 4 * i] = file.getFloat(base + DrivetrainLog.MODULE_SETPOINTS + 8 * i);
+      fields[10 + 4 * i] = file.getFloat(base + DrivetrainLog.MODULE_SETPOINTS + 8 * i + 4);
+      fields[11 + 4 * i] = file.getFloat(base + DrivetrainLog.MODULE_MEASURED + 8 * i);
+      fields[12 + 4 * i] = file.getFloat(base + DrivetrainLog.MODULE_MEASURED + 8 * i + 4);
+    }
+    fields[25] = file.getDouble(base + DrivetrainLog.DISCRETIZATION_PERIOD);
+    fields[26] = file.getDouble(base + DrivetrainLog.LOOKAHEAD);
+    return fields;
+  }
+}
@@ -0,0 +1,195 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.subsystems;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.junit.Test;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.math.MathUtil;
+import frc.robot.sim.DrivetrainSim;
+import frc.robot.sim.SimSwerveModule;
+import frc.robot.util.InPlaceSwerveKinematics;
+import frc.robot.util.PoseSnapshot;
+
+/**
+ * Runs {@link DrivetrainOdometry} over a {@link DrivetrainSim} on its own thread while other threads read the pose,
+ * and checks that no reader ever sees a snapshot mixed from two samples.
+ * <p>
+ * The odometry thread keeps a copy of every sample it publishes, indexed by the snapshot's sequence number. Every
+ * sample a reader copies has to match the published one with the same sequence number exactly, field for field. The
+ * robot is kept driving and turning, so the fields change from one sample to the next and a torn read shows up.
+ * <p>
+ * It also checks that the driver zeroing the gyro mid-turn moves neither the odometry's heading nor its position.
+ */
+public class DrivetrainOdometryTest {
+  private static final int SAMPLES = 200000;
+  private static final int READERS = 3;
+  // How often the odometry thread changes what the modules are asked to do, in samples.
+  private static final int SAMPLES_PER_COMMAND = 250;
+  // Each reader has to have actually run alongside the odometry thread. On one core that's only a few hundred
+  // samples; on several, nearly all of them.
+  private static final int MIN_SAMPLES_SEEN = 100;
+  private static final double LOOP_PERIOD_SECONDS = 0.02;
+  private static final double HEADING_TOLERANCE_RADIANS = Math.toRadians(1.0);
+
+  @Test(timeout = 120000)
+  public void readersNeverSeeATornSnapshot() throws InterruptedException {
+    DrivetrainSim sim = new DrivetrainSim();
+    SimSwerveModule[] modules = sim.getModules();
+    DrivetrainOdometry odometry = new DrivetrainOdometry(modules, sim.getGyro()::getYawDegrees, sim::getTimeSeconds,
+            new InPlaceSwerveKinematics(DrivetrainSubsystem.getModuleLocations()));
+    PoseSnapshot snapshot = odometry.getSnapshot();
+
+    AtomicReferenceArray<PoseSnapshot.Sample> published = new AtomicReferenceArray<>(SAMPLES);
+    Thread writer = new Thread(() -> {
+      for (int i = 0; i < SAMPLES; i++) {
+        if (i % SAMPLES_PER_COMMAND == 0) {
+          // Drive and turn at once, changing both now and then, so x, y, heading and the velocities all keep moving.
+          double phase = i / (double) SAMPLES_PER_COMMAND;
+          for (int module = 0; module < modules.length; module++) {
+            modules[module].set(6.0 + 4.0 * Math.sin(phase + module), 0.3 * phase + module * Math.PI / 3.0);
+          }
+        }
+        sim.step(DrivetrainOdometry.DEFAULT_PERIOD_SECONDS);
+        odometry.update();
+        // This thread is the only writer, so its own read can't race anything.
+        PoseSnapshot.Sample sample = new PoseSnapshot.Sample();
+        snapshot.read(sample);
+        published.set(index(sample), sample);
+      }
+    }, "Odometry");
+
+    List<Reader> readers = new ArrayList<>();
+    for (int i = 0; i < READERS; i++) {
+      readers.add(new Reader(snapshot, published, writer));
+    }
+    writer.start();
+    for (Reader reader : readers) {
+      reader.start();
+    }
+    writer.join();
+    for (Reader reader : readers) {
+      reader.join();
+    }
+
+    assertNotNull("the odometry thread didn't finish", published.get(SAMPLES - 1));
+    for (Reader reader : readers) {
+      assertNull(reader.m_failure, reader.m_failure);
+      assertTrue("a reader saw too few samples to mean anything: " + reader.m_distinctSamples,
+              reader.m_distinctSamples >= MIN_SAMPLES_SEEN);
+    }
+  }
+
+  /** Where a sample goes in the published list: the first write leaves the sequence number at 2. */
+  private static int index(PoseSnapshot.Sample sample) {
+    return (int) (sample.sequence / 2) - 1;
+  }
+
+  /** Reads the snapshot as fast as it can until the odometry thread is done, checking every read. */
+  private static final class Reader extends Thread {
+    private final PoseSnapshot m_snapshot;
+    private final AtomicReferenceArray<PoseSnapshot.Sample> m_published;
+    private final Thread m_writer;
+    volatile String m_failure;
+    volatile int m_distinctSamples = 0;
+
+    Reader(PoseSnapshot snapshot, AtomicReferenceArray<PoseSnapshot.Sample> published, Thread writer) {
+      super("Reader");
+      m_snapshot = snapshot;
+      m_published = published;
+      m_writer = writer;
+    }
+
+    @Override
+    public void run() {
+      PoseSnapshot.Sample sample = new PoseSnapshot.Sample();
+      long lastSequence = 0;
+      double lastTimestamp = Double.NEGATIVE_INFINITY;
+      int distinctSamples = 0;
+      while (m_failure == null && m_writer.isAlive()) {
+        m_snapshot.read(sample);
+        if (sample.sequence == 0) {
+          continue; // Nothing published yet.
+        }
+        if ((sample.sequence & 1) != 0) {
+          m_failure = "read while sample " + (sample.sequence + 1) / 2 + " was being written";
+          break;
+        }
+        if (sample.sequence < lastSequence || sample.timestampSeconds < lastTimestamp) {
+          m_failure = String.format("went back from sequence %d at %.4f s to %d at %.4f s", lastSequence,
+                  lastTimestamp, sample.sequence, sample.timestampSeconds);
+        }
+        if (sample.sequence != lastSequence) {
+          distinctSamples++;
+        }
+        lastSequence = sample.sequence;
+        lastTimestamp = sample.timestampSeconds;
+
+        // The odometry thread adds its copy right after publishing, so it can be a moment behind.
+        PoseSnapshot.Sample expected;
+        while ((expected = m_published.get(index(sample))) == null) {
+          Thread.onSpinWait();
+        }
+        if (!matches(expected, sample)) {
+          m_failure = String.format("torn read at sequence %d: read %s, published %s", sample.sequence,
+                  describe(sample), describe(expected));
+        }
+      }
+      m_distinctSamples = distinctSamples;
+    }
+
+    private static boolean matches(PoseSnapshot.Sample expected, PoseSnapshot.Sample actual) {
+      return Double.compare(expected.timestampSeconds, actual.timestampSeconds) == 0
+              && Double.compare(expected.xMeters, actual.xMeters) == 0
+              && Double.compare(expected.yMeters, actual.yMeters) == 0
+              && Double.compare(expected.thetaRadians, actual.thetaRadians) == 0
+              && Double.compare(expected.vxMetersPerSecond, actual.vxMetersPerSecond) == 0
+              && Double.compare(expected.vyMetersPerSecond, actual.vyMetersPerSecond) == 0
+              && Double.compare(expected.omegaRadiansPerSecond, actual.omegaRadiansPerSecond) == 0;
+    }
+
+    private static String describe(PoseSnapshot.Sample sample) {
+      return String.format("(t %s, x %s, y %s, theta %s, vx %s, vy %s, omega %s)", sample.timestampSeconds,
+              sample.xMeters, sample.yMeters, sample.thetaRadians, sample.vxMetersPerSecond,
+              sample.vyMetersPerSecond, sample.omegaRadiansPerSecond);
+    }
+  }
+
+  @Test
+  public void zeroingTheGyroDoesNotMoveTheFieldPose() {
+    assertTrue(HAL.initialize(500, 0));
+    DrivetrainSim sim = new DrivetrainSim();
+    DrivetrainSubsystem drivetrain = new DrivetrainSubsystem(sim.getModules(), sim.getGyro(), sim::getTimeSeconds,
+            sim::getBusVoltage, false);
+
+    double headingAtZero = Double.NaN;
+    for (int loop = 0; loop < 100; loop++) {
+      if (loop == 50) {
+        drivetrain.zeroGyroscope();
+        headingAtZero = sim.getHeadingRadians();
+      }
+      drivetrain.periodic();
+      drivetrain.drive(1.0, 0.0, 2.0);
+      sim.step(LOOP_PERIOD_SECONDS);
+    }
+    drivetrain.periodic();
+
+    assertEquals("the odometry heading moved with the gyro zero", 0.0,
+            MathUtil.angleModulus(drivetrain.getPose().getRotation().getRadians() - sim.getHeadingRadians()),
+            HEADING_TOLERANCE_RADIANS);
+    assertEquals("the driver's heading isn't measured from where the gyro was zeroed", 0.0,
+            MathUtil.angleModulus(drivetrain.getGyroscopeRadians() - (sim.getHeadingRadians() - headingAtZero)),
+            HEADING_TOLERANCE_RADIANS);
+  }
+}
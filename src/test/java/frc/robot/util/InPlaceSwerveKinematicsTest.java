@@ -0,0 +1,100 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.management.ManagementFactory;
+
+import com.sun.management.ThreadMXBean;
+
+import org.junit.Test;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import frc.robot.subsystems.DrivetrainSubsystem;
+
+/**
+ * Checks {@link InPlaceSwerveKinematics} against the WPILib kinematics it replaces, and that it allocates nothing.
+ */
+public class InPlaceSwerveKinematicsTest {
+  private static final double TOLERANCE = 1e-9;
+  private static final double MAX_SPEED = DrivetrainSubsystem.MAX_VELOCITY_METERS_PER_SECOND;
+  private static final double MAX_OMEGA = DrivetrainSubsystem.MAX_ANGULAR_VELOCITY_RADIANS_PER_SECOND;
+  // Fractions of full speed for each of vx, vy and omega. Zero is in there so stopping, and the held angles that come
+  // with it, get compared too; the large ones make desaturation scale the wheels.
+  private static final double[] FRACTIONS = {-1.0, -0.6, -0.25, -0.01, 0.0, 0.01, 0.25, 0.6, 1.0};
+  private static final int WARMUP_LOOPS = 20000;
+  private static final int MEASURED_LOOPS = 5000;
+
+  private final Translation2d[] m_moduleLocations = DrivetrainSubsystem.getModuleLocations();
+
+  @Test
+  public void matchesWpilibOverASweep() {
+    SwerveDriveKinematics wpilib = new SwerveDriveKinematics(m_moduleLocations);
+    InPlaceSwerveKinematics inPlace = new InPlaceSwerveKinematics(m_moduleLocations);
+    double[] speeds = new double[m_moduleLocations.length];
+    double[] angles = new double[m_moduleLocations.length];
+
+    // One continuous sweep through both, so the angles each holds when stopped come from the same history.
+    for (double vx : FRACTIONS) {
+      for (double vy : FRACTIONS) {
+        for (double omega : FRACTIONS) {
+          ChassisSpeeds chassisSpeeds = new ChassisSpeeds(vx * MAX_SPEED, vy * MAX_SPEED, omega * MAX_OMEGA);
+          SwerveModuleState[] states = wpilib.toSwerveModuleStates(chassisSpeeds);
+          SwerveDriveKinematics.desaturateWheelSpeeds(states, MAX_SPEED);
+
+          inPlace.toModuleStates(chassisSpeeds.vxMetersPerSecond, chassisSpeeds.vyMetersPerSecond,
+                  chassisSpeeds.omegaRadiansPerSecond, speeds, angles);
+          InPlaceSwerveKinematics.desaturateWheelSpeeds(speeds, MAX_SPEED);
+
+          for (int i = 0; i < states.length; i++) {
+            String where = String.format("module %d at (%.2f, %.2f, %.2f)", i, vx, vy, omega);
+            assertEquals(where + " speed", states[i].speedMetersPerSecond, speeds[i], TOLERANCE);
+            assertEquals(where + " angle", 0.0,
+                    MathUtil.angleModulus(states[i].angle.getRadians() - angles[i]), TOLERANCE);
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void allocatesNothingPerLoopAfterWarmup() {
+    InPlaceSwerveKinematics inPlace = new InPlaceSwerveKinematics(m_moduleLocations);
+    double[] speeds = new double[m_moduleLocations.length];
+    double[] angles = new double[m_moduleLocations.length];
+
+    for (int loop = 0; loop < WARMUP_LOOPS; loop++) {
+      runLoop(inPlace, loop, speeds, angles);
+    }
+
+    ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    threads.setThreadAllocatedMemoryEnabled(true);
+    long thread = Thread.currentThread().getId();
+    // Reading the counter can allocate a little itself on some JDKs, so take that off.
+    long before = threads.getThreadAllocatedBytes(thread);
+    long overhead = threads.getThreadAllocatedBytes(thread) - before;
+
+    before = threads.getThreadAllocatedBytes(thread);
+    for (int loop = 0; loop < MEASURED_LOOPS; loop++) {
+      runLoop(inPlace, loop, speeds, angles);
+    }
+    long allocated = threads.getThreadAllocatedBytes(thread) - before - overhead;
+
+    assertEquals("bytes allocated over " + MEASURED_LOOPS + " loops", 0, allocated);
+  }
+
+  /** One loop's worth of the drivetrain's kinematics step, with the request moving every loop. */
+  private static void runLoop(InPlaceSwerveKinematics kinematics, int loop, double[] speeds, double[] angles) {
+    double t = loop * 0.02;
+    kinematics.toModuleStates(MAX_SPEED * Math.cos(t), MAX_SPEED * Math.sin(0.7 * t),
+            MAX_OMEGA * Math.sin(1.3 * t), speeds, angles);
+    InPlaceSwerveKinematics.desaturateWheelSpeeds(speeds, MAX_SPEED);
+  }
+}